@@ -0,0 +1,459 @@
+package com.ai.aicodeguard.application.service.impl;
+
+import com.ai.aicodeguard.application.service.interfaces.BatchCodeGenerationService;
+import com.ai.aicodeguard.domain.codegen.GeneratedCode;
+import com.ai.aicodeguard.domain.codegen.document.GeneratedCodeDocument;
+import com.ai.aicodeguard.infrastructure.ai.AIClientFactory;
+import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AIPriority;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
+import com.ai.aicodeguard.infrastructure.ai.AITaskType;
+import com.ai.aicodeguard.infrastructure.ai.batch.AIBatchCapable;
+import com.ai.aicodeguard.infrastructure.ai.batch.AIBatchProperties;
+import com.ai.aicodeguard.infrastructure.ai.batch.AIBatchRequest;
+import com.ai.aicodeguard.infrastructure.ai.batch.AIBatchResult;
+import com.ai.aicodeguard.infrastructure.ai.exception.AIProviderException;
+import com.ai.aicodeguard.infrastructure.mongo.GeneratedCodeDocumentRepository;
+import com.ai.aicodeguard.infrastructure.persistence.GeneratedCodeRepository;
+import com.ai.aicodeguard.infrastructure.security.SecurityScanningService;
+import com.ai.aicodeguard.presentation.request.codegen.BatchCodeGenerationRequest;
+import com.ai.aicodeguard.presentation.response.codegen.BatchCodeGenerationResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @ClassName: BatchCodeGenerationServiceImpl
+ * @Description: 批量代码生成服务实现类，按模型限制并发扇出，完成的结果在专用线程中合并入库后逐行写出；
+ *               请求安全扫描时扫描在独立的有界队列中提交，不阻塞结果写出
+ * @Author: LZX
+ * @Date: 2025/5/26 10:20
+ */
+@Service
+@Slf4j
+public class BatchCodeGenerationServiceImpl implements BatchCodeGenerationService {
+
+    private final AIClientFactory aiClientFactory;
+    private final AIBatchProperties batchProperties;
+    private final GeneratedCodeRepository generatedCodeRepository;
+    private final GeneratedCodeDocumentRepository generatedCodeDocumentRepository;
+    private final SecurityScanningService securityScanningService;
+    private final ObjectMapper objectMapper;
+    // 服务商批处理的提交与轮询
+    private final ScheduledExecutorService scheduler;
+    // 入库并写出结果，每个批次同一时刻最多一个任务，队列长度不超过批次数，不会拒绝
+    private final ExecutorService flushExecutor;
+    // 生成后提交安全扫描，队列已满时跳过
+    private final ThreadPoolExecutor scanExecutor;
+
+    public BatchCodeGenerationServiceImpl(AIClientFactory aiClientFactory, AIBatchProperties batchProperties,
+                                          GeneratedCodeRepository generatedCodeRepository,
+                                          GeneratedCodeDocumentRepository generatedCodeDocumentRepository,
+                                          SecurityScanningService securityScanningService,
+                                          ObjectMapper objectMapper) {
+        this.aiClientFactory = aiClientFactory;
+        this.batchProperties = batchProperties;
+        this.generatedCodeRepository = generatedCodeRepository;
+        this.generatedCodeDocumentRepository = generatedCodeDocumentRepository;
+        this.securityScanningService = securityScanningService;
+        this.objectMapper = objectMapper;
+        this.scheduler = Executors.newScheduledThreadPool(2, threadFactory("ai-batch-"));
+        this.flushExecutor = Executors.newFixedThreadPool(Math.max(1, batchProperties.getFlushThreads()),
+                threadFactory("ai-batch-flush-"));
+        int scanThreads = Math.max(1, batchProperties.getScanThreads());
+        this.scanExecutor = new ThreadPoolExecutor(scanThreads, scanThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, batchProperties.getScanQueueCapacity())),
+                threadFactory("ai-batch-scan-"), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        flushExecutor.shutdown();
+        scanExecutor.shutdownNow();
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public ResponseBodyEmitter generateBatch(BatchCodeGenerationRequest request, Integer userId) {
+        List<BatchCodeGenerationRequest.Item> items = request.getItems();
+        boolean delayed = request.isAcceptDelayed();
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(
+                (delayed ? batchProperties.getDelayedTimeout() : batchProperties.getTimeout()).toMillis());
+        if (items.size() > batchProperties.getMaxItems()) {
+            emitter.completeWithError(new IllegalArgumentException(
+                    "批量生成条目数不能超过" + batchProperties.getMaxItems()));
+            return emitter;
+        }
+        log.info("开始为用户{}批量生成代码，共{}条，接受延迟结果: {}", userId, items.size(), delayed);
+
+        BatchRun run = new BatchRun(items, userId, request.isScan(), emitter);
+        emitter.onTimeout(() -> run.cancel("批量生成超时"));
+        emitter.onError(e -> run.cancel("客户端连接异常: " + e.getMessage()));
+
+        // 按实际使用的模型分组，每个模型独立限制在途请求数
+        Map<String, AIClientService> clients = new LinkedHashMap<>();
+        Map<String, List<Integer>> indicesByModel = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            BatchCodeGenerationRequest.Item item = items.get(i);
+            String modelType = item.getModelType() != null ? item.getModelType() : request.getModelType();
+            try {
+                AIClientService client = aiClientFactory.getClient(modelType);
+                clients.putIfAbsent(client.getModelKey(), client);
+                indicesByModel.computeIfAbsent(client.getModelKey(), key -> new ArrayList<>()).add(i);
+            } catch (Exception e) {
+                run.offer(i, null, null, e);
+            }
+        }
+
+        indicesByModel.forEach((modelKey, indices) -> {
+            AIBatchCapable batchClient = delayed ? aiClientFactory.getBatchClient(modelKey) : null;
+            if (batchClient != null) {
+                submitProviderBatch(run, batchClient, modelKey, indices);
+            } else {
+                fanOut(run, clients.get(modelKey), indices);
+            }
+        });
+        return emitter;
+    }
+
+    /**
+     * 同时最多发出 maxParallelPerModel 个请求，每完成一个再从队列中补充下一个
+     */
+    private void fanOut(BatchRun run, AIClientService client, List<Integer> indices) {
+        Queue<Integer> pending = new ConcurrentLinkedQueue<>(indices);
+        int parallelism = Math.min(Math.max(1, batchProperties.getMaxParallelPerModel()), indices.size());
+        for (int i = 0; i < parallelism; i++) {
+            startNext(run, client, pending);
+        }
+    }
+
+    private void startNext(BatchRun run, AIClientService client, Queue<Integer> pending) {
+        Integer index = run.isCancelled() ? null : pending.poll();
+        if (index == null) {
+            return;
+        }
+        BatchCodeGenerationRequest.Item item = run.items.get(index);
+        // 批量生成不需要逐条即时返回，按后台优先级调度
+        CompletableFuture<String> future = client.generateCodeAsync(item.getPrompt(), item.getLanguage(),
+                AIRequestOptions.of(AITaskType.GENERATION, run.userId).toBuilder()
+                        .priority(AIPriority.BACKGROUND)
+                        .build());
+        run.inFlight.add(future);
+        future.whenComplete((content, error) -> {
+            run.inFlight.remove(future);
+            run.offer(index, client.getModelKey(), content, error);
+            startNext(run, client, pending);
+        });
+    }
+
+    /**
+     * 调用方接受延迟结果时提交到服务商批处理接口，定期轮询直至批次结束
+     */
+    private void submitProviderBatch(BatchRun run, AIBatchCapable batchClient, String modelKey, List<Integer> indices) {
+        List<AIBatchRequest> requests = indices.stream()
+                .map(index -> {
+                    BatchCodeGenerationRequest.Item item = run.items.get(index);
+                    return new AIBatchRequest(String.valueOf(index), item.getPrompt(), item.getLanguage(),
+                            AIRequestOptions.of(AITaskType.GENERATION, run.userId));
+                })
+                .toList();
+        scheduler.execute(() -> {
+            try {
+                String batchId = batchClient.submitCodeBatch(requests);
+                log.info("已提交{}批处理任务: {}，共{}条", modelKey, batchId, requests.size());
+                schedulePoll(run, batchClient, modelKey, batchId, requests);
+            } catch (Exception e) {
+                log.error("提交{}批处理任务失败", modelKey, e);
+                indices.forEach(index -> run.offer(index, modelKey, null, e));
+            }
+        });
+    }
+
+    private void schedulePoll(BatchRun run, AIBatchCapable batchClient, String modelKey, String batchId,
+                              List<AIBatchRequest> requests) {
+        scheduler.schedule(() -> {
+            if (run.isCancelled()) {
+                log.info("批量生成已取消，停止轮询{}批处理任务: {}", modelKey, batchId);
+                return;
+            }
+            Map<String, AIBatchResult> results;
+            try {
+                results = batchClient.pollCodeBatch(batchId, requests);
+            } catch (AIProviderException e) {
+                if (e.isThrottled()) {
+                    schedulePoll(run, batchClient, modelKey, batchId, requests);
+                    return;
+                }
+                requests.forEach(r -> run.offer(Integer.parseInt(r.customId()), modelKey, null, e));
+                return;
+            } catch (Exception e) {
+                log.error("查询{}批处理任务失败: {}", modelKey, batchId, e);
+                requests.forEach(r -> run.offer(Integer.parseInt(r.customId()), modelKey, null, e));
+                return;
+            }
+            if (results == null) {
+                schedulePoll(run, batchClient, modelKey, batchId, requests);
+                return;
+            }
+            log.info("{}批处理任务已结束: {}", modelKey, batchId);
+            for (AIBatchRequest request : requests) {
+                int index = Integer.parseInt(request.customId());
+                AIBatchResult result = results.get(request.customId());
+                if (result == null) {
+                    run.offer(index, modelKey, null, new RuntimeException("批处理结果中缺少该条目"));
+                } else if (result.isSuccess()) {
+                    run.offer(index, modelKey, result.content(), null);
+                } else {
+                    run.offer(index, modelKey, null, new RuntimeException(result.error()));
+                }
+            }
+        }, batchProperties.getPollInterval().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 一批已完成条目：成功的合并写入MySQL与MongoDB，随后按完成顺序写出结果行
+     */
+    private void flush(BatchRun run, List<Completion> completions) {
+        LocalDateTime now = LocalDateTime.now();
+        List<GeneratedCode> codes = new ArrayList<>();
+        List<GeneratedCodeDocument> documents = new ArrayList<>();
+        Map<Integer, String> codeIds = new LinkedHashMap<>();
+        for (Completion completion : completions) {
+            if (completion.error() != null) {
+                continue;
+            }
+            BatchCodeGenerationRequest.Item item = run.items.get(completion.index());
+            String codeId = UUID.randomUUID().toString();
+            codeIds.put(completion.index(), codeId);
+            codes.add(toCode(codeId, item, completion.modelKey(), run.userId, now));
+            documents.add(toDocument(codeId, item, completion, run.userId, now));
+        }
+
+        Throwable persistError = null;
+        if (!codes.isEmpty()) {
+            try {
+                generatedCodeRepository.saveAll(codes);
+                try {
+                    generatedCodeDocumentRepository.insert(documents);
+                } catch (RuntimeException e) {
+                    // 撤销已写入的元数据，避免出现没有内容的代码记录
+                    generatedCodeRepository.deleteAllById(codeIds.values());
+                    throw e;
+                }
+            } catch (RuntimeException e) {
+                log.error("批量保存生成代码失败，共{}条", codes.size(), e);
+                persistError = e;
+            }
+        }
+
+        StringBuilder lines = new StringBuilder();
+        for (Completion completion : completions) {
+            BatchCodeGenerationRequest.Item item = run.items.get(completion.index());
+            Throwable error = completion.error() != null ? completion.error() : persistError;
+            BatchCodeGenerationResult.BatchCodeGenerationResultBuilder result = BatchCodeGenerationResult.builder()
+                    .index(completion.index())
+                    .language(item.getLanguage())
+                    .modelUsed(completion.modelKey());
+            if (error == null) {
+                String codeId = codeIds.get(completion.index());
+                result.success(true).codeId(codeId).content(completion.content());
+                if (run.scan) {
+                    triggerScan(codeId);
+                }
+            } else {
+                result.success(false).error(rootMessage(error));
+            }
+            try {
+                lines.append(objectMapper.writeValueAsString(result.build())).append('\n');
+            } catch (IOException e) {
+                log.error("序列化批量生成结果失败", e);
+            }
+        }
+        run.send(lines.toString(), completions.size());
+    }
+
+    /**
+     * 在扫描线程中提交安全扫描，写出线程只负责入队
+     */
+    private void triggerScan(String codeId) {
+        try {
+            scanExecutor.execute(() -> {
+                try {
+                    securityScanningService.scanGeneratedCode(codeId);
+                } catch (Exception e) {
+                    log.warn("触发安全扫描失败，代码ID: {}", codeId, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("安全扫描队列已满，跳过扫描，代码ID: {}", codeId);
+        }
+    }
+
+    private GeneratedCode toCode(String codeId, BatchCodeGenerationRequest.Item item, String modelKey,
+                                 Integer userId, LocalDateTime now) {
+        GeneratedCode code = new GeneratedCode();
+        code.setId(codeId);
+        code.setUserId(userId);
+        code.setPrompt(item.getPrompt());
+        code.setLanguage(item.getLanguage());
+        code.setCreatedAt(now);
+        code.setAiModel(modelKey);
+        code.setScanStatus(GeneratedCode.ScanStatus.PENDING);
+        return code;
+    }
+
+    private GeneratedCodeDocument toDocument(String codeId, BatchCodeGenerationRequest.Item item,
+                                             Completion completion, Integer userId, LocalDateTime now) {
+        GeneratedCodeDocument document = new GeneratedCodeDocument();
+        document.setId(codeId);
+        document.setContent(completion.content());
+        document.setLanguage(item.getLanguage());
+        document.setPrompt(item.getPrompt());
+        document.setAiModel(completion.modelKey());
+        document.setUserId(userId);
+        document.setCreatedAt(now);
+        document.setScanStatus(GeneratedCode.ScanStatus.PENDING.name());
+        document.setIsVisible(true);
+        return document;
+    }
+
+    private static String rootMessage(Throwable error) {
+        Throwable cause = error;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    /**
+     * 已完成的条目，content与error二者只有一个非空
+     */
+    private record Completion(int index, String modelKey, String content, Throwable error) {
+    }
+
+    /**
+     * 一次批量请求的运行状态
+     */
+    private class BatchRun {
+
+        private final List<BatchCodeGenerationRequest.Item> items;
+        private final Integer userId;
+        // 生成后是否触发安全扫描
+        private final boolean scan;
+        private final ResponseBodyEmitter emitter;
+        private final Set<CompletableFuture<String>> inFlight = ConcurrentHashMap.newKeySet();
+        private final Queue<Completion> completed = new ConcurrentLinkedQueue<>();
+        // 同一时刻只有一个线程在入库并写出，期间完成的条目留给它下一轮合并处理
+        private final AtomicBoolean flushing = new AtomicBoolean();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private int written;
+
+        BatchRun(List<BatchCodeGenerationRequest.Item> items, Integer userId, boolean scan,
+                 ResponseBodyEmitter emitter) {
+            this.items = items;
+            this.userId = userId;
+            this.scan = scan;
+            this.emitter = emitter;
+        }
+
+        boolean isCancelled() {
+            return cancelled.get();
+        }
+
+        void offer(int index, String modelKey, String content, Throwable error) {
+            if (isCancelled()) {
+                return;
+            }
+            completed.add(new Completion(index, modelKey, content, error));
+            if (flushing.compareAndSet(false, true)) {
+                flushExecutor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                List<Completion> batch = new ArrayList<>();
+                Completion completion;
+                while (batch.size() < batchProperties.getFlushSize() && (completion = completed.poll()) != null) {
+                    batch.add(completion);
+                }
+                if (batch.isEmpty()) {
+                    flushing.set(false);
+                    // 释放标记后可能有新条目入队，此时由本线程继续处理
+                    if (completed.isEmpty() || !flushing.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                if (isCancelled()) {
+                    continue;
+                }
+                try {
+                    flush(this, batch);
+                } catch (Exception e) {
+                    log.error("处理批量生成结果失败", e);
+                    cancel("处理批量生成结果失败: " + e.getMessage());
+                }
+            }
+        }
+
+        void send(String lines, int count) {
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                emitter.send(lines, MediaType.APPLICATION_NDJSON);
+                written += count;
+                if (written >= items.size()) {
+                    log.info("批量生成完成，共{}条", items.size());
+                    emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                cancel("写出批量生成结果失败: " + e.getMessage());
+            }
+        }
+
+        void cancel(String reason) {
+            if (cancelled.compareAndSet(false, true)) {
+                log.warn("批量生成中止: {}，已写出{}/{}条", reason, written, items.size());
+                inFlight.forEach(future -> future.cancel(true));
+                emitter.complete();
+            }
+        }
+    }
+}
@@ -7,6 +7,8 @@ import com.ai.aicodeguard.domain.codegen.document.GeneratedCodeDocument;
 import com.ai.aicodeguard.domain.codegen.document.VulnerabilityReport;
 import com.ai.aicodeguard.infrastructure.ai.AIClientFactory;
 import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AITaskType;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
 import com.ai.aicodeguard.infrastructure.graph.KnowledgeGraphService;
 import com.ai.aicodeguard.infrastructure.mongo.GeneratedCodeDocumentRepository;
 import com.ai.aicodeguard.infrastructure.persistence.GeneratedCodeRepository;
@@ -15,8 +17,8 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 
@@ -26,6 +28,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -46,25 +50,162 @@ public class EnhancedCodeAnalysisServiceImpl implements EnhancedCodeAnalysisServ
     private final GeneratedCodeDocumentRepository generatedCodeDocumentRepository;
     private final KnowledgeGraphService knowledgeGraphService;
     private final ObjectMapper objectMapper; // 用于解析LLM返回的JSON
+    private final ThreadPoolTaskExecutor taskExecutor;
 
     // 定义提取Cypher代码块的正则表达式
     private static final Pattern CYPHER_BLOCK_PATTERN = Pattern.compile("```cypher\\s*([\\s\\S]*?)\\s*```", Pattern.MULTILINE);
 
+    /**
+     * 知识图谱的 Schema 描述
+     */
+    private static final String KNOWLEDGE_GRAPH_SCHEMA = """
+            Node Types:
+            - Vulnerability: {cweId: string (unique identifier, e.g., CWE-ID), name: string, severity: string (CRITICAL, HIGH, MEDIUM, LOW), description: string}
+            - CodePattern: {patternId: string (unique identifier), language: string, codeSnippet: string, description: string, line: integer (optional)}
+            - ModelDetection: {detectionId: string (unique identifier), modelVersion: string, timestamp: datetime}
+            - GeneratedCode: {id: string (unique identifier), language: string, prompt: string, aiModel: string}
+            
+            Relationship Types:
+            - (CodePattern)-[:MANIFESTS_IN]->(Vulnerability) // Code pattern manifests a certain vulnerability
+            - (ModelDetection)-[:IDENTIFIES {confidence: float}]->(CodePattern) // AI model detection identifies a code pattern
+            - (GeneratedCode)-[:CONTAINS_PATTERN]->(CodePattern) // Generated code contains a certain code pattern (if applicable)
+            - (GeneratedCode)-[:HAS_VULNERABILITY]->(Vulnerability) // Generated code has a certain vulnerability (if applicable)
+            
+            Main Query Objectives:
+            - Find related CodePatterns and Vulnerabilities based on code characteristics (language, library, functionality).
+            - Find common CodePatterns for a specific Vulnerability (e.g., by cweId).
+            - Find Vulnerabilities associated with a certain CodePattern.
+            """;
+
+    /**
+     * 生成 Cypher 查询的固定指令（含图谱 Schema），作为可缓存的系统提示发送
+     */
+    private static final String CYPHER_QUERY_INSTRUCTIONS = """
+            You are tasked with analyzing a piece of code and determining what information needs to be queried from a knowledge graph to assist in a detailed code evaluation, particularly focusing on security vulnerabilities and best practices. Your goal is to generate a set of Cypher query statements to retrieve this useful information based on the provided knowledge graph schema.
+            
+            Here is the knowledge graph schema description:
+            <schema>
+            %s
+            </schema>
+            
+            The code to analyze is provided in the user message.
+            
+            To complete this task:
+            
+            1. Carefully examine the code for potential security issues, best practices, and any notable patterns or technologies used.
+            
+            2. Based on your analysis, determine what information would be helpful to query from the knowledge graph to assist in a more detailed evaluation.
+            
+            3. Generate Cypher query statements to retrieve this information. Each query should be:
+               - Independent and complete
+               - Read-only
+               - Focused on retrieving data related to potential issues, technologies, or patterns in the code
+            
+            4.  Specific Instructions for Querying `Vulnerability` Nodes:
+                When you need to query `Vulnerability` nodes, you **must** use one or more of the following properties in your `WHERE` clause: `cweId`, `severity`, or `name`. Adhere to these specific rules:
+                * When using `cweId`: The "CWE" part must be uppercase (e.g., `MATCH (v:Vulnerability) WHERE v.cweId = 'CWE-79' RETURN v`). If querying for multiple `cweId`s, you can use the `IN` operator (e.g., `MATCH (v:Vulnerability) WHERE v.cweId IN ['CWE-79', 'CWE-89'] RETURN v`).
+                * When using `severity`: The value(s) must be from the enumeration {CRITICAL, HIGH, MEDIUM, LOW}. If using a single value, use equality (e.g., `MATCH (v:Vulnerability) WHERE v.severity = 'HIGH' RETURN v`). If using multiple values, use the `IN` operator (e.g., `MATCH (v:Vulnerability) WHERE v.severity IN ['HIGH', 'CRITICAL'] RETURN v`).
+                * When using `name`: You **must** use both the English and Chinese names of the vulnerability if you are targeting a specific known vulnerability by name, using the `IN` operator (e.g., `MATCH (v:Vulnerability) WHERE v.name IN ['SQL Injection', 'SQL注入'] RETURN v`).
+            
+            5. Wrap each Cypher query in triple backticks with the 'cypher' language specifier, like this:
+               ```cypher
+               YOUR_QUERY_HERE
+               ```
+            
+            6. If you determine that no queries are necessary based on your analysis, do not output any Cypher code blocks.
+            
+            
+            Remember:
+            - Focus on queries that will provide valuable insights for security vulnerability assessment and best practice evaluation.
+            - Ensure your queries align with the provided knowledge graph schema.
+            - Do not modify the schema or assume the existence of nodes or relationships not specified in the schema.
+            
+            Your final output should consist only of the necessary Cypher query statements, each in its own code block. Do not include any explanations or additional text outside of the Cypher code blocks.
+            """.formatted(KNOWLEDGE_GRAPH_SCHEMA);
+
+    /**
+     * 最终代码分析的固定指令与输出结构，作为可缓存的系统提示发送
+     */
+    private static final String FINAL_ANALYSIS_INSTRUCTIONS = """
+            You are a security expert tasked with analyzing code for vulnerabilities and best practices. You will be provided with code in a specific programming language, along with relevant information from a knowledge graph to assist in your analysis. Your task is to produce a comprehensive security vulnerability analysis and best practices assessment.
+            
+            The input variables (language, knowledge_graph, code) are provided in the user message.
+            
+            Your analysis should be output in a JSON format that conforms to the following VulnerabilityReport structure:
+            
+            {
+              "vulnerabilities": [
+                {
+                  "type": "Vulnerability type name (e.g., CWE-ID)",
+                  "description": "Detailed description of the vulnerability, incorporating knowledge graph information where relevant.",
+                  "line": "Relevant code line number (integer)",
+                  "column": "Relevant code column number (integer, optional)",
+                  "codeSnippet": "Relevant code snippet",
+                  "suggestion": "Remediation suggestion, incorporating fix patterns from the knowledge graph where applicable.",
+                  "severity": "CRITICAL/HIGH/MEDIUM/LOW"
+                }
+              ],
+              "summary": "Overall summary of the code's security and quality, explaining how the knowledge graph information assisted in this assessment.",
+              "securityScore": "Code security score (0-100, integer, optional)"
+            }
+            
+            To complete this task:
+            
+            1. Carefully review the provided code and the knowledge graph information.
+            2. Identify any security vulnerabilities or best practice violations in the code.
+            3. For each vulnerability or violation:
+               a. Determine its type, referring to standard vulnerability classifications (e.g., CWE) where possible.
+               b. Write a detailed description, incorporating relevant information from the knowledge graph.
+               c. Identify the specific line (and column if applicable) where the issue occurs.
+               d. Extract the relevant code snippet.
+               e. Provide a suggestion for fixing the issue, using fix patterns from the knowledge graph if available.
+               f. Assess the severity of the issue (CRITICAL, HIGH, MEDIUM, or LOW).
+            4. Summarize the overall security and quality of the code, explaining how the knowledge graph information assisted in your assessment.
+            5. If you feel confident in doing so, provide a security score for the code on a scale of 0-100.
+            
+            When referencing information from the knowledge graph in your analysis, clearly indicate this by mentioning "According to the knowledge graph" or similar phrasing.
+            
+            Your final output should be strictly in the JSON format described above, with no additional text or explanations outside of this structure. Ensure that all fields in the JSON structure are properly filled out based on your analysis.
+            """;
+
 
     @Override
-    @Transactional
-    public EnhancedCodeAnalysisResult generateCodeAndAnalyzeWithKnowledgeGraph(CodeGenerationRequest request, Integer userId) {
+    public CompletableFuture<EnhancedCodeAnalysisResult> generateCodeAndAnalyzeWithKnowledgeGraph(CodeGenerationRequest request, Integer userId) {
         long startTime = System.currentTimeMillis();
         log.info("开始为用户 {} 生成 {} 代码并进行增强分析，需求: {}", userId, request.getLanguage(), request.getPrompt());
 
         // 1: 初步代码生成
         AIClientService codeGenerationClient = aiClientFactory.getClient(request.getModelType()); // 或者选择特定的代码生成模型
-        String initialGeneratedCodeContent = codeGenerationClient.generateCode(request.getPrompt(), request.getLanguage());
-        String modelUsedForGeneration = codeGenerationClient.getModelType().name();
+        String modelUsedForGeneration = codeGenerationClient.getModelKey().toUpperCase();
+        return codeGenerationClient.generateCodeAsync(request.getPrompt(), request.getLanguage(),
+                        AIRequestOptions.of(AITaskType.GENERATION, userId))
+                // 后续的持久化与图谱查询在任务线程池中执行，不占用HTTP回调线程
+                .thenComposeAsync(initialGeneratedCodeContent -> analyzeWithKnowledgeGraph(request, userId,
+                        initialGeneratedCodeContent, modelUsedForGeneration, startTime), taskExecutor);
+    }
+
+    /**
+     * 保存初步生成的代码，检索知识图谱并结合图谱数据进行分析，等待模型响应时不占用线程
+     */
+    private CompletableFuture<EnhancedCodeAnalysisResult> analyzeWithKnowledgeGraph(CodeGenerationRequest request, Integer userId,
+                                                                                   String initialGeneratedCodeContent,
+                                                                                   String modelUsedForGeneration, long startTime) {
         log.info("初步代码生成完成，使用模型: {}", modelUsedForGeneration);
 
-        // 保存初步生成的代码元数据和文档 (与 CodeGenerationServiceImpl类似)
         String codeId = UUID.randomUUID().toString();
+
+        // 2: 先异步发起 Cypher 生成请求，与下方的持久化操作并行
+        log.info("代码 {}：开始让 LLM 生成知识图谱查询语句", codeId);
+        AIClientService cypherGenerationClient = aiClientFactory.getClientForTask(AITaskType.CYPHER); // 默认策略优先使用 Claude，它在处理复杂指令和结构化输出方面可能表现较好
+        String cypherGenPrompt = buildCypherGenerationPrompt(initialGeneratedCodeContent, request.getLanguage());
+        CompletableFuture<String> cypherResponseFuture = cypherGenerationClient.generateCodeAsync(cypherGenPrompt, "cypher",
+                AIRequestOptions.builder()
+                        .taskType(AITaskType.CYPHER)
+                        .systemPrompt(CYPHER_QUERY_INSTRUCTIONS) // 图谱 Schema 与规则固定不变，走服务商提示缓存
+                        .userId(String.valueOf(userId))
+                        .build()); // 要求LLM输出Cypher
+
+        // 保存初步生成的代码元数据和文档 (与 CodeGenerationServiceImpl类似)
         LocalDateTime now = LocalDateTime.now();
 
         GeneratedCode codeMetadata = new GeneratedCode();
@@ -90,21 +231,67 @@ public class EnhancedCodeAnalysisServiceImpl implements EnhancedCodeAnalysisServ
         generatedCodeDocumentRepository.save(codeDocument);
 
 
-        // 2: LLM 决策并生成 Cypher 查询
-        log.info("代码 {}：开始让 LLM 生成知识图谱查询语句", codeId);
-        AIClientService cypherGenerationClient = aiClientFactory.getClient("claude"); // 使用 Claude 进行Cypher生成，因为它在处理复杂指令和结构化输出方面可能表现较好
-        String knowledgeGraphSchema = getKnowledgeGraphSchemaDescription(); // 获取图谱 Schema 描述
-        String cypherGenPrompt = buildCypherGenerationPrompt(initialGeneratedCodeContent, request.getLanguage(), knowledgeGraphSchema);
-
-        String llmGeneratedCypherResponse = cypherGenerationClient.generateCode(cypherGenPrompt, "cypher"); // 要求LLM输出Cypher
-        List<String> cypherQueries = extractCypherQueriesFromLlmResponse(llmGeneratedCypherResponse);
-        log.info("代码 {}：LLM 生成了 {} 条 Cypher 查询语句", codeId, cypherQueries.size());
-        if (log.isDebugEnabled()) {
-            cypherQueries.forEach(q -> log.debug("Generated Cypher: {}", q));
-        }
+        // LLM 返回 Cypher 查询后继续，不阻塞等待
+        return cypherResponseFuture.thenComposeAsync(llmGeneratedCypherResponse -> {
+            List<String> cypherQueries = extractCypherQueriesFromLlmResponse(llmGeneratedCypherResponse);
+            log.info("代码 {}：LLM 生成了 {} 条 Cypher 查询语句", codeId, cypherQueries.size());
+            if (log.isDebugEnabled()) {
+                cypherQueries.forEach(q -> log.debug("Generated Cypher: {}", q));
+            }
 
+            // 3: 执行知识图谱查询
+            List<Map<String, Object>> knowledgeGraphData = queryKnowledgeGraph(codeId, cypherQueries);
 
-        // 3: 执行知识图谱查询
+            // 4: 结合知识图谱进行代码分析
+            log.info("代码 {}：开始结合知识图谱数据进行最终代码分析", codeId);
+            AIClientService analysisClient = aiClientFactory.getClientForTask(AITaskType.ANALYSIS); // 同样，Claude 可能适合复杂的分析任务
+            String analysisPrompt = buildFinalAnalysisPrompt(initialGeneratedCodeContent, request.getLanguage(), knowledgeGraphData);
+            String modelUsedForAnalysis = analysisClient.getModelKey().toUpperCase();
+
+            return analysisClient.generateCodeAsync(analysisPrompt, "json",
+                            AIRequestOptions.builder()
+                                    .taskType(AITaskType.ANALYSIS)
+                                    .systemPrompt(FINAL_ANALYSIS_INSTRUCTIONS)
+                                    .userId(String.valueOf(userId))
+                                    .build()) // 要求LLM输出JSON格式的分析报告
+                    .handleAsync((llmAnalysisResponse, error) -> {
+                        VulnerabilityReport analysisReport;
+                        try {
+                            if (error != null) {
+                                throw error instanceof CompletionException && error.getCause() != null
+                                        ? error.getCause() : error;
+                            }
+                            analysisReport = parseVulnerabilityReportFromLlmResponse(llmAnalysisResponse, codeId);
+                            log.info("代码 {}：最终代码分析完成，使用模型: {}", codeId, modelUsedForAnalysis);
+                        } catch (Throwable e) {
+                            updateScanStatus(codeMetadata, codeDocument, GeneratedCode.ScanStatus.FAILED);
+                            throw new CompletionException(e);
+                        }
+
+                        // 更新代码元数据的扫描状态
+                        updateScanStatus(codeMetadata, codeDocument, GeneratedCode.ScanStatus.SUCCESS);
+
+                        long endTime = System.currentTimeMillis();
+                        log.info("代码 {}：增强分析流程总耗时: {} ms", codeId, (endTime - startTime));
+
+                        return EnhancedCodeAnalysisResult.builder()
+                                .generatedCodeId(codeId)
+                                .generatedCodeContent(initialGeneratedCodeContent)
+                                .language(request.getLanguage())
+                                .modelUsedForGeneration(modelUsedForGeneration)
+                                .knowledgeGraphCypherQueries(cypherQueries)
+                                .knowledgeGraphDataRetrieved(knowledgeGraphData)
+                                .analysisReport(analysisReport)
+                                .modelUsedForAnalysis(modelUsedForAnalysis)
+                                .build();
+                    }, taskExecutor);
+        }, taskExecutor);
+    }
+
+    /**
+     * 执行通过安全校验的只读 Cypher 查询，汇总检索到的图谱数据
+     */
+    private List<Map<String, Object>> queryKnowledgeGraph(String codeId, List<String> cypherQueries) {
         List<Map<String, Object>> knowledgeGraphData = new ArrayList<>();
         if (!cypherQueries.isEmpty()) {
             log.info("代码 {}：开始执行知识图谱查询", codeId);
@@ -128,108 +315,35 @@ public class EnhancedCodeAnalysisServiceImpl implements EnhancedCodeAnalysisServ
         } else {
             log.info("代码 {}：LLM 未生成有效的 Cypher 查询语句，跳过知识图谱查询步骤", codeId);
         }
+        return knowledgeGraphData;
+    }
 
-
-        // 4: 结合知识图谱进行代码分析
-        log.info("代码 {}：开始结合知识图谱数据进行最终代码分析", codeId);
-        String modelUsedForAnalysis = null;
-        VulnerabilityReport analysisReport = null;
-        try {
-            AIClientService analysisClient = aiClientFactory.getClient("claude"); // 同样，Claude 可能适合复杂的分析任务
-            String analysisPrompt = buildFinalAnalysisPrompt(initialGeneratedCodeContent, request.getLanguage(), knowledgeGraphData);
-            modelUsedForAnalysis = analysisClient.getModelType().name();
-
-            String llmAnalysisResponse = analysisClient.generateCode(analysisPrompt, "json"); // 要求LLM输出JSON格式的分析报告
-
-            analysisReport = parseVulnerabilityReportFromLlmResponse(llmAnalysisResponse, codeId);
-            log.info("代码 {}：最终代码分析完成，使用模型: {}", codeId, modelUsedForAnalysis);
-        } catch (Exception e) {
-            codeMetadata.setScanStatus(GeneratedCode.ScanStatus.FAILED);
-            codeMetadata.setScanTime(LocalDateTime.now());
-            generatedCodeRepository.save(codeMetadata);
-            codeDocument.setScanStatus(GeneratedCode.ScanStatus.FAILED.name());
-            generatedCodeDocumentRepository.save(codeDocument);
-            throw new RuntimeException(e);
-        }
-
-        // 更新代码元数据的扫描状态
-        codeMetadata.setScanStatus(GeneratedCode.ScanStatus.SUCCESS);
+    /**
+     * 同步更新代码元数据与文档的扫描状态
+     */
+    private void updateScanStatus(GeneratedCode codeMetadata, GeneratedCodeDocument codeDocument,
+                                  GeneratedCode.ScanStatus status) {
+        codeMetadata.setScanStatus(status);
         codeMetadata.setScanTime(LocalDateTime.now());
         generatedCodeRepository.save(codeMetadata);
-        codeDocument.setScanStatus(GeneratedCode.ScanStatus.SUCCESS.name());
+        codeDocument.setScanStatus(status.name());
         generatedCodeDocumentRepository.save(codeDocument);
-
-
-        long endTime = System.currentTimeMillis();
-        log.info("代码 {}：增强分析流程总耗时: {} ms", codeId, (endTime - startTime));
-
-        return EnhancedCodeAnalysisResult.builder()
-                .generatedCodeId(codeId)
-                .generatedCodeContent(initialGeneratedCodeContent)
-                .language(request.getLanguage())
-                .modelUsedForGeneration(modelUsedForGeneration)
-                .knowledgeGraphCypherQueries(cypherQueries)
-                .knowledgeGraphDataRetrieved(knowledgeGraphData)
-                .analysisReport(analysisReport)
-                .modelUsedForAnalysis(modelUsedForAnalysis)
-                .build();
     }
 
     /**
-     * 构建用于让 LLM 生成 Cypher 查询的 Prompt。
+     * 构建用于让 LLM 生成 Cypher 查询的 Prompt，只包含待分析的代码，固定的 Schema 与规则见 CYPHER_QUERY_INSTRUCTIONS。
      *
      * @param generatedCode      初步生成的代码
      * @param language           代码语言
-     * @param kgSchemaDescription 知识图谱的 Schema 描述
      * @return Prompt 字符串
      */
-    private String buildCypherGenerationPrompt(String generatedCode, String language, String kgSchemaDescription) {
-        // 注意
+    private String buildCypherGenerationPrompt(String generatedCode, String language) {
         return String.format("""
-            You are tasked with analyzing a piece of code and determining what information needs to be queried from a knowledge graph to assist in a detailed code evaluation, particularly focusing on security vulnerabilities and best practices. Your goal is to generate a set of Cypher query statements to retrieve this useful information based on the provided knowledge graph schema.
-            
-            Here is the knowledge graph schema description:
-            <schema>
-            {{%s}}
-            </schema>
-            
             Now, analyze the following {{%s}} code:
             <code>
             {{%s}}
             </code>
-            
-            To complete this task:
-            
-            1. Carefully examine the code for potential security issues, best practices, and any notable patterns or technologies used.
-            
-            2. Based on your analysis, determine what information would be helpful to query from the knowledge graph to assist in a more detailed evaluation.
-            
-            3. Generate Cypher query statements to retrieve this information. Each query should be:
-               - Independent and complete
-               - Read-only
-               - Focused on retrieving data related to potential issues, technologies, or patterns in the code
-            
-            4.  Specific Instructions for Querying `Vulnerability` Nodes:
-                When you need to query `Vulnerability` nodes, you **must** use one or more of the following properties in your `WHERE` clause: `cweId`, `severity`, or `name`. Adhere to these specific rules:
-                * When using `cweId`: The "CWE" part must be uppercase (e.g., `MATCH (v:Vulnerability) WHERE v.cweId = 'CWE-79' RETURN v`). If querying for multiple `cweId`s, you can use the `IN` operator (e.g., `MATCH (v:Vulnerability) WHERE v.cweId IN ['CWE-79', 'CWE-89'] RETURN v`).
-                * When using `severity`: The value(s) must be from the enumeration {CRITICAL, HIGH, MEDIUM, LOW}. If using a single value, use equality (e.g., `MATCH (v:Vulnerability) WHERE v.severity = 'HIGH' RETURN v`). If using multiple values, use the `IN` operator (e.g., `MATCH (v:Vulnerability) WHERE v.severity IN ['HIGH', 'CRITICAL'] RETURN v`).
-                * When using `name`: You **must** use both the English and Chinese names of the vulnerability if you are targeting a specific known vulnerability by name, using the `IN` operator (e.g., `MATCH (v:Vulnerability) WHERE v.name IN ['SQL Injection', 'SQL注入'] RETURN v`).
-            
-            5. Wrap each Cypher query in triple backticks with the 'cypher' language specifier, like this:
-               ```cypher
-               YOUR_QUERY_HERE
-               ```
-            
-            6. If you determine that no queries are necessary based on your analysis, do not output any Cypher code blocks.
-            
-            
-            Remember:
-            - Focus on queries that will provide valuable insights for security vulnerability assessment and best practice evaluation.
-            - Ensure your queries align with the provided knowledge graph schema.
-            - Do not modify the schema or assume the existence of nodes or relationships not specified in the schema.
-            
-            Your final output should consist only of the necessary Cypher query statements, each in its own code block. Do not include any explanations or additional text outside of the Cypher code blocks.
-            """, kgSchemaDescription, language, generatedCode);
+            """, language, generatedCode);
     }
 
     /**
@@ -284,7 +398,7 @@ public class EnhancedCodeAnalysisServiceImpl implements EnhancedCodeAnalysisServ
 
 
     /**
-     * 构建用于最终代码分析的 Prompt。
+     * 构建用于最终代码分析的 Prompt，只包含每次变化的输入，固定的分析要求见 FINAL_ANALYSIS_INSTRUCTIONS。
      *
      * @param generatedCode      初步生成的代码
      * @param language           代码语言
@@ -300,10 +414,7 @@ public class EnhancedCodeAnalysisServiceImpl implements EnhancedCodeAnalysisServ
             kgDataJson = "[]"; // 提供空数组作为回退
         }
 
-        // 注意
         return String.format("""
-            You are a security expert tasked with analyzing code for vulnerabilities and best practices. You will be provided with code in a specific programming language, along with relevant information from a knowledge graph to assist in your analysis. Your task is to produce a comprehensive security vulnerability analysis and best practices assessment.
-            
             The input variables are as follows:
             <language>{{%s}}</language>
             <knowledge_graph>
@@ -312,42 +423,6 @@ public class EnhancedCodeAnalysisServiceImpl implements EnhancedCodeAnalysisServ
             <code>
             {{%s}}
             </code>
-            
-            Your analysis should be output in a JSON format that conforms to the following VulnerabilityReport structure:
-            
-            {
-              "vulnerabilities": [
-                {
-                  "type": "Vulnerability type name (e.g., CWE-ID)",
-                  "description": "Detailed description of the vulnerability, incorporating knowledge graph information where relevant.",
-                  "line": "Relevant code line number (integer)",
-                  "column": "Relevant code column number (integer, optional)",
-                  "codeSnippet": "Relevant code snippet",
-                  "suggestion": "Remediation suggestion, incorporating fix patterns from the knowledge graph where applicable.",
-                  "severity": "CRITICAL/HIGH/MEDIUM/LOW"
-                }
-              ],
-              "summary": "Overall summary of the code's security and quality, explaining how the knowledge graph information assisted in this assessment.",
-              "securityScore": "Code security score (0-100, integer, optional)"
-            }
-            
-            To complete this task:
-            
-            1. Carefully review the provided code and the knowledge graph information.
-            2. Identify any security vulnerabilities or best practice violations in the code.
-            3. For each vulnerability or violation:
-               a. Determine its type, referring to standard vulnerability classifications (e.g., CWE) where possible.
-               b. Write a detailed description, incorporating relevant information from the knowledge graph.
-               c. Identify the specific line (and column if applicable) where the issue occurs.
-               d. Extract the relevant code snippet.
-               e. Provide a suggestion for fixing the issue, using fix patterns from the knowledge graph if available.
-               f. Assess the severity of the issue (CRITICAL, HIGH, MEDIUM, or LOW).
-            4. Summarize the overall security and quality of the code, explaining how the knowledge graph information assisted in your assessment.
-            5. If you feel confident in doing so, provide a security score for the code on a scale of 0-100.
-            
-            When referencing information from the knowledge graph in your analysis, clearly indicate this by mentioning "According to the knowledge graph" or similar phrasing.
-            
-            Your final output should be strictly in the JSON format described above, with no additional text or explanations outside of this structure. Ensure that all fields in the JSON structure are properly filled out based on your analysis.
             """, language, kgDataJson, generatedCode);
     }
 
@@ -385,28 +460,4 @@ public class EnhancedCodeAnalysisServiceImpl implements EnhancedCodeAnalysisServ
             return errorReport;
         }
     }
-
-    /**
-     * 获取知识图谱的 Schema 描述
-     */
-    private String getKnowledgeGraphSchemaDescription() {
-        return """
-            Node Types:
-            - Vulnerability: {cweId: string (unique identifier, e.g., CWE-ID), name: string, severity: string (CRITICAL, HIGH, MEDIUM, LOW), description: string}
-            - CodePattern: {patternId: string (unique identifier), language: string, codeSnippet: string, description: string, line: integer (optional)}
-            - ModelDetection: {detectionId: string (unique identifier), modelVersion: string, timestamp: datetime}
-            - GeneratedCode: {id: string (unique identifier), language: string, prompt: string, aiModel: string}
-            
-            Relationship Types:
-            - (CodePattern)-[:MANIFESTS_IN]->(Vulnerability) // Code pattern manifests a certain vulnerability
-            - (ModelDetection)-[:IDENTIFIES {confidence: float}]->(CodePattern) // AI model detection identifies a code pattern
-            - (GeneratedCode)-[:CONTAINS_PATTERN]->(CodePattern) // Generated code contains a certain code pattern (if applicable)
-            - (GeneratedCode)-[:HAS_VULNERABILITY]->(Vulnerability) // Generated code has a certain vulnerability (if applicable)
-            
-            Main Query Objectives:
-            - Find related CodePatterns and Vulnerabilities based on code characteristics (language, library, functionality).
-            - Find common CodePatterns for a specific Vulnerability (e.g., by cweId).
-            - Find Vulnerabilities associated with a certain CodePattern.
-            """;
-    }
 }
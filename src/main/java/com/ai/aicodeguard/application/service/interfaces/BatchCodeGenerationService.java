@@ -0,0 +1,20 @@
+package com.ai.aicodeguard.application.service.interfaces;
+
+import com.ai.aicodeguard.presentation.request.codegen.BatchCodeGenerationRequest;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+/**
+ * @ClassName: BatchCodeGenerationService
+ * @Description: 批量代码生成服务接口
+ * @Author: LZX
+ * @Date: 2025/5/26 10:12
+ */
+public interface BatchCodeGenerationService {
+    /**
+     * 批量生成代码，每个条目完成并入库后立即以一行JSON写出
+     * @param request 批量生成请求
+     * @param userId 用户ID
+     * @return NDJSON结果流
+     */
+    ResponseBodyEmitter generateBatch(BatchCodeGenerationRequest request, Integer userId);
+}
@@ -3,6 +3,8 @@ package com.ai.aicodeguard.application.service.interfaces;
 import com.ai.aicodeguard.presentation.response.codegen.EnhancedCodeAnalysisResult;
 import com.ai.aicodeguard.presentation.request.codegen.CodeGenerationRequest;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @ClassName: EnhancedCodeAnalysisService
  * @Description: 增强代码分析服务接口
@@ -11,10 +13,10 @@ import com.ai.aicodeguard.presentation.request.codegen.CodeGenerationRequest;
  */
 public interface EnhancedCodeAnalysisService {
     /**
-     * 生成代码，并利用知识图谱进行增强分析
+     * 生成代码，并利用知识图谱进行增强分析，等待模型响应时不占用调用线程
      * @param request 代码生成请求
      * @param userId 用户ID
      * @return 增强分析结果
      */
-    EnhancedCodeAnalysisResult generateCodeAndAnalyzeWithKnowledgeGraph(CodeGenerationRequest request, Integer userId);
+    CompletableFuture<EnhancedCodeAnalysisResult> generateCodeAndAnalyzeWithKnowledgeGraph(CodeGenerationRequest request, Integer userId);
 }
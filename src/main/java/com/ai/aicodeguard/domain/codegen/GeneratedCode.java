@@ -1,7 +1,9 @@
 package com.ai.aicodeguard.domain.codegen;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
+import org.springframework.data.domain.Persistable;
 
 import java.time.LocalDateTime;
 
@@ -14,7 +16,7 @@ import java.time.LocalDateTime;
 @Data
 @Entity
 @Table(name = "generated_code")
-public class GeneratedCode {
+public class GeneratedCode implements Persistable<String> {
 
     /**
      * 代码ID（UUID）
@@ -59,6 +61,25 @@ public class GeneratedCode {
      */
     private LocalDateTime scanTime;
 
+    /**
+     * 新建的记录直接persist，避免id由应用分配时saveAll逐条先查询再合并，使批量插入可以走JDBC批处理
+     */
+    @Transient
+    @JsonIgnore
+    private boolean newEntity = true;
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return newEntity;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.newEntity = false;
+    }
+
     /**
      * 扫描状态枚举
      */
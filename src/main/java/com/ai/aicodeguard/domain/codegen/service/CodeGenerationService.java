@@ -1,6 +1,7 @@
 package com.ai.aicodeguard.domain.codegen.service;
 
 import com.ai.aicodeguard.domain.codegen.document.GeneratedCodeDocument;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 /**
  * @ClassName: CodeGenerationService
@@ -17,4 +18,14 @@ public interface CodeGenerationService {
      * @return 生成的代码对象
      */
     GeneratedCodeDocument generateCode(String prompt, String language, Integer userId, String modelType);
+
+    /**
+     * 流式生成代码，代码块内容随模型输出推送，结束后保存并在完成事件中返回代码ID
+     * @param prompt 自然语言需求
+     * @param language 目标编程语言
+     * @param userId 用户ID
+     * @param modelType AI模型类型
+     * @param emitter 服务器发送事件发射器
+     */
+    void generateCodeStreaming(String prompt, String language, Integer userId, String modelType, SseEmitter emitter);
 }
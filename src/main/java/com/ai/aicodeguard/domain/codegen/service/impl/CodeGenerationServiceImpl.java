@@ -5,6 +5,10 @@ import com.ai.aicodeguard.domain.codegen.document.GeneratedCodeDocument;
 import com.ai.aicodeguard.domain.codegen.service.CodeGenerationService;
 import com.ai.aicodeguard.infrastructure.ai.AIClientFactory;
 import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AITaskType;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
+import com.ai.aicodeguard.infrastructure.ai.streaming.CodeStreamingResponseHandler;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamingRuntime;
 import com.ai.aicodeguard.infrastructure.mongo.GeneratedCodeDocumentRepository;
 import com.ai.aicodeguard.infrastructure.persistence.GeneratedCodeRepository;
 import com.ai.aicodeguard.infrastructure.security.SecurityScanningService;
@@ -12,8 +16,11 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 /**
  * @ClassName: CodeGenerationServiceImpl
@@ -30,6 +37,7 @@ public class CodeGenerationServiceImpl implements CodeGenerationService {
     private final GeneratedCodeRepository generatedCodeRepository;
     private final GeneratedCodeDocumentRepository generatedCodeDocumentRepository;
     private final SecurityScanningService securityScanningService; // 注入安全扫描服务
+    private final StreamingRuntime streamingRuntime;
 
     @Transactional
     public GeneratedCodeDocument generateCode(String prompt, String language, Integer userId) {
@@ -53,12 +61,56 @@ public class CodeGenerationServiceImpl implements CodeGenerationService {
             aiClientFactory.getClient(modelType) :
             aiClientFactory.getDefaultClient();
 
-        String generatedContent = aiClient.generateCode(prompt, language);
+        String generatedContent = aiClient.generateCode(prompt, language, AIRequestOptions.of(AITaskType.GENERATION, userId));
+
+        // 2. 保存代码并触发安全扫描
+        GeneratedCodeDocument codeDocument = saveGeneratedCode(prompt, language, userId, aiClient.getModelKey(), generatedContent);
+
+        log.info("代码生成完成，代码ID: {}, 使用模型: {}", codeDocument.getId(), codeDocument.getAiModel());
+        return codeDocument;
+    }
+
+    /**
+     * 流式生成代码，模型输出在响应线程中推送，代码块结束后保存并触发安全扫描
+     * @param prompt    自然语言需求
+     * @param language  目标编程语言
+     * @param userId    用户ID
+     * @param modelType AI模型类型
+     * @param emitter   服务器发送事件发射器
+     */
+    @Override
+    public void generateCodeStreaming(String prompt, String language, Integer userId, String modelType,
+                                      SseEmitter emitter) {
+        log.info("开始为用户{}使用{}模型流式生成{}代码，需求: {}", userId, modelType != null ? modelType : "默认", language, prompt);
+
+        AIClientService aiClient = modelType != null ?
+            aiClientFactory.getClient(modelType) :
+            aiClientFactory.getDefaultClient();
+        String usedModelType = aiClient.getModelKey();
+
+        CodeStreamingResponseHandler handler = new CodeStreamingResponseHandler(language, content -> {
+            GeneratedCodeDocument codeDocument = saveGeneratedCode(prompt, language, userId, usedModelType, content);
+            log.info("流式代码生成完成，代码ID: {}, 使用模型: {}", codeDocument.getId(), usedModelType);
+            // 代码已通过message事件推送，完成事件只返回元数据
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("codeId", codeDocument.getId());
+            result.put("language", language);
+            result.put("modelUsed", usedModelType);
+            return result;
+        }, streamingRuntime.newBatcher());
+        aiClient.generateCodeStreaming(prompt, language, AIRequestOptions.of(AITaskType.GENERATION, userId),
+                emitter, handler);
+    }
+
+    /**
+     * 保存生成的代码：元数据写入MySQL，内容写入MongoDB，并触发安全扫描
+     */
+    private GeneratedCodeDocument saveGeneratedCode(String prompt, String language, Integer userId,
+                                                    String usedModelType, String generatedContent) {
         String codeId = UUID.randomUUID().toString();
         LocalDateTime now = LocalDateTime.now();
-        String usedModelType = aiClient.getModelType().name().toLowerCase();
 
-        // 2. 保存代码元数据到MySQL
+        // 1. 保存代码元数据到MySQL
         GeneratedCode codeMetadata = new GeneratedCode();
         codeMetadata.setId(codeId);
         codeMetadata.setUserId(userId);
@@ -70,7 +122,7 @@ public class CodeGenerationServiceImpl implements CodeGenerationService {
 
         generatedCodeRepository.save(codeMetadata);
 
-        // 3. 保存代码内容到MongoDB
+        // 2. 保存代码内容到MongoDB
         GeneratedCodeDocument codeDocument = new GeneratedCodeDocument();
         codeDocument.setId(codeId);
         codeDocument.setContent(generatedContent);
@@ -86,8 +138,6 @@ public class CodeGenerationServiceImpl implements CodeGenerationService {
 
         // 触发安全扫描
         securityScanningService.scanGeneratedCode(codeId);
-
-        log.info("代码生成完成，代码ID: {}, 使用模型: {}", codeId, usedModelType);
         return codeDocument;
     }
 }
@@ -29,8 +29,12 @@ public class ConversationDocument {
     private String userId;
     private String modelType;
     private List<ChatMessage> messages = new ArrayList<>();
+    // messages的长度，追加消息时作为写入条件；旧数据缺失时为0，首次追加时以消息列表长度为条件并补齐
+    private int messageCount;
     private long createdAt;
     private long lastUpdatedAt;
+    private String summary;
+    private int summarizedCount;
     private boolean active = true;
 
     // 从现有的 Conversation 对象创建文档
@@ -40,8 +44,11 @@ public class ConversationDocument {
         document.setUserId(conversation.getUserId());
         document.setModelType(conversation.getModelType());
         document.setMessages(conversation.getMessages());
+        document.setMessageCount(conversation.getMessages().size());
         document.setCreatedAt(conversation.getCreatedAt());
         document.setLastUpdatedAt(conversation.getLastUpdatedAt());
+        document.setSummary(conversation.getSummary());
+        document.setSummarizedCount(conversation.getSummarizedCount());
         return document;
     }
 
@@ -52,6 +59,9 @@ public class ConversationDocument {
         conversation.setMessages(this.messages);
         conversation.setCreatedAt(this.createdAt);
         conversation.setLastUpdatedAt(this.lastUpdatedAt);
+        conversation.setSummary(this.summary);
+        conversation.setSummarizedCount(this.summarizedCount);
+        conversation.setPersistedCount(this.messages.size());
         return conversation;
     }
 }
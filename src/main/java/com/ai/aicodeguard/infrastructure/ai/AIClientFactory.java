@@ -1,11 +1,20 @@
 package com.ai.aicodeguard.infrastructure.ai;
 
+import com.ai.aicodeguard.infrastructure.ai.batch.AIBatchCapable;
+import com.ai.aicodeguard.infrastructure.ai.decorator.AIClientDecorator;
+import com.ai.aicodeguard.infrastructure.ai.impl.OpenAICompatibleClientRegistry;
+import com.ai.aicodeguard.infrastructure.ai.routing.AIRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @ClassName: AIClientFactory
@@ -14,38 +23,112 @@ import java.util.Map;
  * @Date: 2025/4/20 01:24
  */
 @Component
+@Slf4j
 public class AIClientFactory {
 
-    private final Map<AIModelType, AIClientService> clientMap = new HashMap<>();
+    // 配置名 -> 装饰后的客户端
+    private final Map<String, AIClientService> clientMap = new LinkedHashMap<>();
+    // 配置名 -> 支持服务商批处理接口的原始客户端
+    private final Map<String, AIBatchCapable> batchClients = new LinkedHashMap<>();
     private final AIModelProperties properties;
+    private final AIRouter router;
 
     @Autowired
-    public AIClientFactory(List<AIClientService> clients, AIModelProperties properties) {
+    public AIClientFactory(List<AIClientService> clients, OpenAICompatibleClientRegistry compatibleClients,
+                           AIModelProperties properties, ObjectProvider<AIClientDecorator> decorators,
+                           AIRouter router) {
         this.properties = properties;
+        this.router = router;
+        List<AIClientDecorator> orderedDecorators = decorators.orderedStream().toList();
+
+        Map<String, AIClientService> rawClients = new LinkedHashMap<>();
         for (AIClientService client : clients) {
-            clientMap.put(client.getModelType(), client);
+            if (client.getModelType() == null) {
+                log.warn("AI客户端{}未声明模型类型，已忽略", client.getClass().getSimpleName());
+                continue;
+            }
+            rawClients.put(client.getModelKey(), client);
         }
+        // 没有专用实现的OpenAI兼容配置使用通用客户端
+        compatibleClients.createClients(rawClients.keySet())
+                .forEach(client -> rawClients.put(client.getModelKey(), client));
+
+        rawClients.forEach((modelKey, client) -> {
+            if (client instanceof AIBatchCapable batchClient) {
+                batchClients.put(modelKey, batchClient);
+            }
+            // 按顺序包装，越靠后的装饰器越处于外层
+            AIClientService decorated = client;
+            for (AIClientDecorator decorator : orderedDecorators) {
+                decorated = decorator.decorate(decorated);
+            }
+            clientMap.put(modelKey, decorated);
+        });
     }
 
     /**
-     * 获取指定类型的AI客户端
+     * 获取指定模型的AI客户端
+     * @param modelKey ai.models 下的配置名，也接受模型类型名，为null时使用默认客户端
      */
-    public AIClientService getClient(String modelType) {
-        AIModelType type = modelType != null ?
-                AIModelType.fromString(modelType) :
-                AIModelType.fromString(properties.getDefaultModel().getModelName());
+    public AIClientService getClient(String modelKey) {
+        if (modelKey == null || modelKey.isBlank()) {
+            return getDefaultClient();
+        }
 
-        AIClientService client = clientMap.get(type);
+        AIClientService client = clientMap.get(modelKey.trim().toLowerCase());
         if (client == null) {
-            throw new IllegalArgumentException("不支持的AI模型类型: " + type);
+            throw new IllegalArgumentException("不支持的AI模型类型: " + modelKey);
         }
         return client;
     }
 
     /**
-     * 获取默认的AI客户端
+     * 获取默认的AI客户端，未配置 ai.default-model 时按代码生成任务路由
      */
     public AIClientService getDefaultClient() {
-        return getClient(properties.getDefaultModel().getModelName());
+        String defaultModel = properties.getDefaultModelName();
+        return defaultModel != null ? getClient(defaultModel) : getClientForTask(AITaskType.GENERATION);
+    }
+
+    /**
+     * 获取指定模型的批处理客户端，批处理请求由服务商异步执行，不经过缓存、对冲等装饰器
+     * @param modelKey ai.models 下的配置名
+     * @return 该模型不支持批处理接口时返回null
+     */
+    public AIBatchCapable getBatchClient(String modelKey) {
+        return modelKey == null ? null : batchClients.get(modelKey.trim().toLowerCase());
+    }
+
+    /**
+     * 已注册的模型配置名
+     */
+    public Set<String> getModelKeys() {
+        return Collections.unmodifiableSet(clientMap.keySet());
+    }
+
+    /**
+     * 按任务类型获取当前最健康的AI客户端
+     * @param taskType 任务类型，候选模型及偏好顺序见 ai.routing.policies
+     */
+    public AIClientService getClientForTask(AITaskType taskType) {
+        return clientMap.get(router.select(taskType, clientMap.keySet()));
+    }
+
+    /**
+     * 按任务类型获取除指定模型外最健康的AI客户端
+     * @param excludedKey 排除的模型配置名
+     * @return 没有其他候选模型时返回null
+     */
+    public AIClientService getClientForTask(AITaskType taskType, String excludedKey) {
+        Set<String> candidates = new LinkedHashSet<>(clientMap.keySet());
+        candidates.remove(excludedKey);
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        try {
+            return clientMap.get(router.select(taskType, candidates));
+        } catch (IllegalStateException e) {
+            return null;
+        }
     }
 }
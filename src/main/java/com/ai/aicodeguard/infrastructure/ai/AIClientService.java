@@ -1,7 +1,16 @@
 package com.ai.aicodeguard.infrastructure.ai;
 
 import com.ai.aicodeguard.infrastructure.ai.conversation.Conversation;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamChunk;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamSummary;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 /**
  * @InterfaceName: AIClientService
@@ -16,7 +25,56 @@ public interface AIClientService {
      * @param language 目标编程语言
      * @return 生成的代码内容
      */
-    String generateCode(String prompt, String language);
+    default String generateCode(String prompt, String language) {
+        return generateCode(prompt, language, AIRequestOptions.defaults());
+    }
+
+    /**
+     * 调用AI模型生成代码（单次）
+     * @param prompt 自然语言需求
+     * @param language 目标编程语言
+     * @param options 调用选项
+     * @return 生成的代码内容
+     */
+    String generateCode(String prompt, String language, AIRequestOptions options);
+
+    /**
+     * 异步调用AI模型生成代码，不占用调用线程
+     * 取消返回的Future会同时取消底层请求
+     * @param prompt 自然语言需求
+     * @param language 目标编程语言
+     * @return 生成的代码内容
+     */
+    default CompletableFuture<String> generateCodeAsync(String prompt, String language) {
+        return generateCodeAsync(prompt, language, AIRequestOptions.defaults());
+    }
+
+    /**
+     * 异步调用AI模型生成代码。
+     * 默认实现在调用线程上同步执行，不把阻塞的HTTP调用交给公共线程池；模型实现应基于异步传输重写
+     * @param prompt 自然语言需求
+     * @param language 目标编程语言
+     * @param options 调用选项
+     * @return 生成的代码内容
+     */
+    default CompletableFuture<String> generateCodeAsync(String prompt, String language, AIRequestOptions options) {
+        return callInline(() -> generateCode(prompt, language, options));
+    }
+
+    /**
+     * 流式生成代码，模型输出按块交给handler，结束时发送"[DONE]"；handler返回最后一条后由实现完成emitter。
+     * 输出为模型原始文本(含说明文字与代码块标记)，由handler负责提取代码。
+     * 默认实现等待完整结果后一次性输出，不支持流式的客户端无需实现
+     * @param prompt 自然语言需求
+     * @param language 目标编程语言
+     * @param options 调用选项
+     * @param emitter 服务器发送事件发射器
+     * @param handler 流式响应处理器
+     */
+    default void generateCodeStreaming(String prompt, String language, AIRequestOptions options,
+                                       SseEmitter emitter, StreamingResponseHandler handler) {
+        emitWhenComplete(generateCodeAsync(prompt, language, options), emitter, handler);
+    }
 
     /**
      * 在对话中发送消息并获取回复
@@ -26,6 +84,17 @@ public interface AIClientService {
      */
     String sendMessage(Conversation conversation, String message);
 
+    /**
+     * 异步在对话中发送消息，回复返回后写入对话。
+     * 默认实现在调用线程上同步执行，模型实现应基于异步传输重写
+     * @param conversation 对话对象
+     * @param message 发送的消息
+     * @return AI模型的回复
+     */
+    default CompletableFuture<String> sendMessageAsync(Conversation conversation, String message) {
+        return callInline(() -> sendMessage(conversation, message));
+    }
+
     /**
      * 创建新的对话
      * @param userId 用户ID
@@ -39,6 +108,15 @@ public interface AIClientService {
      */
     AIModelType getModelType();
 
+    /**
+     * 获取客户端对应的 ai.models 配置名，唯一标识一个客户端；
+     * 同一模型类型可以有多个配置(例如多个OpenAI兼容的自建推理服务)
+     * @return 配置名
+     */
+    default String getModelKey() {
+        return getModelType().name().toLowerCase();
+    }
+
     /**
      * 在对话中发送消息并获取流式回复
      * @param conversation 对话对象
@@ -48,4 +126,69 @@ public interface AIClientService {
      */
     void sendMessageStreaming(Conversation conversation, String message,
                               SseEmitter emitter, StreamingResponseHandler handler);
+
+    /**
+     * 在对话中发送消息，以Flux返回流式回复。订阅时才发出请求，按下游需求读取模型输出，
+     * 取消订阅时取消底层请求；最后一个片段携带结束元数据，回复在流结束前写入对话。
+     * 默认实现等待完整结果后作为单个片段发出
+     * @param conversation 对话对象
+     * @param message 发送的消息
+     * @return 回复片段
+     */
+    default Flux<StreamChunk> streamMessage(Conversation conversation, String message) {
+        return streamWhenComplete(() -> sendMessageAsync(conversation, message));
+    }
+
+    /**
+     * 在调用线程上执行同步调用，结果或异常包装为已完成的Future
+     * @param call 同步调用
+     * @return 已完成的Future
+     */
+    static CompletableFuture<String> callInline(Supplier<String> call) {
+        try {
+            return CompletableFuture.completedFuture(call.get());
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 完整结果返回后作为单个片段交给handler，用于没有真实流式能力的调用路径
+     * @param result 完整结果
+     * @param emitter 服务器发送事件发射器
+     * @param handler 流式响应处理器
+     */
+    static void emitWhenComplete(CompletableFuture<String> result, SseEmitter emitter,
+                                 StreamingResponseHandler handler) {
+        // 尽力取消：经过缓存、合并等装饰器派生的Future不会把取消传递到底层请求
+        handler.onCancel(emitter, () -> result.cancel(true));
+        result.whenComplete((content, error) -> {
+            if (error instanceof CancellationException) {
+                return;
+            }
+            if (error != null) {
+                handler.handleError(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error, emitter);
+                return;
+            }
+            try {
+                if (handler.handleResponse(content, emitter) || handler.handleResponse("[DONE]", emitter)) {
+                    emitter.complete();
+                }
+            } catch (Exception e) {
+                handler.handleError(e, emitter);
+            }
+        });
+    }
+
+    /**
+     * 完整结果返回后作为单个片段发出，用于没有真实流式能力的调用路径
+     * @param call 订阅时发起的调用，取消订阅时取消返回的Future
+     * @return 回复片段
+     */
+    static Flux<StreamChunk> streamWhenComplete(Supplier<CompletableFuture<String>> call) {
+        return Mono.fromFuture(call)
+                .flatMapMany(content -> Flux.just(StreamChunk.text(content),
+                        StreamChunk.end(new StreamSummary(null, null, null))));
+    }
 }
@@ -31,11 +31,30 @@ public class AIModelProperties {
 
     @Data
     public static class ModelConfig {
+        // 接口协议，openai 表示 OpenAI chat completions 兼容协议，按该协议为配置创建通用客户端；
+        // 已有专用实现的模型(claude、deepseek、mock)无需配置
+        private String protocol;
         private String apiKey;
         // 修改为Map类型支持多种端点
         private Map<String, String> endpoints = new HashMap<>();
         private int timeout = 30000;
         private String modelName;
+        // 代码生成采样参数
+        private double temperature = 0.2;
+        private int maxTokens = 4000;
+        // 推理模型(OpenAI o系列等)，请求中不写入temperature，输出上限使用max_completion_tokens
+        private boolean reasoning;
+        // 连接池与并发配置
+        private int connectTimeout = 10000;
+        private int maxConcurrentRequests = 64;
+        private int maxIdleConnections = 16;
+        private long keepAlive = 300000;
+        // 启动时预热连接
+        private boolean prewarm = true;
+        // 自适应并发限制与重试配置
+        private LimiterConfig limiter = new LimiterConfig();
+        // 对话上下文窗口配置
+        private ContextConfig context = new ContextConfig();
 
         /**
          * 获取指定类型的端点
@@ -52,6 +71,40 @@ public class AIModelProperties {
         }
     }
 
+    @Data
+    public static class LimiterConfig {
+        // 初始并发上限，运行中在 [minLimit, maxConcurrentRequests] 之间自适应调整
+        private int initialLimit = 8;
+        private int minLimit = 1;
+        // 遇到限流或过载时上限乘以该系数
+        private double backoffRatio = 0.7;
+        // 排队请求数上限与最长排队时间(ms)
+        private int maxQueueSize = 256;
+        private long queueTimeout = 60000;
+        // 限流、过载及连接失败的最大重试次数与退避时间(ms)
+        private int maxRetries = 2;
+        private long retryBaseDelay = 500;
+        private long maxRetryDelay = 30000;
+        // 为INTERACTIVE请求预留的并发额度占当前上限的比例，其他优先级只能使用剩余部分
+        private double reservedInteractiveRatio = 0.25;
+        // 排队请求每等待该时长(ms)提升一级优先级，避免后台请求饿死
+        private long agingInterval = 10000;
+    }
+
+    @Data
+    public static class ContextConfig {
+        // 对话历史(含系统消息)的输入token预算
+        private int maxInputTokens = 16000;
+        // 无论预算如何都保留的最近消息条数
+        private int minRecentMessages = 4;
+        // 是否对移出窗口的早期消息生成滚动摘要
+        private boolean summaryEnabled = false;
+        // 未摘要的移出消息累计达到该token数时触发一次摘要
+        private int summaryTriggerTokens = 2000;
+        // 摘要长度上限(token)
+        private int summaryMaxTokens = 800;
+    }
+
     /**
      * 获取指定模型的配置
      */
@@ -59,6 +112,13 @@ public class AIModelProperties {
         return models.get(modelName != null ? modelName : defaultModel);
     }
 
+    /**
+     * 获取默认模型的配置名，未配置时为null
+     */
+    public String getDefaultModelName() {
+        return defaultModel;
+    }
+
     /**
      * 获取默认模型的配置
      */
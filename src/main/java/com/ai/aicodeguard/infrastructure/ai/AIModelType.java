@@ -10,13 +10,24 @@ public enum AIModelType {
     DEEPSEEK,
     OPENAI,
     CLAUDE,
-    GEMINI;
+    GEMINI,
+    /**
+     * 本地模拟模型，用于离线压测
+     */
+    MOCK;
 
+    /**
+     * 按名称解析模型类型，忽略大小写
+     * @throws IllegalArgumentException 名称为空或不是已知的模型类型
+     */
     public static AIModelType fromString(String type) {
+        if (type == null || type.isBlank()) {
+            throw new IllegalArgumentException("AI模型类型不能为空");
+        }
         try {
-            return valueOf(type.toUpperCase());
-        } catch (Exception e) {
-            return DEEPSEEK;
+            return valueOf(type.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("不支持的AI模型类型: " + type);
         }
     }
 }
@@ -0,0 +1,33 @@
+package com.ai.aicodeguard.infrastructure.ai;
+
+/**
+ * @ClassName: AIPriority
+ * @Description: 模型请求的调度优先级，同一模型的并发额度按优先级分配，排队越久的请求优先级逐步提升
+ * @Author: LZX
+ * @Date: 2025/5/27 16:00
+ */
+public enum AIPriority {
+    /**
+     * 用户在线等待的请求：对话、前台代码生成，可使用预留额度
+     */
+    INTERACTIVE,
+    /**
+     * 前台发起但不需要逐字返回的请求，例如增强分析
+     */
+    STANDARD,
+    /**
+     * 后台任务：安全扫描、知识图谱更新、对话摘要、批量生成，队列满时最先被挤出
+     */
+    BACKGROUND;
+
+    /**
+     * 任务类型对应的默认优先级
+     */
+    public static AIPriority of(AITaskType taskType) {
+        return switch (taskType) {
+            case CHAT, GENERATION -> INTERACTIVE;
+            case ANALYSIS, CYPHER -> STANDARD;
+            case SCAN, SUMMARY -> BACKGROUND;
+        };
+    }
+}
@@ -0,0 +1,67 @@
+package com.ai.aicodeguard.infrastructure.ai;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * @ClassName: AIRequestOptions
+ * @Description: 单次AI调用的附加选项
+ * @Author: LZX
+ * @Date: 2025/5/18 09:46
+ */
+@Value
+@Builder(toBuilder = true)
+public class AIRequestOptions {
+
+    private static final AIRequestOptions DEFAULT = AIRequestOptions.builder().build();
+
+    /**
+     * 任务类型
+     */
+    @Builder.Default
+    AITaskType taskType = AITaskType.GENERATION;
+
+    /**
+     * 是否允许使用响应缓存
+     */
+    @Builder.Default
+    boolean cacheable = true;
+
+    /**
+     * 稳定的提示词前缀（指令、Schema等），作为系统提示发送并启用服务商的提示缓存；
+     * 调用方传入的prompt只包含每次变化的部分
+     */
+    String systemPrompt;
+
+    /**
+     * 是否允许对冲请求，对冲发出的请求本身不再对冲
+     */
+    @Builder.Default
+    boolean hedgeable = true;
+
+    /**
+     * 发起调用的用户，用于按用户统计令牌用量；为null表示系统发起的调用
+     */
+    String userId;
+
+    /**
+     * 调度优先级，为null时按任务类型确定
+     */
+    AIPriority priority;
+
+    public AIPriority getPriority() {
+        return priority != null ? priority : AIPriority.of(taskType);
+    }
+
+    public static AIRequestOptions defaults() {
+        return DEFAULT;
+    }
+
+    public static AIRequestOptions of(AITaskType taskType) {
+        return AIRequestOptions.builder().taskType(taskType).build();
+    }
+
+    public static AIRequestOptions of(AITaskType taskType, Integer userId) {
+        return AIRequestOptions.builder().taskType(taskType).userId(userId != null ? userId.toString() : null).build();
+    }
+}
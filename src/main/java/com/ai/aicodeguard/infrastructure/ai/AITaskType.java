@@ -0,0 +1,34 @@
+package com.ai.aicodeguard.infrastructure.ai;
+
+/**
+ * @ClassName: AITaskType
+ * @Description: AI调用的任务类型
+ * @Author: LZX
+ * @Date: 2025/5/18 09:40
+ */
+public enum AITaskType {
+    /**
+     * 代码生成
+     */
+    GENERATION,
+    /**
+     * 对话
+     */
+    CHAT,
+    /**
+     * 安全扫描
+     */
+    SCAN,
+    /**
+     * Cypher生成
+     */
+    CYPHER,
+    /**
+     * 增强分析
+     */
+    ANALYSIS,
+    /**
+     * 对话摘要
+     */
+    SUMMARY
+}
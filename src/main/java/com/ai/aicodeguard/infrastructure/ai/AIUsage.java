@@ -0,0 +1,57 @@
+package com.ai.aicodeguard.infrastructure.ai;
+
+import java.util.Map;
+
+/**
+ * @ClassName: AIUsage
+ * @Description: 单次模型调用的令牌用量，输入令牌为按常规价格计费的部分，不含缓存读写
+ * @Author: LZX
+ * @Date: 2025/5/24 09:20
+ */
+public record AIUsage(long inputTokens, long outputTokens, long cacheReadTokens, long cacheWriteTokens) {
+
+    public static final AIUsage EMPTY = new AIUsage(0, 0, 0, 0);
+
+    /**
+     * 解析Anthropic响应中的usage字段
+     */
+    public static AIUsage fromAnthropic(Map<String, Object> usage) {
+        if (usage == null) {
+            return EMPTY;
+        }
+        return new AIUsage(
+                number(usage.get("input_tokens")),
+                number(usage.get("output_tokens")),
+                number(usage.get("cache_read_input_tokens")),
+                number(usage.get("cache_creation_input_tokens")));
+    }
+
+    /**
+     * 解析OpenAI兼容响应中的usage字段：DeepSeek返回prompt_cache_hit_tokens，
+     * OpenAI返回prompt_tokens_details.cached_tokens，两者都自动缓存且没有单独的写入计费
+     */
+    @SuppressWarnings("unchecked")
+    public static AIUsage fromOpenAI(Map<String, Object> usage) {
+        if (usage == null) {
+            return EMPTY;
+        }
+        long promptTokens = number(usage.get("prompt_tokens"));
+        long cached = number(usage.get("prompt_cache_hit_tokens"));
+        if (cached == 0 && usage.get("prompt_tokens_details") instanceof Map<?, ?> details) {
+            cached = number(((Map<String, Object>) details).get("cached_tokens"));
+        }
+        return new AIUsage(Math.max(0, promptTokens - cached), number(usage.get("completion_tokens")), cached, 0);
+    }
+
+    public AIUsage plus(AIUsage other) {
+        return new AIUsage(
+                inputTokens + other.inputTokens,
+                outputTokens + other.outputTokens,
+                cacheReadTokens + other.cacheReadTokens,
+                cacheWriteTokens + other.cacheWriteTokens);
+    }
+
+    private static long number(Object value) {
+        return value instanceof Number n ? n.longValue() : 0;
+    }
+}
@@ -1,5 +1,7 @@
 package com.ai.aicodeguard.infrastructure.ai;
 
+import com.ai.aicodeguard.infrastructure.ai.streaming.CancellableSseEmitter;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamSummary;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 /**
@@ -23,4 +25,20 @@ public interface StreamingResponseHandler {
      * @param emitter SSE发射器
      */
     void handleError(Throwable error, SseEmitter emitter);
+
+    /**
+     * 接收流结束时的元数据，模型实现在发送结束标记之前调用，没有真实流式能力的调用路径不会调用
+     * @param summary 消息ID、结束原因与令牌用量
+     */
+    default void handleSummary(StreamSummary summary) {
+    }
+
+    /**
+     * 登记取消上游请求的动作，在客户端断开、连接超时或出错时执行
+     * @param emitter SSE发射器
+     * @param cancel 取消动作
+     */
+    default void onCancel(SseEmitter emitter, Runnable cancel) {
+        CancellableSseEmitter.onCancel(emitter, cancel);
+    }
 }
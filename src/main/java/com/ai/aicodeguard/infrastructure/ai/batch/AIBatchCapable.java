@@ -0,0 +1,28 @@
+package com.ai.aicodeguard.infrastructure.ai.batch;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @InterfaceName: AIBatchCapable
+ * @Description: 支持服务商异步批处理接口的AI客户端，批处理费用更低但结果可能延迟数分钟到数小时
+ * @Author: LZX
+ * @Date: 2025/5/26 09:28
+ */
+public interface AIBatchCapable {
+
+    /**
+     * 提交批量代码生成
+     * @param requests 批量请求，customId在批次内唯一
+     * @return 服务商返回的批次ID
+     */
+    String submitCodeBatch(List<AIBatchRequest> requests);
+
+    /**
+     * 查询批次结果
+     * @param batchId 批次ID
+     * @param requests 提交时的批量请求，用于按目标语言提取代码块
+     * @return 批次仍在处理中时返回null，结束后返回 customId -> 结果
+     */
+    Map<String, AIBatchResult> pollCodeBatch(String batchId, List<AIBatchRequest> requests);
+}
@@ -0,0 +1,36 @@
+package com.ai.aicodeguard.infrastructure.ai.batch;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * @ClassName: AIBatchProperties
+ * @Description: 批量代码生成配置
+ * @Author: LZX
+ * @Date: 2025/5/26 09:20
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.batch")
+public class AIBatchProperties {
+    // 单次批量请求允许的最大条目数
+    private int maxItems = 200;
+    // 每个模型同时在途的请求数，其余条目在本地排队，避免挤占模型并发限流器的队列
+    private int maxParallelPerModel = 4;
+    // 结果累积到该条数后批量写入MySQL与MongoDB
+    private int flushSize = 20;
+    // 即时模式下整个批次的超时时间
+    private Duration timeout = Duration.ofMinutes(30);
+    // 接受延迟结果时使用服务商批处理接口，轮询批次状态的间隔
+    private Duration pollInterval = Duration.ofSeconds(30);
+    // 接受延迟结果时整个批次的超时时间，与服务商批处理最长24小时的完成时限一致
+    private Duration delayedTimeout = Duration.ofHours(24);
+    // 入库并写出结果的线程数，各批次轮流使用，不占用异步请求线程池
+    private int flushThreads = 2;
+    // 生成后触发安全扫描的线程数与排队上限，队列已满时跳过扫描，代码保持待扫描状态
+    private int scanThreads = 1;
+    private int scanQueueCapacity = 200;
+}
@@ -0,0 +1,13 @@
+package com.ai.aicodeguard.infrastructure.ai.batch;
+
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
+
+/**
+ * @ClassName: AIBatchRequest
+ * @Description: 服务商批处理接口中的单条代码生成请求
+ * @Author: LZX
+ * @Date: 2025/5/26 09:24
+ * @param customId 调用方指定的条目标识，结果按该标识返回
+ */
+public record AIBatchRequest(String customId, String prompt, String language, AIRequestOptions options) {
+}
@@ -0,0 +1,22 @@
+package com.ai.aicodeguard.infrastructure.ai.batch;
+
+/**
+ * @ClassName: AIBatchResult
+ * @Description: 服务商批处理接口返回的单条结果，content与error二者只有一个非空
+ * @Author: LZX
+ * @Date: 2025/5/26 09:25
+ */
+public record AIBatchResult(String customId, String content, String error) {
+
+    public static AIBatchResult success(String customId, String content) {
+        return new AIBatchResult(customId, content, null);
+    }
+
+    public static AIBatchResult failure(String customId, String error) {
+        return new AIBatchResult(customId, null, error);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
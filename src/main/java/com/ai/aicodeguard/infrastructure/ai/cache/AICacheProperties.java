@@ -0,0 +1,29 @@
+package com.ai.aicodeguard.infrastructure.ai.cache;
+
+import com.ai.aicodeguard.infrastructure.ai.AITaskType;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * @ClassName: AICacheProperties
+ * @Description: AI响应缓存配置
+ * @Author: LZX
+ * @Date: 2025/5/18 10:15
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.cache")
+public class AICacheProperties {
+    private boolean enabled = true;
+    // 本地缓存最大占用字节数
+    private long localMaxBytes = 64L * 1024 * 1024;
+    private boolean redisEnabled = true;
+    private Duration ttl = Duration.ofHours(24);
+    // 不使用缓存的任务类型，安全扫描需要反映最新的规则与模型输出，默认不缓存
+    private Set<AITaskType> disabledTasks = EnumSet.of(AITaskType.SCAN);
+}
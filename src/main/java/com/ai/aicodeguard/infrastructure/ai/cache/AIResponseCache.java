@@ -0,0 +1,125 @@
+package com.ai.aicodeguard.infrastructure.ai.cache;
+
+import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AIModelProperties;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
+import com.ai.aicodeguard.infrastructure.ai.decorator.AIClientDecorator;
+import com.ai.aicodeguard.infrastructure.ai.decorator.AIRequestFingerprint;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * @ClassName: AIResponseCache
+ * @Description: AI响应精确匹配缓存，本地按字节数限制容量，Redis作为二级缓存
+ * @Author: LZX
+ * @Date: 2025/5/18 10:21
+ */
+@Component
+@Order(100)
+@RequiredArgsConstructor
+@Slf4j
+public class AIResponseCache implements AIClientDecorator {
+
+    private static final String CACHE_KEY_PREFIX = "ai:response:";
+    private static final String METRIC_NAME = "ai.cache.requests";
+
+    private final AICacheProperties cacheProperties;
+    private final AIModelProperties modelProperties;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final MeterRegistry meterRegistry;
+
+    private Cache<String, String> localCache;
+
+    @PostConstruct
+    public void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumWeight(cacheProperties.getLocalMaxBytes())
+                // Java字符串按UTF-16估算占用
+                .weigher((String key, String value) -> 2 * (key.length() + value.length()) + 64)
+                .expireAfterWrite(cacheProperties.getTtl())
+                .build();
+        meterRegistry.gauge("ai.cache.local.bytes", localCache,
+                cache -> cache.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L));
+    }
+
+    @Override
+    public AIClientService decorate(AIClientService client) {
+        return cacheProperties.isEnabled() ? new CachingAIClientService(client, this) : client;
+    }
+
+    /**
+     * 判断本次调用是否可以使用缓存
+     */
+    boolean isCacheable(AIRequestOptions options) {
+        return options.isCacheable() && !cacheProperties.getDisabledTasks().contains(options.getTaskType());
+    }
+
+    /**
+     * 构建缓存键：模型 + 任务类型 + 采样参数 + 语言 + 规范化后的系统提示与提示词；
+     * 相同提示词在不同任务中的用途不同，按任务类型分开缓存
+     */
+    String buildKey(String modelKey, String prompt, String language, AIRequestOptions options) {
+        return CACHE_KEY_PREFIX + modelKey + ":" + options.getTaskType().name().toLowerCase() + ":"
+                + AIRequestFingerprint.ofCode(modelKey, modelProperties.getModel(modelKey), prompt, language,
+                options.getSystemPrompt());
+    }
+
+    /**
+     * 流式调用缓存模型原始文本(含说明文字与代码块标记)，与缓存提取后代码的非流式调用分开存放
+     */
+    String rawKey(String key) {
+        return key + ":raw";
+    }
+
+    /**
+     * 依次查询本地缓存与Redis
+     */
+    String get(String key, String modelKey) {
+        String value = localCache.getIfPresent(key);
+        if (value != null) {
+            record(modelKey, "local");
+            return value;
+        }
+
+        if (cacheProperties.isRedisEnabled()) {
+            try {
+                value = redisTemplate.opsForValue().get(key);
+                if (value != null) {
+                    localCache.put(key, value);
+                    record(modelKey, "redis");
+                    return value;
+                }
+            } catch (Exception e) {
+                log.warn("读取AI响应缓存失败: {}", e.getMessage());
+            }
+        }
+
+        record(modelKey, "miss");
+        return null;
+    }
+
+    void put(String key, String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        localCache.put(key, value);
+        if (cacheProperties.isRedisEnabled()) {
+            try {
+                redisTemplate.opsForValue().set(key, value, cacheProperties.getTtl());
+            } catch (Exception e) {
+                log.warn("写入AI响应缓存失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void record(String modelKey, String result) {
+        meterRegistry.counter(METRIC_NAME, "model", modelKey, "result", result).increment();
+    }
+}
@@ -0,0 +1,133 @@
+package com.ai.aicodeguard.infrastructure.ai.cache;
+
+import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
+import com.ai.aicodeguard.infrastructure.ai.StreamingResponseHandler;
+import com.ai.aicodeguard.infrastructure.ai.decorator.ForwardingAIClientService;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamSummary;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @ClassName: CachingAIClientService
+ * @Description: 为代码生成调用提供响应缓存的客户端装饰器，对话类调用不缓存
+ * @Author: LZX
+ * @Date: 2025/5/18 10:40
+ */
+class CachingAIClientService extends ForwardingAIClientService {
+
+    private final AIResponseCache cache;
+    private final String modelKey;
+
+    CachingAIClientService(AIClientService delegate, AIResponseCache cache) {
+        super(delegate);
+        this.cache = cache;
+        this.modelKey = delegate.getModelKey();
+    }
+
+    @Override
+    public String generateCode(String prompt, String language, AIRequestOptions options) {
+        if (!cache.isCacheable(options)) {
+            return delegate.generateCode(prompt, language, options);
+        }
+
+        String key = cache.buildKey(modelKey, prompt, language, options);
+        String cached = cache.get(key, modelKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        String result = delegate.generateCode(prompt, language, options);
+        cache.put(key, result);
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<String> generateCodeAsync(String prompt, String language, AIRequestOptions options) {
+        if (!cache.isCacheable(options)) {
+            return delegate.generateCodeAsync(prompt, language, options);
+        }
+
+        String key = cache.buildKey(modelKey, prompt, language, options);
+        String cached = cache.get(key, modelKey);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        // 返回原始Future以保留取消能力，缓存写入作为附加回调
+        CompletableFuture<String> future = delegate.generateCodeAsync(prompt, language, options);
+        future.thenAccept(result -> cache.put(key, result));
+        return future;
+    }
+
+    /**
+     * 命中缓存时按原样回放模型原始文本，由handler提取代码；
+     * 未命中时透传流式调用，完整结束的输出作为原始文本回填缓存
+     */
+    @Override
+    public void generateCodeStreaming(String prompt, String language, AIRequestOptions options,
+                                      SseEmitter emitter, StreamingResponseHandler handler) {
+        if (!cache.isCacheable(options)) {
+            delegate.generateCodeStreaming(prompt, language, options, emitter, handler);
+            return;
+        }
+
+        String key = cache.rawKey(cache.buildKey(modelKey, prompt, language, options));
+        String cached = cache.get(key, modelKey);
+        if (cached != null) {
+            AIClientService.emitWhenComplete(CompletableFuture.completedFuture(cached), emitter, handler);
+            return;
+        }
+        delegate.generateCodeStreaming(prompt, language, options, emitter, new RawTextCachingHandler(handler, key));
+    }
+
+    /**
+     * 透传流式输出并累积模型原始文本，收到结束标记且未中断时写入缓存
+     */
+    private class RawTextCachingHandler implements StreamingResponseHandler {
+        private final StreamingResponseHandler handler;
+        private final String key;
+        private final StringBuilder raw = new StringBuilder();
+        private volatile boolean aborted;
+
+        RawTextCachingHandler(StreamingResponseHandler handler, String key) {
+            this.handler = handler;
+            this.key = key;
+        }
+
+        @Override
+        public boolean handleResponse(String content, SseEmitter emitter) {
+            if ("[DONE]".equals(content)) {
+                if (!aborted) {
+                    cache.put(key, raw.toString());
+                }
+            } else {
+                raw.append(content);
+            }
+            boolean last = handler.handleResponse(content, emitter);
+            // 客户端连接失效时模型实现停止读取，输出不完整
+            aborted |= last;
+            return last;
+        }
+
+        @Override
+        public void handleError(Throwable error, SseEmitter emitter) {
+            aborted = true;
+            handler.handleError(error, emitter);
+        }
+
+        @Override
+        public void handleSummary(StreamSummary summary) {
+            handler.handleSummary(summary);
+        }
+
+        @Override
+        public void onCancel(SseEmitter emitter, Runnable cancel) {
+            handler.onCancel(emitter, () -> {
+                aborted = true;
+                cancel.run();
+            });
+        }
+    }
+}
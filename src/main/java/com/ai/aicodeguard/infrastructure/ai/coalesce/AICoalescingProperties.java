@@ -0,0 +1,20 @@
+package com.ai.aicodeguard.infrastructure.ai.coalesce;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * @ClassName: AICoalescingProperties
+ * @Description: 相同在途AI请求合并配置
+ * @Author: LZX
+ * @Date: 2025/5/19 10:02
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.coalescing")
+public class AICoalescingProperties {
+    private boolean enabled = true;
+    // 是否合并流式对话请求，后加入的请求先回放已收到的内容再跟随实时输出
+    private boolean streamingEnabled = true;
+}
@@ -0,0 +1,54 @@
+package com.ai.aicodeguard.infrastructure.ai.coalesce;
+
+import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AIModelProperties;
+import com.ai.aicodeguard.infrastructure.ai.conversation.ConversationManager;
+import com.ai.aicodeguard.infrastructure.ai.decorator.AIClientDecorator;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * @ClassName: AIRequestCoalescer
+ * @Description: 合并相同的在途AI请求，同一时刻只向模型发出一次调用，位于响应缓存之内
+ * @Author: LZX
+ * @Date: 2025/5/19 10:10
+ */
+@Component
+@Order(50)
+@RequiredArgsConstructor
+public class AIRequestCoalescer implements AIClientDecorator {
+
+    private static final String METRIC_NAME = "ai.coalescing.joined";
+
+    private final AICoalescingProperties coalescingProperties;
+    private final AIModelProperties modelProperties;
+    private final ConversationManager conversationManager;
+    private final MeterRegistry meterRegistry;
+
+    @Override
+    public AIClientService decorate(AIClientService client) {
+        return coalescingProperties.isEnabled() ? new CoalescingAIClientService(client, this) : client;
+    }
+
+    boolean isStreamingEnabled() {
+        return coalescingProperties.isStreamingEnabled();
+    }
+
+    AIModelProperties.ModelConfig getModelConfig(String modelKey) {
+        return modelProperties.getModel(modelKey);
+    }
+
+    ConversationManager getConversationManager() {
+        return conversationManager;
+    }
+
+    /**
+     * 记录一次合并命中
+     * @param type code 或 stream
+     */
+    void recordJoin(String modelKey, String type) {
+        meterRegistry.counter(METRIC_NAME, "model", modelKey, "type", type).increment();
+    }
+}
@@ -0,0 +1,130 @@
+package com.ai.aicodeguard.infrastructure.ai.coalesce;
+
+import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
+import com.ai.aicodeguard.infrastructure.ai.StreamingResponseHandler;
+import com.ai.aicodeguard.infrastructure.ai.conversation.Conversation;
+import com.ai.aicodeguard.infrastructure.ai.decorator.AIRequestFingerprint;
+import com.ai.aicodeguard.infrastructure.ai.decorator.ForwardingAIClientService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @ClassName: CoalescingAIClientService
+ * @Description: 合并相同在途请求的客户端装饰器，后到的调用共享先到调用的结果
+ * @Author: LZX
+ * @Date: 2025/5/19 10:52
+ */
+@Slf4j
+class CoalescingAIClientService extends ForwardingAIClientService {
+
+    private final AIRequestCoalescer coalescer;
+    private final String modelKey;
+
+    private final Map<String, SharedCall> inflightCalls = new ConcurrentHashMap<>();
+    private final Map<String, SharedStream> inflightStreams = new ConcurrentHashMap<>();
+
+    CoalescingAIClientService(AIClientService delegate, AIRequestCoalescer coalescer) {
+        super(delegate);
+        this.coalescer = coalescer;
+        this.modelKey = delegate.getModelKey();
+    }
+
+    @Override
+    public String generateCode(String prompt, String language, AIRequestOptions options) {
+        String key = codeKey(prompt, language, options);
+        while (true) {
+            SharedCall call = new SharedCall();
+            SharedCall existing = inflightCalls.putIfAbsent(key, call);
+            if (existing != null) {
+                String result = existing.await();
+                if (result != null) {
+                    coalescer.recordJoin(modelKey, "code");
+                    return result;
+                }
+                continue;
+            }
+
+            try {
+                String result = delegate.generateCode(prompt, language, options);
+                call.complete(result);
+                return result;
+            } catch (Throwable e) {
+                call.completeExceptionally(e);
+                throw e;
+            } finally {
+                inflightCalls.remove(key, call);
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> generateCodeAsync(String prompt, String language, AIRequestOptions options) {
+        String key = codeKey(prompt, language, options);
+        while (true) {
+            SharedCall call = new SharedCall();
+            SharedCall existing = inflightCalls.putIfAbsent(key, call);
+            if (existing != null) {
+                CompletableFuture<String> subscription = existing.subscribe();
+                if (subscription != null) {
+                    coalescer.recordJoin(modelKey, "code");
+                    return subscription;
+                }
+                // 该请求的订阅者已全部取消，移除后重新发起
+                inflightCalls.remove(key, existing);
+                continue;
+            }
+
+            CompletableFuture<String> subscription = call.subscribe();
+            CompletableFuture<String> upstream;
+            try {
+                upstream = delegate.generateCodeAsync(prompt, language, options);
+            } catch (RuntimeException e) {
+                inflightCalls.remove(key, call);
+                call.completeExceptionally(e);
+                throw e;
+            }
+            upstream.whenComplete((result, error) -> inflightCalls.remove(key, call));
+            call.attach(upstream);
+            return subscription;
+        }
+    }
+
+    @Override
+    public void sendMessageStreaming(Conversation conversation, String message,
+                                     SseEmitter emitter, StreamingResponseHandler handler) {
+        if (!coalescer.isStreamingEnabled()) {
+            delegate.sendMessageStreaming(conversation, message, emitter, handler);
+            return;
+        }
+
+        String key = AIRequestFingerprint.ofConversation(modelKey, conversation, message);
+        while (true) {
+            // 流结束前其他请求无法放入同一键，结束时直接按键移除
+            SharedStream stream = new SharedStream(handler, coalescer.getConversationManager(),
+                    () -> inflightStreams.remove(key));
+            SharedStream existing = inflightStreams.putIfAbsent(key, stream);
+            if (existing != null) {
+                if (existing.join(conversation, message, emitter, handler)) {
+                    log.info("对话{}的流式请求与在途请求合并", conversation.getId());
+                    coalescer.recordJoin(modelKey, "stream");
+                    return;
+                }
+                inflightStreams.remove(key, existing);
+                continue;
+            }
+
+            delegate.sendMessageStreaming(conversation, message, emitter, stream);
+            return;
+        }
+    }
+
+    private String codeKey(String prompt, String language, AIRequestOptions options) {
+        return AIRequestFingerprint.ofCode(modelKey, coalescer.getModelConfig(modelKey),
+                prompt, language, options.getSystemPrompt());
+    }
+}
@@ -0,0 +1,108 @@
+package com.ai.aicodeguard.infrastructure.ai.coalesce;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+
+/**
+ * @ClassName: SharedCall
+ * @Description: 一次被多个调用方共享的代码生成请求，所有订阅者都取消后才取消底层请求
+ * @Author: LZX
+ * @Date: 2025/5/19 10:18
+ */
+class SharedCall {
+
+    private final CompletableFuture<String> result = new CompletableFuture<>();
+
+    private Future<?> upstream;
+    private int subscribers;
+    private boolean abandoned;
+
+    /**
+     * 关联底层异步请求，请求结束后完成共享结果
+     */
+    void attach(CompletableFuture<String> future) {
+        synchronized (this) {
+            upstream = future;
+        }
+        future.whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(unwrap(error));
+            }
+        });
+    }
+
+    void complete(String value) {
+        result.complete(value);
+    }
+
+    void completeExceptionally(Throwable error) {
+        result.completeExceptionally(error);
+    }
+
+    /**
+     * 以异步方式订阅结果
+     * @return 订阅者独立的Future，为null表示订阅者已全部取消、请求已放弃，需要重新发起
+     */
+    synchronized CompletableFuture<String> subscribe() {
+        if (abandoned) {
+            return null;
+        }
+        subscribers++;
+        Subscription subscription = new Subscription();
+        result.whenComplete((value, error) -> {
+            if (error == null) {
+                subscription.complete(value);
+            } else {
+                subscription.completeExceptionally(unwrap(error));
+            }
+        });
+        return subscription;
+    }
+
+    /**
+     * 同步等待结果
+     * @return 结果，为null表示该请求已被放弃，需要重新发起
+     */
+    String await() {
+        CompletableFuture<String> subscription = subscribe();
+        if (subscription == null) {
+            return null;
+        }
+        try {
+            return subscription.join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+
+    private void release() {
+        Future<?> toCancel;
+        synchronized (this) {
+            if (--subscribers > 0 || upstream == null || result.isDone()) {
+                return;
+            }
+            abandoned = true;
+            toCancel = upstream;
+        }
+        toCancel.cancel(true);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private class Subscription extends CompletableFuture<String> {
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                release();
+            }
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.ai.aicodeguard.infrastructure.ai.coalesce;
+
+import com.ai.aicodeguard.infrastructure.ai.StreamingResponseHandler;
+import com.ai.aicodeguard.infrastructure.ai.conversation.Conversation;
+import com.ai.aicodeguard.infrastructure.ai.conversation.ConversationManager;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamSummary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * @ClassName: SharedStream
+ * @Description: 被多个订阅者共享的流式对话，作为发起方的处理器接收模型输出并转发给后加入的订阅者
+ * @Author: LZX
+ * @Date: 2025/5/19 10:35
+ */
+@Slf4j
+class SharedStream implements StreamingResponseHandler {
+
+    private static final String DONE_MARK = "[DONE]";
+
+    private final StreamingResponseHandler leaderHandler;
+    private final ConversationManager conversationManager;
+    private final Runnable onFinish;
+
+    // 已收到的内容块，用于向后加入的订阅者回放
+    private final List<String> replay = new ArrayList<>();
+    private final List<Follower> followers = new ArrayList<>();
+
+    private boolean finished;
+    // 发起方连接已断开，仅为剩余订阅者继续读取
+    private boolean leaderDetached;
+    // 取消上游请求的动作，发起方与全部订阅者都断开后执行
+    private Runnable upstreamCancel;
+
+    SharedStream(StreamingResponseHandler leaderHandler, ConversationManager conversationManager, Runnable onFinish) {
+        this.leaderHandler = leaderHandler;
+        this.conversationManager = conversationManager;
+        this.onFinish = onFinish;
+    }
+
+    /**
+     * 加入共享流：先回放已收到的内容，再跟随实时输出
+     * @return 流已结束时返回false，调用方应自行发起请求
+     */
+    synchronized boolean join(Conversation conversation, String message,
+                              SseEmitter emitter, StreamingResponseHandler handler) {
+        if (finished) {
+            return false;
+        }
+        Follower follower = new Follower(conversation, message, emitter, handler);
+        for (String content : replay) {
+            if (!follower.deliver(content)) {
+                return true;
+            }
+        }
+        followers.add(follower);
+        handler.onCancel(emitter, () -> leave(follower));
+        return true;
+    }
+
+    /**
+     * 上游请求只在发起方与全部订阅者都放弃后取消，单个连接放弃只停止向其转发；
+     * 何时放弃由各自的处理器决定，可续传的回复在连接断开后仍继续接收
+     */
+    @Override
+    public void onCancel(SseEmitter emitter, Runnable cancel) {
+        synchronized (this) {
+            upstreamCancel = cancel;
+        }
+        leaderHandler.onCancel(emitter, () -> {
+            synchronized (this) {
+                leaderDetached = true;
+            }
+            cancelIfAbandoned();
+        });
+    }
+
+    private void leave(Follower follower) {
+        synchronized (this) {
+            followers.remove(follower);
+        }
+        cancelIfAbandoned();
+    }
+
+    /**
+     * 发起方与全部订阅者都断开后结束共享流并取消上游请求；结束后相同的新请求不再加入这个流
+     */
+    private void cancelIfAbandoned() {
+        Runnable cancel;
+        synchronized (this) {
+            if (finished || !leaderDetached || !followers.isEmpty()) {
+                return;
+            }
+            finish();
+            cancel = upstreamCancel;
+            upstreamCancel = null;
+        }
+        if (cancel != null) {
+            log.info("合并流的全部连接已断开，取消上游请求");
+            cancel.run();
+        }
+    }
+
+    @Override
+    public boolean handleResponse(String content, SseEmitter emitter) {
+        boolean isDone = content.endsWith(DONE_MARK);
+        boolean leaderLast = false;
+        if (!leaderDetached) {
+            leaderLast = leaderHandler.handleResponse(content, emitter);
+        }
+
+        synchronized (this) {
+            if (leaderLast && !isDone) {
+                log.info("合并流的发起方连接已断开，继续为{}个订阅者输出", followers.size());
+                leaderDetached = true;
+            }
+            replay.add(content);
+            followers.removeIf(follower -> !follower.deliver(content));
+
+            if (isDone) {
+                finish();
+                // 完整回复由回放内容拼接，不再单独累积
+                String reply = String.join("", replay).replace(DONE_MARK, "");
+                for (Follower follower : followers) {
+                    follower.complete(reply);
+                }
+                followers.clear();
+                return true;
+            }
+            // 发起方断开且没有订阅者，模型实现随即停止读取，不会再收到结束标记
+            if (leaderLast && followers.isEmpty()) {
+                finish();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public void handleSummary(StreamSummary summary) {
+        if (!leaderDetached) {
+            leaderHandler.handleSummary(summary);
+        }
+        synchronized (this) {
+            for (Follower follower : followers) {
+                follower.handler.handleSummary(summary);
+            }
+        }
+    }
+
+    @Override
+    public void handleError(Throwable error, SseEmitter emitter) {
+        if (!leaderDetached) {
+            leaderHandler.handleError(error, emitter);
+        }
+        synchronized (this) {
+            finish();
+            for (Iterator<Follower> it = followers.iterator(); it.hasNext(); ) {
+                it.next().fail(error);
+                it.remove();
+            }
+        }
+    }
+
+    private void finish() {
+        if (!finished) {
+            finished = true;
+            onFinish.run();
+        }
+    }
+
+    private class Follower {
+        private final Conversation conversation;
+        private final String message;
+        private final SseEmitter emitter;
+        private final StreamingResponseHandler handler;
+
+        Follower(Conversation conversation, String message, SseEmitter emitter, StreamingResponseHandler handler) {
+            this.conversation = conversation;
+            this.message = message;
+            this.emitter = emitter;
+            this.handler = handler;
+        }
+
+        /**
+         * 转发内容块，订阅者连接已失效时返回false
+         */
+        boolean deliver(String content) {
+            try {
+                return !handler.handleResponse(content, emitter) || content.endsWith(DONE_MARK);
+            } catch (Exception e) {
+                log.warn("向合并流订阅者转发消息失败: {}", e.getMessage());
+                return false;
+            }
+        }
+
+        void complete(String reply) {
+            try {
+                conversation.addUserMessage(message);
+                conversation.addAssistantMessage(reply);
+                conversationManager.updateConversation(conversation.getUserId(), conversation);
+                emitter.complete();
+            } catch (Exception e) {
+                log.error("保存合并流订阅者对话{}失败:", conversation.getId(), e);
+            }
+        }
+
+        void fail(Throwable error) {
+            try {
+                handler.handleError(error, emitter);
+            } catch (Exception e) {
+                log.warn("向合并流订阅者发送错误失败: {}", e.getMessage());
+            }
+        }
+    }
+}
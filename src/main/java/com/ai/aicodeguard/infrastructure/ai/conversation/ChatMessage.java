@@ -1,9 +1,33 @@
 package com.ai.aicodeguard.infrastructure.ai.conversation;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import org.springframework.data.annotation.PersistenceCreator;
+
 /**
  * @ClassName: ChatMessage
  * @Description: 聊天消息
  * @Author: LZX
  * @Date: 2025/4/20 01:55
  */
-public record ChatMessage(String role, String content) {}
+public record ChatMessage(String role, String content, Integer tokens, Integer seq) {
+
+    /**
+     * tokens为消息的估算token数，随消息一起存储；旧数据缺失时在加载时补算。
+     * seq为消息在对话中的序号，即其在消息列表中的下标，旧数据中为null
+     */
+    @JsonCreator
+    @PersistenceCreator
+    public ChatMessage {
+        if (tokens == null) {
+            tokens = TokenEstimator.estimate(content);
+        }
+    }
+
+    public ChatMessage(String role, String content) {
+        this(role, content, null, null);
+    }
+
+    public ChatMessage(String role, String content, Integer tokens) {
+        this(role, content, tokens, null);
+    }
+}
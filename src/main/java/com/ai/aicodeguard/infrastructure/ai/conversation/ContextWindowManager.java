@@ -0,0 +1,151 @@
+package com.ai.aicodeguard.infrastructure.ai.conversation;
+
+import com.ai.aicodeguard.infrastructure.ai.AIClientFactory;
+import com.ai.aicodeguard.infrastructure.ai.AIModelProperties;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
+import com.ai.aicodeguard.infrastructure.ai.AITaskType;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @ClassName: ContextWindowManager
+ * @Description: 对话上下文窗口管理，按模型的token预算截取发送给模型的历史消息
+ * @Author: LZX
+ * @Date: 2025/5/22 10:30
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ContextWindowManager {
+
+    private static final String SUMMARY_INSTRUCTIONS = """
+            你是一个对话摘要助手。用户消息中会给出已有的对话摘要(可能为空)和随后的若干轮对话，
+            请将它们合并为一份新的摘要，保留用户的目标、已确认的事实与约束、涉及的代码要点和未解决的问题，
+            省略寒暄与重复内容。直接输出摘要正文，不超过%d个token。
+            """;
+
+    private static final String SUMMARY_PREFIX = "\n\n以下是此前对话的摘要：\n";
+
+    private final AIModelProperties properties;
+    private final ConversationManager conversationManager;
+    // 摘要调用经由AI客户端完成，延迟获取以避免与客户端实现之间的循环依赖
+    private final ObjectProvider<AIClientFactory> clientFactoryProvider;
+
+    // 正在生成摘要的对话，同一对话同时只进行一次摘要
+    private final Set<String> summarizing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 选出本次请求要发送的消息：系统消息(附带滚动摘要)固定保留，
+     * 其余消息从最新往前在预算内保留，最近的若干条消息无论预算都保留
+     */
+    public List<ChatMessage> select(Conversation conversation) {
+        List<ChatMessage> messages = conversation.getMessages();
+        AIModelProperties.ContextConfig config = contextConfig(conversation.getModelType());
+
+        ChatMessage system = null;
+        int first = 0;
+        if (!messages.isEmpty() && "system".equals(messages.get(0).role())) {
+            system = messages.get(0);
+            first = 1;
+        }
+        if (conversation.getSummary() != null) {
+            String base = system != null ? system.content() : "";
+            system = new ChatMessage("system", base + SUMMARY_PREFIX + conversation.getSummary());
+        }
+
+        // 已被摘要覆盖的消息不再原样发送；摘要下标按完整对话计，未加载的早期消息不在messages中
+        int offset = conversation.getMessageOffset();
+        int lowest = Math.max(first, Math.min(conversation.getSummarizedCount() - offset, messages.size()));
+        int budget = config.getMaxInputTokens() - (system != null ? system.tokens() : 0);
+        int used = 0;
+        int start = messages.size();
+        while (start > lowest) {
+            int tokens = messages.get(start - 1).tokens();
+            boolean pinned = messages.size() - start < config.getMinRecentMessages();
+            if (!pinned && used + tokens > budget) {
+                break;
+            }
+            used += tokens;
+            start--;
+        }
+        // 窗口以用户消息开头，部分服务商不接受以助手消息开始的对话
+        while (start < messages.size() - 1 && !"user".equals(messages.get(start).role())) {
+            start++;
+        }
+
+        if (start > lowest) {
+            log.debug("对话{}超出上下文预算，移出{}条早期消息，保留{}条约{}个token",
+                    conversation.getId(), start - lowest, messages.size() - start, used);
+            if (config.isSummaryEnabled()) {
+                maybeSummarize(conversation, config, lowest, start, offset);
+            }
+        }
+
+        List<ChatMessage> window = new ArrayList<>(messages.size() - start + 1);
+        if (system != null) {
+            window.add(system);
+        }
+        window.addAll(messages.subList(start, messages.size()));
+        return Collections.unmodifiableList(window);
+    }
+
+    /**
+     * 移出窗口且尚未摘要的消息累计超过阈值时，异步把它们并入滚动摘要，本次请求不等待摘要结果
+     */
+    private void maybeSummarize(Conversation conversation, AIModelProperties.ContextConfig config, int from, int to,
+                                int offset) {
+        List<ChatMessage> evicted = List.copyOf(conversation.getMessages().subList(from, to));
+        int evictedTokens = evicted.stream().mapToInt(ChatMessage::tokens).sum();
+        if (evictedTokens < config.getSummaryTriggerTokens() || !summarizing.add(conversation.getId())) {
+            return;
+        }
+
+        StringBuilder prompt = new StringBuilder("已有摘要：\n")
+                .append(conversation.getSummary() != null ? conversation.getSummary() : "无")
+                .append("\n\n新的对话：\n");
+        for (ChatMessage message : evicted) {
+            prompt.append(message.role()).append(": ").append(message.content()).append('\n');
+        }
+        AIRequestOptions options = AIRequestOptions.builder()
+                .taskType(AITaskType.SUMMARY)
+                .systemPrompt(SUMMARY_INSTRUCTIONS.formatted(config.getSummaryMaxTokens()))
+                .cacheable(false)
+                .hedgeable(false)
+                .userId(conversation.getUserId())
+                .build();
+
+        try {
+            clientFactoryProvider.getObject().getClientForTask(AITaskType.SUMMARY)
+                    .generateCodeAsync(prompt.toString(), "text", options)
+                    .whenComplete((summary, ex) -> {
+                        try {
+                            if (ex != null) {
+                                log.warn("对话{}生成摘要失败: {}", conversation.getId(), ex.getMessage());
+                            } else if (summary != null && !summary.isBlank()) {
+                                conversationManager.updateSummary(conversation.getUserId(), conversation.getId(),
+                                        summary.trim(), to + offset);
+                                log.debug("对话{}摘要已更新，覆盖前{}条消息", conversation.getId(), to + offset);
+                            }
+                        } finally {
+                            summarizing.remove(conversation.getId());
+                        }
+                    });
+        } catch (Exception e) {
+            summarizing.remove(conversation.getId());
+            log.warn("对话{}发起摘要失败: {}", conversation.getId(), e.getMessage());
+        }
+    }
+
+    private AIModelProperties.ContextConfig contextConfig(String modelType) {
+        AIModelProperties.ModelConfig config = properties.getModel(modelType);
+        return config != null && config.getContext() != null ? config.getContext() : new AIModelProperties.ContextConfig();
+    }
+}
@@ -20,6 +20,13 @@ public class Conversation {
     private List<ChatMessage> messages = new ArrayList<>();
     private long createdAt;
     private long lastUpdatedAt;
+    // 被移出上下文窗口的早期消息的滚动摘要，以及摘要覆盖到的消息下标(不含)
+    private String summary;
+    private int summarizedCount;
+    // 已写入MongoDB的消息数，更新时只追加其后的消息
+    private int persistedCount;
+    // 系统消息之后未加载的早期消息数，这些消息已被摘要覆盖；messages[i](i>0)在完整对话中的下标为 i + messageOffset
+    private int messageOffset;
 
     public Conversation(String userId, String modelType) {
         this.id = UUID.randomUUID().toString();
@@ -29,14 +36,14 @@ public class Conversation {
         this.lastUpdatedAt = this.createdAt;
 
         // 添加系统消息作为对话的开始
-        this.messages.add(new ChatMessage("system", "你是一个有用的AI助手，专注于帮助用户解决编程问题。"));
+        addMessage("system", "你是一个有用的AI助手，专注于帮助用户解决编程问题。");
     }
 
     /**
      * 添加用户消息
      */
     public void addUserMessage(String content) {
-        this.messages.add(new ChatMessage("user", content));
+        addMessage("user", content);
         this.lastUpdatedAt = System.currentTimeMillis();
     }
 
@@ -44,10 +51,36 @@ public class Conversation {
      * 添加AI回复
      */
     public void addAssistantMessage(String content) {
-        this.messages.add(new ChatMessage("assistant", content));
+        addMessage("assistant", content);
         this.lastUpdatedAt = System.currentTimeMillis();
     }
 
+    private void addMessage(String role, String content) {
+        this.messages.add(new ChatMessage(role, content, null, totalMessageCount()));
+    }
+
+    /**
+     * 对话的消息总数，包含未加载的早期消息
+     */
+    public int totalMessageCount() {
+        return messageOffset + messages.size();
+    }
+
+    /**
+     * 移除已被摘要覆盖的早期消息，只保留系统消息及其后尚未摘要的消息；被移除的消息不会再原样发送给模型
+     */
+    public void trimSummarized() {
+        int from = Math.min(summarizedCount - messageOffset, messages.size());
+        if (from <= 1 || !"system".equals(messages.get(0).role())) {
+            return;
+        }
+        List<ChatMessage> trimmed = new ArrayList<>(messages.size() - from + 1);
+        trimmed.add(messages.get(0));
+        trimmed.addAll(messages.subList(from, messages.size()));
+        this.messageOffset += from - 1;
+        this.messages = trimmed;
+    }
+
     /**
      * 获取最后一条消息
      */
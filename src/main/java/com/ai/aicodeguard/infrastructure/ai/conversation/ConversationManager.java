@@ -3,13 +3,20 @@ package com.ai.aicodeguard.infrastructure.ai.conversation;
 import com.ai.aicodeguard.domain.conversation.ConversationDocument;
 import com.ai.aicodeguard.infrastructure.cache.ConversationCacheService;
 import com.ai.aicodeguard.infrastructure.mongo.ConversationRepository;
+import com.mongodb.client.result.UpdateResult;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -25,7 +32,10 @@ public class ConversationManager {
 
     private final ConversationRepository conversationRepository;
     private final ConversationCacheService cacheService;
+    private final MongoTemplate mongoTemplate;
 
+    // 追加条件因并发写入未满足时的最大重试次数
+    private static final int APPEND_RETRIES = 3;
 
     /**
      * 创建新的对话
@@ -39,6 +49,7 @@ public class ConversationManager {
         // 保存到MongoDB
         ConversationDocument document = ConversationDocument.fromConversation(conversation);
         conversationRepository.save(document);
+        conversation.setPersistedCount(conversation.getMessages().size());
 
         // 添加到缓存
         cacheService.cacheConversation(userId, conversation);
@@ -47,7 +58,7 @@ public class ConversationManager {
     }
 
     /**
-     * 获取对话
+     * 获取对话，已被摘要覆盖的早期消息不加载，与缓存中保存的范围一致
      * @param userId
      * @param conversationId
      * @return
@@ -66,6 +77,7 @@ public class ConversationManager {
                 // 仅处理活跃状态的对话
                 if (document.isActive()) {
                     conversation = document.toConversation();
+                    conversation.trimSummarized();
                     // 更新缓存
                     cacheService.cacheConversation(userId, conversation);
                 }
@@ -76,19 +88,135 @@ public class ConversationManager {
     }
 
     /**
-     * 更新对话
+     * 获取包含全部消息的对话历史，直接读取MongoDB；缓存中只有尚未摘要的消息
+     * @param userId
+     * @param conversationId
+     * @return
+     */
+    public Conversation getConversationHistory(String userId, String conversationId) {
+        return conversationRepository.findByUserIdAndConversationId(userId, conversationId)
+                .filter(ConversationDocument::isActive)
+                .map(ConversationDocument::toConversation)
+                .orElse(null);
+    }
+
+    /**
+     * 更新对话，只把上次写入之后新增的消息以$push追加到MongoDB，并在同一次更新中写入最后更新时间。
+     * 以文档中的消息数作为写入条件：已被其他请求追加时，按当前消息数为本请求的新消息重新编号后追加；
+     * 只有文档不存在时才整体写入
      * @param userId
      * @param conversation
      * @return
      */
     public void updateConversation(String userId, Conversation conversation) {
-        // 更新MongoDB
+        int persisted = conversation.getPersistedCount();
+        // 上次写入后的新消息在messages中的起始位置
+        int from = persisted - conversation.getMessageOffset();
+
+        boolean appended = false;
+        boolean renumbered = false;
+        if (persisted > 0 && from >= 1 && from <= conversation.getMessages().size()) {
+            appended = appendMessages(userId, conversation, persisted, from);
+            renumbered = !appended && appendAfterConflict(userId, conversation, from);
+        }
+        if (!appended && !renumbered) {
+            saveConversation(userId, conversation);
+        }
+        conversation.setPersistedCount(conversation.totalMessageCount());
+
+        // 更新缓存：追加时只推送新消息，整体写入后缓存也整体替换；
+        // 与其他请求的消息交错写入后本地副本不完整，删除缓存，下次从MongoDB加载
+        if (appended) {
+            cacheService.appendMessages(userId, conversation, from);
+        } else if (renumbered) {
+            cacheService.removeConversation(userId, conversation.getId());
+        } else {
+            cacheService.cacheConversation(userId, conversation);
+        }
+    }
+
+    /**
+     * 以一次条件更新追加消息
+     * @return 文档不满足写入条件时返回false
+     */
+    private boolean appendMessages(String userId, Conversation conversation, int persisted, int from) {
+        List<ChatMessage> messages = conversation.getMessages();
+        Query query = byConversation(userId, conversation.getId())
+                .addCriteria(Criteria.where("messageCount").is(persisted));
+        Update update = new Update()
+                .set("messageCount", conversation.totalMessageCount())
+                .set("lastUpdatedAt", conversation.getLastUpdatedAt());
+        if (messages.size() > from) {
+            update.push("messages").each(messages.subList(from, messages.size()).toArray());
+        }
+
+        UpdateResult result = mongoTemplate.updateFirst(query, update, ConversationDocument.class);
+        return result.getMatchedCount() > 0;
+    }
+
+    /**
+     * 写入条件未满足时重新读取MongoDB中的消息数，把本请求的新消息按该数重新编号后追加，有限次重试
+     * @return 文档不存在时返回false
+     */
+    private boolean appendAfterConflict(String userId, Conversation conversation, int from) {
+        List<ChatMessage> messages = conversation.getMessages().subList(from, conversation.getMessages().size());
+        for (int attempt = 0; attempt < APPEND_RETRIES; attempt++) {
+            Query current = byConversation(userId, conversation.getId());
+            current.fields().include("messageCount");
+            ConversationDocument stored = mongoTemplate.findOne(current, ConversationDocument.class);
+            if (stored == null) {
+                return false;
+            }
+
+            int count = stored.getMessageCount();
+            Criteria guard = Criteria.where("messageCount").is(count);
+            if (count == 0) {
+                // 旧数据没有消息数，以消息列表长度作为写入条件
+                count = conversationRepository.findByUserIdAndConversationId(userId, conversation.getId())
+                        .map(document -> document.getMessages().size())
+                        .orElse(0);
+                guard = guard.and("messages").size(count);
+            }
+
+            List<ChatMessage> renumbered = new ArrayList<>(messages.size());
+            for (ChatMessage message : messages) {
+                renumbered.add(new ChatMessage(message.role(), message.content(), message.tokens(),
+                        count + renumbered.size()));
+            }
+            Update update = new Update()
+                    .set("messageCount", count + renumbered.size())
+                    .set("lastUpdatedAt", conversation.getLastUpdatedAt());
+            if (!renumbered.isEmpty()) {
+                update.push("messages").each(renumbered.toArray());
+            }
+            Query query = byConversation(userId, conversation.getId()).addCriteria(guard);
+            if (mongoTemplate.updateFirst(query, update, ConversationDocument.class).getMatchedCount() > 0) {
+                log.debug("对话{}已被其他请求更新，新消息从第{}条起追加", conversation.getId(), count);
+                return true;
+            }
+        }
+        throw new IllegalStateException("对话" + conversation.getId() + "并发写入冲突，追加消息失败");
+    }
+
+    /**
+     * 整体写入对话的全部消息，只用于MongoDB中尚无该对话时
+     */
+    private void saveConversation(String userId, Conversation conversation) {
         Optional<ConversationDocument> optionalDocument =
                 conversationRepository.findByUserIdAndConversationId(userId, conversation.getId());
 
         if (optionalDocument.isPresent()) {
             ConversationDocument document = optionalDocument.get();
-            document.setMessages(conversation.getMessages());
+            log.warn("对话{}的本地消息与MongoDB的对应关系未知，整体写入", conversation.getId());
+            List<ChatMessage> messages = conversation.getMessages();
+            if (conversation.getMessageOffset() > 0) {
+                // 未加载的早期消息沿用MongoDB中的内容
+                List<ChatMessage> stored = document.getMessages();
+                messages = new ArrayList<>(stored.subList(0, Math.min(conversation.getMessageOffset() + 1, stored.size())));
+                messages.addAll(conversation.getMessages().subList(1, conversation.getMessages().size()));
+            }
+            document.setMessages(messages);
+            document.setMessageCount(messages.size());
             document.setLastUpdatedAt(conversation.getLastUpdatedAt());
             conversationRepository.save(document);
         } else {
@@ -96,9 +224,27 @@ public class ConversationManager {
             ConversationDocument document = ConversationDocument.fromConversation(conversation);
             conversationRepository.save(document);
         }
+    }
 
-        // 更新缓存
-        cacheService.cacheConversation(userId, conversation);
+    /**
+     * 更新对话的滚动摘要，只在新摘要覆盖更多消息时写入，避免并发摘要相互覆盖
+     * @param userId
+     * @param conversationId
+     * @param summary 摘要内容
+     * @param summarizedCount 摘要覆盖到的消息下标(不含)
+     */
+    public void updateSummary(String userId, String conversationId, String summary, int summarizedCount) {
+        // 只更新摘要字段，不覆盖同时追加的消息
+        Query query = byConversation(userId, conversationId)
+                .addCriteria(Criteria.where("summarizedCount").lt(summarizedCount));
+        Update update = new Update()
+                .set("summary", summary)
+                .set("summarizedCount", summarizedCount);
+
+        if (mongoTemplate.updateFirst(query, update, ConversationDocument.class).getModifiedCount() > 0) {
+            // 缓存中的对话不含新摘要，删除后下次从MongoDB加载
+            cacheService.removeConversation(userId, conversationId);
+        }
     }
 
     /**
@@ -109,14 +255,8 @@ public class ConversationManager {
      */
     public void removeConversation(String userId, String conversationId) {
         // 从MongoDB中设置为非活跃
-        Optional<ConversationDocument> optionalDocument =
-                conversationRepository.findByUserIdAndConversationId(userId, conversationId);
-
-        if (optionalDocument.isPresent()) {
-            ConversationDocument document = optionalDocument.get();
-            document.setActive(false);
-            conversationRepository.save(document);
-        }
+        mongoTemplate.updateFirst(byConversation(userId, conversationId),
+                Update.update("active", false), ConversationDocument.class);
 
         // 从缓存删除
         cacheService.removeConversation(userId, conversationId);
@@ -139,8 +279,9 @@ public class ConversationManager {
             // 查找所有超过30天未更新的活跃对话
             conversationRepository.findByLastUpdatedAtBeforeAndActiveIsTrue(expiryTimestamp)
                 .forEach(document -> {
-                    document.setActive(false);
-                    conversationRepository.save(document);
+                    // 只更新状态字段，不重写消息列表
+                    mongoTemplate.updateFirst(byConversation(document.getUserId(), document.getConversationId()),
+                            Update.update("active", false), ConversationDocument.class);
                     log.info("对话已过期: userId={}, conversationId={}",
                             document.getUserId(), document.getConversationId());
                 });
@@ -148,4 +289,8 @@ public class ConversationManager {
             log.error("清理过期对话失败", e);
         }
     }
+
+    private static Query byConversation(String userId, String conversationId) {
+        return Query.query(Criteria.where("userId").is(userId).and("conversationId").is(conversationId));
+    }
 }
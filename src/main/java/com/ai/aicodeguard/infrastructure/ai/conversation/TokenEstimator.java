@@ -0,0 +1,38 @@
+package com.ai.aicodeguard.infrastructure.ai.conversation;
+
+/**
+ * @ClassName: TokenEstimator
+ * @Description: 消息token数估算，不依赖具体模型的分词器
+ * @Author: LZX
+ * @Date: 2025/5/22 10:12
+ */
+public final class TokenEstimator {
+
+    /**
+     * 每条消息的角色、分隔符等固定开销
+     */
+    private static final int MESSAGE_OVERHEAD = 4;
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * 估算文本的token数：中日韩字符按每字1个token计，其余字符按每4个字符1个token计，结果偏保守
+     */
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return MESSAGE_OVERHEAD;
+        }
+        int wide = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x2E80 && c <= 0x9FFF || c >= 0xAC00 && c <= 0xD7AF || c >= 0xFF00 && c <= 0xFFEF) {
+                wide++;
+            } else {
+                other++;
+            }
+        }
+        return MESSAGE_OVERHEAD + wide + (other + 3) / 4;
+    }
+}
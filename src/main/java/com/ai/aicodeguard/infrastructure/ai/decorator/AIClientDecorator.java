@@ -0,0 +1,19 @@
+package com.ai.aicodeguard.infrastructure.ai.decorator;
+
+import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+
+/**
+ * @InterfaceName: AIClientDecorator
+ * @Description: AI客户端装饰器，由AIClientFactory按@Order顺序包装各模型客户端，顺序越靠后越处于外层
+ * @Author: LZX
+ * @Date: 2025/5/18 10:02
+ */
+public interface AIClientDecorator {
+
+    /**
+     * 包装AI客户端
+     * @param client 被包装的客户端
+     * @return 包装后的客户端
+     */
+    AIClientService decorate(AIClientService client);
+}
@@ -0,0 +1,83 @@
+package com.ai.aicodeguard.infrastructure.ai.decorator;
+
+import com.ai.aicodeguard.infrastructure.ai.AIModelProperties;
+import com.ai.aicodeguard.infrastructure.ai.conversation.ChatMessage;
+import com.ai.aicodeguard.infrastructure.ai.conversation.Conversation;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.stream.Collectors;
+
+/**
+ * @ClassName: AIRequestFingerprint
+ * @Description: AI请求指纹，用于缓存、合并等场景判断两次请求是否等价
+ * @Author: LZX
+ * @Date: 2025/5/19 09:30
+ */
+public final class AIRequestFingerprint {
+
+    private AIRequestFingerprint() {
+    }
+
+    /**
+     * 代码生成请求指纹：模型 + 采样参数 + 语言 + 规范化后的系统提示与提示词
+     */
+    public static String ofCode(String modelKey, AIModelProperties.ModelConfig config,
+                                String prompt, String language, String systemPrompt) {
+        StringBuilder raw = new StringBuilder()
+                .append(modelKey).append('\n');
+        if (config != null) {
+            raw.append(config.getModelName()).append('\n')
+                    .append(config.getTemperature()).append('\n')
+                    .append(config.getMaxTokens()).append('\n');
+        }
+        raw.append(language == null ? "" : language.trim().toLowerCase()).append('\n')
+                .append(normalizePrompt(systemPrompt)).append('\u0000')
+                .append(normalizePrompt(prompt));
+        return sha256(raw.toString());
+    }
+
+    /**
+     * 对话请求指纹：模型 + 已加载的历史(早期消息以摘要代替) + 新消息
+     */
+    public static String ofConversation(String modelKey, Conversation conversation, String message) {
+        StringBuilder raw = new StringBuilder()
+                .append(modelKey).append('\n');
+        for (ChatMessage chatMessage : conversation.getMessages()) {
+            raw.append(chatMessage.role()).append('\u0000')
+                    .append(chatMessage.content()).append('\u0001');
+        }
+        // 早期消息被摘要替代后不再加载，以摘要与省略的消息数区分历史不同的对话
+        if (conversation.getMessageOffset() > 0) {
+            raw.append(conversation.getMessageOffset()).append('\u0000')
+                    .append(conversation.getSummary()).append('\u0001');
+        }
+        raw.append(normalizePrompt(message));
+        return sha256(raw.toString());
+    }
+
+    /**
+     * 规范化提示词：统一换行符并去除行尾空白，不改动行内内容
+     */
+    public static String normalizePrompt(String prompt) {
+        if (prompt == null) {
+            return "";
+        }
+        return prompt.replace("\r\n", "\n")
+                .lines()
+                .map(String::stripTrailing)
+                .collect(Collectors.joining("\n"))
+                .strip();
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
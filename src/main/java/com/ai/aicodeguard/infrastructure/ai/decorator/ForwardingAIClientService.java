@@ -0,0 +1,79 @@
+package com.ai.aicodeguard.infrastructure.ai.decorator;
+
+import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AIModelType;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
+import com.ai.aicodeguard.infrastructure.ai.StreamingResponseHandler;
+import com.ai.aicodeguard.infrastructure.ai.conversation.Conversation;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamChunk;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @ClassName: ForwardingAIClientService
+ * @Description: 将所有调用转发给被包装客户端的装饰器基类
+ * @Author: LZX
+ * @Date: 2025/5/18 10:08
+ */
+public abstract class ForwardingAIClientService implements AIClientService {
+
+    protected final AIClientService delegate;
+
+    protected ForwardingAIClientService(AIClientService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String generateCode(String prompt, String language, AIRequestOptions options) {
+        return delegate.generateCode(prompt, language, options);
+    }
+
+    @Override
+    public CompletableFuture<String> generateCodeAsync(String prompt, String language, AIRequestOptions options) {
+        return delegate.generateCodeAsync(prompt, language, options);
+    }
+
+    @Override
+    public void generateCodeStreaming(String prompt, String language, AIRequestOptions options,
+                                      SseEmitter emitter, StreamingResponseHandler handler) {
+        delegate.generateCodeStreaming(prompt, language, options, emitter, handler);
+    }
+
+    @Override
+    public String sendMessage(Conversation conversation, String message) {
+        return delegate.sendMessage(conversation, message);
+    }
+
+    @Override
+    public CompletableFuture<String> sendMessageAsync(Conversation conversation, String message) {
+        return delegate.sendMessageAsync(conversation, message);
+    }
+
+    @Override
+    public Conversation createConversation(String userId) {
+        return delegate.createConversation(userId);
+    }
+
+    @Override
+    public AIModelType getModelType() {
+        return delegate.getModelType();
+    }
+
+    @Override
+    public String getModelKey() {
+        return delegate.getModelKey();
+    }
+
+    @Override
+    public void sendMessageStreaming(Conversation conversation, String message,
+                                     SseEmitter emitter, StreamingResponseHandler handler) {
+        delegate.sendMessageStreaming(conversation, message, emitter, handler);
+    }
+
+    @Override
+    public Flux<StreamChunk> streamMessage(Conversation conversation, String message) {
+        return delegate.streamMessage(conversation, message);
+    }
+}
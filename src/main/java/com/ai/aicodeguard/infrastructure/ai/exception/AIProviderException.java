@@ -0,0 +1,36 @@
+package com.ai.aicodeguard.infrastructure.ai.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * @ClassName: AIProviderException
+ * @Description: AI模型接口返回非成功状态码时抛出，携带状态码与服务端建议的重试等待时间
+ * @Author: LZX
+ * @Date: 2025/5/20 09:12
+ */
+@Getter
+public class AIProviderException extends RuntimeException {
+
+    private final int statusCode;
+    // 服务端通过Retry-After等响应头给出的等待时间，可能为null
+    private final Duration retryAfter;
+
+    public AIProviderException(int statusCode, Duration retryAfter) {
+        this(statusCode, retryAfter, "API调用失败，状态码: " + statusCode);
+    }
+
+    public AIProviderException(int statusCode, Duration retryAfter, String message) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * 是否为限流或过载类错误
+     */
+    public boolean isThrottled() {
+        return statusCode == 429 || statusCode == 503 || statusCode == 529;
+    }
+}
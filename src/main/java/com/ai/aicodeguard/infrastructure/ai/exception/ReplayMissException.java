@@ -0,0 +1,20 @@
+package com.ai.aicodeguard.infrastructure.ai.exception;
+
+import lombok.Getter;
+
+/**
+ * @ClassName: ReplayMissException
+ * @Description: 回放模式下请求指纹在录制文件中不存在
+ * @Author: LZX
+ * @Date: 2025/5/24 10:30
+ */
+@Getter
+public class ReplayMissException extends RuntimeException {
+
+    private final String fingerprint;
+
+    public ReplayMissException(String modelKey, String fingerprint) {
+        super("回放记录中不存在该请求，模型: " + modelKey + "，指纹: " + fingerprint);
+        this.fingerprint = fingerprint;
+    }
+}
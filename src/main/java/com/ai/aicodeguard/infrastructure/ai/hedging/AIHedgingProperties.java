@@ -0,0 +1,35 @@
+package com.ai.aicodeguard.infrastructure.ai.hedging;
+
+import com.ai.aicodeguard.infrastructure.ai.AITaskType;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * @ClassName: AIHedgingProperties
+ * @Description: 代码生成对冲请求配置
+ * @Author: LZX
+ * @Date: 2025/5/22 09:10
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.hedging")
+public class AIHedgingProperties {
+    private boolean enabled = false;
+    // 启用对冲的任务类型，仅对非流式代码生成调用生效
+    private Set<AITaskType> tasks = EnumSet.of(AITaskType.GENERATION, AITaskType.SCAN);
+    // 对冲请求占总请求数的比例上限(%)
+    private double budgetPercent = 5;
+    // 预算可累积的最大对冲次数，允许短时突发
+    private int budgetBurst = 10;
+    // 统计延迟分位数的样本数，样本不足时不对冲
+    private int windowSize = 256;
+    private int minSamples = 20;
+    // 对冲等待时间取观测到的p95，但不低于该值(ms)
+    private long minDelay = 500;
+    // 对冲请求优先发往其他健康的模型，没有其他模型时发往同一模型
+    private boolean preferAlternate = true;
+}
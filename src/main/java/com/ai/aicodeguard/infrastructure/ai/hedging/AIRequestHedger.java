@@ -0,0 +1,119 @@
+package com.ai.aicodeguard.infrastructure.ai.hedging;
+
+import com.ai.aicodeguard.infrastructure.ai.AIClientFactory;
+import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
+import com.ai.aicodeguard.infrastructure.ai.AITaskType;
+import com.ai.aicodeguard.infrastructure.ai.decorator.AIClientDecorator;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * @ClassName: AIRequestHedger
+ * @Description: 代码生成对冲：请求超过观测到的p95仍未返回时，向其他或同一模型再发一次请求，先返回有效结果者胜出，
+ *               位于请求合并之内，使对冲请求能真正发出
+ * @Author: LZX
+ * @Date: 2025/5/22 09:50
+ */
+@Component
+@Order(30)
+@RequiredArgsConstructor
+public class AIRequestHedger implements AIClientDecorator {
+
+    private final AIHedgingProperties hedgingProperties;
+    private final ObjectProvider<AIClientFactory> clientFactory;
+    private final MeterRegistry meterRegistry;
+
+    // 模型+任务类型 -> 延迟窗口，不同任务的耗时差异很大，分开统计
+    private final Map<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+
+    private HedgeBudget budget;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        budget = new HedgeBudget(hedgingProperties.getBudgetPercent(), hedgingProperties.getBudgetBurst());
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ai-hedge");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public AIClientService decorate(AIClientService client) {
+        return hedgingProperties.isEnabled() ? new HedgingAIClientService(client, this) : client;
+    }
+
+    boolean isHedgeable(AIRequestOptions options) {
+        return options.isHedgeable() && hedgingProperties.getTasks().contains(options.getTaskType());
+    }
+
+    /**
+     * 是否统计该任务类型的延迟，只统计可对冲的任务类型
+     */
+    boolean tracksLatency(AITaskType taskType) {
+        return hedgingProperties.getTasks().contains(taskType);
+    }
+
+    /**
+     * 对冲等待时间
+     * @return 等待时间(ms)，样本不足时返回-1表示不对冲
+     */
+    long hedgeDelay(String modelKey, AITaskType taskType) {
+        long p95 = window(modelKey, taskType).p95(hedgingProperties.getMinSamples());
+        return p95 < 0 ? -1 : Math.max(hedgingProperties.getMinDelay(), p95);
+    }
+
+    void recordLatency(String modelKey, AITaskType taskType, long latencyMillis) {
+        if (tracksLatency(taskType)) {
+            window(modelKey, taskType).record(latencyMillis);
+        }
+    }
+
+    /**
+     * 选择对冲目标，优先其他健康模型
+     */
+    AIClientService hedgeTarget(AIClientService primary, AIRequestOptions options) {
+        if (hedgingProperties.isPreferAlternate()) {
+            AIClientService alternate = clientFactory.getObject()
+                    .getClientForTask(options.getTaskType(), primary.getModelKey());
+            if (alternate != null) {
+                return alternate;
+            }
+        }
+        return primary;
+    }
+
+    HedgeBudget getBudget() {
+        return budget;
+    }
+
+    ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    void record(String modelKey, String name, String result) {
+        meterRegistry.counter(name, "model", modelKey, "result", result).increment();
+    }
+
+    private LatencyWindow window(String modelKey, AITaskType taskType) {
+        return windows.computeIfAbsent(modelKey + ":" + taskType,
+                key -> new LatencyWindow(hedgingProperties.getWindowSize()));
+    }
+}
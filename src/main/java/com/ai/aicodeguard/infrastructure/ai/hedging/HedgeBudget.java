@@ -0,0 +1,31 @@
+package com.ai.aicodeguard.infrastructure.ai.hedging;
+
+/**
+ * @ClassName: HedgeBudget
+ * @Description: 对冲预算：每个请求存入固定比例的额度，每次对冲消耗一个额度，保证对冲数不超过请求数的配置比例
+ * @Author: LZX
+ * @Date: 2025/5/22 09:32
+ */
+class HedgeBudget {
+
+    private final double depositPerRequest;
+    private final double maxBalance;
+    private double balance;
+
+    HedgeBudget(double percent, int burst) {
+        this.depositPerRequest = percent / 100.0;
+        this.maxBalance = Math.max(1, burst);
+    }
+
+    synchronized void deposit() {
+        balance = Math.min(maxBalance, balance + depositPerRequest);
+    }
+
+    synchronized boolean tryWithdraw() {
+        if (balance < 1) {
+            return false;
+        }
+        balance -= 1;
+        return true;
+    }
+}
@@ -0,0 +1,202 @@
+package com.ai.aicodeguard.infrastructure.ai.hedging;
+
+import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
+import com.ai.aicodeguard.infrastructure.ai.decorator.ForwardingAIClientService;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * @ClassName: HedgingAIClientService
+ * @Description: 对非流式代码生成调用进行对冲的客户端装饰器
+ * @Author: LZX
+ * @Date: 2025/5/22 10:20
+ */
+@Slf4j
+class HedgingAIClientService extends ForwardingAIClientService {
+
+    private static final String METRIC_HEDGES = "ai.hedging.requests";
+    private static final String METRIC_WINS = "ai.hedging.wins";
+
+    private final AIRequestHedger hedger;
+
+    HedgingAIClientService(AIClientService delegate, AIRequestHedger hedger) {
+        super(delegate);
+        this.hedger = hedger;
+    }
+
+    @Override
+    public String generateCode(String prompt, String language, AIRequestOptions options) {
+        if (!hedger.isHedgeable(options)) {
+            return timed(options, () -> delegate.generateCode(prompt, language, options));
+        }
+        // 对冲需要可取消的异步请求，同步调用在此等待结果
+        try {
+            return generateCodeAsync(prompt, language, options).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> generateCodeAsync(String prompt, String language, AIRequestOptions options) {
+        long start = System.currentTimeMillis();
+        CompletableFuture<String> primary = delegate.generateCodeAsync(prompt, language, options);
+        primary.thenAccept(result -> hedger.recordLatency(getModelKey(), options.getTaskType(),
+                System.currentTimeMillis() - start));
+        if (!hedger.isHedgeable(options)) {
+            return primary;
+        }
+
+        hedger.getBudget().deposit();
+        long delay = hedger.hedgeDelay(getModelKey(), options.getTaskType());
+        if (delay < 0) {
+            return primary;
+        }
+
+        HedgedFuture result = new HedgedFuture(primary, options, start);
+        primary.whenComplete((value, error) -> result.onPrimary(value, error));
+        result.timer = hedger.getScheduler().schedule(
+                () -> fireHedge(result, prompt, language, options, delay), delay, TimeUnit.MILLISECONDS);
+        return result;
+    }
+
+    private void fireHedge(HedgedFuture result, String prompt, String language, AIRequestOptions options, long delay) {
+        if (result.isDone()) {
+            return;
+        }
+        if (!hedger.getBudget().tryWithdraw()) {
+            hedger.record(getModelKey(), METRIC_HEDGES, "budget_exhausted");
+            return;
+        }
+
+        AIClientService target = hedger.hedgeTarget(delegate, options);
+        log.info("{}模型代码生成超过{}ms未返回，向{}发出对冲请求", getModelKey(), delay, target.getModelKey());
+        hedger.record(getModelKey(), METRIC_HEDGES, "fired");
+        try {
+            CompletableFuture<String> hedge = target.generateCodeAsync(prompt, language,
+                    options.toBuilder().hedgeable(false).build());
+            result.attachHedge(hedge);
+        } catch (RuntimeException e) {
+            log.warn("发出对冲请求失败: {}", e.getMessage());
+        }
+    }
+
+    private String timed(AIRequestOptions options, Supplier<String> call) {
+        long start = System.currentTimeMillis();
+        String result = call.get();
+        hedger.recordLatency(getModelKey(), options.getTaskType(), System.currentTimeMillis() - start);
+        return result;
+    }
+
+    private static boolean isValid(String value) {
+        return value != null && !value.isBlank();
+    }
+
+    /**
+     * 对冲结果：先返回有效结果的请求胜出并取消另一方；取消时同时取消两个请求
+     */
+    private class HedgedFuture extends CompletableFuture<String> {
+        private final CompletableFuture<String> primary;
+        private final AIRequestOptions options;
+        private final long start;
+        private CompletableFuture<String> hedge;
+        private volatile ScheduledFuture<?> timer;
+        // 首个失败或无效的结果，另一方也失败时以此结束
+        private Throwable firstError;
+        private String firstInvalid;
+        private int pending = 1;
+
+        HedgedFuture(CompletableFuture<String> primary, AIRequestOptions options, long start) {
+            this.primary = primary;
+            this.options = options;
+            this.start = start;
+        }
+
+        synchronized void attachHedge(CompletableFuture<String> future) {
+            if (isDone()) {
+                future.cancel(true);
+                return;
+            }
+            hedge = future;
+            pending++;
+            future.whenComplete((value, error) -> onResult(value, error, false));
+        }
+
+        void onPrimary(String value, Throwable error) {
+            onResult(value, error, true);
+        }
+
+        private void onResult(String value, Throwable error, boolean fromPrimary) {
+            CompletableFuture<String> loser;
+            synchronized (this) {
+                pending--;
+                if (isDone()) {
+                    return;
+                }
+                if (error == null && isValid(value)) {
+                    loser = fromPrimary ? hedge : primary;
+                    complete(value);
+                    if (hedge != null) {
+                        hedger.record(getModelKey(), METRIC_WINS, fromPrimary ? "primary" : "hedge");
+                    }
+                } else {
+                    if (error != null && firstError == null) {
+                        firstError = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                    } else if (error == null && firstInvalid == null) {
+                        firstInvalid = value;
+                    }
+                    // 对冲尚未发出时主请求失败，不再对冲
+                    if (pending > 0 && hedge != null) {
+                        return;
+                    }
+                    loser = null;
+                    if (firstInvalid != null) {
+                        complete(firstInvalid);
+                    } else {
+                        completeExceptionally(firstError);
+                    }
+                }
+            }
+            cancelTimer();
+            if (loser != null) {
+                if (loser == primary) {
+                    // 落败的主请求至少耗时至今，计入样本，避免p95只统计较快的请求而偏低
+                    hedger.recordLatency(getModelKey(), options.getTaskType(), System.currentTimeMillis() - start);
+                }
+                loser.cancel(true);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                cancelTimer();
+                primary.cancel(true);
+                CompletableFuture<String> current;
+                synchronized (this) {
+                    current = hedge;
+                }
+                if (current != null) {
+                    current.cancel(true);
+                }
+            }
+            return cancelled;
+        }
+
+        private void cancelTimer() {
+            ScheduledFuture<?> scheduled = timer;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+}
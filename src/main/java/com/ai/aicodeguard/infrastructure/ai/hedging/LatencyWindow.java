@@ -0,0 +1,50 @@
+package com.ai.aicodeguard.infrastructure.ai.hedging;
+
+import java.util.Arrays;
+
+/**
+ * @ClassName: LatencyWindow
+ * @Description: 最近N次成功请求的延迟样本，用于估算分位数
+ * @Author: LZX
+ * @Date: 2025/5/22 09:25
+ */
+class LatencyWindow {
+
+    // 每新增该数量的样本重新计算一次分位数
+    private static final int RECOMPUTE_INTERVAL = 16;
+
+    private final long[] samples;
+    private int count;
+    private int next;
+    private int sinceRecompute;
+    private long cachedP95 = -1;
+
+    LatencyWindow(int size) {
+        this.samples = new long[size];
+    }
+
+    synchronized void record(long latencyMillis) {
+        samples[next] = latencyMillis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+        if (++sinceRecompute >= RECOMPUTE_INTERVAL) {
+            cachedP95 = -1;
+        }
+    }
+
+    /**
+     * @return p95延迟(ms)，样本数不足时返回-1
+     */
+    synchronized long p95(int minSamples) {
+        if (count < minSamples) {
+            return -1;
+        }
+        if (cachedP95 < 0) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            cachedP95 = sorted[Math.min(count - 1, (int) Math.ceil(count * 0.95) - 1)];
+            sinceRecompute = 0;
+        }
+        return cachedP95;
+    }
+}
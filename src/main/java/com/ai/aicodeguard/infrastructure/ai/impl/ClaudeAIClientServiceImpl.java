@@ -3,10 +3,31 @@ package com.ai.aicodeguard.infrastructure.ai.impl;
 import com.ai.aicodeguard.infrastructure.ai.AIClientService;
 import com.ai.aicodeguard.infrastructure.ai.AIModelProperties;
 import com.ai.aicodeguard.infrastructure.ai.AIModelType;
+import com.ai.aicodeguard.infrastructure.ai.AIPriority;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
+import com.ai.aicodeguard.infrastructure.ai.AITaskType;
+import com.ai.aicodeguard.infrastructure.ai.AIUsage;
 import com.ai.aicodeguard.infrastructure.ai.StreamingResponseHandler;
+import com.ai.aicodeguard.infrastructure.ai.batch.AIBatchCapable;
+import com.ai.aicodeguard.infrastructure.ai.batch.AIBatchRequest;
+import com.ai.aicodeguard.infrastructure.ai.batch.AIBatchResult;
+import com.ai.aicodeguard.infrastructure.ai.conversation.ChatMessage;
+import com.ai.aicodeguard.infrastructure.ai.conversation.ContextWindowManager;
 import com.ai.aicodeguard.infrastructure.ai.conversation.Conversation;
 import com.ai.aicodeguard.infrastructure.ai.conversation.ConversationManager;
-import com.ai.aicodeguard.infrastructure.ai.streaming.DefaultStreamingResponseHandler;
+import com.ai.aicodeguard.infrastructure.ai.streaming.SseTokenParser;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamChunk;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamSummary;
+import com.ai.aicodeguard.infrastructure.ai.exception.AIProviderException;
+import com.ai.aicodeguard.infrastructure.ai.metering.AICallMetrics;
+import com.ai.aicodeguard.infrastructure.ai.metering.AIUsageRecorder;
+import com.ai.aicodeguard.infrastructure.ai.transport.AIHttpTransport;
+import com.ai.aicodeguard.infrastructure.ai.transport.CallFlux;
+import com.ai.aicodeguard.infrastructure.ai.transport.CallFuture;
+import com.ai.aicodeguard.infrastructure.ai.transport.JsonRequestBody;
+import com.ai.aicodeguard.infrastructure.ai.transport.JsonTemplate;
+import com.ai.aicodeguard.infrastructure.ai.transport.RateLimitHeaders;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
@@ -15,17 +36,19 @@ import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
-import org.jetbrains.annotations.NotNull;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
-import java.net.InetSocketAddress;
-import java.net.Proxy;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -37,63 +60,278 @@ import java.util.stream.Collectors;
 @Service
 @Slf4j
 @RequiredArgsConstructor
-public class ClaudeAIClientServiceImpl implements AIClientService {
+public class ClaudeAIClientServiceImpl implements AIClientService, AIBatchCapable {
+
+    private static final String DEFAULT_CODE_SYSTEM = "你是一个专业的编程助手，专注于生成干净、高效的代码。";
+    private static final String DEFAULT_CHAT_SYSTEM = "你是一个有用的AI助手，专注于帮助用户解决编程问题。";
+
+    /**
+     * 代码生成提示词模板，参数依次为目标语言与需求描述
+     */
+    private static final JsonTemplate CODE_PROMPT = JsonTemplate.compile(
+            """
+            我需要你帮我生成%s代码。以下是需求描述：
+            
+            %s
+            
+            请生成符合需求的完整代码，不要包含额外的解释。代码需要遵循最佳实践，
+            保证安全性、可读性和性能。使用适当的注释说明关键步骤。""");
+
+    /**
+     * Cypher查询生成提示词模板，参数为需求描述
+     */
+    private static final JsonTemplate CYPHER_PROMPT = JsonTemplate.compile(
+            """
+            你是一个专业的Cypher查询生成器。请根据以下需求生成Cypher查询：
+            
+            %s
+            
+            请确保生成的查询符合Cypher语法，并且能够高效地执行。
+            """);
 
     private final AIModelProperties properties;
     private final ConversationManager conversationManager;
+    private final ContextWindowManager contextWindowManager;
     private final ObjectMapper objectMapper;
+    private final AIHttpTransport httpTransport;
+    private final AIUsageRecorder usageRecorder;
 
     /**
      * 生成代码
      * @param prompt 自然语言需求
      * @param language 目标编程语言
+     * @param options 调用选项
      * @return
      */
     @Override
-    public String generateCode(String prompt, String language) {
+    public String generateCode(String prompt, String language, AIRequestOptions options) {
         log.info("调用Claude模型生成{}代码", language);
         AIModelProperties.ModelConfig config = properties.getModel("claude");
 
-        List<Map<String, String>> messages = getMaps(prompt, language);
-
         try {
             // 发送非流式请求
-            String responseContent = sendRequest(config, messages, false);
+            String responseContent = sendRequest(config, codeRequestBody(config, prompt, language, options, false), options.getPriority(),
+                    usageRecorder.start(AIModelType.CLAUDE, "claude", options.getTaskType(), options.getUserId()));
 
             // 提取代码块
             return extractCodeBlock(responseContent, language);
+        } catch (AIProviderException e) {
+            // 保留状态码与重试等待时间，便于上层区分限流
+            throw e;
         } catch (Exception e) {
             log.error("调用Claude模型生成代码失败", e);
             throw new RuntimeException("调用Claude模型生成代码失败: " + e.getMessage());
         }
     }
 
-    @NotNull
-    private List<Map<String, String>> getMaps(String prompt, String language) {
-        String fullPrompt = "";
-
-        if (language.contains("cypher")) {
-            fullPrompt = String.format(
-                    """
-                    你是一个专业的Cypher查询生成器。请根据以下需求生成Cypher查询：
-                    
-                    %s
-                    
-                    请确保生成的查询符合Cypher语法，并且能够高效地执行。
-                    """, prompt
-            );
-        } else {
-            // 构建提示词
-            fullPrompt = buildPrompt(prompt, language);
+    /**
+     * 异步生成代码
+     * @param prompt 自然语言需求
+     * @param language 目标编程语言
+     * @param options 调用选项
+     * @return
+     */
+    @Override
+    public CompletableFuture<String> generateCodeAsync(String prompt, String language, AIRequestOptions options) {
+        log.info("异步调用Claude模型生成{}代码", language);
+        AIModelProperties.ModelConfig config = properties.getModel("claude");
+        return sendRequestAsync(config, codeRequestBody(config, prompt, language, options, false), options.getPriority(),
+                usageRecorder.start(AIModelType.CLAUDE, "claude", options.getTaskType(), options.getUserId()),
+                responseContent -> extractCodeBlock(responseContent, language));
+    }
+
+    /**
+     * 流式生成代码，输出原始回复由handler提取代码块
+     * @param prompt 自然语言需求
+     * @param language 目标编程语言
+     * @param options 调用选项
+     * @param emitter 服务器发送事件发射器
+     * @param handler 流式响应处理器
+     */
+    @Override
+    public void generateCodeStreaming(String prompt, String language, AIRequestOptions options,
+                                      SseEmitter emitter, StreamingResponseHandler handler) {
+        log.info("流式调用Claude模型生成{}代码", language);
+        AIModelProperties.ModelConfig config = properties.getModel("claude");
+        try {
+            Request request = buildRequest(config, codeRequestBody(config, prompt, language, options, true),
+                    options.getPriority());
+            enqueueStream(httpTransport.client("claude"), request,
+                    usageRecorder.start(AIModelType.CLAUDE, "claude", options.getTaskType(), options.getUserId()),
+                    emitter, handler, content -> { });
+        } catch (Exception e) {
+            log.error("创建Claude流式代码生成请求失败:", e);
+            handler.handleError(e, emitter);
         }
+    }
 
-        // 构建请求消息
-        List<Map<String, String>> messages = new ArrayList<>();
-        Map<String, String> message = new HashMap<>();
-        message.put("role", "user");
-        message.put("content", fullPrompt);
-        messages.add(message);
-        return messages;
+    /**
+     * 通过Message Batches接口提交批量代码生成
+     * @param requests 批量请求
+     * @return 批次ID
+     */
+    @Override
+    public String submitCodeBatch(List<AIBatchRequest> requests) {
+        log.info("提交Claude批处理任务，共{}条", requests.size());
+        AIModelProperties.ModelConfig config = properties.getModel("claude");
+
+        // 每条请求的params与单次代码生成的请求体相同
+        RequestBody body = JsonRequestBody.of(objectMapper.getFactory(), gen -> {
+            gen.writeStartObject();
+            gen.writeArrayFieldStart("requests");
+            for (AIBatchRequest request : requests) {
+                gen.writeStartObject();
+                gen.writeStringField("custom_id", request.customId());
+                gen.writeFieldName("params");
+                writeCodeParams(gen, config, request.prompt(), request.language(), request.options(), false);
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        });
+
+        try {
+            Request request = authorized(new Request.Builder(), config)
+                    .tag(AIPriority.class, AIPriority.BACKGROUND)
+                    .url(batchEndpoint(config))
+                    .post(body)
+                    .build();
+            try (Response response = httpTransport.client("claude").newCall(request).execute()) {
+                return (String) readBatchResponse(response).get("id");
+            }
+        } catch (AIProviderException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("提交Claude批处理任务失败", e);
+            throw new RuntimeException("提交Claude批处理任务失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询Message Batches批次状态，结束后下载JSONL结果
+     * @param batchId 批次ID
+     * @param requests 提交时的批量请求
+     * @return 处理中返回null
+     */
+    @Override
+    public Map<String, AIBatchResult> pollCodeBatch(String batchId, List<AIBatchRequest> requests) {
+        AIModelProperties.ModelConfig config = properties.getModel("claude");
+        try {
+            Request statusRequest = authorized(new Request.Builder(), config)
+                    .tag(AIPriority.class, AIPriority.BACKGROUND)
+                    .url(batchEndpoint(config) + "/" + batchId)
+                    .get()
+                    .build();
+            Map<String, Object> batch;
+            try (Response response = httpTransport.client("claude").newCall(statusRequest).execute()) {
+                batch = readBatchResponse(response);
+            }
+            if (!"ended".equals(batch.get("processing_status"))) {
+                return null;
+            }
+
+            Request resultsRequest = authorized(new Request.Builder(), config)
+                    .tag(AIPriority.class, AIPriority.BACKGROUND)
+                    .url((String) batch.get("results_url"))
+                    .get()
+                    .build();
+            try (Response response = httpTransport.client("claude").newCall(resultsRequest).execute()) {
+                if (!response.isSuccessful()) {
+                    throw new AIProviderException(response.code(), RateLimitHeaders.retryAfter(response));
+                }
+                Map<String, AIBatchRequest> requestsById = requests.stream()
+                        .collect(Collectors.toMap(AIBatchRequest::customId, Function.identity()));
+                return parseBatchResults(response.body().string(), requestsById);
+            }
+        } catch (AIProviderException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("查询Claude批处理任务失败: {}", batchId, e);
+            throw new RuntimeException("查询Claude批处理任务失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 批处理接口地址，未单独配置 batch 端点时由 completion 端点推导
+     */
+    private String batchEndpoint(AIModelProperties.ModelConfig config) {
+        String endpoint = config.getEndpoints().get("batch");
+        return endpoint != null ? endpoint : config.getEndpoint("completion") + "/batches";
+    }
+
+    private Map<String, Object> readBatchResponse(Response response) throws IOException {
+        String responseBody = response.body().string();
+        if (!response.isSuccessful()) {
+            log.error("Claude批处理接口返回错误: {}, {}", response.code(), responseBody);
+            throw new AIProviderException(response.code(), RateLimitHeaders.retryAfter(response));
+        }
+        return objectMapper.readValue(responseBody, Map.class);
+    }
+
+    /**
+     * 解析批次结果，每行一个 {custom_id, result:{type, message|error}}
+     */
+    private Map<String, AIBatchResult> parseBatchResults(String body, Map<String, AIBatchRequest> requestsById)
+            throws IOException {
+        Map<String, AIBatchResult> results = new HashMap<>();
+        for (String line : body.split("\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            Map<String, Object> item = objectMapper.readValue(line, Map.class);
+            String customId = (String) item.get("custom_id");
+            Map<String, Object> result = (Map<String, Object>) item.get("result");
+            String type = (String) result.get("type");
+            AIBatchRequest request = requestsById.get(customId);
+            if ("succeeded".equals(type) && request != null) {
+                Map<String, Object> message = (Map<String, Object>) result.get("message");
+                usageRecorder.recordUsage(AIModelType.CLAUDE, "claude", request.options().getTaskType(),
+                        request.options().getUserId(), AIUsage.fromAnthropic((Map<String, Object>) message.get("usage")));
+                results.put(customId, AIBatchResult.success(customId,
+                        extractCodeBlock(extractText(message), request.language())));
+            } else {
+                Object error = result.get("error");
+                results.put(customId, AIBatchResult.failure(customId,
+                        error != null ? type + ": " + error : type));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 构建代码生成请求体，直接写入连接
+     */
+    private RequestBody codeRequestBody(AIModelProperties.ModelConfig config, String prompt, String language,
+                                        AIRequestOptions options, boolean isStream) {
+        return JsonRequestBody.of(objectMapper.getFactory(),
+                gen -> writeCodeParams(gen, config, prompt, language, options, isStream));
+    }
+
+    /**
+     * 写出代码生成的Messages API参数，批处理接口中每条请求的params与之相同
+     */
+    private void writeCodeParams(JsonGenerator gen, AIModelProperties.ModelConfig config, String prompt,
+                                 String language, AIRequestOptions options, boolean isStream) throws IOException {
+        gen.writeStartObject();
+        writeModelParams(gen, config.getModelName(), config.getMaxTokens(), config.getTemperature(), isStream);
+        // 稳定前缀作为系统提示以命中提示缓存
+        writeCachedSystem(gen, options.getSystemPrompt() != null ? options.getSystemPrompt() : DEFAULT_CODE_SYSTEM);
+
+        gen.writeArrayFieldStart("messages");
+        gen.writeStartObject();
+        gen.writeStringField("role", "user");
+        gen.writeFieldName("content");
+        if (options.getTaskType() == AITaskType.SUMMARY) {
+            // 摘要任务的提示词已完整，无需代码生成模板
+            gen.writeString(prompt);
+        } else if (language.contains("cypher")) {
+            CYPHER_PROMPT.writeValue(gen, prompt);
+        } else {
+            CODE_PROMPT.writeValue(gen, language, prompt);
+        }
+        gen.writeEndObject();
+        gen.writeEndArray();
+        gen.writeEndObject();
     }
 
     /**
@@ -110,21 +348,10 @@ public class ClaudeAIClientServiceImpl implements AIClientService {
         // 添加用户消息到对话
         conversation.addUserMessage(message);
 
-        // 构建Claude API消息格式
-        List<Map<String, String>> messages = conversation.getMessages().stream()
-                .map(msg -> {
-                    Map<String, String> msgMap = new HashMap<>();
-                    String role = "system".equals(msg.role()) ? "system" :
-                            "user".equals(msg.role()) ? "user" : "assistant";
-                    msgMap.put("role", role);
-                    msgMap.put("content", msg.content());
-                    return msgMap;
-                })
-                .collect(Collectors.toList());
-
         try {
             // 发送非流式请求
-            String responseContent = sendRequest(config, messages, false);
+            String responseContent = sendRequest(config, chatRequestBody(config, conversation, false), AIPriority.INTERACTIVE,
+                    usageRecorder.start(AIModelType.CLAUDE, "claude", AITaskType.CHAT, conversation.getUserId()));
 
             // 添加AI回复到对话
             conversation.addAssistantMessage(responseContent);
@@ -133,12 +360,97 @@ public class ClaudeAIClientServiceImpl implements AIClientService {
             conversationManager.updateConversation(conversation.getUserId(), conversation);
 
             return responseContent;
+        } catch (AIProviderException e) {
+            // 保留状态码与重试等待时间，便于上层区分限流
+            throw e;
         } catch (Exception e) {
             log.error("在对话中调用Claude模型失败", e);
             throw new RuntimeException("在对话中调用Claude模型失败: " + e.getMessage());
         }
     }
 
+    /**
+     * 异步发送消息到Claude模型
+     * @param conversation 对话对象
+     * @param message 发送的消息
+     * @return
+     */
+    @Override
+    public CompletableFuture<String> sendMessageAsync(Conversation conversation, String message) {
+        log.info("在对话{}中异步发送消息", conversation.getId());
+        AIModelProperties.ModelConfig config = properties.getModel("claude");
+
+        // 添加用户消息到对话
+        conversation.addUserMessage(message);
+
+        return sendRequestAsync(config, chatRequestBody(config, conversation, false), AIPriority.INTERACTIVE,
+                usageRecorder.start(AIModelType.CLAUDE, "claude", AITaskType.CHAT, conversation.getUserId()),
+                responseContent -> {
+            // 添加AI回复到对话并更新
+            conversation.addAssistantMessage(responseContent);
+            conversationManager.updateConversation(conversation.getUserId(), conversation);
+            return responseContent;
+        });
+    }
+
+    /**
+     * 构建对话请求体，历史按上下文窗口预算截取后逐条写入；系统消息作为单独的可缓存system参数，流式与非流式相同
+     */
+    private RequestBody chatRequestBody(AIModelProperties.ModelConfig config, Conversation conversation,
+                                        boolean isStream) {
+        List<ChatMessage> history = contextWindowManager.select(conversation);
+        return JsonRequestBody.of(objectMapper.getFactory(), gen -> {
+            // 提取系统消息，有多条时以最后一条为准
+            String systemMessage = null;
+            for (ChatMessage msg : history) {
+                if ("system".equals(msg.role())) {
+                    systemMessage = msg.content();
+                }
+            }
+
+            gen.writeStartObject();
+            writeModelParams(gen, config.getModelName(), config.getMaxTokens(), config.getTemperature(), isStream);
+            writeCachedSystem(gen, systemMessage != null ? systemMessage : DEFAULT_CHAT_SYSTEM);
+
+            gen.writeArrayFieldStart("messages");
+            for (ChatMessage msg : history) {
+                if (!"system".equals(msg.role())) {
+                    gen.writeStartObject();
+                    gen.writeStringField("role", "user".equals(msg.role()) ? "user" : "assistant");
+                    gen.writeStringField("content", msg.content());
+                    gen.writeEndObject();
+                }
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        });
+    }
+
+    private static void writeModelParams(JsonGenerator gen, String model, int maxTokens, double temperature,
+                                         boolean isStream) throws IOException {
+        gen.writeStringField("model", model);
+        gen.writeNumberField("max_tokens", maxTokens);
+        gen.writeNumberField("temperature", temperature);
+        if (isStream) {
+            gen.writeBooleanField("stream", true);
+        }
+    }
+
+    /**
+     * 写出单独的系统参数，标记为可缓存前缀；长度不足缓存下限时服务端会忽略该标记
+     */
+    private static void writeCachedSystem(JsonGenerator gen, String systemMessage) throws IOException {
+        gen.writeArrayFieldStart("system");
+        gen.writeStartObject();
+        gen.writeStringField("type", "text");
+        gen.writeStringField("text", systemMessage);
+        gen.writeObjectFieldStart("cache_control");
+        gen.writeStringField("type", "ephemeral");
+        gen.writeEndObject();
+        gen.writeEndObject();
+        gen.writeEndArray();
+    }
+
     /**
      *
      * @param userId 用户ID
@@ -172,150 +484,29 @@ public class ClaudeAIClientServiceImpl implements AIClientService {
                                      SseEmitter emitter, StreamingResponseHandler handler) {
         log.info("在对话{}中发送流式消息", conversation.getId());
         AIModelProperties.ModelConfig config = properties.getModel("claude");
-        AIModelProperties.ProxyConfig proxyConfig = properties.getProxy();
 
         // 添加用户消息到对话
         conversation.addUserMessage(message);
 
-        // 构建Claude API消息格式
-        List<Map<String, String>> messages = conversation.getMessages().stream()
-                .map(msg -> {
-                    Map<String, String> msgMap = new HashMap<>();
-                    String role = "system".equals(msg.role()) ? "system" :
-                            "user".equals(msg.role()) ? "user" : "assistant";
-                    msgMap.put("role", role);
-                    msgMap.put("content", msg.content());
-                    return msgMap;
-                })
-                .collect(Collectors.toList());
-
         try {
-            // 创建OkHttp客户端
-            OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder()
-                    .connectTimeout(60, TimeUnit.SECONDS)
-                    .readTimeout(60, TimeUnit.SECONDS)
-                    .writeTimeout(60, TimeUnit.SECONDS);
-
-            // 如果代理配置可用，添加代理
-            if (proxyConfig != null && proxyConfig.isEnabled()) {
-                log.info("使用代理 {}:{}", proxyConfig.getHost(), proxyConfig.getPort());
-                clientBuilder.proxy(
-                        new Proxy(
-                                Proxy.Type.HTTP,
-                                new InetSocketAddress(proxyConfig.getHost(), proxyConfig.getPort())
-                        )
-                );
-            }
-
-            OkHttpClient client = clientBuilder.build();
-
-            // 构建请求体
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", config.getModelName());
-            requestBody.put("messages", messages);
-            requestBody.put("max_tokens", 4000);
-            requestBody.put("temperature", 0.2);
-            requestBody.put("stream", true); // 开启流式响应
-            // 提取系统消息
-            String systemMessage = "你是一个有用的AI助手，专注于帮助用户解决编程问题。";
-            List<Map<String, String>> filteredMessages = new ArrayList<>();
-            for (Map<String, String> msg : messages) {
-                if ("system".equals(msg.get("role"))) {
-                    systemMessage = msg.get("content");
-                } else {
-                    filteredMessages.add(msg);
-                }
-            }
-            // 使用过滤后的消息和单独的系统参数
-            requestBody.put("messages", filteredMessages);
-            requestBody.put("system", systemMessage);
-
-            // 转换请求体为JSON
-            String jsonBody = objectMapper.writeValueAsString(requestBody);
+            // 复用共享连接池的客户端
+            OkHttpClient client = httpTransport.client("claude");
 
             // 构建请求
-            Request request = new Request.Builder()
+            Request request = authorized(new Request.Builder(), config)
+                    .tag(AIPriority.class, AIPriority.INTERACTIVE)
                     .url(config.getEndpoint("conversation"))
-                    .post(okhttp3.RequestBody.create(jsonBody, okhttp3.MediaType.parse("application/json")))
-                    .addHeader("x-api-key", config.getApiKey())
-                    .addHeader("anthropic-version", "2023-06-01")
-                    .addHeader("Content-Type", "application/json")
+                    .post(chatRequestBody(config, conversation, true))
                     .build();
 
-            // 发送请求并处理流式响应
-            client.newCall(request).enqueue(new okhttp3.Callback() {
-                @Override
-                public void onFailure(okhttp3.Call call, java.io.IOException e) {
-                    log.error("Claude流式请求失败:", e);
-                    handler.handleError(e, emitter);
-                }
-
-                @Override
-                public void onResponse(okhttp3.Call call, Response response) throws java.io.IOException {
-                    try (response) {
-                        if (!response.isSuccessful()) {
-                            String errorBody = response.body().string();
-                            log.error("Claude API返回错误: {}, {}", response.code(), errorBody);
-                            handler.handleError(
-                                    new RuntimeException("API调用失败，状态码: " + response.code()),
-                                    emitter
-                            );
-                            return;
-                        }
-
-                        okhttp3.ResponseBody body = response.body();
-                        if (body == null) {
-                            handler.handleError(new RuntimeException("响应体为空"), emitter);
-                            return;
-                        }
-
-                        StringBuilder completeMessage = new StringBuilder();
-                        try (okio.BufferedSource source = body.source()) {
-                            while (!source.exhausted()) {
-                                // 读取一行数据
-                                String line = source.readUtf8Line();
-                                if (line == null) break;
-
-                                // 解析Claude的SSE数据
-                                if (line.startsWith("data: ")) {
-                                    String data = line.substring(6);
-                                    if ("[DONE]".equals(data.trim())) {
-                                        // 流结束
-                                        if (handler instanceof DefaultStreamingResponseHandler) {
-                                            String finalMessage = completeMessage.toString();
-                                            // 添加AI回复到对话
-                                            conversation.addAssistantMessage(finalMessage);
-                                            // 更新对话
-                                            conversationManager.updateConversation(
-                                                    conversation.getUserId(),
-                                                    conversation
-                                            );
-                                        }
-                                        emitter.complete();
-                                        break;
-                                    }
-
-                                    try {
-                                        Map<String, Object> eventData = objectMapper.readValue(data, Map.class);
-                                        if (eventData.containsKey("type") && "content_block_delta".equals(eventData.get("type"))) {
-                                            Map<String, Object> delta = (Map<String, Object>) eventData.get("delta");
-                                            if (delta != null && delta.containsKey("text")) {
-                                                String content = (String) delta.get("text");
-                                                completeMessage.append(content);
-                                                handler.handleResponse(content, emitter);
-                                            }
-                                        }
-                                    } catch (Exception e) {
-                                        log.warn("解析Claude流式响应块失败: {}", data, e);
-                                    }
-                                }
-                            }
-                        } catch (Exception e) {
-                            log.error("处理Claude流式响应出错:", e);
-                            handler.handleError(e, emitter);
-                        }
-                    }
-                }
+            AICallMetrics metrics = usageRecorder.start(AIModelType.CLAUDE, "claude", AITaskType.CHAT,
+                    conversation.getUserId());
+            // 发送请求并处理流式响应，结束后写入对话
+            enqueueStream(client, request, metrics, emitter, handler, completeMessage -> {
+                // 添加AI回复到对话
+                conversation.addAssistantMessage(completeMessage);
+                // 更新对话
+                conversationManager.updateConversation(conversation.getUserId(), conversation);
             });
         } catch (Exception e) {
             log.error("创建Claude流式请求失败:", e);
@@ -323,163 +514,249 @@ public class ClaudeAIClientServiceImpl implements AIClientService {
         }
     }
 
-    /**
-     * 发送非流式请求到Claude API
-     * @param config 模型配置
-     * @param messages 消息列表
-     * @param isStream 是否流式请求
-     * @return 响应内容
-     */
-    private String sendRequest(AIModelProperties.ModelConfig config, List<Map<String, String>> messages, boolean isStream) {
-        AIModelProperties.ProxyConfig proxyConfig = properties.getProxy();
-        String endpoint = config.getEndpoint("completion");
-
-        try {
-            // 创建OkHttp客户端
-            OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder()
-                    .connectTimeout(60, TimeUnit.SECONDS)
-                    .readTimeout(60, TimeUnit.SECONDS)
-                    .writeTimeout(60, TimeUnit.SECONDS);
-
-            // 如果代理配置可用，添加代理
-            if (proxyConfig != null && proxyConfig.isEnabled()) {
-                log.info("使用代理 {}:{}", proxyConfig.getHost(), proxyConfig.getPort());
-                clientBuilder.proxy(
-                        new Proxy(
-                                Proxy.Type.HTTP,
-                                new InetSocketAddress(proxyConfig.getHost(), proxyConfig.getPort())
-                        )
-                );
-            }
+    @Override
+    public Flux<StreamChunk> streamMessage(Conversation conversation, String message) {
+        return Flux.defer(() -> {
+            log.info("在对话{}中发送响应式流式消息", conversation.getId());
+            AIModelProperties.ModelConfig config = properties.getModel("claude");
 
-            OkHttpClient client = clientBuilder.build();
+            // 添加用户消息到对话
+            conversation.addUserMessage(message);
 
-            // 提取系统消息
-            String systemMessage = "你是一个专业的编程助手，专注于生成干净、高效的代码。";
-            List<Map<String, String>> filteredMessages = new ArrayList<>();
+            Request request = authorized(new Request.Builder(), config)
+                    .tag(AIPriority.class, AIPriority.INTERACTIVE)
+                    .url(config.getEndpoint("conversation"))
+                    .post(chatRequestBody(config, conversation, true))
+                    .build();
+            AICallMetrics metrics = usageRecorder.start(AIModelType.CLAUDE, "claude", AITaskType.CHAT,
+                    conversation.getUserId());
+            StringBuilder completeMessage = new StringBuilder();
+            return CallFlux.stream(httpTransport.client("claude").newCall(request), objectMapper.getFactory(),
+                            SseTokenParser.Format.ANTHROPIC, metrics)
+                    .doOnNext(chunk -> completeMessage.append(chunk.text()))
+                    // 流正常结束后在弹性线程上写入对话，不占用读取连接的线程
+                    .concatWith(Mono.<StreamChunk>fromRunnable(() -> {
+                        conversation.addAssistantMessage(completeMessage.toString());
+                        conversationManager.updateConversation(conversation.getUserId(), conversation);
+                    }).subscribeOn(Schedulers.boundedElastic()));
+        });
+    }
 
-            for (Map<String, String> message : messages) {
-                if ("system".equals(message.get("role"))) {
-                    // 如果有系统消息，则更新系统消息内容
-                    systemMessage = message.get("content");
-                } else {
-                    // 只保留非系统消息
-                    filteredMessages.add(message);
+    /**
+     * 发送流式请求，逐块交给handler，收到结束事件后以完整回复调用onComplete并完成emitter
+     * @param client HTTP客户端
+     * @param request 流式请求
+     * @param metrics 本次调用的计量
+     * @param emitter 服务器发送事件发射器
+     * @param handler 流式响应处理器
+     * @param onComplete 流正常结束后的处理
+     */
+    private void enqueueStream(OkHttpClient client, Request request, AICallMetrics metrics,
+                               SseEmitter emitter, StreamingResponseHandler handler, Consumer<String> onComplete) {
+        okhttp3.Call streamCall = client.newCall(request);
+        // 客户端断开或超时后取消上游请求，不再消耗模型令牌
+        handler.onCancel(emitter, streamCall::cancel);
+        streamCall.enqueue(new okhttp3.Callback() {
+            @Override
+            public void onFailure(okhttp3.Call call, java.io.IOException e) {
+                metrics.failure();
+                if (call.isCanceled()) {
+                    log.info("Claude流式请求已取消");
+                    return;
                 }
+                log.error("Claude流式请求失败:", e);
+                handler.handleError(e, emitter);
             }
 
-            // 构建请求体
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", config.getModelName());
-            requestBody.put("messages", filteredMessages);
-            requestBody.put("max_tokens", 4000);
-            requestBody.put("temperature", 0.2);
-            if (isStream) {
-                requestBody.put("stream", true);
-            }
-
-            // 添加单独的系统参数
-            requestBody.put("system", systemMessage);
+            @Override
+            public void onResponse(okhttp3.Call call, Response response) throws java.io.IOException {
+                try (response) {
+                    if (!response.isSuccessful()) {
+                        String errorBody = response.body().string();
+                        log.error("Claude API返回错误: {}, {}", response.code(), errorBody);
+                        metrics.failure();
+                        handler.handleError(
+                                new AIProviderException(response.code(), RateLimitHeaders.retryAfter(response)),
+                                emitter
+                        );
+                        return;
+                    }
 
-            // 转换请求体为JSON
-            String jsonBody = objectMapper.writeValueAsString(requestBody);
+                    okhttp3.ResponseBody body = response.body();
+                    if (body == null) {
+                        metrics.failure();
+                        handler.handleError(new RuntimeException("响应体为空"), emitter);
+                        return;
+                    }
 
-            // 构建请求
-            Request request = new Request.Builder()
-                    .url(endpoint)
-                    .post(RequestBody.create(jsonBody, okhttp3.MediaType.parse("application/json")))
-                    .addHeader("x-api-key", config.getApiKey())
-                    .addHeader("anthropic-version", "2023-06-01")
-                    .addHeader("Content-Type", "application/json")
-                    .build();
+                    StringBuilder completeMessage = new StringBuilder();
+                    SseTokenParser parser = new SseTokenParser(objectMapper.getFactory(), SseTokenParser.Format.ANTHROPIC);
+                    // 处理器返回true表示客户端已断开
+                    boolean stopped = false;
+                    try (okio.BufferedSource source = body.source()) {
+                        while (parser.next(source)) {
+                            if (parser.error() != null) {
+                                log.error("Claude流式响应返回错误: {}", parser.error());
+                                handler.handleError(new RuntimeException(parser.error()), emitter);
+                                return;
+                            }
 
-            // 发送请求
-            try (Response response = client.newCall(request).execute()) {
-                if (!response.isSuccessful()) {
-                    String errorBody = response.body().string();
-                    log.error("Claude API返回错误: {}, {}", response.code(), errorBody);
-                    throw new RuntimeException("API调用失败，状态码: " + response.code());
-                }
+                            String content = parser.text();
+                            if (content != null && !content.isEmpty()) {
+                                metrics.firstToken();
+                                completeMessage.append(content);
+                                // 处理器返回true表示客户端已断开，停止读取
+                                if (handler.handleResponse(content, emitter)) {
+                                    stopped = true;
+                                    break;
+                                }
+                            }
 
-                String responseBody = response.body().string();
-                Map<String, Object> responseMap = objectMapper.readValue(responseBody, Map.class);
-
-                // 解析响应
-                if (responseMap.containsKey("content")) {
-                    List<Map<String, Object>> contentList = (List<Map<String, Object>>) responseMap.get("content");
-                    if (!contentList.isEmpty()) {
-                        StringBuilder contentBuilder = new StringBuilder();
-                        for (Map<String, Object> contentItem : contentList) {
-                            if ("text".equals(contentItem.get("type"))) {
-                                contentBuilder.append(contentItem.get("text"));
+                            // Claude以message_stop事件结束流，兼容OpenAI风格的[DONE]
+                            if (parser.isDone()) {
+                                metrics.usage(parser.usage());
+                                metrics.success();
+                                handler.handleSummary(new StreamSummary(parser.messageId(), parser.finishReason(), parser.usage()));
+                                handler.handleResponse("[DONE]", emitter);
+                                onComplete.accept(completeMessage.toString());
+                                emitter.complete();
+                                break;
                             }
                         }
-                        return contentBuilder.toString();
+                        // 连接在结束事件之前关闭，按错误结束，不保持客户端连接直到超时
+                        if (!parser.isDone() && !stopped && !call.isCanceled()) {
+                            log.error("Claude流式响应未正常结束");
+                            handler.handleError(new IOException("流式响应未正常结束"), emitter);
+                        }
+                    } catch (Exception e) {
+                        if (call.isCanceled()) {
+                            log.info("Claude流式请求已取消");
+                            return;
+                        }
+                        log.error("处理Claude流式响应出错:", e);
+                        handler.handleError(e, emitter);
+                    } finally {
+                        // 正常结束时已记录成功；中途出错或断开时记为失败，已产生的令牌仍然计入
+                        metrics.usage(parser.usage());
+                        metrics.failure();
                     }
                 }
+            }
+        });
+    }
+
+    /**
+     * 发送非流式请求到Claude API
+     * @param config 模型配置
+     * @param body 请求体
+     * @param priority 调度优先级
+     * @param metrics 本次调用的计量
+     * @return 响应内容
+     */
+    private String sendRequest(AIModelProperties.ModelConfig config, RequestBody body, AIPriority priority,
+                               AICallMetrics metrics) {
+        try {
+            Request request = buildRequest(config, body, priority);
 
-                log.error("无法从Claude响应中解析内容");
-                throw new RuntimeException("无法从Claude响应中解析内容");
+            // 发送请求
+            try (Response response = httpTransport.client("claude").newCall(request).execute()) {
+                return parseResponse(response, metrics);
             }
+        } catch (AIProviderException e) {
+            // 保留状态码与重试等待时间，便于上层区分限流
+            throw e;
         } catch (Exception e) {
             log.error("调用Claude API失败", e);
             throw new RuntimeException("调用Claude API失败: " + e.getMessage());
+        } finally {
+            metrics.failure();
         }
     }
 
     /**
-     * 解析Claude流式响应块
+     * 异步发送非流式请求到Claude API
+     * @param config 模型配置
+     * @param body 请求体
+     * @param priority 调度优先级
+     * @param metrics 本次调用的计量
+     * @param parser 在响应线程中对回复内容的后续处理
+     * @return 可取消的Future，取消时中断HTTP请求
      */
-    private String parseClaudeStreamChunk(String chunk) {
-        // Claude的流格式为: data: {...JSON数据...}
-        if (chunk.startsWith("data: ")) {
-            chunk = chunk.substring(6);
-
-            // 判断是否是流结束标记
-            if ("[DONE]".equals(chunk.trim())) {
-                return "[DONE]";
-            }
+    private <T> CompletableFuture<T> sendRequestAsync(AIModelProperties.ModelConfig config,
+                                                      RequestBody body, AIPriority priority, AICallMetrics metrics,
+                                                      Function<String, T> parser) {
+        try {
+            Request request = buildRequest(config, body, priority);
+            CallFuture<T> future = CallFuture.enqueue(httpTransport.client("claude").newCall(request),
+                    response -> parser.apply(parseResponse(response, metrics)));
+            // 请求失败或被取消时记为失败，成功时已在解析响应时记录
+            future.whenComplete((result, error) -> metrics.failure());
+            return future;
+        } catch (Exception e) {
+            metrics.failure();
+            log.error("创建Claude异步请求失败", e);
+            return CompletableFuture.failedFuture(new RuntimeException("调用Claude API失败: " + e.getMessage()));
+        }
+    }
 
-            try {
-                // 解析JSON
-                Map<String, Object> response = objectMapper.readValue(chunk, Map.class);
+    /**
+     * 构建Claude API请求
+     */
+    private Request buildRequest(AIModelProperties.ModelConfig config, RequestBody body, AIPriority priority) {
+        return authorized(new Request.Builder(), config)
+                .tag(AIPriority.class, priority)
+                .url(config.getEndpoint("completion"))
+                .post(body)
+                .build();
+    }
 
-                // Claude的流式响应格式可能与其他不同，需要适配
-                if (response.containsKey("delta") && response.get("delta") instanceof Map) {
-                    Map<String, Object> delta = (Map<String, Object>) response.get("delta");
-                    if (delta.containsKey("text")) {
-                        return (String) delta.get("text");
-                    }
-                }
+    /**
+     * 添加Claude API的认证与版本请求头
+     */
+    private Request.Builder authorized(Request.Builder builder, AIModelProperties.ModelConfig config) {
+        return builder
+                .addHeader("x-api-key", config.getApiKey())
+                .addHeader("anthropic-version", "2023-06-01")
+                .addHeader("Content-Type", "application/json");
+    }
 
-                // 处理可能的type/text格式
-                if (response.containsKey("type") && "content_block_delta".equals(response.get("type"))) {
-                    Map<String, Object> delta = (Map<String, Object>) response.get("delta");
-                    if (delta != null && delta.containsKey("text")) {
-                        return (String) delta.get("text");
-                    }
-                }
-            } catch (Exception e) {
-                log.warn("解析Claude流式响应块失败: {}", chunk, e);
-            }
+    /**
+     * 解析Claude API非流式响应
+     */
+    private String parseResponse(Response response, AICallMetrics metrics) throws IOException {
+        if (!response.isSuccessful()) {
+            String errorBody = response.body().string();
+            log.error("Claude API返回错误: {}, {}", response.code(), errorBody);
+            throw new AIProviderException(response.code(), RateLimitHeaders.retryAfter(response));
         }
-        return "";
+
+        String responseBody = response.body().string();
+        Map<String, Object> responseMap = objectMapper.readValue(responseBody, Map.class);
+        metrics.usage(AIUsage.fromAnthropic((Map<String, Object>) responseMap.get("usage")));
+        metrics.success();
+        return extractText(responseMap);
     }
 
     /**
-     * 构建提示词
+     * 从Messages API的响应消息中提取文本内容
      */
-    private String buildPrompt(String prompt, String language) {
-        return String.format(
-                """
-                我需要你帮我生成%s代码。以下是需求描述：
-                
-                %s
-                
-                请生成符合需求的完整代码，不要包含额外的解释。代码需要遵循最佳实践，
-                保证安全性、可读性和性能。使用适当的注释说明关键步骤。""",
-                language, prompt
-        );
+    private String extractText(Map<String, Object> responseMap) {
+        // 解析响应
+        if (responseMap.containsKey("content")) {
+            List<Map<String, Object>> contentList = (List<Map<String, Object>>) responseMap.get("content");
+            if (!contentList.isEmpty()) {
+                StringBuilder contentBuilder = new StringBuilder();
+                for (Map<String, Object> contentItem : contentList) {
+                    if ("text".equals(contentItem.get("type"))) {
+                        contentBuilder.append(contentItem.get("text"));
+                    }
+                }
+                return contentBuilder.toString();
+            }
+        }
+
+        log.error("无法从Claude响应中解析内容");
+        throw new RuntimeException("无法从Claude响应中解析内容");
     }
 
     /**
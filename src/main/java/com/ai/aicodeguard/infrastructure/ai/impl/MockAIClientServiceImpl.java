@@ -0,0 +1,29 @@
+package com.ai.aicodeguard.infrastructure.ai.impl;
+
+import com.ai.aicodeguard.infrastructure.ai.AIModelProperties;
+import com.ai.aicodeguard.infrastructure.ai.AIModelType;
+import com.ai.aicodeguard.infrastructure.ai.conversation.ContextWindowManager;
+import com.ai.aicodeguard.infrastructure.ai.conversation.ConversationManager;
+import com.ai.aicodeguard.infrastructure.ai.metering.AIUsageRecorder;
+import com.ai.aicodeguard.infrastructure.ai.transport.AIHttpTransport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * @ClassName: MockAIClientServiceImpl
+ * @Description: 模拟模型实现，通过OpenAI兼容协议访问本地模拟服务，对应 ai.models.mock 配置
+ * @Author: LZX
+ * @Date: 2025/5/23 10:50
+ */
+@Service
+@ConditionalOnProperty(prefix = "ai.mock", name = "enabled", havingValue = "true")
+public class MockAIClientServiceImpl extends OpenAICompatibleAIClientService {
+
+    public MockAIClientServiceImpl(AIModelProperties properties, AIHttpTransport httpTransport, ObjectMapper objectMapper,
+                                   ConversationManager conversationManager, ContextWindowManager contextWindowManager,
+                                   AIUsageRecorder usageRecorder) {
+        super("mock", AIModelType.MOCK, properties, httpTransport, objectMapper, conversationManager,
+                contextWindowManager, usageRecorder);
+    }
+}
@@ -1,82 +0,0 @@
-package com.ai.aicodeguard.infrastructure.ai.impl;
-
-import com.ai.aicodeguard.infrastructure.ai.AIClientService;
-import com.ai.aicodeguard.infrastructure.ai.AIModelType;
-import com.ai.aicodeguard.infrastructure.ai.StreamingResponseHandler;
-import com.ai.aicodeguard.infrastructure.ai.conversation.Conversation;
-import lombok.extern.slf4j.Slf4j;
-import org.springframework.stereotype.Service;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
-
-import java.util.*;
-
-/**
- * @ClassName: OpenAIClientServiceImpl
- * @Description: OpenAI模型实现
- * @Author: LZX
- * @Date: 2025/4/20 01:28
- */
-@Service
-@Slf4j
-public class OpenAIClientServiceImpl implements AIClientService {
-
-    @Override
-    public String generateCode(String prompt, String language) {
-        return "";
-    }
-
-    @Override
-    public String sendMessage(Conversation conversation, String message) {
-        return "";
-    }
-
-    @Override
-    public Conversation createConversation(String userId) {
-        return null;
-    }
-
-    /**
-     * 构建提示词
-     */
-    private String buildPrompt(String prompt, String language) {
-        return String.format(
-            "I need you to generate %s code based on the following requirements:\n\n%s\n\n" +
-                    "Please generate complete code that meets the requirements. " +
-                    "The code should follow best practices for security, readability, and performance. " +
-                    "Include appropriate comments to explain key steps.",
-            language, prompt
-        );
-    }
-
-    /**
-     * 从AI响应中提取代码块
-     * @param content AI响应内容
-     * @param language 目标编程语言
-     * @return 提取的代码块
-     */
-    private String extractCodeBlock(String content, String language) {
-        // 相同的提取逻辑
-        String codeBlockStart = "```" + language.toLowerCase();
-        String codeBlockEnd = "```";
-
-        int startIndex = content.indexOf(codeBlockStart);
-        if (startIndex != -1) {
-            startIndex = content.indexOf('\n', startIndex) + 1;
-            int endIndex = content.indexOf(codeBlockEnd, startIndex);
-            if (endIndex != -1) {
-                return content.substring(startIndex, endIndex).trim();
-            }
-        }
-
-        return content.trim();
-    }
-
-    @Override
-    public AIModelType getModelType() {
-        return null;
-    }
-
-    @Override
-    public void sendMessageStreaming(Conversation conversation, String message, SseEmitter emitter, StreamingResponseHandler handler) {
-    }
-}
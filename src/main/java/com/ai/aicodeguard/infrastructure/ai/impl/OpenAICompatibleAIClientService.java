@@ -0,0 +1,584 @@
+package com.ai.aicodeguard.infrastructure.ai.impl;
+
+import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AIModelProperties;
+import com.ai.aicodeguard.infrastructure.ai.AIModelType;
+import com.ai.aicodeguard.infrastructure.ai.AIPriority;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
+import com.ai.aicodeguard.infrastructure.ai.AITaskType;
+import com.ai.aicodeguard.infrastructure.ai.AIUsage;
+import com.ai.aicodeguard.infrastructure.ai.StreamingResponseHandler;
+import com.ai.aicodeguard.infrastructure.ai.conversation.ChatMessage;
+import com.ai.aicodeguard.infrastructure.ai.conversation.ContextWindowManager;
+import com.ai.aicodeguard.infrastructure.ai.conversation.Conversation;
+import com.ai.aicodeguard.infrastructure.ai.conversation.ConversationManager;
+import com.ai.aicodeguard.infrastructure.ai.exception.AIProviderException;
+import com.ai.aicodeguard.infrastructure.ai.metering.AICallMetrics;
+import com.ai.aicodeguard.infrastructure.ai.metering.AIUsageRecorder;
+import com.ai.aicodeguard.infrastructure.ai.streaming.SseTokenParser;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamChunk;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamSummary;
+import com.ai.aicodeguard.infrastructure.ai.transport.AIHttpTransport;
+import com.ai.aicodeguard.infrastructure.ai.transport.CallFlux;
+import com.ai.aicodeguard.infrastructure.ai.transport.CallFuture;
+import com.ai.aicodeguard.infrastructure.ai.transport.JsonRequestBody;
+import com.ai.aicodeguard.infrastructure.ai.transport.JsonTemplate;
+import com.ai.aicodeguard.infrastructure.ai.transport.RateLimitHeaders;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * @ClassName: OpenAICompatibleAIClientService
+ * @Description: OpenAI chat completions 协议的通用客户端，每个实例对应 ai.models 下的一个配置，
+ * 可用于DeepSeek、OpenAI及兼容该协议的自建推理服务
+ * @Author: LZX
+ * @Date: 2025/5/25 09:30
+ */
+@Slf4j
+public class OpenAICompatibleAIClientService implements AIClientService {
+
+    /**
+     * 代码生成提示词模板，参数依次为目标语言与需求描述
+     */
+    private static final JsonTemplate CODE_PROMPT = JsonTemplate.compile(
+            """
+                    我需要你帮我生成%s代码。以下是需求描述：
+                    
+                    %s
+                    
+                    请生成符合需求的完整代码，不要包含额外的解释。代码需要遵循最佳实践，
+                    保证安全性、可读性和性能。使用适当的注释说明关键步骤。""");
+
+    /**
+     * Cypher查询生成提示词模板，参数为需求描述
+     */
+    private static final JsonTemplate CYPHER_PROMPT = JsonTemplate.compile(
+            """
+                    你是一个专业的Cypher查询生成器。请根据以下需求生成Cypher查询：
+                    
+                    %s
+                    
+                    请确保生成的查询符合Cypher语法，并且能够高效地执行。
+                    """);
+
+    private final String modelKey;
+
+    private final AIModelType modelType;
+
+    private final AIModelProperties properties;
+
+    private final AIHttpTransport httpTransport;
+
+    private final ObjectMapper objectMapper;
+
+    private final ConversationManager conversationManager;
+
+    private final ContextWindowManager contextWindowManager;
+
+    private final AIUsageRecorder usageRecorder;
+
+    /**
+     * @param modelKey ai.models 下的配置名
+     * @param modelType 模型类型，自建推理服务使用 OPENAI
+     */
+    public OpenAICompatibleAIClientService(String modelKey, AIModelType modelType, AIModelProperties properties,
+                                           AIHttpTransport httpTransport, ObjectMapper objectMapper,
+                                           ConversationManager conversationManager,
+                                           ContextWindowManager contextWindowManager, AIUsageRecorder usageRecorder) {
+        this.modelKey = modelKey;
+        this.modelType = modelType;
+        this.properties = properties;
+        this.httpTransport = httpTransport;
+        this.objectMapper = objectMapper;
+        this.conversationManager = conversationManager;
+        this.contextWindowManager = contextWindowManager;
+        this.usageRecorder = usageRecorder;
+    }
+
+
+    @Override
+    public String generateCode(String prompt, String language, AIRequestOptions options) {
+        log.info("调用{}模型生成{}代码", modelKey, language);
+        AIModelProperties.ModelConfig config = properties.getModel(modelKey);
+
+        // 使用completion端点
+        String endpoint = config.getEndpoint("completion");
+
+        AICallMetrics metrics = usageRecorder.start(modelType, modelKey, options.getTaskType(), options.getUserId());
+        try {
+            // 发送请求
+            Map<String, Object> response = postForMap(config, endpoint,
+                    codeRequestBody(config, prompt, language, options, false), options.getPriority(), metrics);
+
+            // 提取代码块
+            return extractCodeBlock(extractReply(response, "无法从" + modelKey + "响应中解析代码"), language);
+        } catch (AIProviderException e) {
+            // 保留状态码与重试等待时间，便于上层区分限流
+            throw e;
+        } catch (Exception e) {
+            log.error("调用{}模型生成代码失败", modelKey, e);
+            throw new RuntimeException("调用" + modelKey + "模型生成代码失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> generateCodeAsync(String prompt, String language, AIRequestOptions options) {
+        log.info("异步调用{}模型生成{}代码", modelKey, language);
+        AIModelProperties.ModelConfig config = properties.getModel(modelKey);
+
+        AICallMetrics metrics = usageRecorder.start(modelType, modelKey, options.getTaskType(), options.getUserId());
+        return postForMapAsync(config, config.getEndpoint("completion"), codeRequestBody(config, prompt, language, options, false),
+                options.getPriority(), metrics, response -> extractCodeBlock(extractReply(response, "无法从" + modelKey + "响应中解析代码"), language));
+    }
+
+    @Override
+    public void generateCodeStreaming(String prompt, String language, AIRequestOptions options,
+                                      SseEmitter emitter, StreamingResponseHandler handler) {
+        log.info("流式调用{}模型生成{}代码", modelKey, language);
+        AIModelProperties.ModelConfig config = properties.getModel(modelKey);
+
+        AICallMetrics metrics = usageRecorder.start(modelType, modelKey, options.getTaskType(), options.getUserId());
+        try {
+            enqueueStream(buildRequest(config, config.getEndpoint("completion"),
+                    codeRequestBody(config, prompt, language, options, true), options.getPriority()), metrics,
+                    emitter, handler, content -> { });
+        } catch (Exception e) {
+            metrics.failure();
+            log.error("创建{}流式代码生成请求失败:", modelKey, e);
+            handler.handleError(e, emitter);
+        }
+    }
+
+    @Override
+    public Conversation createConversation(String userId) {
+        return conversationManager.createConversation(userId, modelKey);
+    }
+
+    @Override
+    public String sendMessage(Conversation conversation, String message) {
+        log.info("在对话{}中发送消息", conversation.getId());
+        AIModelProperties.ModelConfig config = properties.getModel(modelKey);
+
+        // 使用conversation端点
+        String endpoint = config.getEndpoint("conversation");
+
+        // 添加用户消息到对话
+        conversation.addUserMessage(message);
+
+        AICallMetrics metrics = usageRecorder.start(modelType, modelKey, AITaskType.CHAT, conversation.getUserId());
+        try {
+            // 发送请求
+            Map<String, Object> response = postForMap(config, endpoint, conversationRequestBody(config, conversation, false),
+                    AIPriority.INTERACTIVE, metrics);
+            String content = extractReply(response, "无法从" + modelKey + "响应中解析回复");
+
+            // 添加AI回复到对话
+            conversation.addAssistantMessage(content);
+
+            // 更新对话
+            conversationManager.updateConversation(conversation.getUserId(), conversation);
+
+            return content;
+        } catch (AIProviderException e) {
+            // 保留状态码与重试等待时间，便于上层区分限流
+            throw e;
+        } catch (Exception e) {
+            log.error("在对话中调用{}模型失败", modelKey, e);
+            throw new RuntimeException("在对话中调用" + modelKey + "模型失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> sendMessageAsync(Conversation conversation, String message) {
+        log.info("在对话{}中异步发送消息", conversation.getId());
+        AIModelProperties.ModelConfig config = properties.getModel(modelKey);
+
+        // 添加用户消息到对话
+        conversation.addUserMessage(message);
+
+        AICallMetrics metrics = usageRecorder.start(modelType, modelKey, AITaskType.CHAT, conversation.getUserId());
+        return postForMapAsync(config, config.getEndpoint("conversation"), conversationRequestBody(config, conversation, false),
+                AIPriority.INTERACTIVE, metrics, response -> {
+                    String content = extractReply(response, "无法从" + modelKey + "响应中解析回复");
+                    // 添加AI回复到对话并更新
+                    conversation.addAssistantMessage(content);
+                    conversationManager.updateConversation(conversation.getUserId(), conversation);
+                    return content;
+                });
+    }
+
+    /**
+     * 构建代码生成请求体，直接写入连接
+     */
+    private RequestBody codeRequestBody(AIModelProperties.ModelConfig config, String prompt, String language,
+                                        AIRequestOptions options, boolean isStream) {
+        return JsonRequestBody.of(objectMapper.getFactory(), gen -> {
+            gen.writeStartObject();
+            gen.writeStringField("model", config.getModelName());
+            gen.writeArrayFieldStart("messages");
+            // 稳定前缀放在最前面的系统消息中，DeepSeek、OpenAI等服务对相同前缀自动启用提示缓存
+            if (options.getSystemPrompt() != null) {
+                writeMessage(gen, "system", options.getSystemPrompt());
+            }
+            gen.writeStartObject();
+            gen.writeStringField("role", "user");
+            gen.writeFieldName("content");
+            // 摘要任务的提示词已完整，无需代码生成模板
+            if (options.getTaskType() == AITaskType.SUMMARY) {
+                gen.writeString(prompt);
+            } else if (language.contains("cypher")) {
+                CYPHER_PROMPT.writeValue(gen, prompt);
+            } else {
+                CODE_PROMPT.writeValue(gen, language, prompt);
+            }
+            gen.writeEndObject();
+            gen.writeEndArray();
+            writeTemperature(gen, config, config.getTemperature());  // 较低的温度以获得更确定的输出
+            // 推理模型的输出上限包含推理令牌，只接受max_completion_tokens
+            gen.writeNumberField(config.isReasoning() ? "max_completion_tokens" : "max_tokens", config.getMaxTokens());
+            if (isStream) {
+                writeStreamFields(gen);
+            }
+            gen.writeEndObject();
+        });
+    }
+
+    /**
+     * 构建对话请求体，历史按上下文窗口预算截取后逐条写入
+     */
+    private RequestBody conversationRequestBody(AIModelProperties.ModelConfig config, Conversation conversation,
+                                                boolean isStream) {
+        List<ChatMessage> history = contextWindowManager.select(conversation);
+        return JsonRequestBody.of(objectMapper.getFactory(), gen -> {
+            gen.writeStartObject();
+            gen.writeStringField("model", config.getModelName());
+            gen.writeArrayFieldStart("messages");
+            for (ChatMessage msg : history) {
+                writeMessage(gen, msg.role(), msg.content());
+            }
+            gen.writeEndArray();
+            if (isStream) {
+                writeTemperature(gen, config, 0.2);
+                writeStreamFields(gen);
+            } else {
+                writeTemperature(gen, config, 0.5);
+            }
+            gen.writeEndObject();
+        });
+    }
+
+    private static void writeMessage(JsonGenerator gen, String role, String content) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("role", role);
+        gen.writeStringField("content", content);
+        gen.writeEndObject();
+    }
+
+    /**
+     * 写入采样温度，推理模型只接受默认温度，不写入该字段
+     */
+    private static void writeTemperature(JsonGenerator gen, AIModelProperties.ModelConfig config,
+                                         double temperature) throws IOException {
+        if (!config.isReasoning()) {
+            gen.writeNumberField("temperature", temperature);
+        }
+    }
+
+    /**
+     * 开启流式响应，并在[DONE]之前返回带usage的最后一块
+     */
+    private static void writeStreamFields(JsonGenerator gen) throws IOException {
+        gen.writeBooleanField("stream", true);
+        gen.writeObjectFieldStart("stream_options");
+        gen.writeBooleanField("include_usage", true);
+        gen.writeEndObject();
+    }
+
+    /**
+     * 从响应中解析回复内容
+     */
+    private String extractReply(Map<String, Object> response, String errorMsg) {
+        if (response != null && response.containsKey("choices")) {
+            List<Map<String, Object>> choices = (List<Map<String, Object>>) response.get("choices");
+            if (!choices.isEmpty()) {
+                Map<String, Object> choice = choices.get(0);
+                Map<String, Object> msgObj = (Map<String, Object>) choice.get("message");
+                return (String) msgObj.get("content");
+            }
+        }
+
+        log.error(errorMsg);
+        throw new RuntimeException(errorMsg);
+    }
+
+    @Override
+    public AIModelType getModelType() {
+        return modelType;
+    }
+
+    @Override
+    public String getModelKey() {
+        return modelKey;
+    }
+
+    /**
+     * 发送消息并获取流式回复
+     * @param conversation 对话对象
+     * @param message 发送的消息
+     * @param emitter 服务器发送事件发射器
+     * @param handler 流式响应处理器
+     */
+    @Override
+    @SneakyThrows
+    public void sendMessageStreaming(Conversation conversation, String message,
+                                     SseEmitter emitter, StreamingResponseHandler handler) {
+        log.info("在对话{}中发送流式消息", conversation.getId());
+        AIModelProperties.ModelConfig config = properties.getModel(modelKey);
+
+        // 使用conversation端点
+        String endpoint = config.getEndpoint("conversation");
+
+        // 添加用户消息到对话
+        conversation.addUserMessage(message);
+
+        AICallMetrics metrics = usageRecorder.start(modelType, modelKey, AITaskType.CHAT, conversation.getUserId());
+        try {
+            // 发送请求并处理流式响应，结束后写入对话
+            enqueueStream(buildRequest(config, endpoint, conversationRequestBody(config, conversation, true), AIPriority.INTERACTIVE), metrics,
+                    emitter, handler, completeMessage -> {
+                // 添加AI回复到对话
+                conversation.addAssistantMessage(completeMessage);
+                // 更新对话
+                conversationManager.updateConversation(conversation.getUserId(), conversation);
+            });
+        } catch (Exception e) {
+            log.error("创建{}流式请求失败:", modelKey, e);
+            handler.handleError(e, emitter);
+        }
+    }
+
+    @Override
+    public Flux<StreamChunk> streamMessage(Conversation conversation, String message) {
+        return Flux.defer(() -> {
+            log.info("在对话{}中发送响应式流式消息", conversation.getId());
+            AIModelProperties.ModelConfig config = properties.getModel(modelKey);
+
+            // 添加用户消息到对话
+            conversation.addUserMessage(message);
+
+            AICallMetrics metrics = usageRecorder.start(modelType, modelKey, AITaskType.CHAT, conversation.getUserId());
+            Call streamCall = httpTransport.client(modelKey).newCall(buildRequest(config, config.getEndpoint("conversation"),
+                    conversationRequestBody(config, conversation, true), AIPriority.INTERACTIVE));
+            StringBuilder completeMessage = new StringBuilder();
+            return CallFlux.stream(streamCall, objectMapper.getFactory(), SseTokenParser.Format.OPENAI, metrics)
+                    .doOnNext(chunk -> completeMessage.append(chunk.text()))
+                    // 流正常结束后在弹性线程上写入对话，不占用读取连接的线程
+                    .concatWith(Mono.<StreamChunk>fromRunnable(() -> {
+                        conversation.addAssistantMessage(completeMessage.toString());
+                        conversationManager.updateConversation(conversation.getUserId(), conversation);
+                    }).subscribeOn(Schedulers.boundedElastic()));
+        });
+    }
+
+    /**
+     * 发送流式请求，逐块交给handler，处理器返回最后一条后以完整回复调用onComplete并完成emitter
+     */
+    private void enqueueStream(Request request, AICallMetrics metrics, SseEmitter emitter,
+                               StreamingResponseHandler handler, Consumer<String> onComplete) {
+        Call streamCall = httpTransport.client(modelKey).newCall(request);
+        // 客户端断开或超时后取消上游请求，不再消耗模型令牌
+        handler.onCancel(emitter, streamCall::cancel);
+        streamCall.enqueue(new Callback() {
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                metrics.failure();
+                if (call.isCanceled()) {
+                    log.info("{}流式请求已取消", modelKey);
+                    return;
+                }
+                log.error("{}流式请求失败:", modelKey, e);
+                handler.handleError(e, emitter);
+            }
+
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                try (response) {
+                    ResponseBody body = response.body();
+                    if (!response.isSuccessful() || body == null) {
+                        log.error("{} API返回错误: {}, {}", modelKey, response.code(), body != null ? body.string() : "");
+                        metrics.failure();
+                        handler.handleError(
+                                new AIProviderException(response.code(), RateLimitHeaders.retryAfter(response)),
+                                emitter
+                        );
+                        return;
+                    }
+
+                    BufferedSource source = body.source();
+                    SseTokenParser parser = new SseTokenParser(objectMapper.getFactory(), SseTokenParser.Format.OPENAI);
+                    StringBuilder completeMessage = new StringBuilder();
+                    // 处理器在结束标记之前返回true表示客户端已断开
+                    boolean stopped = false;
+                    try {
+                        while (parser.next(source)) {
+                            if (parser.error() != null) {
+                                log.error("{}流式响应返回错误: {}", modelKey, parser.error());
+                                handler.handleError(new RuntimeException(parser.error()), emitter);
+                                return;
+                            }
+
+                            // 解析SSE数据，结束标记以[DONE]交给处理器
+                            String content = parser.isDone() ? "[DONE]" : parser.text();
+                            if (content == null || content.isEmpty()) {
+                                continue;
+                            }
+                            if (!parser.isDone()) {
+                                metrics.firstToken();
+                                completeMessage.append(content);
+                            } else {
+                                handler.handleSummary(new StreamSummary(parser.messageId(), parser.finishReason(), parser.usage()));
+                            }
+                            stopped = handler.handleResponse(content, emitter);
+
+                            // 收到结束标记才视为成功并写入完整回复
+                            if (parser.isDone()) {
+                                metrics.usage(parser.usage());
+                                metrics.success();
+                                onComplete.accept(completeMessage.toString());
+                                // 完成SSE
+                                emitter.complete();
+                                break;
+                            }
+                            // 客户端已断开：停止读取，不写入不完整的回复，由finally记为失败
+                            if (stopped) {
+                                break;
+                            }
+                        }
+                        // 连接在[DONE]之前关闭，按错误结束，不保持客户端连接直到超时
+                        if (!parser.isDone() && !stopped && !call.isCanceled()) {
+                            log.error("{}流式响应未正常结束", modelKey);
+                            handler.handleError(new IOException("流式响应未正常结束"), emitter);
+                        }
+                    } finally {
+                        // 正常结束时已记录成功；中途出错或断开时记为失败，已产生的令牌仍然计入
+                        metrics.usage(parser.usage());
+                        metrics.failure();
+                    }
+                } catch (Exception e) {
+                    if (call.isCanceled()) {
+                        log.info("{}流式请求已取消", modelKey);
+                        return;
+                    }
+                    log.error("处理{}流式响应出错:", modelKey, e);
+                    handler.handleError(e, emitter);
+                }
+            }
+        });
+    }
+
+    /**
+     * 发送非流式请求并解析为Map
+     */
+    private Map<String, Object> postForMap(AIModelProperties.ModelConfig config, String endpoint,
+                                           RequestBody requestBody, AIPriority priority,
+                                           AICallMetrics metrics) throws IOException {
+        Request request = buildRequest(config, endpoint, requestBody, priority);
+        try (Response response = httpTransport.client(modelKey).newCall(request).execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                log.error("{} API返回错误: {}, {}", modelKey, response.code(), body != null ? body.string() : "");
+                throw new AIProviderException(response.code(), RateLimitHeaders.retryAfter(response));
+            }
+            Map<String, Object> responseMap = objectMapper.readValue(body.byteStream(), Map.class);
+            metrics.usage(AIUsage.fromOpenAI((Map<String, Object>) responseMap.get("usage")));
+            metrics.success();
+            return responseMap;
+        } finally {
+            metrics.failure();
+        }
+    }
+
+    /**
+     * 异步发送非流式请求，解析器在响应线程中执行
+     */
+    private <T> CompletableFuture<T> postForMapAsync(AIModelProperties.ModelConfig config, String endpoint,
+                                                     RequestBody requestBody, AIPriority priority, AICallMetrics metrics,
+                                                     Function<Map<String, Object>, T> parser) {
+        try {
+            Request request = buildRequest(config, endpoint, requestBody, priority);
+            CallFuture<T> future = CallFuture.enqueue(httpTransport.client(modelKey).newCall(request), response -> {
+                ResponseBody body = response.body();
+                if (!response.isSuccessful() || body == null) {
+                    log.error("{} API返回错误: {}, {}", modelKey, response.code(), body != null ? body.string() : "");
+                    throw new AIProviderException(response.code(), RateLimitHeaders.retryAfter(response));
+                }
+                Map<String, Object> responseMap = objectMapper.readValue(body.byteStream(), Map.class);
+                metrics.usage(AIUsage.fromOpenAI((Map<String, Object>) responseMap.get("usage")));
+                metrics.success();
+                return parser.apply(responseMap);
+            });
+            // 请求失败或被取消时记为失败，成功时已在解析前记录
+            future.whenComplete((result, error) -> metrics.failure());
+            return future;
+        } catch (Exception e) {
+            metrics.failure();
+            log.error("创建{}异步请求失败", modelKey, e);
+            return CompletableFuture.failedFuture(new RuntimeException("调用" + modelKey + "模型失败: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * 构建请求
+     */
+    private Request buildRequest(AIModelProperties.ModelConfig config, String endpoint, RequestBody requestBody,
+                                 AIPriority priority) {
+        return new Request.Builder()
+                .tag(AIPriority.class, priority)
+                .url(endpoint)
+                .post(requestBody)
+                .addHeader("Authorization", "Bearer " + config.getApiKey())
+                .build();
+    }
+
+    /**
+     * 从AI响应中提取代码块
+     */
+    private String extractCodeBlock(String content, String language) {
+        // 检查内容是否包含Markdown代码块
+        String codeBlockStart = "```" + language.toLowerCase();
+        String codeBlockEnd = "```";
+
+        int startIndex = content.indexOf(codeBlockStart);
+        if (startIndex != -1) {
+            startIndex = content.indexOf('\n', startIndex) + 1;
+            int endIndex = content.indexOf(codeBlockEnd, startIndex);
+            if (endIndex != -1) {
+                return content.substring(startIndex, endIndex).trim();
+            }
+        }
+
+        // 无法识别代码块，返回整个内容
+        return content.trim();
+    }
+}
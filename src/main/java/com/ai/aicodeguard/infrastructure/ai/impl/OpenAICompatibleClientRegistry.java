@@ -0,0 +1,69 @@
+package com.ai.aicodeguard.infrastructure.ai.impl;
+
+import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AIModelProperties;
+import com.ai.aicodeguard.infrastructure.ai.AIModelType;
+import com.ai.aicodeguard.infrastructure.ai.conversation.ContextWindowManager;
+import com.ai.aicodeguard.infrastructure.ai.conversation.ConversationManager;
+import com.ai.aicodeguard.infrastructure.ai.metering.AIUsageRecorder;
+import com.ai.aicodeguard.infrastructure.ai.transport.AIHttpTransport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @ClassName: OpenAICompatibleClientRegistry
+ * @Description: 为 ai.models 下 protocol 为 openai 且没有专用实现的配置创建通用客户端，
+ * 例如与应用同机部署的vLLM、Ollama等推理服务
+ * @Author: LZX
+ * @Date: 2025/5/25 10:05
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OpenAICompatibleClientRegistry {
+
+    public static final String PROTOCOL = "openai";
+
+    private final AIModelProperties properties;
+    private final AIHttpTransport httpTransport;
+    private final ObjectMapper objectMapper;
+    private final ConversationManager conversationManager;
+    private final ContextWindowManager contextWindowManager;
+    private final AIUsageRecorder usageRecorder;
+
+    /**
+     * 创建通用客户端
+     * @param registeredKeys 已有专用实现的配置名，这些配置不再重复创建
+     */
+    public List<AIClientService> createClients(Set<String> registeredKeys) {
+        List<AIClientService> clients = new ArrayList<>();
+        properties.getModels().forEach((modelKey, config) -> {
+            if (!PROTOCOL.equalsIgnoreCase(config.getProtocol()) || registeredKeys.contains(modelKey)) {
+                return;
+            }
+            AIModelType modelType = modelType(modelKey);
+            log.info("为{}配置创建OpenAI兼容客户端，模型: {}，端点: {}",
+                    modelKey, config.getModelName(), config.getDefaultEndpoint());
+            clients.add(new OpenAICompatibleAIClientService(modelKey, modelType, properties, httpTransport,
+                    objectMapper, conversationManager, contextWindowManager, usageRecorder));
+        });
+        return clients;
+    }
+
+    /**
+     * 配置名与已知模型类型同名时使用该类型，否则视为OpenAI兼容服务
+     */
+    private static AIModelType modelType(String modelKey) {
+        return Arrays.stream(AIModelType.values())
+                .filter(type -> type.name().equalsIgnoreCase(modelKey))
+                .findFirst()
+                .orElse(AIModelType.OPENAI);
+    }
+}
@@ -0,0 +1,71 @@
+package com.ai.aicodeguard.infrastructure.ai.metering;
+
+import com.ai.aicodeguard.infrastructure.ai.AIUsage;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @ClassName: AICallMetrics
+ * @Description: 单次模型调用的计量句柄，由 AIUsageRecorder.start 创建，调用结束时只记录一次
+ * @Author: LZX
+ * @Date: 2025/5/26 14:10
+ */
+@Getter(AccessLevel.PACKAGE)
+public class AICallMetrics {
+
+    private final AIUsageRecorder recorder;
+    private final String provider;
+    private final String modelKey;
+    private final String taskType;
+    private final String userId;
+    private final long startNanos;
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    private volatile long firstTokenNanos;
+    private volatile AIUsage usage;
+
+    AICallMetrics(AIUsageRecorder recorder, String provider, String modelKey, String taskType, String userId,
+                  long startNanos) {
+        this.recorder = recorder;
+        this.provider = provider;
+        this.modelKey = modelKey;
+        this.taskType = taskType;
+        this.userId = userId;
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * 收到首个输出令牌，只有第一次调用生效
+     */
+    public void firstToken() {
+        if (firstTokenNanos == 0) {
+            firstTokenNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * 更新本次调用的令牌用量，流式响应中服务端给出的是累计值，直接覆盖
+     */
+    public void usage(AIUsage usage) {
+        this.usage = usage;
+    }
+
+    public void success() {
+        complete(true);
+    }
+
+    /**
+     * 调用失败，已经产生的令牌用量(如流式中途断开)仍然计入
+     */
+    public void failure() {
+        complete(false);
+    }
+
+    private void complete(boolean success) {
+        if (completed.compareAndSet(false, true)) {
+            recorder.complete(this, success, usage, System.nanoTime());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.ai.aicodeguard.infrastructure.ai.metering;
+
+import com.ai.aicodeguard.infrastructure.ai.AIModelType;
+import com.ai.aicodeguard.infrastructure.ai.AITaskType;
+import com.ai.aicodeguard.infrastructure.ai.AIUsage;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * @ClassName: AIUsageRecorder
+ * @Description: 记录模型调用的令牌用量(含提示缓存读写)、首令牌时间、生成速度与总耗时，
+ *               指标按服务商、模型、任务类型标记，令牌用量另按用户汇总到Redis用于成本分摊
+ * @Author: LZX
+ * @Date: 2025/5/24 09:35
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AIUsageRecorder {
+
+    /**
+     * 系统发起的调用(知识图谱查询生成等)记入该用户
+     */
+    public static final String SYSTEM_USER = "system";
+
+    private static final String TOKENS = "ai.tokens";
+    private static final String LATENCY = "ai.request.latency";
+    private static final String TTFT = "ai.request.ttft";
+    private static final String TOKENS_PER_SECOND = "ai.request.tokens.per.second";
+
+    private final MeterRegistry meterRegistry;
+    private final AIUserUsageStore userUsageStore;
+
+    /**
+     * 开始计量一次模型调用，调用结束时必须调用 success 或 failure
+     * @param provider 服务商
+     * @param modelKey ai.models 下的配置名
+     * @param taskType 任务类型
+     * @param userId 发起调用的用户，为null时记为系统调用
+     */
+    public AICallMetrics start(AIModelType provider, String modelKey, AITaskType taskType, String userId) {
+        return new AICallMetrics(this, provider.name().toLowerCase(), modelKey,
+                taskType.name().toLowerCase(), userId != null ? userId : SYSTEM_USER, System.nanoTime());
+    }
+
+    void complete(AICallMetrics call, boolean success, AIUsage usage, long endNanos) {
+        Duration latency = Duration.ofNanos(endNanos - call.getStartNanos());
+        Timer.builder(LATENCY)
+                .tags("provider", call.getProvider(), "model", call.getModelKey(), "task", call.getTaskType(),
+                        "outcome", success ? "success" : "error")
+                .register(meterRegistry)
+                .record(latency);
+        if (call.getFirstTokenNanos() > 0) {
+            Timer.builder(TTFT)
+                    .tags("provider", call.getProvider(), "model", call.getModelKey(), "task", call.getTaskType())
+                    .register(meterRegistry)
+                    .record(Duration.ofNanos(call.getFirstTokenNanos() - call.getStartNanos()));
+        }
+        if (usage == null || usage.equals(AIUsage.EMPTY)) {
+            return;
+        }
+
+        // 流式调用从首令牌开始计算生成速度，非流式调用只能按整体耗时估算
+        long generationNanos = endNanos - (call.getFirstTokenNanos() > 0 ? call.getFirstTokenNanos() : call.getStartNanos());
+        if (usage.outputTokens() > 0 && generationNanos > 0) {
+            DistributionSummary.builder(TOKENS_PER_SECOND)
+                    .baseUnit("tokens")
+                    .tags("provider", call.getProvider(), "model", call.getModelKey(), "task", call.getTaskType())
+                    .register(meterRegistry)
+                    .record(usage.outputTokens() * 1_000_000_000.0 / generationNanos);
+        }
+
+        recordTokens(call.getProvider(), call.getModelKey(), call.getTaskType(), call.getUserId(), usage);
+        log.debug("{}模型{}任务耗时{}ms", call.getModelKey(), call.getTaskType(), latency.toMillis());
+    }
+
+    /**
+     * 只记录令牌用量，用于服务商批处理等没有可比耗时的调用
+     */
+    public void recordUsage(AIModelType provider, String modelKey, AITaskType taskType, String userId, AIUsage usage) {
+        if (usage == null || usage.equals(AIUsage.EMPTY)) {
+            return;
+        }
+        recordTokens(provider.name().toLowerCase(), modelKey, taskType.name().toLowerCase(),
+                userId != null ? userId : SYSTEM_USER, usage);
+    }
+
+    private void recordTokens(String provider, String modelKey, String taskType, String userId, AIUsage usage) {
+        increment(provider, modelKey, taskType, "input", usage.inputTokens());
+        increment(provider, modelKey, taskType, "output", usage.outputTokens());
+        increment(provider, modelKey, taskType, "cache_read", usage.cacheReadTokens());
+        increment(provider, modelKey, taskType, "cache_write", usage.cacheWriteTokens());
+        // 按用户的用量只写入Redis，指标不带用户标签，避免时间序列随用户数增长
+        userUsageStore.add(userId, modelKey, usage);
+        log.debug("{}模型{}任务令牌用量(用户{}): 输入{}，输出{}，缓存读取{}，缓存写入{}", modelKey, taskType, userId,
+                usage.inputTokens(), usage.outputTokens(), usage.cacheReadTokens(), usage.cacheWriteTokens());
+    }
+
+    private void increment(String provider, String modelKey, String taskType, String type, long tokens) {
+        if (tokens > 0) {
+            meterRegistry.counter(TOKENS, "provider", provider, "model", modelKey, "task", taskType,
+                    "type", type).increment(tokens);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.ai.aicodeguard.infrastructure.ai.metering;
+
+import com.ai.aicodeguard.infrastructure.ai.AIUsage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * @ClassName: AIUserUsageStore
+ * @Description: 按用户、按天汇总令牌用量，存放在Redis哈希 ai:usage:{用户}:{日期} 中，字段为 {模型}:{类型}
+ * @Author: LZX
+ * @Date: 2025/5/26 14:30
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AIUserUsageStore {
+
+    private static final String KEY_PREFIX = "ai:usage:";
+    private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE;
+    // 汇总数据保留时间
+    private static final Duration RETENTION = Duration.ofDays(90);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    /**
+     * 累加用户当天的令牌用量，Redis不可用时只记录日志，不影响模型调用
+     */
+    public void add(String userId, String modelKey, AIUsage usage) {
+        String key = key(userId, LocalDate.now());
+        try {
+            redisTemplate.executePipelined(pipeline(redis -> {
+                HashOperations<String, String, String> hash = redis.opsForHash();
+                increment(hash, key, modelKey + ":input", usage.inputTokens());
+                increment(hash, key, modelKey + ":output", usage.outputTokens());
+                increment(hash, key, modelKey + ":cache_read", usage.cacheReadTokens());
+                increment(hash, key, modelKey + ":cache_write", usage.cacheWriteTokens());
+                hash.increment(key, modelKey + ":calls", 1);
+                redis.expire(key, RETENTION);
+            }));
+        } catch (Exception e) {
+            log.warn("累计用户{}令牌用量失败", userId, e);
+        }
+    }
+
+    /**
+     * 查询用户在日期区间内各模型的令牌用量
+     * @param from 起始日期(含)
+     * @param to 结束日期(含)
+     * @return 模型配置名 -> 用量
+     */
+    public Map<String, AIUsage> getUsage(String userId, LocalDate from, LocalDate to) {
+        List<String> keys = new ArrayList<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            keys.add(key(userId, day));
+        }
+        List<Object> days = redisTemplate.executePipelined(pipeline(redis -> {
+            HashOperations<String, String, String> hash = redis.opsForHash();
+            keys.forEach(hash::entries);
+        }));
+
+        Map<String, AIUsage> usage = new TreeMap<>();
+        for (Object day : days) {
+            if (!(day instanceof Map<?, ?> fields)) {
+                continue;
+            }
+            fields.forEach((field, value) -> {
+                String name = String.valueOf(field);
+                int separator = name.lastIndexOf(':');
+                long tokens = Long.parseLong(String.valueOf(value));
+                AIUsage delta = switch (name.substring(separator + 1)) {
+                    case "input" -> new AIUsage(tokens, 0, 0, 0);
+                    case "output" -> new AIUsage(0, tokens, 0, 0);
+                    case "cache_read" -> new AIUsage(0, 0, tokens, 0);
+                    case "cache_write" -> new AIUsage(0, 0, 0, tokens);
+                    default -> AIUsage.EMPTY;
+                };
+                usage.merge(name.substring(0, separator), delta, AIUsage::plus);
+            });
+        }
+        return usage;
+    }
+
+    private static void increment(HashOperations<String, String, String> hash, String key, String field, long tokens) {
+        if (tokens > 0) {
+            hash.increment(key, field, tokens);
+        }
+    }
+
+    /**
+     * 在同一个连接上以管道方式执行，一次往返发送全部命令
+     */
+    private static SessionCallback<Object> pipeline(Consumer<RedisOperations<String, String>> commands) {
+        return new SessionCallback<>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                commands.accept((RedisOperations<String, String>) operations);
+                return null;
+            }
+        };
+    }
+
+    private static String key(String userId, LocalDate day) {
+        return KEY_PREFIX + userId + ":" + day.format(DAY);
+    }
+}
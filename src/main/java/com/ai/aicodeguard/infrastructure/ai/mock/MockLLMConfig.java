@@ -0,0 +1,23 @@
+package com.ai.aicodeguard.infrastructure.ai.mock;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @ClassName: MockLLMConfig
+ * @Description: 启用模拟模型时在应用内启动模拟服务
+ * @Author: LZX
+ * @Date: 2025/5/23 10:40
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "ai.mock", name = "enabled", havingValue = "true")
+public class MockLLMConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnProperty(prefix = "ai.mock", name = "embedded", havingValue = "true", matchIfMissing = true)
+    public MockLLMServer mockLLMServer(MockLLMProperties properties, ObjectMapper objectMapper) {
+        return new MockLLMServer(properties, objectMapper);
+    }
+}
@@ -0,0 +1,35 @@
+package com.ai.aicodeguard.infrastructure.ai.mock;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * @ClassName: MockLLMProperties
+ * @Description: 本地模拟大模型服务配置
+ * @Author: LZX
+ * @Date: 2025/5/23 09:20
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.mock")
+public class MockLLMProperties {
+    // 是否注册MOCK模型客户端
+    private boolean enabled = false;
+    // 是否在应用内启动模拟服务，关闭时可单独运行 MockLLMServer 供多个实例共用
+    private boolean embedded = true;
+    private String host = "127.0.0.1";
+    // 0表示随机端口
+    private int port = 18080;
+    // 首个token前的等待时间及随机抖动(ms)
+    private long firstTokenLatency = 300;
+    private long latencyJitter = 200;
+    // 输出速度，0表示不限速
+    private double tokensPerSecond = 60;
+    // 按概率返回错误状态码，模拟服务商过载或限流
+    private double errorRate = 0;
+    private int errorStatus = 529;
+    private int retryAfterSeconds = 1;
+    // 按概率在输出一半时结束流，且不发送结束事件
+    private double truncateRate = 0;
+}
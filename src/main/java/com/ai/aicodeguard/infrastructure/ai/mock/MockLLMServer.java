@@ -0,0 +1,318 @@
+package com.ai.aicodeguard.infrastructure.ai.mock;
+
+import com.ai.aicodeguard.infrastructure.ai.conversation.TokenEstimator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @ClassName: MockLLMServer
+ * @Description: 可嵌入的模拟大模型HTTP服务，兼容Claude /v1/messages 与 OpenAI /chat/completions 协议(含SSE流式)，
+ * 可配置延迟、输出速度、错误率与流截断，用于离线压测
+ * @Author: LZX
+ * @Date: 2025/5/23 10:05
+ */
+@Slf4j
+public class MockLLMServer {
+
+    private enum Protocol { ANTHROPIC, OPENAI }
+
+    private final MockLLMProperties properties;
+    private final ObjectMapper objectMapper;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public MockLLMServer(MockLLMProperties properties, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+    }
+
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        server = HttpServer.create(new InetSocketAddress(properties.getHost(), properties.getPort()), 0);
+        // 流式输出期间一直占用线程，按连接数弹性扩展
+        AtomicInteger counter = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mock-llm-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/v1/messages", exchange -> handle(exchange, Protocol.ANTHROPIC));
+        server.createContext("/chat/completions", exchange -> handle(exchange, Protocol.OPENAI));
+        server.createContext("/v1/chat/completions", exchange -> handle(exchange, Protocol.OPENAI));
+        server.start();
+        log.info("模拟大模型服务已启动: http://{}:{}", properties.getHost(), getPort());
+    }
+
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+        log.info("模拟大模型服务已停止");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange, Protocol protocol) {
+        try {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            String model = request.path("model").asText("mock");
+            boolean stream = request.path("stream").asBoolean(false);
+            String promptText = promptText(request);
+            int inputTokens = TokenEstimator.estimate(promptText);
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long jitter = properties.getLatencyJitter() > 0 ? random.nextLong(properties.getLatencyJitter() + 1) : 0;
+            TimeUnit.MILLISECONDS.sleep(properties.getFirstTokenLatency() + jitter);
+
+            if (random.nextDouble() < properties.getErrorRate()) {
+                sendError(exchange, protocol);
+                return;
+            }
+
+            List<String> tokens = MockResponses.tokenize(MockResponses.reply(promptText));
+            if (stream) {
+                boolean truncate = random.nextDouble() < properties.getTruncateRate();
+                boolean includeUsage = request.path("stream_options").path("include_usage").asBoolean(false);
+                stream(exchange, protocol, model, tokens, inputTokens, truncate, includeUsage);
+            } else {
+                // 非流式请求同样按输出速度计算耗时
+                pace(System.nanoTime(), tokens.size());
+                String content = String.join("", tokens);
+                ObjectNode body = protocol == Protocol.ANTHROPIC
+                        ? anthropicMessage(model, content, inputTokens, tokens.size())
+                        : openAICompletion(model, content, inputTokens, tokens.size());
+                sendJson(exchange, 200, body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // 客户端取消请求或断开连接
+            log.debug("模拟服务连接中断: {}", e.getMessage());
+        } catch (Exception e) {
+            log.warn("模拟服务处理请求失败", e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void stream(HttpExchange exchange, Protocol protocol, String model, List<String> tokens,
+                        int inputTokens, boolean truncate, boolean includeUsage) throws IOException, InterruptedException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        String id = UUID.randomUUID().toString().replace("-", "");
+
+        if (protocol == Protocol.ANTHROPIC) {
+            ObjectNode message = anthropicMessage(model, "", inputTokens, 0);
+            message.putArray("content");
+            message.putNull("stop_reason");
+            ObjectNode start = objectMapper.createObjectNode().put("type", "message_start");
+            start.set("message", message);
+            writeEvent(out, "message_start", start);
+            ObjectNode blockStart = objectMapper.createObjectNode().put("type", "content_block_start").put("index", 0);
+            blockStart.putObject("content_block").put("type", "text").put("text", "");
+            writeEvent(out, "content_block_start", blockStart);
+        }
+
+        int limit = truncate ? tokens.size() / 2 : tokens.size();
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < limit; i++) {
+            pace(startNanos, i);
+            if (protocol == Protocol.ANTHROPIC) {
+                ObjectNode delta = objectMapper.createObjectNode().put("type", "content_block_delta").put("index", 0);
+                delta.putObject("delta").put("type", "text_delta").put("text", tokens.get(i));
+                writeEvent(out, "content_block_delta", delta);
+            } else {
+                writeEvent(out, null, openAIChunk(id, model, tokens.get(i), null));
+            }
+        }
+        if (truncate) {
+            log.debug("模拟服务截断流式输出，已输出{}/{}个token", limit, tokens.size());
+            return;
+        }
+
+        if (protocol == Protocol.ANTHROPIC) {
+            writeEvent(out, "content_block_stop",
+                    objectMapper.createObjectNode().put("type", "content_block_stop").put("index", 0));
+            ObjectNode messageDelta = objectMapper.createObjectNode().put("type", "message_delta");
+            messageDelta.putObject("delta").put("stop_reason", "end_turn").putNull("stop_sequence");
+            messageDelta.putObject("usage").put("output_tokens", tokens.size());
+            writeEvent(out, "message_delta", messageDelta);
+            writeEvent(out, "message_stop", objectMapper.createObjectNode().put("type", "message_stop"));
+        } else {
+            writeEvent(out, null, openAIChunk(id, model, null, "stop"));
+            if (includeUsage) {
+                // 与OpenAI一致，usage块的choices为空数组
+                ObjectNode usageChunk = openAIChunk(id, model, null, null);
+                usageChunk.putArray("choices");
+                usageChunk.putObject("usage")
+                        .put("prompt_tokens", inputTokens)
+                        .put("completion_tokens", tokens.size())
+                        .put("total_tokens", inputTokens + tokens.size());
+                writeEvent(out, null, usageChunk);
+            }
+            out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+    }
+
+    /**
+     * 按输出速度等待到第index个token的发送时间
+     */
+    private void pace(long startNanos, int index) throws InterruptedException {
+        if (properties.getTokensPerSecond() <= 0) {
+            return;
+        }
+        long due = startNanos + (long) (index * 1_000_000_000L / properties.getTokensPerSecond());
+        long wait = due - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private void writeEvent(OutputStream out, String event, JsonNode data) throws IOException {
+        StringBuilder frame = new StringBuilder();
+        if (event != null) {
+            frame.append("event: ").append(event).append('\n');
+        }
+        frame.append("data: ").append(objectMapper.writeValueAsString(data)).append("\n\n");
+        out.write(frame.toString().getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private ObjectNode anthropicMessage(String model, String content, int inputTokens, int outputTokens) {
+        ObjectNode message = objectMapper.createObjectNode()
+                .put("id", "msg_mock_" + UUID.randomUUID().toString().replace("-", ""))
+                .put("type", "message")
+                .put("role", "assistant")
+                .put("model", model);
+        message.putArray("content").addObject().put("type", "text").put("text", content);
+        message.put("stop_reason", "end_turn");
+        message.putObject("usage")
+                .put("input_tokens", inputTokens)
+                .put("output_tokens", outputTokens)
+                .put("cache_read_input_tokens", 0)
+                .put("cache_creation_input_tokens", 0);
+        return message;
+    }
+
+    private ObjectNode openAICompletion(String model, String content, int inputTokens, int outputTokens) {
+        ObjectNode completion = objectMapper.createObjectNode()
+                .put("id", "chatcmpl-mock-" + UUID.randomUUID().toString().replace("-", ""))
+                .put("object", "chat.completion")
+                .put("created", System.currentTimeMillis() / 1000)
+                .put("model", model);
+        ObjectNode choice = completion.putArray("choices").addObject().put("index", 0);
+        choice.putObject("message").put("role", "assistant").put("content", content);
+        choice.put("finish_reason", "stop");
+        completion.putObject("usage")
+                .put("prompt_tokens", inputTokens)
+                .put("completion_tokens", outputTokens)
+                .put("total_tokens", inputTokens + outputTokens);
+        return completion;
+    }
+
+    private ObjectNode openAIChunk(String id, String model, String content, String finishReason) {
+        ObjectNode chunk = objectMapper.createObjectNode()
+                .put("id", "chatcmpl-mock-" + id)
+                .put("object", "chat.completion.chunk")
+                .put("created", System.currentTimeMillis() / 1000)
+                .put("model", model);
+        ObjectNode choice = chunk.putArray("choices").addObject().put("index", 0);
+        ObjectNode delta = choice.putObject("delta");
+        if (content != null) {
+            delta.put("content", content);
+        }
+        choice.put("finish_reason", finishReason);
+        return chunk;
+    }
+
+    private void sendError(HttpExchange exchange, Protocol protocol) throws IOException {
+        int status = properties.getErrorStatus();
+        ObjectNode body = objectMapper.createObjectNode();
+        if (protocol == Protocol.ANTHROPIC) {
+            body.put("type", "error");
+            body.putObject("error").put("type", status == 429 ? "rate_limit_error" : "overloaded_error")
+                    .put("message", "模拟服务注入的错误");
+        } else {
+            body.putObject("error").put("type", status == 429 ? "rate_limit_exceeded" : "server_error")
+                    .put("message", "模拟服务注入的错误");
+        }
+        if (status == 429 || status >= 500) {
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(properties.getRetryAfterSeconds()));
+        }
+        sendJson(exchange, status, body);
+    }
+
+    private void sendJson(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    /**
+     * 拼接请求中的系统提示与全部消息文本，用于选择回复和估算输入token
+     */
+    private String promptText(JsonNode request) {
+        StringBuilder text = new StringBuilder();
+        appendContent(text, request.path("system"));
+        for (JsonNode message : request.path("messages")) {
+            appendContent(text, message.path("content"));
+        }
+        return text.toString();
+    }
+
+    private void appendContent(StringBuilder text, JsonNode content) {
+        if (content.isTextual()) {
+            text.append(content.asText()).append('\n');
+        } else if (content.isArray()) {
+            // Claude的内容块格式 [{type: text, text: ...}]
+            for (JsonNode block : content) {
+                appendContent(text, block.path("text"));
+            }
+        }
+    }
+
+    /**
+     * 单独运行模拟服务，参数为端口号，默认18080
+     */
+    public static void main(String[] args) throws IOException {
+        MockLLMProperties properties = new MockLLMProperties();
+        if (args.length > 0) {
+            properties.setPort(Integer.parseInt(args[0]));
+        }
+        properties.setHost("0.0.0.0");
+        new MockLLMServer(properties, new ObjectMapper()).start();
+    }
+}
@@ -0,0 +1,171 @@
+package com.ai.aicodeguard.infrastructure.ai.replay;
+
+import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AIModelProperties;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
+import com.ai.aicodeguard.infrastructure.ai.conversation.Conversation;
+import com.ai.aicodeguard.infrastructure.ai.conversation.ConversationManager;
+import com.ai.aicodeguard.infrastructure.ai.decorator.AIClientDecorator;
+import com.ai.aicodeguard.infrastructure.ai.decorator.AIRequestFingerprint;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * @ClassName: AIRecordReplay
+ * @Description: 模型流量录制与回放，位于装饰链最内层，直接包装各模型的客户端实现；
+ * 录制模式记录真实的请求与响应(含流式片段的时间)，回放模式按请求指纹返回录制结果，不访问网络
+ * @Author: LZX
+ * @Date: 2025/5/24 09:45
+ */
+@Component
+@Order(5)
+@RequiredArgsConstructor
+@Slf4j
+public class AIRecordReplay implements AIClientDecorator {
+
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final AIReplayProperties replayProperties;
+    private final AIModelProperties modelProperties;
+    private final ConversationManager conversationManager;
+    private final ObjectMapper objectMapper;
+
+    private ReplayLog replayLog;
+    private ScheduledExecutorService scheduler;
+
+    // 回放数据：指纹 -> 录制记录，同一指纹多次录制时按顺序轮流返回
+    private final Map<String, List<ReplayRecord>> records = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> cursors = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() throws IOException {
+        Path directory = Paths.get(replayProperties.getDirectory());
+        switch (replayProperties.getMode()) {
+            case RECORD -> {
+                Path file = directory.resolve("ai-traffic-" + LocalDateTime.now().format(FILE_TIME) + ".ndjson.gz");
+                replayLog = ReplayLog.create(file, objectMapper);
+                log.info("模型流量录制已开启，写入: {}", file.toAbsolutePath());
+            }
+            case REPLAY -> {
+                load(directory);
+                AtomicInteger counter = new AtomicInteger();
+                scheduler = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                    Thread thread = new Thread(runnable, "ai-replay-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            default -> {
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (replayLog != null) {
+            replayLog.close();
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public AIClientService decorate(AIClientService client) {
+        return switch (replayProperties.getMode()) {
+            case RECORD -> new RecordingAIClientService(client, this);
+            case REPLAY -> new ReplayingAIClientService(client, this);
+            default -> client;
+        };
+    }
+
+    private void load(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            log.warn("回放目录{}不存在，所有请求都将未命中", directory.toAbsolutePath());
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(path -> path.getFileName().toString().endsWith(".ndjson.gz")).sorted().toList();
+        }
+        int count = 0;
+        for (Path file : files) {
+            for (ReplayRecord record : ReplayLog.read(file, objectMapper)) {
+                records.computeIfAbsent(record.fingerprint(), key -> new ArrayList<>()).add(record);
+                count++;
+            }
+        }
+        log.info("已加载{}个回放文件，共{}条记录，{}个不同请求", files.size(), count, records.size());
+    }
+
+    /**
+     * 代码生成请求的回放指纹
+     */
+    String codeFingerprint(String modelKey, String prompt, String language, AIRequestOptions options) {
+        return AIRequestFingerprint.ofCode(modelKey, modelProperties.getModel(modelKey), prompt, language,
+                options.getSystemPrompt());
+    }
+
+    /**
+     * 对话请求的回放指纹，需在新消息加入对话之前计算
+     */
+    String conversationFingerprint(String modelKey, Conversation conversation, String message) {
+        return AIRequestFingerprint.ofConversation(modelKey, conversation, message);
+    }
+
+    void record(ReplayRecord record) {
+        replayLog.append(record);
+    }
+
+    /**
+     * 查找回放记录，未命中返回null
+     */
+    ReplayRecord find(String fingerprint) {
+        List<ReplayRecord> candidates = records.get(fingerprint);
+        if (candidates == null || candidates.isEmpty()) {
+            return null;
+        }
+        int index = cursors.computeIfAbsent(fingerprint, key -> new AtomicInteger()).getAndIncrement();
+        return candidates.get(Math.floorMod(index, candidates.size()));
+    }
+
+    /**
+     * 按回放速度换算录制时的耗时
+     */
+    long scaledDelay(long recordedMs) {
+        double speed = replayProperties.getSpeed();
+        return speed <= 0 ? 0 : (long) (recordedMs / speed);
+    }
+
+    boolean isPassthroughOnMiss() {
+        return replayProperties.isPassthroughOnMiss();
+    }
+
+    ScheduledExecutorService scheduler() {
+        return scheduler;
+    }
+
+    ConversationManager conversationManager() {
+        return conversationManager;
+    }
+}
@@ -0,0 +1,27 @@
+package com.ai.aicodeguard.infrastructure.ai.replay;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * @ClassName: AIReplayProperties
+ * @Description: 模型流量录制与回放配置
+ * @Author: LZX
+ * @Date: 2025/5/24 09:15
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.replay")
+public class AIReplayProperties {
+
+    public enum Mode { OFF, RECORD, REPLAY }
+
+    private Mode mode = Mode.OFF;
+    // 录制文件目录，录制时写入新文件，回放时加载目录下全部 *.ndjson.gz
+    private String directory = "replay";
+    // 回放速度倍数，1按录制时的耗时回放，0不等待
+    private double speed = 1.0;
+    // 回放未命中时是否转发给真实模型，关闭时直接报错以保证回放确定性
+    private boolean passthroughOnMiss = false;
+}
@@ -0,0 +1,207 @@
+package com.ai.aicodeguard.infrastructure.ai.replay;
+
+import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
+import com.ai.aicodeguard.infrastructure.ai.StreamingResponseHandler;
+import com.ai.aicodeguard.infrastructure.ai.conversation.Conversation;
+import com.ai.aicodeguard.infrastructure.ai.decorator.ForwardingAIClientService;
+import com.ai.aicodeguard.infrastructure.ai.exception.AIProviderException;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamChunk;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamSummary;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * @ClassName: RecordingAIClientService
+ * @Description: 录制模式的客户端包装，请求照常发往模型，结果与耗时写入录制文件
+ * @Author: LZX
+ * @Date: 2025/5/24 10:10
+ */
+class RecordingAIClientService extends ForwardingAIClientService {
+
+    private final AIRecordReplay recordReplay;
+    private final String modelKey;
+
+    RecordingAIClientService(AIClientService delegate, AIRecordReplay recordReplay) {
+        super(delegate);
+        this.recordReplay = recordReplay;
+        this.modelKey = delegate.getModelKey();
+    }
+
+    @Override
+    public String generateCode(String prompt, String language, AIRequestOptions options) {
+        String fingerprint = recordReplay.codeFingerprint(modelKey, prompt, language, options);
+        long start = System.nanoTime();
+        try {
+            String result = delegate.generateCode(prompt, language, options);
+            recordCode(fingerprint, prompt, language, options, start, result, null);
+            return result;
+        } catch (RuntimeException e) {
+            recordCode(fingerprint, prompt, language, options, start, null, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> generateCodeAsync(String prompt, String language, AIRequestOptions options) {
+        String fingerprint = recordReplay.codeFingerprint(modelKey, prompt, language, options);
+        long start = System.nanoTime();
+        CompletableFuture<String> future = delegate.generateCodeAsync(prompt, language, options);
+        // 返回原Future，取消操作仍能传递到底层请求
+        future.whenComplete((result, ex) -> recordCode(fingerprint, prompt, language, options, start, result, ex));
+        return future;
+    }
+
+    /**
+     * 流式代码生成按完整结果录制，与异步代码生成共用同一条记录
+     */
+    @Override
+    public void generateCodeStreaming(String prompt, String language, AIRequestOptions options,
+                                      SseEmitter emitter, StreamingResponseHandler handler) {
+        AIClientService.emitWhenComplete(generateCodeAsync(prompt, language, options), emitter, handler);
+    }
+
+    @Override
+    public String sendMessage(Conversation conversation, String message) {
+        String fingerprint = recordReplay.conversationFingerprint(modelKey, conversation, message);
+        long start = System.nanoTime();
+        try {
+            String result = delegate.sendMessage(conversation, message);
+            recordChat(fingerprint, message, start, result, null);
+            return result;
+        } catch (RuntimeException e) {
+            recordChat(fingerprint, message, start, null, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> sendMessageAsync(Conversation conversation, String message) {
+        String fingerprint = recordReplay.conversationFingerprint(modelKey, conversation, message);
+        long start = System.nanoTime();
+        CompletableFuture<String> future = delegate.sendMessageAsync(conversation, message);
+        future.whenComplete((result, ex) -> recordChat(fingerprint, message, start, result, ex));
+        return future;
+    }
+
+    @Override
+    public void sendMessageStreaming(Conversation conversation, String message,
+                                     SseEmitter emitter, StreamingResponseHandler handler) {
+        String fingerprint = recordReplay.conversationFingerprint(modelKey, conversation, message);
+        delegate.sendMessageStreaming(conversation, message, emitter,
+                new RecordingHandler(handler, fingerprint, message, System.nanoTime()));
+    }
+
+    /**
+     * 响应式对话按完整结果录制，与异步对话共用同一条记录
+     */
+    @Override
+    public Flux<StreamChunk> streamMessage(Conversation conversation, String message) {
+        return AIClientService.streamWhenComplete(() -> sendMessageAsync(conversation, message));
+    }
+
+    private void recordCode(String fingerprint, String prompt, String language, AIRequestOptions options,
+                            long start, String result, Throwable ex) {
+        if (isCancellation(ex)) {
+            return;
+        }
+        Throwable cause = unwrap(ex);
+        recordReplay.record(new ReplayRecord(fingerprint, ReplayRecord.Kind.CODE, modelKey, System.currentTimeMillis(),
+                options.getTaskType().name(), language, prompt, options.getSystemPrompt(), elapsedMs(start),
+                result, cause != null ? cause.getMessage() : null, statusCode(cause), null));
+    }
+
+    private void recordChat(String fingerprint, String message, long start, String result, Throwable ex) {
+        if (isCancellation(ex)) {
+            return;
+        }
+        Throwable cause = unwrap(ex);
+        recordReplay.record(new ReplayRecord(fingerprint, ReplayRecord.Kind.CHAT, modelKey, System.currentTimeMillis(),
+                null, null, message, null, elapsedMs(start),
+                result, cause != null ? cause.getMessage() : null, statusCode(cause), null));
+    }
+
+    private static long elapsedMs(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static boolean isCancellation(Throwable ex) {
+        return unwrap(ex) instanceof CancellationException;
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
+    private static Integer statusCode(Throwable cause) {
+        return cause instanceof AIProviderException providerException ? providerException.getStatusCode() : null;
+    }
+
+    /**
+     * 记录每个流式片段相对调用开始的时间，收到结束标记或错误时写入一条记录
+     */
+    private class RecordingHandler implements StreamingResponseHandler {
+
+        private final StreamingResponseHandler handler;
+        private final String fingerprint;
+        private final String message;
+        private final long start;
+        private final List<ReplayRecord.Chunk> chunks = new ArrayList<>();
+        private final StringBuilder response = new StringBuilder();
+        private boolean written;
+
+        RecordingHandler(StreamingResponseHandler handler, String fingerprint, String message, long start) {
+            this.handler = handler;
+            this.fingerprint = fingerprint;
+            this.message = message;
+            this.start = start;
+        }
+
+        @Override
+        public boolean handleResponse(String content, SseEmitter emitter) {
+            boolean done = "[DONE]".equals(content);
+            if (!done) {
+                chunks.add(new ReplayRecord.Chunk(elapsedMs(start), content));
+                response.append(content);
+            }
+            boolean isLast = handler.handleResponse(content, emitter);
+            if (done || isLast) {
+                write(null);
+            }
+            return isLast;
+        }
+
+        @Override
+        public void handleError(Throwable error, SseEmitter emitter) {
+            write(error);
+            handler.handleError(error, emitter);
+        }
+
+        @Override
+        public void handleSummary(StreamSummary summary) {
+            handler.handleSummary(summary);
+        }
+
+        @Override
+        public void onCancel(SseEmitter emitter, Runnable cancel) {
+            handler.onCancel(emitter, cancel);
+        }
+
+        private void write(Throwable error) {
+            if (written) {
+                return;
+            }
+            written = true;
+            recordReplay.record(new ReplayRecord(fingerprint, ReplayRecord.Kind.STREAM, modelKey,
+                    System.currentTimeMillis(), null, null, message, null, elapsedMs(start),
+                    response.toString(), error != null ? error.getMessage() : null, statusCode(error),
+                    List.copyOf(chunks)));
+        }
+    }
+}
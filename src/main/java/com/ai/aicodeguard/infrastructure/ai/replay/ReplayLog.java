@@ -0,0 +1,87 @@
+package com.ai.aicodeguard.infrastructure.ai.replay;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @ClassName: ReplayLog
+ * @Description: gzip压缩的NDJSON录制文件，每行一条 ReplayRecord
+ * @Author: LZX
+ * @Date: 2025/5/24 09:30
+ */
+@Slf4j
+public class ReplayLog implements Closeable {
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+    private final OutputStream out;
+
+    private ReplayLog(Path file, ObjectMapper objectMapper) throws IOException {
+        this.file = file;
+        this.objectMapper = objectMapper;
+        // 每条记录后同步刷新，进程异常退出时已写入的记录仍可读取
+        this.out = new GZIPOutputStream(Files.newOutputStream(file), 8192, true);
+    }
+
+    /**
+     * 创建新的录制文件
+     */
+    public static ReplayLog create(Path file, ObjectMapper objectMapper) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        return new ReplayLog(file, objectMapper);
+    }
+
+    public synchronized void append(ReplayRecord record) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(record));
+            out.write('\n');
+            out.flush();
+        } catch (IOException e) {
+            log.warn("写入录制文件{}失败: {}", file, e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * 读取录制文件，文件末尾不完整(录制进程未正常关闭)时返回已读取的记录
+     */
+    public static List<ReplayRecord> read(Path file, ObjectMapper objectMapper) throws IOException {
+        List<ReplayRecord> records = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    records.add(objectMapper.readValue(line, ReplayRecord.class));
+                } catch (IOException e) {
+                    log.warn("录制文件{}第{}条记录无法解析，忽略后续内容: {}", file, records.size() + 1, e.getMessage());
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            log.warn("录制文件{}未正常结束，已读取{}条记录", file, records.size());
+        }
+        return records;
+    }
+}
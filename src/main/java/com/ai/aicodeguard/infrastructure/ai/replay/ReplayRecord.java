@@ -0,0 +1,36 @@
+package com.ai.aicodeguard.infrastructure.ai.replay;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * @ClassName: ReplayRecord
+ * @Description: 一次模型调用的录制记录，对应录制文件中的一行
+ * @Author: LZX
+ * @Date: 2025/5/24 09:20
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ReplayRecord(
+        // 请求指纹，回放时按指纹匹配
+        String fingerprint,
+        Kind kind,
+        String model,
+        long recordedAt,
+        String taskType,
+        String language,
+        String prompt,
+        String systemPrompt,
+        // 从发起调用到返回结果(流式为结束标记)的耗时
+        long latencyMs,
+        String response,
+        String error,
+        Integer statusCode,
+        // 流式输出的各片段及相对调用开始的时间
+        List<Chunk> chunks) {
+
+    public enum Kind { CODE, CHAT, STREAM }
+
+    public record Chunk(long offsetMs, String text) {
+    }
+}
@@ -0,0 +1,245 @@
+package com.ai.aicodeguard.infrastructure.ai.replay;
+
+import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
+import com.ai.aicodeguard.infrastructure.ai.StreamingResponseHandler;
+import com.ai.aicodeguard.infrastructure.ai.conversation.Conversation;
+import com.ai.aicodeguard.infrastructure.ai.decorator.ForwardingAIClientService;
+import com.ai.aicodeguard.infrastructure.ai.exception.AIProviderException;
+import com.ai.aicodeguard.infrastructure.ai.exception.ReplayMissException;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamChunk;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * @ClassName: ReplayingAIClientService
+ * @Description: 回放模式的客户端包装，按请求指纹返回录制结果并按录制耗时延迟，对话的写入与真实调用一致
+ * @Author: LZX
+ * @Date: 2025/5/24 10:40
+ */
+@Slf4j
+class ReplayingAIClientService extends ForwardingAIClientService {
+
+    private final AIRecordReplay recordReplay;
+    private final String modelKey;
+
+    ReplayingAIClientService(AIClientService delegate, AIRecordReplay recordReplay) {
+        super(delegate);
+        this.recordReplay = recordReplay;
+        this.modelKey = delegate.getModelKey();
+    }
+
+    @Override
+    public String generateCode(String prompt, String language, AIRequestOptions options) {
+        String fingerprint = recordReplay.codeFingerprint(modelKey, prompt, language, options);
+        ReplayRecord record = recordReplay.find(fingerprint);
+        if (record == null) {
+            return onMiss(fingerprint, () -> delegate.generateCode(prompt, language, options));
+        }
+        sleep(record.latencyMs());
+        return resultOf(record);
+    }
+
+    @Override
+    public CompletableFuture<String> generateCodeAsync(String prompt, String language, AIRequestOptions options) {
+        String fingerprint = recordReplay.codeFingerprint(modelKey, prompt, language, options);
+        ReplayRecord record = recordReplay.find(fingerprint);
+        if (record == null) {
+            return onMissAsync(fingerprint, () -> delegate.generateCodeAsync(prompt, language, options));
+        }
+        return schedule(record, this::resultOf);
+    }
+
+    /**
+     * 流式代码生成按完整结果回放，与异步代码生成共用同一条记录
+     */
+    @Override
+    public void generateCodeStreaming(String prompt, String language, AIRequestOptions options,
+                                      SseEmitter emitter, StreamingResponseHandler handler) {
+        AIClientService.emitWhenComplete(generateCodeAsync(prompt, language, options), emitter, handler);
+    }
+
+    @Override
+    public String sendMessage(Conversation conversation, String message) {
+        String fingerprint = recordReplay.conversationFingerprint(modelKey, conversation, message);
+        ReplayRecord record = recordReplay.find(fingerprint);
+        if (record == null) {
+            return onMiss(fingerprint, () -> delegate.sendMessage(conversation, message));
+        }
+        conversation.addUserMessage(message);
+        sleep(record.latencyMs());
+        return reply(conversation, record);
+    }
+
+    @Override
+    public CompletableFuture<String> sendMessageAsync(Conversation conversation, String message) {
+        String fingerprint = recordReplay.conversationFingerprint(modelKey, conversation, message);
+        ReplayRecord record = recordReplay.find(fingerprint);
+        if (record == null) {
+            return onMissAsync(fingerprint, () -> delegate.sendMessageAsync(conversation, message));
+        }
+        conversation.addUserMessage(message);
+        return schedule(record, r -> reply(conversation, r));
+    }
+
+    @Override
+    public void sendMessageStreaming(Conversation conversation, String message,
+                                     SseEmitter emitter, StreamingResponseHandler handler) {
+        String fingerprint = recordReplay.conversationFingerprint(modelKey, conversation, message);
+        ReplayRecord record = recordReplay.find(fingerprint);
+        if (record == null) {
+            if (recordReplay.isPassthroughOnMiss()) {
+                delegate.sendMessageStreaming(conversation, message, emitter, handler);
+            } else {
+                handler.handleError(new ReplayMissException(modelKey, fingerprint), emitter);
+            }
+            return;
+        }
+        conversation.addUserMessage(message);
+        new StreamReplay(conversation, record, emitter, handler).next(0, System.nanoTime());
+    }
+
+    /**
+     * 响应式对话按完整结果回放，与异步对话共用同一条记录
+     */
+    @Override
+    public Flux<StreamChunk> streamMessage(Conversation conversation, String message) {
+        return AIClientService.streamWhenComplete(() -> sendMessageAsync(conversation, message));
+    }
+
+    /**
+     * 写入回复并持久化对话，与各模型实现的非流式对话一致
+     */
+    private String reply(Conversation conversation, ReplayRecord record) {
+        String content = resultOf(record);
+        conversation.addAssistantMessage(content);
+        recordReplay.conversationManager().updateConversation(conversation.getUserId(), conversation);
+        return content;
+    }
+
+    private String resultOf(ReplayRecord record) {
+        if (record.error() != null) {
+            throw errorOf(record);
+        }
+        return record.response();
+    }
+
+    private RuntimeException errorOf(ReplayRecord record) {
+        return record.statusCode() != null
+                ? new AIProviderException(record.statusCode(), null, record.error())
+                : new RuntimeException(record.error());
+    }
+
+    private <T> CompletableFuture<T> schedule(ReplayRecord record, Function<ReplayRecord, T> result) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        ScheduledFuture<?> task = recordReplay.scheduler().schedule(() -> {
+            try {
+                future.complete(result.apply(record));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }, recordReplay.scaledDelay(record.latencyMs()), TimeUnit.MILLISECONDS);
+        future.whenComplete((value, ex) -> {
+            if (future.isCancelled()) {
+                task.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    private <T> T onMiss(String fingerprint, Supplier<T> passthrough) {
+        if (recordReplay.isPassthroughOnMiss()) {
+            log.debug("{}模型回放未命中，转发至真实模型: {}", modelKey, fingerprint);
+            return passthrough.get();
+        }
+        throw new ReplayMissException(modelKey, fingerprint);
+    }
+
+    private <T> CompletableFuture<T> onMissAsync(String fingerprint,
+                                                 Supplier<CompletableFuture<T>> passthrough) {
+        if (recordReplay.isPassthroughOnMiss()) {
+            log.debug("{}模型回放未命中，转发至真实模型: {}", modelKey, fingerprint);
+            return passthrough.get();
+        }
+        return CompletableFuture.failedFuture(new ReplayMissException(modelKey, fingerprint));
+    }
+
+    private void sleep(long recordedMs) {
+        long delay = recordReplay.scaledDelay(recordedMs);
+        if (delay <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("回放等待被中断", e);
+        }
+    }
+
+    /**
+     * 按录制时各片段的相对时间依次推送，上一片段推送后再调度下一片段以保证顺序
+     */
+    private class StreamReplay {
+
+        private final Conversation conversation;
+        private final ReplayRecord record;
+        private final SseEmitter emitter;
+        private final StreamingResponseHandler handler;
+        private final List<ReplayRecord.Chunk> chunks;
+        // 客户端断开或超时后不再调度后续片段
+        private volatile boolean cancelled;
+
+        StreamReplay(Conversation conversation, ReplayRecord record, SseEmitter emitter,
+                     StreamingResponseHandler handler) {
+            this.conversation = conversation;
+            this.record = record;
+            this.emitter = emitter;
+            this.handler = handler;
+            this.chunks = record.chunks() != null ? record.chunks() : List.of();
+            handler.onCancel(emitter, () -> cancelled = true);
+        }
+
+        void next(int index, long startNanos) {
+            long dueMs = recordReplay.scaledDelay(index < chunks.size() ? chunks.get(index).offsetMs() : record.latencyMs());
+            long delay = Math.max(0, dueMs - (System.nanoTime() - startNanos) / 1_000_000);
+            recordReplay.scheduler().schedule(() -> emit(index, startNanos), delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void emit(int index, long startNanos) {
+            if (cancelled) {
+                return;
+            }
+            try {
+                if (index < chunks.size()) {
+                    if (handler.handleResponse(chunks.get(index).text(), emitter)) {
+                        finish();
+                    } else {
+                        next(index + 1, startNanos);
+                    }
+                } else if (record.error() != null) {
+                    handler.handleError(errorOf(record), emitter);
+                } else if (handler.handleResponse("[DONE]", emitter)) {
+                    finish();
+                }
+            } catch (Exception e) {
+                log.error("回放流式响应出错:", e);
+                handler.handleError(e, emitter);
+            }
+        }
+
+        private void finish() {
+            conversation.addAssistantMessage(record.response() != null ? record.response() : "");
+            recordReplay.conversationManager().updateConversation(conversation.getUserId(), conversation);
+            emitter.complete();
+        }
+    }
+}
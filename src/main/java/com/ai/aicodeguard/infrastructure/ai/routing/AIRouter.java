@@ -0,0 +1,114 @@
+package com.ai.aicodeguard.infrastructure.ai.routing;
+
+import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AITaskType;
+import com.ai.aicodeguard.infrastructure.ai.decorator.AIClientDecorator;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @ClassName: AIRouter
+ * @Description: 基于模型健康状况的路由器：记录各模型的延迟与错误率，按任务策略选择最健康的可用模型
+ * @Author: LZX
+ * @Date: 2025/5/21 09:48
+ */
+@Component
+@Order(10)
+@RequiredArgsConstructor
+@Slf4j
+public class AIRouter implements AIClientDecorator {
+
+    private final AIRoutingProperties routingProperties;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, ProviderHealth> healthMap = new ConcurrentHashMap<>();
+
+    /**
+     * 健康统计位于最内层，只统计真正发往模型的请求
+     */
+    @Override
+    public AIClientService decorate(AIClientService client) {
+        return new HealthTrackingAIClientService(client, health(client.getModelKey()));
+    }
+
+    /**
+     * 为任务选择模型
+     * @param taskType 任务类型
+     * @param registered 已注册的模型配置名
+     * @return 选中的模型配置名
+     */
+    public String select(AITaskType taskType, Collection<String> registered) {
+        List<String> candidates = candidates(taskType, registered);
+        if (candidates.isEmpty()) {
+            throw new IllegalStateException("没有可用于" + taskType + "任务的AI模型");
+        }
+        if (!routingProperties.isEnabled()) {
+            return candidates.get(0);
+        }
+
+        String selected = null;
+        double selectedScore = -1;
+        for (String candidate : candidates) {
+            ProviderHealth health = health(candidate);
+            if (!health.isAvailable()) {
+                continue;
+            }
+            double score = health.score(taskType);
+            // 按偏好顺序，后备模型只有明显更快时才替换；无样本的模型不替换已选模型
+            if (selected == null
+                    || (score >= 0 && selectedScore >= 0
+                    && score * routingProperties.getLatencyTolerance() < selectedScore)) {
+                selected = candidate;
+                selectedScore = score;
+            }
+        }
+
+        if (selected == null) {
+            // 全部熔断时交给首选模型，由熔断器快速失败
+            log.warn("{}任务的候选模型均处于熔断状态: {}", taskType, candidates);
+            return candidates.get(0);
+        }
+        if (!selected.equals(candidates.get(0))) {
+            log.debug("{}任务路由至{}，首选模型{}不可用或较慢", taskType, selected, candidates.get(0));
+        }
+        return selected;
+    }
+
+    private List<String> candidates(AITaskType taskType, Collection<String> registered) {
+        List<String> policy = routingProperties.getPolicies().get(taskType);
+        if (policy == null || policy.isEmpty()) {
+            return registered.stream().sorted().toList();
+        }
+        return policy.stream()
+                .map(model -> model.trim().toLowerCase())
+                .filter(registered::contains)
+                .distinct()
+                .toList();
+    }
+
+    ProviderHealth health(String modelKey) {
+        return healthMap.computeIfAbsent(modelKey, model -> {
+            ProviderHealth health = new ProviderHealth(model, routingProperties);
+            for (AITaskType taskType : AITaskType.values()) {
+                Gauge.builder("ai.routing.latency.ewma", health, h -> h.getLatencyEwma(taskType))
+                        .tag("model", model).tag("task", taskType.name().toLowerCase())
+                        .baseUnit("milliseconds").register(meterRegistry);
+            }
+            Gauge.builder("ai.routing.error.rate", health, ProviderHealth::getErrorRate)
+                    .tag("model", model).register(meterRegistry);
+            // 0关闭，1熔断，2半开
+            Gauge.builder("ai.routing.circuit.state", health, h -> h.getState().ordinal())
+                    .tag("model", model).register(meterRegistry);
+            return health;
+        });
+    }
+}
@@ -0,0 +1,46 @@
+package com.ai.aicodeguard.infrastructure.ai.routing;
+
+import com.ai.aicodeguard.infrastructure.ai.AITaskType;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @ClassName: AIRoutingProperties
+ * @Description: 按任务类型选择模型的路由配置
+ * @Author: LZX
+ * @Date: 2025/5/21 09:05
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.routing")
+public class AIRoutingProperties {
+    // 关闭后始终选择策略中第一个可用的模型
+    private boolean enabled = true;
+    // 各任务类型的候选模型(ai.models下的配置名)，按偏好顺序排列；未配置时使用所有已注册模型
+    private Map<AITaskType, List<String>> policies = new HashMap<>();
+    // 延迟(按任务类型分别统计)与错误率的指数加权平均系数
+    private double ewmaAlpha = 0.2;
+    // 后备模型的评分需优于偏好模型该倍数才会被选中，避免来回切换
+    private double latencyTolerance = 1.5;
+    private CircuitBreakerConfig circuitBreaker = new CircuitBreakerConfig();
+
+    @Data
+    public static class CircuitBreakerConfig {
+        // 加权错误率达到该值时熔断
+        private double failureRateThreshold = 0.5;
+        // 统计窗口内至少调用次数，调用过少时不熔断
+        private int minimumCalls = 10;
+        // 失败率的滑动统计窗口及其分桶数，窗口按桶整体滑动
+        private Duration window = Duration.ofSeconds(60);
+        private int windowBuckets = 12;
+        private Duration openDuration = Duration.ofSeconds(30);
+        // 半开状态允许的探测请求数
+        private int halfOpenProbes = 1;
+    }
+}
@@ -0,0 +1,224 @@
+package com.ai.aicodeguard.infrastructure.ai.routing;
+
+import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
+import com.ai.aicodeguard.infrastructure.ai.AITaskType;
+import com.ai.aicodeguard.infrastructure.ai.StreamingResponseHandler;
+import com.ai.aicodeguard.infrastructure.ai.conversation.Conversation;
+import com.ai.aicodeguard.infrastructure.ai.decorator.ForwardingAIClientService;
+import com.ai.aicodeguard.infrastructure.ai.exception.AIProviderException;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamChunk;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamSummary;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * @ClassName: HealthTrackingAIClientService
+ * @Description: 按任务类型记录每次调用的延迟，并记录成败，熔断期间直接拒绝请求
+ * @Author: LZX
+ * @Date: 2025/5/21 10:15
+ */
+class HealthTrackingAIClientService extends ForwardingAIClientService {
+
+    private final ProviderHealth health;
+
+    HealthTrackingAIClientService(AIClientService delegate, ProviderHealth health) {
+        super(delegate);
+        this.health = health;
+    }
+
+    @Override
+    public String generateCode(String prompt, String language, AIRequestOptions options) {
+        return track(options.getTaskType(), () -> delegate.generateCode(prompt, language, options));
+    }
+
+    @Override
+    public CompletableFuture<String> generateCodeAsync(String prompt, String language, AIRequestOptions options) {
+        return trackAsync(options.getTaskType(), () -> delegate.generateCodeAsync(prompt, language, options));
+    }
+
+    @Override
+    public void generateCodeStreaming(String prompt, String language, AIRequestOptions options,
+                                      SseEmitter emitter, StreamingResponseHandler handler) {
+        if (!health.tryAcquire()) {
+            handler.handleError(circuitOpen(), emitter);
+            return;
+        }
+        delegate.generateCodeStreaming(prompt, language, options, emitter,
+                new TrackingHandler(handler, options.getTaskType(), System.currentTimeMillis()));
+    }
+
+    @Override
+    public String sendMessage(Conversation conversation, String message) {
+        return track(AITaskType.CHAT, () -> delegate.sendMessage(conversation, message));
+    }
+
+    @Override
+    public CompletableFuture<String> sendMessageAsync(Conversation conversation, String message) {
+        return trackAsync(AITaskType.CHAT, () -> delegate.sendMessageAsync(conversation, message));
+    }
+
+    @Override
+    public void sendMessageStreaming(Conversation conversation, String message,
+                                     SseEmitter emitter, StreamingResponseHandler handler) {
+        if (!health.tryAcquire()) {
+            handler.handleError(circuitOpen(), emitter);
+            return;
+        }
+        delegate.sendMessageStreaming(conversation, message, emitter,
+                new TrackingHandler(handler, AITaskType.CHAT, System.currentTimeMillis()));
+    }
+
+    /**
+     * 与流式处理器一致，以首个片段的到达时间作为延迟样本；订阅时才检查熔断
+     */
+    @Override
+    public Flux<StreamChunk> streamMessage(Conversation conversation, String message) {
+        return Flux.defer(() -> {
+            if (!health.tryAcquire()) {
+                return Flux.error(circuitOpen());
+            }
+            long start = System.currentTimeMillis();
+            AtomicBoolean recorded = new AtomicBoolean();
+            return delegate.streamMessage(conversation, message)
+                    .doOnNext(chunk -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            health.onSuccess(AITaskType.CHAT, System.currentTimeMillis() - start);
+                        }
+                    })
+                    .doOnError(error -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            record(error);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            health.onIgnored();
+                        }
+                    });
+        });
+    }
+
+    private String track(AITaskType taskType, Supplier<String> call) {
+        if (!health.tryAcquire()) {
+            throw circuitOpen();
+        }
+        long start = System.currentTimeMillis();
+        try {
+            String result = call.get();
+            health.onSuccess(taskType, System.currentTimeMillis() - start);
+            return result;
+        } catch (RuntimeException e) {
+            record(e);
+            throw e;
+        }
+    }
+
+    private CompletableFuture<String> trackAsync(AITaskType taskType, Supplier<CompletableFuture<String>> call) {
+        if (!health.tryAcquire()) {
+            return CompletableFuture.failedFuture(circuitOpen());
+        }
+        long start = System.currentTimeMillis();
+        CompletableFuture<String> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            record(e);
+            throw e;
+        }
+        // 返回原始Future以保留取消能力
+        future.whenComplete((result, error) -> {
+            if (error == null) {
+                health.onSuccess(taskType, System.currentTimeMillis() - start);
+            } else {
+                record(error);
+            }
+        });
+        return future;
+    }
+
+    private void record(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof CancellationException) {
+            health.onIgnored();
+        } else if (cause instanceof AIProviderException providerException && isClientError(providerException)) {
+            // 请求本身有误，与模型健康状况无关
+            health.onIgnored();
+        } else {
+            health.onFailure();
+        }
+    }
+
+    private static boolean isClientError(AIProviderException e) {
+        int status = e.getStatusCode();
+        return status >= 400 && status < 500 && status != 408 && status != 429;
+    }
+
+    private AIProviderException circuitOpen() {
+        return new AIProviderException(503, Duration.ofMillis(health.remainingOpenMillis()),
+                getModelKey() + "模型暂时不可用(熔断中)");
+    }
+
+    /**
+     * 以首个内容块的到达时间作为流式请求的延迟样本；首个内容块之前被取消的请求不计入健康统计，
+     * 但要归还半开探测名额，否则熔断器会一直停留在半开状态
+     */
+    private class TrackingHandler implements StreamingResponseHandler {
+        private final StreamingResponseHandler delegate;
+        private final AITaskType taskType;
+        private final long start;
+        private final AtomicBoolean recorded = new AtomicBoolean();
+
+        TrackingHandler(StreamingResponseHandler delegate, AITaskType taskType, long start) {
+            this.delegate = delegate;
+            this.taskType = taskType;
+            this.start = start;
+        }
+
+        @Override
+        public boolean handleResponse(String content, SseEmitter emitter) {
+            recordSuccess();
+            return delegate.handleResponse(content, emitter);
+        }
+
+        @Override
+        public void handleError(Throwable error, SseEmitter emitter) {
+            if (recorded.compareAndSet(false, true)) {
+                record(error);
+            }
+            delegate.handleError(error, emitter);
+        }
+
+        /**
+         * 收到结束事件即说明模型正常响应，即使没有输出内容
+         */
+        @Override
+        public void handleSummary(StreamSummary summary) {
+            recordSuccess();
+            delegate.handleSummary(summary);
+        }
+
+        @Override
+        public void onCancel(SseEmitter emitter, Runnable cancel) {
+            delegate.onCancel(emitter, () -> {
+                if (recorded.compareAndSet(false, true)) {
+                    health.onIgnored();
+                }
+                cancel.run();
+            });
+        }
+
+        private void recordSuccess() {
+            if (recorded.compareAndSet(false, true)) {
+                health.onSuccess(taskType, System.currentTimeMillis() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.ai.aicodeguard.infrastructure.ai.routing;
+
+import com.ai.aicodeguard.infrastructure.ai.AITaskType;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * @ClassName: ProviderHealth
+ * @Description: 单个模型的健康状态：按任务类型的加权平均延迟、加权错误率及熔断器；
+ *               熔断判断使用滑动时间窗口内的调用数与失败率
+ * @Author: LZX
+ * @Date: 2025/5/21 09:20
+ */
+@Slf4j
+public class ProviderHealth {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String modelKey;
+    private final AIRoutingProperties properties;
+    private final LongSupplier clock;
+
+    // 各任务类型的加权平均延迟，尚无成功样本的任务类型不在表中
+    private final Map<AITaskType, Double> latencyEwma = new EnumMap<>(AITaskType.class);
+    private double errorEwma;
+    // 滑动窗口按桶统计，桶序号为时间除以桶长度
+    private final long[] bucketEpochs;
+    private final int[] bucketCalls;
+    private final int[] bucketFailures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probes;
+
+    ProviderHealth(String modelKey, AIRoutingProperties properties) {
+        this(modelKey, properties, System::currentTimeMillis);
+    }
+
+    ProviderHealth(String modelKey, AIRoutingProperties properties, LongSupplier clock) {
+        this.modelKey = modelKey;
+        this.properties = properties;
+        this.clock = clock;
+        int buckets = Math.max(1, properties.getCircuitBreaker().getWindowBuckets());
+        this.bucketEpochs = new long[buckets];
+        this.bucketCalls = new int[buckets];
+        this.bucketFailures = new int[buckets];
+        Arrays.fill(bucketEpochs, -1);
+    }
+
+    /**
+     * 当前是否可以接收请求，不占用半开探测名额
+     */
+    public synchronized boolean isAvailable() {
+        refreshState();
+        return state == State.CLOSED
+                || (state == State.HALF_OPEN && probes < properties.getCircuitBreaker().getHalfOpenProbes());
+    }
+
+    /**
+     * 请求开始前调用，熔断中返回false；半开状态下会占用一个探测名额
+     */
+    public synchronized boolean tryAcquire() {
+        refreshState();
+        if (state == State.OPEN) {
+            return false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probes >= properties.getCircuitBreaker().getHalfOpenProbes()) {
+                return false;
+            }
+            probes++;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess(AITaskType taskType, long latencyMillis) {
+        double alpha = properties.getEwmaAlpha();
+        latencyEwma.merge(taskType, (double) latencyMillis,
+                (previous, sample) -> alpha * sample + (1 - alpha) * previous);
+        errorEwma = (1 - alpha) * errorEwma;
+        recordCall(false);
+        if (state == State.HALF_OPEN) {
+            log.info("{}模型探测请求成功，熔断器关闭", modelKey);
+            state = State.CLOSED;
+            errorEwma = 0;
+            // 熔断前的失败不再计入新的窗口
+            resetWindow();
+        }
+    }
+
+    public synchronized void onFailure() {
+        double alpha = properties.getEwmaAlpha();
+        errorEwma = alpha + (1 - alpha) * errorEwma;
+        recordCall(true);
+        AIRoutingProperties.CircuitBreakerConfig config = properties.getCircuitBreaker();
+        if (state == State.HALF_OPEN || (state == State.CLOSED && shouldOpen(config))) {
+            log.warn("{}模型错误率{}，熔断{}秒", modelKey, String.format("%.2f", windowFailureRate()),
+                    config.getOpenDuration().toSeconds());
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+        }
+    }
+
+    /**
+     * 请求被取消等无法判断健康状况的结束，仅归还半开探测名额
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && probes > 0) {
+            probes--;
+        }
+    }
+
+    /**
+     * 距离熔断结束的剩余时间(ms)
+     */
+    public synchronized long remainingOpenMillis() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        long end = openedAt + properties.getCircuitBreaker().getOpenDuration().toMillis();
+        return Math.max(0, end - clock.getAsLong());
+    }
+
+    /**
+     * 路由评分，越低越好：该任务类型的延迟按错误率加权；该任务类型尚无样本时返回负数
+     */
+    public synchronized double score(AITaskType taskType) {
+        Double latency = latencyEwma.get(taskType);
+        return latency == null ? -1 : latency * (1 + 4 * errorEwma);
+    }
+
+    public synchronized double getLatencyEwma(AITaskType taskType) {
+        return latencyEwma.getOrDefault(taskType, 0.0);
+    }
+
+    public synchronized double getErrorRate() {
+        return errorEwma;
+    }
+
+    /**
+     * 滑动窗口内的调用数
+     */
+    public synchronized int getWindowCalls() {
+        long current = currentEpoch();
+        int calls = 0;
+        for (int i = 0; i < bucketEpochs.length; i++) {
+            if (inWindow(bucketEpochs[i], current)) {
+                calls += bucketCalls[i];
+            }
+        }
+        return calls;
+    }
+
+    public synchronized State getState() {
+        refreshState();
+        return state;
+    }
+
+    private void refreshState() {
+        if (state == State.OPEN && remainingOpenMillis() == 0) {
+            state = State.HALF_OPEN;
+            probes = 0;
+        }
+    }
+
+    /**
+     * 窗口内调用数达到最小值且失败率达到阈值时熔断，低流量时少量失败不会触发熔断
+     */
+    private boolean shouldOpen(AIRoutingProperties.CircuitBreakerConfig config) {
+        return getWindowCalls() >= config.getMinimumCalls()
+                && windowFailureRate() >= config.getFailureRateThreshold();
+    }
+
+    private double windowFailureRate() {
+        long current = currentEpoch();
+        int calls = 0;
+        int failures = 0;
+        for (int i = 0; i < bucketEpochs.length; i++) {
+            if (inWindow(bucketEpochs[i], current)) {
+                calls += bucketCalls[i];
+                failures += bucketFailures[i];
+            }
+        }
+        return calls == 0 ? 0 : (double) failures / calls;
+    }
+
+    private void recordCall(boolean failure) {
+        long epoch = currentEpoch();
+        int index = (int) (epoch % bucketEpochs.length);
+        if (bucketEpochs[index] != epoch) {
+            // 桶已过期，复用为当前时间段
+            bucketEpochs[index] = epoch;
+            bucketCalls[index] = 0;
+            bucketFailures[index] = 0;
+        }
+        bucketCalls[index]++;
+        if (failure) {
+            bucketFailures[index]++;
+        }
+    }
+
+    private void resetWindow() {
+        Arrays.fill(bucketEpochs, -1);
+        Arrays.fill(bucketCalls, 0);
+        Arrays.fill(bucketFailures, 0);
+    }
+
+    private boolean inWindow(long epoch, long current) {
+        return epoch >= 0 && current - epoch < bucketEpochs.length;
+    }
+
+    private long currentEpoch() {
+        return clock.getAsLong() / bucketMillis();
+    }
+
+    private long bucketMillis() {
+        return Math.max(1, properties.getCircuitBreaker().getWindow().toMillis() / bucketEpochs.length);
+    }
+}
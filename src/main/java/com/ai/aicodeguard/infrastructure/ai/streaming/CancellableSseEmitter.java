@@ -0,0 +1,64 @@
+package com.ai.aicodeguard.infrastructure.ai.streaming;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @ClassName: CancellableSseEmitter
+ * @Description: 可登记取消动作的SSE发射器。模型请求发出后登记取消上游调用的动作，
+ *               连接结束(完成、超时、出错或客户端断开)时统一执行，已结束后登记的动作立即执行
+ * @Author: LZX
+ * @Date: 2025/5/28 14:00
+ */
+public class CancellableSseEmitter extends SseEmitter {
+
+    private final List<Runnable> cancelHooks = new ArrayList<>();
+    private boolean cancelled;
+
+    public CancellableSseEmitter(Long timeout) {
+        super(timeout);
+    }
+
+    /**
+     * 为发射器登记取消动作，普通SseEmitter不支持取消，直接忽略
+     */
+    public static void onCancel(SseEmitter emitter, Runnable hook) {
+        if (emitter instanceof CancellableSseEmitter cancellable) {
+            cancellable.addCancelHook(hook);
+        }
+    }
+
+    public void addCancelHook(Runnable hook) {
+        synchronized (cancelHooks) {
+            if (!cancelled) {
+                cancelHooks.add(hook);
+                return;
+            }
+        }
+        hook.run();
+    }
+
+    /**
+     * 执行全部取消动作，只执行一次
+     */
+    public void cancel() {
+        List<Runnable> hooks;
+        synchronized (cancelHooks) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            hooks = new ArrayList<>(cancelHooks);
+            cancelHooks.clear();
+        }
+        hooks.forEach(Runnable::run);
+    }
+
+    public boolean isCancelled() {
+        synchronized (cancelHooks) {
+            return cancelled;
+        }
+    }
+}
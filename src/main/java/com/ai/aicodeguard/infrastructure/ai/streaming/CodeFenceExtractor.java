@@ -0,0 +1,269 @@
+package com.ai.aicodeguard.infrastructure.ai.streaming;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @ClassName: CodeFenceExtractor
+ * @Description: 增量的Markdown代码块提取状态机：模型输出按块到达时，只返回目标语言代码块(或未标注语言的代码块)内的代码。
+ *               围栏行最多缓冲到能判断是否为```为止，代码行尾的换行延迟到下一段代码到达时输出，
+ *               因此输出与对完整结果执行 extractCodeBlock 后的代码一致；多个匹配的代码块以空行连接。
+ *               整个输出中没有匹配的代码块时，finish 返回完整输出，与非流式的兜底行为相同。
+ *               每个流使用一个实例，非线程安全
+ * @Author: LZX
+ * @Date: 2025/5/27 09:30
+ */
+public class CodeFenceExtractor {
+
+    private static final String FENCE = "```";
+    // 围栏前允许的最大缩进
+    private static final int MAX_FENCE_INDENT = 3;
+
+    /**
+     * 常见语言别名，归一化后再比较
+     */
+    private static final Map<String, String> ALIASES = Map.ofEntries(
+            Map.entry("py", "python"), Map.entry("python3", "python"), Map.entry("py3", "python"),
+            Map.entry("js", "javascript"), Map.entry("node", "javascript"), Map.entry("nodejs", "javascript"),
+            Map.entry("mjs", "javascript"), Map.entry("jsx", "javascript"),
+            Map.entry("ts", "typescript"), Map.entry("tsx", "typescript"),
+            Map.entry("c++", "cpp"), Map.entry("cc", "cpp"), Map.entry("cxx", "cpp"), Map.entry("hpp", "cpp"),
+            Map.entry("c#", "csharp"), Map.entry("cs", "csharp"),
+            Map.entry("golang", "go"),
+            Map.entry("sh", "shell"), Map.entry("bash", "shell"), Map.entry("zsh", "shell"),
+            Map.entry("shellscript", "shell"),
+            Map.entry("kt", "kotlin"), Map.entry("kts", "kotlin"),
+            Map.entry("rs", "rust"), Map.entry("rb", "ruby"),
+            Map.entry("yml", "yaml"), Map.entry("postgresql", "sql"), Map.entry("mysql", "sql"),
+            Map.entry("objective-c", "objc"), Map.entry("objectivec", "objc"));
+
+    private enum State {
+        // 代码块之外的说明文字
+        TEXT,
+        // 开始围栏后的语言标注
+        INFO,
+        // 目标语言代码块内
+        CODE,
+        // 其他语言代码块内
+        SKIP,
+        // 结束围栏所在行的剩余部分
+        FENCE_TAIL
+    }
+
+    private final String language;
+
+    private State state = State.TEXT;
+    // 行首尚不能确定是否为围栏的字符
+    private final StringBuilder lineHead = new StringBuilder();
+    private boolean atLineStart = true;
+    private final StringBuilder info = new StringBuilder();
+    // 代码块内尚未输出的换行，遇到结束围栏时丢弃
+    private int heldNewlines;
+    // 当前代码块是否已输出内容
+    private boolean blockStarted;
+    private int matchedBlocks;
+
+    private final StringBuilder raw = new StringBuilder();
+    private final StringBuilder code = new StringBuilder();
+
+    /**
+     * @param language 目标编程语言，为空时接受任意代码块
+     */
+    public CodeFenceExtractor(String language) {
+        this.language = normalize(language);
+    }
+
+    /**
+     * 输入一段模型输出
+     * @return 本段中可以立即输出的代码，可能为空字符串
+     */
+    public String append(String chunk) {
+        raw.append(chunk);
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < chunk.length(); i++) {
+            accept(chunk.charAt(i), out);
+        }
+        code.append(out);
+        return out.toString();
+    }
+
+    /**
+     * 输出结束
+     * @return 剩余需要输出的内容：未闭合代码块中缓冲的字符，或没有匹配代码块时的完整输出
+     */
+    public String finish() {
+        StringBuilder out = new StringBuilder();
+        if (state == State.CODE && lineHead.length() > 0) {
+            emitCode(lineHead, out);
+        }
+        lineHead.setLength(0);
+        if (matchedBlocks == 0) {
+            // 没有可识别的代码块，与 extractCodeBlock 一致返回完整内容
+            out.append(raw.toString().trim());
+        }
+        code.append(out);
+        state = State.TEXT;
+        return out.toString();
+    }
+
+    /**
+     * 截至目前提取出的全部代码
+     */
+    public String code() {
+        return code.toString();
+    }
+
+    private void accept(char c, StringBuilder out) {
+        if (atLineStart && state != State.INFO && state != State.FENCE_TAIL) {
+            lineHead.append(c);
+            if (isFenceOpening(lineHead)) {
+                onFence();
+                return;
+            }
+            if (couldBeFence(lineHead)) {
+                return;
+            }
+            // 不是围栏，按当前状态处理缓冲的行首
+            atLineStart = false;
+            String head = lineHead.toString();
+            lineHead.setLength(0);
+            for (int i = 0; i < head.length(); i++) {
+                consume(head.charAt(i), out);
+            }
+            return;
+        }
+        consume(c, out);
+    }
+
+    private void consume(char c, StringBuilder out) {
+        switch (state) {
+            case INFO -> {
+                if (c == '\n') {
+                    boolean matched = matches(info.toString());
+                    info.setLength(0);
+                    state = matched ? State.CODE : State.SKIP;
+                    if (matched) {
+                        matchedBlocks++;
+                        blockStarted = false;
+                        heldNewlines = 0;
+                    }
+                    atLineStart = true;
+                } else {
+                    info.append(c);
+                }
+            }
+            case CODE -> {
+                if (c == '\n') {
+                    if (blockStarted) {
+                        heldNewlines++;
+                    }
+                    atLineStart = true;
+                } else {
+                    emitCode(c, out);
+                }
+            }
+            case FENCE_TAIL -> {
+                if (c == '\n') {
+                    state = State.TEXT;
+                    atLineStart = true;
+                }
+            }
+            default -> {
+                if (c == '\n') {
+                    atLineStart = true;
+                }
+            }
+        }
+    }
+
+    private void onFence() {
+        lineHead.setLength(0);
+        atLineStart = false;
+        if (state == State.TEXT) {
+            state = State.INFO;
+        } else {
+            // CODE或SKIP中的围栏为结束围栏，其后的换行丢弃
+            heldNewlines = 0;
+            state = State.FENCE_TAIL;
+        }
+    }
+
+    private void emitCode(CharSequence text, StringBuilder out) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                if (blockStarted) {
+                    heldNewlines++;
+                }
+            } else {
+                emitCode(c, out);
+            }
+        }
+    }
+
+    private void emitCode(char c, StringBuilder out) {
+        if (!blockStarted) {
+            // 与前一个代码块之间以空行分隔
+            if (code.length() + out.length() > 0) {
+                out.append("\n\n");
+            }
+            blockStarted = true;
+        }
+        for (; heldNewlines > 0; heldNewlines--) {
+            out.append('\n');
+        }
+        out.append(c);
+    }
+
+    private boolean matches(String infoString) {
+        String tag = infoString.strip();
+        // 只取第一个词，忽略 {.java}、title="..." 等附加属性
+        int end = 0;
+        while (end < tag.length() && !Character.isWhitespace(tag.charAt(end)) && tag.charAt(end) != '{') {
+            end++;
+        }
+        tag = tag.substring(0, end);
+        return tag.isEmpty() || language.isEmpty() || normalize(tag).equals(language);
+    }
+
+    private static String normalize(String language) {
+        if (language == null) {
+            return "";
+        }
+        String key = language.strip().toLowerCase(Locale.ROOT);
+        if (key.startsWith(".")) {
+            key = key.substring(1);
+        }
+        return ALIASES.getOrDefault(key, key);
+    }
+
+    private static boolean isFenceOpening(CharSequence head) {
+        int indent = leadingSpaces(head);
+        return indent <= MAX_FENCE_INDENT && head.length() >= indent + FENCE.length()
+                && head.subSequence(indent, indent + FENCE.length()).toString().equals(FENCE);
+    }
+
+    /**
+     * 行首是否仍可能发展为围栏：至多三个空格后跟不足三个反引号
+     */
+    private static boolean couldBeFence(CharSequence head) {
+        int indent = leadingSpaces(head);
+        if (indent > MAX_FENCE_INDENT) {
+            return false;
+        }
+        for (int i = indent; i < head.length(); i++) {
+            if (head.charAt(i) != '`') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int leadingSpaces(CharSequence head) {
+        int count = 0;
+        while (count < head.length() && head.charAt(count) == ' ') {
+            count++;
+        }
+        return count;
+    }
+}
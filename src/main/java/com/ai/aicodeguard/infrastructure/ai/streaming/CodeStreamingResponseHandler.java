@@ -0,0 +1,94 @@
+package com.ai.aicodeguard.infrastructure.ai.streaming;
+
+import com.ai.aicodeguard.infrastructure.ai.StreamingResponseHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * @ClassName: CodeStreamingResponseHandler
+ * @Description: 代码生成的流式响应处理器，只推送目标语言代码块中的代码，增量经合并后发送；
+ *               结束时以提取出的完整代码调用onComplete(通常为持久化)，其返回值与流的元数据作为完成事件的数据
+ * @Author: LZX
+ * @Date: 2025/5/27 10:20
+ */
+@Slf4j
+public class CodeStreamingResponseHandler implements StreamingResponseHandler {
+
+    private static final String EVENT_ERROR = "error";
+    private static final String EVENT_DONE = "done";
+
+    private final CodeFenceExtractor extractor;
+    private final Function<String, Map<String, Object>> onComplete;
+    private final SseDeltaBatcher batcher;
+    private StreamSummary summary;
+
+    /**
+     * @param language 目标编程语言
+     * @param onComplete 以完整代码为参数的结束处理，返回完成事件的数据
+     * @param batcher 增量合并器
+     */
+    public CodeStreamingResponseHandler(String language, Function<String, Map<String, Object>> onComplete,
+                                        SseDeltaBatcher batcher) {
+        this.extractor = new CodeFenceExtractor(language);
+        this.onComplete = onComplete;
+        this.batcher = batcher;
+    }
+
+    @Override
+    public boolean handleResponse(String content, SseEmitter emitter) {
+        try {
+            boolean isLast = content.endsWith("[DONE]");
+            if (isLast) {
+                content = content.substring(0, content.length() - "[DONE]".length());
+            }
+
+            batcher.append(emitter, extractor.append(content));
+            if (!isLast) {
+                return false;
+            }
+
+            batcher.append(emitter, extractor.finish());
+            batcher.send(emitter, EVENT_DONE, doneData(onComplete.apply(extractor.code())), MediaType.APPLICATION_JSON);
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.error("发送SSE消息失败", e);
+            handleError(e, emitter);
+            return true;
+        } catch (Exception e) {
+            log.error("处理流式生成的代码失败", e);
+            handleError(e, emitter);
+            return true;
+        }
+    }
+
+    @Override
+    public synchronized void handleSummary(StreamSummary summary) {
+        this.summary = summary;
+    }
+
+    @Override
+    public void handleError(Throwable error, SseEmitter emitter) {
+        batcher.discard();
+        try {
+            batcher.send(emitter, EVENT_ERROR, String.valueOf(error.getMessage()), MediaType.TEXT_PLAIN);
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            log.error("发送SSE错误消息失败", e);
+            emitter.completeWithError(e);
+        }
+    }
+
+    private synchronized Map<String, Object> doneData(Map<String, Object> result) {
+        Map<String, Object> data = new LinkedHashMap<>(result);
+        if (summary != null) {
+            data.putAll(summary.toEventData());
+        }
+        return data;
+    }
+}
@@ -6,73 +6,161 @@ import org.springframework.http.MediaType;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * @ClassName: DefaultStreamingResponseHandler
- * @Description: 默认流式响应处理器
+ * @Description: 默认流式响应处理器。增量经合并后以message事件发送，完整回复由模型实现累积并写入对话，
+ *               done事件只携带对话ID、消息ID、结束原因与令牌用量。可续传的回复与客户端连接分离：
+ *               连接断开后继续接收增量并写入令牌日志，回复照常保存，客户端凭Last-Event-ID续传
  * @Author: LZX
  * @Date: 2025/4/26 12:24
  */
 @Slf4j
 public class DefaultStreamingResponseHandler implements StreamingResponseHandler {
 
-    private final StringBuilder completeMessage = new StringBuilder();
-    private static final String EVENT_MESSAGE = "message";
     private static final String EVENT_ERROR = "error";
     private static final String EVENT_DONE = "done";
 
+    private final String conversationId;
+    private final SseDeltaBatcher batcher;
+    // 可续传时为本轮回复，否则为null
+    private final ResumableStream turn;
+    private StreamSummary summary;
+
+    public DefaultStreamingResponseHandler() {
+        this(null, SseDeltaBatcher.unbatched());
+    }
+
+    /**
+     * @param conversationId 对话ID，写入done事件
+     * @param batcher 增量合并器
+     */
+    public DefaultStreamingResponseHandler(String conversationId, SseDeltaBatcher batcher) {
+        this(conversationId, batcher, null);
+    }
+
+    /**
+     * @param conversationId 对话ID，写入done事件
+     * @param batcher 以turn创建事件的增量合并器
+     * @param turn 本轮可续传的回复
+     */
+    public DefaultStreamingResponseHandler(String conversationId, SseDeltaBatcher batcher, ResumableStream turn) {
+        this.conversationId = conversationId;
+        this.batcher = batcher;
+        this.turn = turn;
+    }
+
     @Override
     public boolean handleResponse(String content, SseEmitter emitter) {
+        // 判断是否是结束标记
+        boolean isLast = content.endsWith("[DONE]");
+        if (isLast) {
+            content = content.substring(0, content.length() - "[DONE]".length());
+        }
         try {
-            // 判断是否是结束标记
-            boolean isLast = content.endsWith("[DONE]");
-            if (isLast) {
-                content = content.replace("[DONE]", "");
-            }
-
-            if (!content.isEmpty()) {
-                // 累积完整消息
-                completeMessage.append(content);
+            batcher.append(emitter, content);
 
-                // 发送事件消息
-                SseEmitter.SseEventBuilder event = SseEmitter.event()
-                    .name(EVENT_MESSAGE)
-                    .data(content, MediaType.TEXT_PLAIN);
-                emitter.send(event);
-            }
-
-            // 如果是最后一条消息，发送完成事件
+            // 如果是最后一条消息，发送剩余内容与完成事件
             if (isLast) {
-                SseEmitter.SseEventBuilder doneEvent = SseEmitter.event()
-                    .name(EVENT_DONE)
-                    .data(completeMessage.toString(), MediaType.TEXT_PLAIN);
-                emitter.send(doneEvent);
+                batcher.send(emitter, EVENT_DONE, doneData(), MediaType.APPLICATION_JSON);
                 return true;
             }
 
             return false;
-        } catch (IOException e) {
+        } catch (IOException | IllegalStateException e) {
+            if (resumable()) {
+                // 失败的事件已写入令牌日志，之后只记录不发送，继续生成直到结束
+                log.info("客户端连接已断开，继续生成回复{}: {}", turn.getTurnId(), e.getMessage());
+                detach(emitter, isLast);
+                return isLast;
+            }
             log.error("发送SSE消息失败", e);
             handleError(e, emitter);
             return true;
         }
     }
 
+    @Override
+    public synchronized void handleSummary(StreamSummary summary) {
+        this.summary = summary;
+    }
+
     @Override
     public void handleError(Throwable error, SseEmitter emitter) {
+        if (resumable() && turn.isFinished()) {
+            // 结束事件已记录，如done之后关闭已断开的连接失败
+            return;
+        }
+        if (!resumable()) {
+            batcher.discard();
+        }
+        // 可续传时先将未发送的增量写入令牌日志，再记录错误
         try {
-            SseEmitter.SseEventBuilder event = SseEmitter.event()
-                .name(EVENT_ERROR)
-                .data(error.getMessage(), MediaType.TEXT_PLAIN);
-            emitter.send(event);
+            batcher.send(emitter, EVENT_ERROR, String.valueOf(error.getMessage()), MediaType.TEXT_PLAIN);
             emitter.complete();
-        } catch (IOException e) {
+        } catch (IOException | IllegalStateException e) {
+            if (resumable()) {
+                log.info("客户端连接已断开，记录回复{}的错误: {}", turn.getTurnId(), error.getMessage());
+                batcher.detach();
+                if (!turn.isFinished()) {
+                    sendQuietly(emitter, EVENT_ERROR, String.valueOf(error.getMessage()), MediaType.TEXT_PLAIN);
+                }
+                return;
+            }
             log.error("发送SSE错误消息失败", e);
             emitter.completeWithError(e);
         }
     }
 
-    public String getCompleteMessage() {
-        return completeMessage.toString();
+    /**
+     * 可续传时连接断开不取消上游请求，超过保留时间或断开后长时间没有输出才取消
+     */
+    @Override
+    public void onCancel(SseEmitter emitter, Runnable cancel) {
+        if (!resumable()) {
+            StreamingResponseHandler.super.onCancel(emitter, cancel);
+            return;
+        }
+        CancellableSseEmitter.onCancel(emitter, batcher::detach);
+        turn.watch(batcher::isDetached, () -> {
+            cancel.run();
+            handleError(new IllegalStateException("原回复已中断"), emitter);
+        });
+    }
+
+    private boolean resumable() {
+        return turn != null && turn.isLogging();
+    }
+
+    /**
+     * 与客户端连接分离；结束标记到达时若done事件尚未创建则补记
+     */
+    private void detach(SseEmitter emitter, boolean isLast) {
+        batcher.detach();
+        if (isLast && !turn.isFinished()) {
+            sendQuietly(emitter, EVENT_DONE, doneData(), MediaType.APPLICATION_JSON);
+        }
+    }
+
+    private void sendQuietly(SseEmitter emitter, String name, Object data, MediaType mediaType) {
+        try {
+            batcher.send(emitter, name, data, mediaType);
+        } catch (IOException | IllegalStateException e) {
+            // 分离后不再发送，不会失败
+            log.debug("记录流式事件失败", e);
+        }
+    }
+
+    private synchronized Map<String, Object> doneData() {
+        Map<String, Object> data = new LinkedHashMap<>();
+        if (conversationId != null) {
+            data.put("conversationId", conversationId);
+        }
+        if (summary != null) {
+            data.putAll(summary.toEventData());
+        }
+        return data;
     }
 }
@@ -0,0 +1,77 @@
+package com.ai.aicodeguard.infrastructure.ai.streaming;
+
+import lombok.Getter;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * @ClassName: ResumableStream
+ * @Description: 一轮可续传的流式回复。事件按1起的序号编号，SSE事件ID为 {轮次ID}:{序号}，
+ *               每个事件发送前写入令牌日志，客户端凭最后收到的事件ID续传。
+ *               回复的生成与客户端连接分离，客户端断开后继续写入日志，直到结束事件、超过保留时间或长时间没有输出
+ * @Author: LZX
+ * @Date: 2025/5/29 10:00
+ */
+public class ResumableStream implements SseEventFactory {
+
+    private final StreamTokenLog tokenLog;
+    private final String key;
+    @Getter
+    private final String turnId;
+
+    @Getter
+    private final long startedAt = System.currentTimeMillis();
+
+    private long sequence;
+    // 写入失败后不再记录，事件照常发送
+    private boolean logging;
+    // 已创建结束事件
+    private boolean finished;
+    @Getter
+    private volatile long lastEventAt = startedAt;
+
+    ResumableStream(StreamTokenLog tokenLog, String key, String turnId, boolean logging) {
+        this.tokenLog = tokenLog;
+        this.key = key;
+        this.turnId = turnId;
+        this.logging = logging;
+    }
+
+    @Override
+    public synchronized SseEmitter.SseEventBuilder create(String name, Object data, MediaType mediaType) {
+        long id = ++sequence;
+        if (logging) {
+            logging = tokenLog.append(key, id, name, data, mediaType);
+        }
+        lastEventAt = System.currentTimeMillis();
+        if (StreamTokenLog.isTerminal(name)) {
+            finished = true;
+        }
+        return SseEmitter.event()
+                .id(StreamTokenLog.eventId(turnId, id))
+                .name(name)
+                .data(data, mediaType);
+    }
+
+    /**
+     * 日志写入正常时，客户端断开后凭日志仍可续传
+     */
+    public synchronized boolean isLogging() {
+        return logging;
+    }
+
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * 监视本轮回复的生成，超过保留时间，或客户端已断开且长时间没有新事件(或日志不可用)时执行onAbandoned
+     * @param clientGone 客户端连接是否已断开
+     * @param onAbandoned 取消上游请求并结束本轮回复
+     */
+    public void watch(BooleanSupplier clientGone, Runnable onAbandoned) {
+        tokenLog.watch(this, clientGone, onAbandoned);
+    }
+}
@@ -0,0 +1,145 @@
+package com.ai.aicodeguard.infrastructure.ai.streaming;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName: SseDeltaBatcher
+ * @Description: 合并流式增量后再发送message事件：自第一段待发送内容起经过时间窗口，或待发送内容达到字节上限时发送一次，
+ *               减少逐令牌发送带来的事件帧、刷新与系统调用。每个流使用一个实例，时间窗口为0时逐段发送；
+ *               流中的其他事件也经此发送，保证与已合并内容的先后顺序。客户端断开后可续传的流转为分离状态，
+ *               事件照常创建(写入令牌日志)但不再发送
+ * @Author: LZX
+ * @Date: 2025/5/28 16:30
+ */
+@Slf4j
+public class SseDeltaBatcher {
+
+    private static final String EVENT_MESSAGE = "message";
+
+    private final long windowMillis;
+    private final int maxBytes;
+    private final ScheduledExecutorService scheduler;
+    private final SseEventFactory events;
+
+    private final StringBuilder pending = new StringBuilder();
+    private int pendingBytes;
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean detached;
+
+    SseDeltaBatcher(long windowMillis, int maxBytes, ScheduledExecutorService scheduler, SseEventFactory events) {
+        this.windowMillis = scheduler != null ? windowMillis : 0;
+        this.maxBytes = maxBytes;
+        this.scheduler = scheduler;
+        this.events = events;
+    }
+
+    /**
+     * 不合并，每段增量立即发送
+     */
+    public static SseDeltaBatcher unbatched() {
+        return new SseDeltaBatcher(0, 0, null, SseEventFactory.PLAIN);
+    }
+
+    /**
+     * 加入一段增量，达到字节上限时立即发送，否则在时间窗口结束时发送
+     */
+    public synchronized void append(SseEmitter emitter, String delta) throws IOException {
+        if (delta.isEmpty()) {
+            return;
+        }
+        pending.append(delta);
+        pendingBytes += utf8Length(delta);
+        if (windowMillis <= 0 || pendingBytes >= maxBytes) {
+            flush(emitter);
+        } else if (scheduledFlush == null) {
+            scheduledFlush = scheduler.schedule(() -> flushQuietly(emitter), windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 立即发送全部待发送内容，结束或出错前调用
+     */
+    public synchronized void flush(SseEmitter emitter) throws IOException {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        String data = pending.toString();
+        pending.setLength(0);
+        pendingBytes = 0;
+        // 先创建事件再发送，发送失败时事件已写入令牌日志
+        SseEmitter.SseEventBuilder event = events.create(EVENT_MESSAGE, data, MediaType.TEXT_PLAIN);
+        if (!detached) {
+            emitter.send(event);
+        }
+    }
+
+    /**
+     * 先发送待发送内容，再发送其他事件
+     */
+    public synchronized void send(SseEmitter emitter, String name, Object data, MediaType mediaType) throws IOException {
+        flush(emitter);
+        SseEmitter.SseEventBuilder event = events.create(name, data, mediaType);
+        if (!detached) {
+            emitter.send(event);
+        }
+    }
+
+    /**
+     * 与客户端连接分离：之后的事件只创建不发送，客户端连接断开后调用
+     */
+    public synchronized void detach() {
+        detached = true;
+    }
+
+    public synchronized boolean isDetached() {
+        return detached;
+    }
+
+    /**
+     * 丢弃待发送内容，连接出错后调用
+     */
+    public synchronized void discard() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        pending.setLength(0);
+        pendingBytes = 0;
+    }
+
+    private void flushQuietly(SseEmitter emitter) {
+        try {
+            flush(emitter);
+        } catch (Exception e) {
+            // 连接已断开，事件已创建；下一段增量发送时处理器会感知失败
+            log.debug("定时发送SSE消息失败: {}", e.getMessage());
+        }
+    }
+
+    private static int utf8Length(String text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+                // 代理对按每个字符2字节计，合计4字节
+                bytes += 2;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
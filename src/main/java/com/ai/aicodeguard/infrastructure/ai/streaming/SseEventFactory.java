@@ -0,0 +1,28 @@
+package com.ai.aicodeguard.infrastructure.ai.streaming;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * @InterfaceName: SseEventFactory
+ * @Description: 创建一个流中发送的SSE事件，可续传的流在此为事件编号并写入令牌日志
+ * @Author: LZX
+ * @Date: 2025/5/29 09:30
+ */
+@FunctionalInterface
+public interface SseEventFactory {
+
+    /**
+     * 不编号、不记录的普通事件
+     */
+    SseEventFactory PLAIN = (name, data, mediaType) -> SseEmitter.event()
+            .name(name)
+            .data(data, mediaType);
+
+    /**
+     * @param name 事件名
+     * @param data 事件数据，非字符串数据按JSON发送
+     * @param mediaType 数据类型
+     */
+    SseEmitter.SseEventBuilder create(String name, Object data, MediaType mediaType);
+}
@@ -0,0 +1,411 @@
+package com.ai.aicodeguard.infrastructure.ai.streaming;
+
+import com.ai.aicodeguard.infrastructure.ai.AIUsage;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+import okio.BufferedSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @ClassName: SseTokenParser
+ * @Description: 模型流式响应(SSE)的增量解析器：直接从okio缓冲区读取data行到复用的字节数组，
+ *               用Jackson流式API只提取增量文本、结束原因与令牌用量，不构建Map，也不为每行创建String。
+ *               每个流使用一个实例，非线程安全
+ * @Author: LZX
+ * @Date: 2025/5/23 09:30
+ */
+@Slf4j
+public class SseTokenParser {
+
+    /**
+     * 流式响应格式
+     */
+    public enum Format {
+        // Anthropic Messages API: content_block_delta.delta.text，message_delta.delta.stop_reason，message_stop，
+        // 用量分别在 message_start.message.usage(输入与缓存) 和 message_delta.usage(累计输出) 中
+        ANTHROPIC,
+        // OpenAI兼容接口: choices[0].delta.content，choices[0].finish_reason，data: [DONE]，
+        // 请求设置 stream_options.include_usage 后，[DONE] 之前的最后一块带有完整usage
+        OPENAI
+    }
+
+    private static final byte[] DATA_PREFIX = "data:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DONE_MARK = "[DONE]".getBytes(StandardCharsets.US_ASCII);
+
+    private final JsonFactory jsonFactory;
+    private final Format format;
+
+    private byte[] line = new byte[8192];
+
+    private String text;
+    private String stopReason;
+    private String error;
+    private boolean done;
+
+    // 整个流的消息ID与最终结束原因，不随事件重置
+    private String messageId;
+    private String finishReason;
+
+    // 整个流中累计的令牌用量，不随事件重置
+    private long inputTokens;
+    private long outputTokens;
+    private long cacheReadTokens;
+    private long cacheWriteTokens;
+    private boolean hasUsage;
+
+    public SseTokenParser(JsonFactory jsonFactory, Format format) {
+        this.jsonFactory = jsonFactory;
+        this.format = format;
+    }
+
+    /**
+     * 读取下一个data事件，跳过注释、event行及无法解析的数据
+     * @return false表示流已读完
+     */
+    public boolean next(BufferedSource source) throws IOException {
+        text = null;
+        stopReason = null;
+        error = null;
+        done = false;
+
+        int length;
+        while ((length = readLine(source)) >= 0) {
+            int offset = dataOffset(length);
+            if (offset < 0) {
+                continue;
+            }
+            int dataLength = length - offset;
+            if (dataLength == DONE_MARK.length && regionMatches(offset, DONE_MARK)) {
+                done = true;
+                return true;
+            }
+            if (parse(offset, dataLength)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 本事件中的增量文本，没有时为null
+     */
+    public String text() {
+        return text;
+    }
+
+    /**
+     * 结束原因(stop_reason / finish_reason)，没有时为null
+     */
+    public String stopReason() {
+        return stopReason;
+    }
+
+    /**
+     * 服务端返回的消息ID(Anthropic message_start.message.id，OpenAI兼容接口的块id)，没有时为null
+     */
+    public String messageId() {
+        return messageId;
+    }
+
+    /**
+     * 截至目前流中最后一次出现的结束原因，没有时为null
+     */
+    public String finishReason() {
+        return finishReason;
+    }
+
+    /**
+     * 服务端在流中返回的错误信息，没有时为null
+     */
+    public String error() {
+        return error;
+    }
+
+    /**
+     * 截至目前流中报告的令牌用量，服务端未返回时为 AIUsage.EMPTY
+     */
+    public AIUsage usage() {
+        return hasUsage ? new AIUsage(inputTokens, outputTokens, cacheReadTokens, cacheWriteTokens) : AIUsage.EMPTY;
+    }
+
+    /**
+     * 是否为流结束事件(message_stop 或 [DONE])
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * 将下一行读入复用缓冲区，不含换行符
+     * @return 行长度，流结束时返回-1
+     */
+    private int readLine(BufferedSource source) throws IOException {
+        long newline = source.indexOf((byte) '\n');
+        long size;
+        if (newline == -1) {
+            size = source.getBuffer().size();
+            if (size == 0) {
+                return -1;
+            }
+        } else {
+            size = newline;
+        }
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("SSE行过长: " + size);
+        }
+
+        int length = (int) size;
+        if (line.length < length) {
+            line = new byte[Math.max(length, line.length * 2)];
+        }
+        int read = 0;
+        while (read < length) {
+            int n = source.read(line, read, length - read);
+            if (n == -1) {
+                throw new IOException("SSE流意外结束");
+            }
+            read += n;
+        }
+        if (newline != -1) {
+            source.skip(1);
+        }
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return length;
+    }
+
+    /**
+     * @return data字段内容的起始位置，不是data行时返回-1
+     */
+    private int dataOffset(int length) {
+        if (length < DATA_PREFIX.length || !regionMatches(0, DATA_PREFIX)) {
+            return -1;
+        }
+        int offset = DATA_PREFIX.length;
+        if (offset < length && line[offset] == ' ') {
+            offset++;
+        }
+        return offset;
+    }
+
+    private boolean regionMatches(int offset, byte[] expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (line[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean parse(int offset, int length) {
+        try (JsonParser parser = jsonFactory.createParser(line, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return false;
+            }
+            if (format == Format.ANTHROPIC) {
+                parseAnthropicEvent(parser);
+            } else {
+                parseOpenAIChunk(parser);
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("解析流式响应块失败: {}", new String(line, offset, length, StandardCharsets.UTF_8), e);
+            return false;
+        }
+    }
+
+    private void parseAnthropicEvent(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "type" -> done = textEquals(parser, "message_stop");
+                case "delta" -> {
+                    if (value == JsonToken.START_OBJECT) {
+                        parseAnthropicDelta(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                case "error" -> error = readErrorMessage(parser, value);
+                case "usage" -> parseUsage(parser, value);
+                case "message" -> {
+                    // message_start事件中的usage包含输入与缓存令牌数
+                    if (value == JsonToken.START_OBJECT) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String messageField = parser.currentName();
+                            JsonToken messageValue = parser.nextToken();
+                            if ("usage".equals(messageField)) {
+                                parseUsage(parser, messageValue);
+                            } else if ("id".equals(messageField) && messageValue == JsonToken.VALUE_STRING) {
+                                messageId = parser.getText();
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private void parseAnthropicDelta(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("text".equals(field) && value == JsonToken.VALUE_STRING) {
+                text = parser.getText();
+            } else if ("stop_reason".equals(field) && value == JsonToken.VALUE_STRING) {
+                stopReason = parser.getText();
+                finishReason = stopReason;
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void parseOpenAIChunk(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                // 只读取第一个choice
+                if (parser.nextToken() == JsonToken.START_OBJECT) {
+                    parseOpenAIChoice(parser);
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        parser.skipChildren();
+                    }
+                }
+            } else if ("error".equals(field)) {
+                error = readErrorMessage(parser, value);
+            } else if ("usage".equals(field)) {
+                parseUsage(parser, value);
+            } else if ("id".equals(field) && value == JsonToken.VALUE_STRING) {
+                messageId = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void parseOpenAIChoice(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("delta".equals(field) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String deltaField = parser.currentName();
+                    JsonToken deltaValue = parser.nextToken();
+                    if ("content".equals(deltaField) && deltaValue == JsonToken.VALUE_STRING) {
+                        text = parser.getText();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if ("finish_reason".equals(field) && value == JsonToken.VALUE_STRING) {
+                stopReason = parser.getText();
+                finishReason = stopReason;
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * 解析usage对象，兼容Anthropic与OpenAI/DeepSeek的字段名；只覆盖出现的字段，
+     * 因为Anthropic的message_delta只携带累计输出令牌数。OpenAI兼容接口的输入令牌扣除缓存命中部分，与 AIUsage.fromOpenAI 一致
+     */
+    private void parseUsage(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            // OpenAI兼容接口在普通块中返回 "usage": null
+            parser.skipChildren();
+            return;
+        }
+        long promptTokens = -1;
+        long cacheHitTokens = -1;
+        long detailsCachedTokens = -1;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken fieldValue = parser.nextToken();
+            if (fieldValue == JsonToken.START_OBJECT && "prompt_tokens_details".equals(field)) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String detailField = parser.currentName();
+                    JsonToken detailValue = parser.nextToken();
+                    if ("cached_tokens".equals(detailField) && detailValue == JsonToken.VALUE_NUMBER_INT) {
+                        detailsCachedTokens = parser.getLongValue();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                continue;
+            }
+            if (fieldValue != JsonToken.VALUE_NUMBER_INT) {
+                parser.skipChildren();
+                continue;
+            }
+            long tokens = parser.getLongValue();
+            switch (field) {
+                case "input_tokens" -> inputTokens = tokens;
+                case "output_tokens", "completion_tokens" -> outputTokens = tokens;
+                case "cache_read_input_tokens" -> cacheReadTokens = tokens;
+                case "cache_creation_input_tokens" -> cacheWriteTokens = tokens;
+                case "prompt_tokens" -> promptTokens = tokens;
+                case "prompt_cache_hit_tokens" -> cacheHitTokens = tokens;
+                default -> {
+                }
+            }
+        }
+        if (promptTokens >= 0) {
+            long cached = cacheHitTokens > 0 ? cacheHitTokens : Math.max(0, detailsCachedTokens);
+            cacheReadTokens = cached;
+            inputTokens = Math.max(0, promptTokens - cached);
+        }
+        hasUsage = true;
+    }
+
+    private static String readErrorMessage(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return "未知错误";
+        }
+        String message = "未知错误";
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("message".equals(field)) {
+                message = parser.getValueAsString(message);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return message;
+    }
+
+    /**
+     * 不创建String地比较当前字符串值
+     */
+    private static boolean textEquals(JsonParser parser, String expected) throws IOException {
+        if (parser.currentToken() != JsonToken.VALUE_STRING || parser.getTextLength() != expected.length()) {
+            return false;
+        }
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        for (int i = 0; i < expected.length(); i++) {
+            if (chars[offset + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,25 @@
+package com.ai.aicodeguard.infrastructure.ai.streaming;
+
+/**
+ * @ClassName: StreamChunk
+ * @Description: 响应式流中的一个片段：增量文本，或最后一个携带结束元数据的片段
+ * @Author: LZX
+ * @Date: 2025/5/29 15:00
+ */
+public record StreamChunk(String text, StreamSummary summary) {
+
+    public static StreamChunk text(String text) {
+        return new StreamChunk(text, null);
+    }
+
+    /**
+     * 结束片段，不含文本
+     */
+    public static StreamChunk end(StreamSummary summary) {
+        return new StreamChunk("", summary);
+    }
+
+    public boolean isEnd() {
+        return summary != null;
+    }
+}
@@ -0,0 +1,32 @@
+package com.ai.aicodeguard.infrastructure.ai.streaming;
+
+import com.ai.aicodeguard.infrastructure.ai.AIUsage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @ClassName: StreamSummary
+ * @Description: 流式回复结束时的元数据，由模型实现在结束标记之前交给处理器，写入完成事件
+ * @Author: LZX
+ * @Date: 2025/5/28 17:00
+ */
+public record StreamSummary(String messageId, String finishReason, AIUsage usage) {
+
+    /**
+     * 写入完成事件的字段，缺失的字段不输出
+     */
+    public Map<String, Object> toEventData() {
+        Map<String, Object> data = new LinkedHashMap<>();
+        if (messageId != null) {
+            data.put("messageId", messageId);
+        }
+        if (finishReason != null) {
+            data.put("finishReason", finishReason);
+        }
+        if (usage != null && !AIUsage.EMPTY.equals(usage)) {
+            data.put("usage", usage);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,299 @@
+package com.ai.aicodeguard.infrastructure.ai.streaming;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * @ClassName: StreamTokenLog
+ * @Description: 流式对话的令牌日志。每轮回复的事件按序号写入短期保存的Redis Stream
+ *               ai:stream:{用户}:{对话}:{轮次}，记录ID为 {序号}-0；客户端断线重连时携带Last-Event-ID，
+ *               任一节点都可从下一条事件续传，仍在生成中的回复轮询跟随，不会再次调用模型
+ * @Author: LZX
+ * @Date: 2025/5/29 10:20
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StreamTokenLog {
+
+    private static final String KEY_PREFIX = "ai:stream:";
+    private static final String FIELD_EVENT = "event";
+    private static final String FIELD_DATA = "data";
+    private static final String FIELD_TYPE = "type";
+    private static final String EVENT_ERROR = "error";
+    // 出现后该轮回复结束
+    private static final Set<String> TERMINAL_EVENTS = Set.of("done", EVENT_ERROR);
+
+    private final StreamingProperties properties;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+
+    // 只负责定时，到期后把读取任务交给pollExecutor，不执行Redis读取与发送
+    private ScheduledExecutorService pollScheduler;
+    private ThreadPoolTaskExecutor pollExecutor;
+    private ThreadPoolTaskExecutor sendExecutor;
+
+    @PostConstruct
+    public void init() {
+        pollScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ai-stream-resume");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pollExecutor = resumeExecutor("ai-stream-resume-poll-", properties.getResumePollThreads());
+        sendExecutor = resumeExecutor("ai-stream-resume-send-", properties.getResumeSendThreads());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pollScheduler.shutdown();
+        pollExecutor.shutdown();
+        sendExecutor.shutdown();
+    }
+
+    private ThreadPoolTaskExecutor resumeExecutor(String threadNamePrefix, int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, threads));
+        executor.setMaxPoolSize(Math.max(1, threads));
+        executor.setQueueCapacity(properties.getResumeQueueCapacity());
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setDaemon(true);
+        // 默认拒绝策略抛出RejectedExecutionException，由续传返回错误事件
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 开始一轮新的流式回复
+     */
+    public ResumableStream open(String userId, String conversationId) {
+        String turnId = UUID.randomUUID().toString().replace("-", "");
+        return new ResumableStream(this, key(userId, conversationId, turnId), turnId, properties.isResumeEnabled());
+    }
+
+    /**
+     * 从Last-Event-ID之后续传，日志不存在、ID无效或原回复中断时发送错误事件
+     * @param lastEventId 客户端最后收到的事件ID
+     */
+    public void resume(String userId, String conversationId, String lastEventId, SseEmitter emitter) {
+        int separator = lastEventId.lastIndexOf(':');
+        long lastSequence;
+        try {
+            lastSequence = Long.parseLong(lastEventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            lastSequence = -1;
+        }
+        if (!properties.isResumeEnabled() || separator <= 0 || lastSequence < 0) {
+            sendError(emitter, "无法续传，请重新发送消息");
+            return;
+        }
+        String turnId = lastEventId.substring(0, separator);
+        new Resume(key(userId, conversationId, turnId), turnId, lastSequence, emitter).start();
+    }
+
+    /**
+     * 写入一条事件，第一条与结束事件同时刷新过期时间
+     * @return 是否写入成功
+     */
+    boolean append(String key, long sequence, String name, Object data, MediaType mediaType) {
+        try {
+            String text = data instanceof String string ? string : objectMapper.writeValueAsString(data);
+            MapRecord<String, String, String> record = StreamRecords.newRecord()
+                    .in(key)
+                    .withId(RecordId.of(sequence, 0))
+                    .ofMap(Map.of(FIELD_EVENT, name, FIELD_DATA, text, FIELD_TYPE, mediaType.toString()));
+            if (sequence == 1 || TERMINAL_EVENTS.contains(name)) {
+                redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <K, V> Object execute(RedisOperations<K, V> operations) {
+                        RedisOperations<String, String> redis = (RedisOperations<String, String>) operations;
+                        redis.opsForStream().add(record);
+                        redis.expire(key, properties.getResumeTtl());
+                        return null;
+                    }
+                });
+            } else {
+                redisTemplate.opsForStream().add(record);
+            }
+            return true;
+        } catch (Exception e) {
+            log.warn("写入流式令牌日志{}失败，本轮回复不再支持续传: {}", key, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 定期检查一轮回复是否应停止生成，见 {@link ResumableStream#watch}
+     */
+    void watch(ResumableStream turn, BooleanSupplier clientGone, Runnable onAbandoned) {
+        long interval = Math.max(properties.getResumePollInterval().toMillis(),
+                properties.getResumeIdleTimeout().toMillis() / 4);
+        pollScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (turn.isFinished()) {
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                boolean expired = now - turn.getStartedAt() > properties.getResumeTtl().toMillis();
+                boolean abandoned = clientGone.getAsBoolean() && (!turn.isLogging()
+                        || now - turn.getLastEventAt() > properties.getResumeIdleTimeout().toMillis());
+                if (expired || abandoned) {
+                    log.info("流式回复{}{}，取消上游请求", turn.getTurnId(), expired ? "超过保留时间" : "已无人续传");
+                    onAbandoned.run();
+                    return;
+                }
+                pollScheduler.schedule(this, interval, TimeUnit.MILLISECONDS);
+            }
+        }, interval, TimeUnit.MILLISECONDS);
+    }
+
+    static boolean isTerminal(String name) {
+        return TERMINAL_EVENTS.contains(name);
+    }
+
+    static String eventId(String turnId, long sequence) {
+        return turnId + ":" + sequence;
+    }
+
+    private static String key(String userId, String conversationId, String turnId) {
+        return KEY_PREFIX + userId + ":" + conversationId + ":" + turnId;
+    }
+
+    private void sendError(SseEmitter emitter, String message) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name(EVENT_ERROR)
+                    .data(message, MediaType.TEXT_PLAIN));
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            log.warn("发送SSE错误消息失败: {}", e.getMessage());
+            emitter.completeWithError(e);
+        }
+    }
+
+    /**
+     * 一次续传：读出已有事件后按间隔轮询，直到结束事件、连接断开或长时间没有新事件。
+     * 读取在pollExecutor中执行，读到的事件交给sendExecutor发送，发送完成后再安排下一次读取，
+     * 同一续传的读取与发送依次进行
+     */
+    private class Resume {
+        private final String key;
+        private final String turnId;
+        private final SseEmitter emitter;
+        private long lastSequence;
+        private long lastProgress = System.currentTimeMillis();
+        private boolean checkedExists;
+        private volatile boolean cancelled;
+
+        Resume(String key, String turnId, long lastSequence, SseEmitter emitter) {
+            this.key = key;
+            this.turnId = turnId;
+            this.lastSequence = lastSequence;
+            this.emitter = emitter;
+            CancellableSseEmitter.onCancel(emitter, () -> cancelled = true);
+        }
+
+        void start() {
+            dispatch(pollExecutor, this::poll);
+        }
+
+        private void schedulePoll() {
+            pollScheduler.schedule(() -> dispatch(pollExecutor, this::poll),
+                    properties.getResumePollInterval().toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        private void poll() {
+            if (cancelled) {
+                return;
+            }
+            List<MapRecord<String, Object, Object>> records;
+            try {
+                records = redisTemplate.opsForStream()
+                        .range(key, Range.rightUnbounded(Range.Bound.inclusive((lastSequence + 1) + "-0")));
+                if (records == null || records.isEmpty()) {
+                    if (!checkedExists && !Boolean.TRUE.equals(redisTemplate.hasKey(key))) {
+                        dispatch(sendExecutor, () -> sendError(emitter, "续传记录不存在或已过期，请重新发送消息"));
+                        return;
+                    }
+                    checkedExists = true;
+                    if (System.currentTimeMillis() - lastProgress > properties.getResumeIdleTimeout().toMillis()) {
+                        dispatch(sendExecutor, () -> sendError(emitter, "原回复已中断，请重新发送消息"));
+                        return;
+                    }
+                    schedulePoll();
+                    return;
+                }
+            } catch (Exception e) {
+                log.error("读取流式令牌日志{}失败", key, e);
+                dispatch(sendExecutor, () -> sendError(emitter, "续传失败: " + e.getMessage()));
+                return;
+            }
+            checkedExists = true;
+            lastProgress = System.currentTimeMillis();
+            dispatch(sendExecutor, () -> send(records));
+        }
+
+        private void send(List<MapRecord<String, Object, Object>> records) {
+            if (cancelled) {
+                return;
+            }
+            try {
+                for (MapRecord<String, Object, Object> record : records) {
+                    Map<Object, Object> fields = record.getValue();
+                    String name = String.valueOf(fields.get(FIELD_EVENT));
+                    lastSequence = record.getId().getTimestamp();
+                    emitter.send(SseEmitter.event()
+                            .id(eventId(turnId, lastSequence))
+                            .name(name)
+                            .data(String.valueOf(fields.get(FIELD_DATA)),
+                                    MediaType.parseMediaType(String.valueOf(fields.get(FIELD_TYPE)))));
+                    if (TERMINAL_EVENTS.contains(name)) {
+                        emitter.complete();
+                        return;
+                    }
+                }
+                schedulePoll();
+            } catch (IOException | IllegalStateException e) {
+                // 客户端再次断开，由发射器回调结束
+                log.info("续传{}时连接已断开: {}", key, e.getMessage());
+            }
+        }
+
+        private void dispatch(Executor executor, Runnable task) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                log.warn("续传{}任务被拒绝，线程池已满", key);
+                sendError(emitter, "续传服务繁忙，请稍后重试");
+            }
+        }
+    }
+}
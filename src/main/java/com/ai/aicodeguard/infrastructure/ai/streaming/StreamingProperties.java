@@ -0,0 +1,42 @@
+package com.ai.aicodeguard.infrastructure.ai.streaming;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * @ClassName: StreamingProperties
+ * @Description: 流式接口运行配置
+ * @Author: LZX
+ * @Date: 2025/5/28 14:10
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.streaming")
+public class StreamingProperties {
+    // 发起流式请求的线程池，模型输出在OkHttp线程中读取，不占用此线程池
+    private int corePoolSize = 4;
+    private int maxPoolSize = 16;
+    private int queueCapacity = 100;
+    // 同时保持的流式连接上限，超出时直接返回错误事件
+    private int maxActiveStreams = 200;
+    // 增量合并的时间窗口，0表示逐段发送
+    private Duration batchWindow = Duration.ofMillis(40);
+    // 待发送内容达到该字节数时立即发送
+    private int batchMaxBytes = 1024;
+    // 对话流写入Redis令牌日志，断线后可凭Last-Event-ID从任一节点续传
+    private boolean resumeEnabled = true;
+    // 令牌日志在最后一条事件后的保留时间
+    private Duration resumeTtl = Duration.ofMinutes(10);
+    // 续传时轮询仍在生成中的回复的间隔
+    private Duration resumePollInterval = Duration.ofMillis(200);
+    // 续传时超过该时间没有新事件，视为原回复已中断
+    private Duration resumeIdleTimeout = Duration.ofSeconds(30);
+    // 续传读取令牌日志与向客户端发送事件的线程数，两者分开避免慢客户端拖住其他续传的读取
+    private int resumePollThreads = 2;
+    private int resumeSendThreads = 8;
+    // 续传任务的排队上限，超出时返回错误事件
+    private int resumeQueueCapacity = 1000;
+}
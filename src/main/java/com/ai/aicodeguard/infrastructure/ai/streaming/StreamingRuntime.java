@@ -0,0 +1,227 @@
+package com.ai.aicodeguard.infrastructure.ai.streaming;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * @ClassName: StreamingRuntime
+ * @Description: 流式接口的运行环境：在有界线程池中发起模型请求，限制同时保持的连接数，
+ *               连接完成、超时或出错(含客户端断开)时执行处理器登记的取消动作(可续传的回复只与连接分离)，并提供活跃流数量等指标
+ * @Author: LZX
+ * @Date: 2025/5/28 14:30
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StreamingRuntime {
+
+    private static final String EVENT_ERROR = "error";
+
+    private final StreamingProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicInteger activeStreams = new AtomicInteger();
+    // 按流类型统计的活跃连接数，同时作为指标对象
+    private final Map<String, AtomicInteger> activeByType = new ConcurrentHashMap<>();
+    private ThreadPoolTaskExecutor executor;
+    // 响应式流在流式线程池中订阅
+    private Scheduler scheduler;
+    // 增量合并的定时发送，任务只做一次send，单线程即可
+    private ScheduledExecutorService flushScheduler;
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.getCorePoolSize());
+        executor.setMaxPoolSize(properties.getMaxPoolSize());
+        executor.setQueueCapacity(properties.getQueueCapacity());
+        executor.setThreadNamePrefix("ai-stream-");
+        // 默认拒绝策略抛出RejectedExecutionException，由调用方返回错误事件，不在请求线程中执行
+        executor.initialize();
+        scheduler = Schedulers.fromExecutor(executor);
+        flushScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ai-stream-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        meterRegistry.gauge("ai.stream.active.total", activeStreams);
+        meterRegistry.gauge("ai.stream.executor.active", executor, ThreadPoolTaskExecutor::getActiveCount);
+        meterRegistry.gauge("ai.stream.executor.queued", executor,
+                e -> e.getThreadPoolExecutor().getQueue().size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.dispose();
+        executor.shutdown();
+        flushScheduler.shutdown();
+    }
+
+    /**
+     * 为一个流创建增量合并器，按配置的时间窗口与字节上限发送
+     */
+    public SseDeltaBatcher newBatcher() {
+        return newBatcher(SseEventFactory.PLAIN);
+    }
+
+    /**
+     * 为一个流创建增量合并器，事件由events创建
+     */
+    public SseDeltaBatcher newBatcher(SseEventFactory events) {
+        return new SseDeltaBatcher(properties.getBatchWindow().toMillis(), properties.getBatchMaxBytes(),
+                flushScheduler, events);
+    }
+
+    /**
+     * 创建SSE连接并在流式线程池中执行任务
+     * @param type 流类型，用于日志与指标
+     * @param timeoutMillis 连接超时时间
+     * @param task 发起模型请求的任务，请求需通过处理器的onCancel登记取消动作
+     * @return 返回给客户端的SSE发射器
+     */
+    public SseEmitter start(String type, long timeoutMillis, Consumer<SseEmitter> task) {
+        CancellableSseEmitter emitter = new CancellableSseEmitter(timeoutMillis);
+        Runnable slot = acquireSlot(type);
+        if (slot == null) {
+            reject(type, emitter, "当前流式连接过多，请稍后重试");
+            return emitter;
+        }
+        Runnable release = () -> {
+            slot.run();
+            emitter.cancel();
+        };
+
+        // SseEmitter每种回调只保留一个，统一在此登记
+        emitter.onTimeout(() -> {
+            log.warn("{}流式连接超时", type);
+            recordCancel(type, "timeout");
+            release.run();
+            emitter.complete();
+        });
+        emitter.onError(e -> {
+            log.warn("{}流式连接出错: {}", type, e.getMessage());
+            recordCancel(type, "error");
+            release.run();
+        });
+        emitter.onCompletion(release);
+
+        try {
+            executor.execute(() -> {
+                try {
+                    task.accept(emitter);
+                } catch (Exception e) {
+                    log.error("{}流式请求失败", type, e);
+                    sendError(emitter, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release.run();
+            reject(type, emitter, "流式服务繁忙，请稍后重试");
+        }
+        return emitter;
+    }
+
+    /**
+     * 以与SSE连接相同的连接数限制和指标运行响应式流：订阅时占用连接名额，流结束或被取消时归还；
+     * source在流式线程池中订阅，其中的阻塞查询不占用请求线程
+     * @param type 流类型，用于日志与指标
+     * @param source 订阅时创建的流，下游取消时需取消底层请求
+     * @param errorEvent 将错误信息转换为流中的错误事件
+     * @return 受限的流
+     */
+    public <T> Flux<T> stream(String type, Supplier<Flux<T>> source, Function<String, T> errorEvent) {
+        return Flux.defer(() -> {
+            Runnable slot = acquireSlot(type);
+            if (slot == null) {
+                return Flux.just(rejectEvent(type, "当前流式连接过多，请稍后重试", errorEvent));
+            }
+            return Flux.defer(source)
+                    .subscribeOn(scheduler)
+                    .onErrorResume(RejectedExecutionException.class,
+                            e -> Flux.just(rejectEvent(type, "流式服务繁忙，请稍后重试", errorEvent)))
+                    .doFinally(signal -> {
+                        if (signal == SignalType.CANCEL) {
+                            recordCancel(type, "cancel");
+                        }
+                        slot.run();
+                    });
+        });
+    }
+
+    /**
+     * 占用一个连接名额并计入活跃流指标，超过上限时返回null
+     * @return 归还名额的动作，可重复调用
+     */
+    private Runnable acquireSlot(String type) {
+        if (activeStreams.incrementAndGet() > properties.getMaxActiveStreams()) {
+            activeStreams.decrementAndGet();
+            return null;
+        }
+        AtomicInteger typeActive = activeByType.computeIfAbsent(type,
+                t -> meterRegistry.gauge("ai.stream.active", Tags.of("type", t), new AtomicInteger()));
+        typeActive.incrementAndGet();
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                activeStreams.decrementAndGet();
+                typeActive.decrementAndGet();
+            }
+        };
+    }
+
+    private <T> T rejectEvent(String type, String message, Function<String, T> errorEvent) {
+        log.warn("{}流式请求被拒绝: {}", type, message);
+        meterRegistry.counter("ai.stream.rejected", "type", type).increment();
+        return errorEvent.apply(message);
+    }
+
+    private void reject(String type, SseEmitter emitter, String message) {
+        log.warn("{}流式请求被拒绝: {}", type, message);
+        meterRegistry.counter("ai.stream.rejected", "type", type).increment();
+        sendError(emitter, message);
+    }
+
+    private void recordCancel(String type, String reason) {
+        meterRegistry.counter("ai.stream.cancelled", "type", type, "reason", reason).increment();
+    }
+
+    /**
+     * 以与流式处理器一致的错误事件结束连接
+     */
+    private void sendError(SseEmitter emitter, String message) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name(EVENT_ERROR)
+                    .data(message, MediaType.TEXT_PLAIN));
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            log.warn("发送SSE错误消息失败: {}", e.getMessage());
+            emitter.completeWithError(e);
+        }
+    }
+}
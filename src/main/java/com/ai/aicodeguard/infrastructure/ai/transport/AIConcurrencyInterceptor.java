@@ -0,0 +1,183 @@
+package com.ai.aicodeguard.infrastructure.ai.transport;
+
+import com.ai.aicodeguard.infrastructure.ai.AIModelProperties;
+import com.ai.aicodeguard.infrastructure.ai.AIPriority;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @ClassName: AIConcurrencyInterceptor
+ * @Description: 模型请求的并发控制与重试拦截器：发送前获取限制器许可，根据响应状态与限流响应头调整限制器，
+ *               对限流、过载和连接失败按带抖动的指数退避重试。模型补全请求没有服务端副作用，且重试只发生在读取响应体之前，
+ *               流式请求同样适用
+ * @Author: LZX
+ * @Date: 2025/5/20 10:05
+ */
+@Slf4j
+class AIConcurrencyInterceptor implements Interceptor {
+
+    // 429限流，503/529过载，502/504网关错误
+    private static final Set<Integer> RETRYABLE_STATUS = Set.of(429, 502, 503, 504, 529);
+
+    private final String modelKey;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final AIModelProperties.LimiterConfig config;
+    private final MeterRegistry meterRegistry;
+
+    AIConcurrencyInterceptor(String modelKey, AdaptiveConcurrencyLimiter limiter,
+                             AIModelProperties.LimiterConfig config, MeterRegistry meterRegistry) {
+        this.modelKey = modelKey;
+        this.limiter = limiter;
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull Chain chain) throws IOException {
+        // 调用方通过请求标签指定优先级，未指定时按STANDARD处理
+        AIPriority priority = chain.request().tag(AIPriority.class);
+        if (priority == null) {
+            priority = AIPriority.STANDARD;
+        }
+        for (int attempt = 0; ; attempt++) {
+            AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(config.getQueueTimeout(), priority);
+
+            Response response;
+            try {
+                response = chain.proceed(chain.request());
+            } catch (IOException e) {
+                permit.release(e instanceof SocketTimeoutException
+                        ? AdaptiveConcurrencyLimiter.Outcome.DROPPED
+                        : AdaptiveConcurrencyLimiter.Outcome.IGNORED);
+                // 仅连接失败可以确定请求未到达服务端
+                if (e instanceof ConnectException && canRetry(chain, attempt)) {
+                    backoff(chain, attempt, null, "connect");
+                    continue;
+                }
+                throw e;
+            }
+
+            Duration retryAfter = RateLimitHeaders.retryAfter(response);
+            Duration exhausted = RateLimitHeaders.exhaustedUntilReset(response);
+            if (exhausted != null) {
+                limiter.pause(exhausted);
+            }
+
+            int code = response.code();
+            if (RETRYABLE_STATUS.contains(code)) {
+                permit.release(AdaptiveConcurrencyLimiter.Outcome.DROPPED);
+                meterRegistry.counter("ai.limiter.throttled", "model", modelKey, "status", String.valueOf(code))
+                        .increment();
+                if (retryAfter != null) {
+                    limiter.pause(retryAfter);
+                }
+                // 服务端要求的等待时间超过上限时不再重试，直接返回错误
+                boolean waitAcceptable = retryAfter == null || retryAfter.toMillis() <= config.getMaxRetryDelay();
+                if (waitAcceptable && canRetry(chain, attempt)) {
+                    response.close();
+                    backoff(chain, attempt, retryAfter, String.valueOf(code));
+                    continue;
+                }
+                return response;
+            }
+
+            AdaptiveConcurrencyLimiter.Outcome outcome = response.isSuccessful()
+                    ? AdaptiveConcurrencyLimiter.Outcome.SUCCESS
+                    : AdaptiveConcurrencyLimiter.Outcome.IGNORED;
+            ResponseBody body = response.body();
+            if (body == null) {
+                permit.release(outcome);
+                return response;
+            }
+            // 流式响应在读取完毕后才释放许可
+            return response.newBuilder()
+                    .body(new PermitReleasingBody(body, permit, outcome))
+                    .build();
+        }
+    }
+
+    private boolean canRetry(Chain chain, int attempt) {
+        return attempt < config.getMaxRetries() && !chain.call().isCanceled();
+    }
+
+    /**
+     * 等待后重试：服务端给出等待时间时在其基础上加少量抖动，否则使用全抖动指数退避
+     */
+    private void backoff(Chain chain, int attempt, Duration retryAfter, String reason) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay;
+        if (retryAfter != null) {
+            delay = retryAfter.toMillis() + random.nextLong(config.getRetryBaseDelay() + 1);
+        } else {
+            long ceiling = Math.min(config.getMaxRetryDelay(), config.getRetryBaseDelay() << Math.min(attempt, 20));
+            delay = random.nextLong(ceiling + 1);
+        }
+
+        meterRegistry.counter("ai.limiter.retries", "model", modelKey, "reason", reason).increment();
+        log.warn("{}模型请求失败({})，{}ms后进行第{}次重试", modelKey, reason, delay, attempt + 1);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待重试时被中断");
+        }
+        if (chain.call().isCanceled()) {
+            throw new IOException("Canceled");
+        }
+    }
+
+    /**
+     * 响应体关闭时释放许可
+     */
+    private static class PermitReleasingBody extends ResponseBody {
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+
+        PermitReleasingBody(ResponseBody delegate, AdaptiveConcurrencyLimiter.Permit permit,
+                            AdaptiveConcurrencyLimiter.Outcome outcome) {
+            this.delegate = delegate;
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public void close() throws IOException {
+                    permit.release(outcome);
+                    super.close();
+                }
+            });
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @NotNull
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.ai.aicodeguard.infrastructure.ai.transport;
+
+import com.ai.aicodeguard.infrastructure.ai.AIModelProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @ClassName: AIHttpTransport
+ * @Description: AI模型共享HTTP传输层，按模型维护长连接池与调度器
+ * @Author: LZX
+ * @Date: 2025/5/16 10:12
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AIHttpTransport {
+
+    private final AIModelProperties properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, OkHttpClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * 所有模型共用的调度线程池，单个模型的并发由各自的Dispatcher限制
+     */
+    private final ExecutorService dispatchExecutor = new ThreadPoolExecutor(
+            0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), new DispatchThreadFactory());
+
+    private volatile OkHttpClient rootClient;
+
+    /**
+     * 获取指定模型的HTTP客户端
+     * @param modelKey ai.models 下的配置名，例如 claude、deepseek
+     * @return 复用连接池的OkHttp客户端
+     */
+    public OkHttpClient client(String modelKey) {
+        return clients.computeIfAbsent(modelKey, this::buildClient);
+    }
+
+    private OkHttpClient buildClient(String modelKey) {
+        AIModelProperties.ModelConfig config = properties.getModel(modelKey);
+        if (config == null) {
+            throw new IllegalArgumentException("未配置的AI模型: " + modelKey);
+        }
+
+        // 实际并发由限制器控制，调度器需容纳排队中的请求，否则会在无截止时间的调度队列中等待
+        int dispatcherLimit = config.getMaxConcurrentRequests() + config.getLimiter().getMaxQueueSize();
+        Dispatcher dispatcher = new Dispatcher(dispatchExecutor);
+        dispatcher.setMaxRequests(dispatcherLimit);
+        dispatcher.setMaxRequestsPerHost(dispatcherLimit);
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(modelKey, config, meterRegistry);
+
+        log.info("初始化{}模型HTTP客户端，超时{}ms，初始并发{}，最大并发{}",
+                modelKey, config.getTimeout(), (int) limiter.getLimit(), config.getMaxConcurrentRequests());
+
+        OkHttpClient.Builder builder = rootClient().newBuilder()
+                .dispatcher(dispatcher)
+                .addInterceptor(new AIConcurrencyInterceptor(modelKey, limiter, config.getLimiter(), meterRegistry))
+                .connectionPool(new ConnectionPool(
+                        config.getMaxIdleConnections(), config.getKeepAlive(), TimeUnit.MILLISECONDS))
+                .connectTimeout(config.getConnectTimeout(), TimeUnit.MILLISECONDS)
+                // 流式响应两次数据之间的最大间隔，同时作为非流式请求的读超时
+                .readTimeout(config.getTimeout(), TimeUnit.MILLISECONDS)
+                .writeTimeout(config.getTimeout(), TimeUnit.MILLISECONDS);
+
+        // 本机端点(如模拟服务)不走代理
+        HttpUrl endpoint = config.getDefaultEndpoint() != null ? HttpUrl.parse(config.getDefaultEndpoint()) : null;
+        if (endpoint != null && isLoopback(endpoint.host())) {
+            builder.proxy(Proxy.NO_PROXY);
+        }
+        return builder.build();
+    }
+
+    private static boolean isLoopback(String host) {
+        return "localhost".equalsIgnoreCase(host) || host.startsWith("127.") || "::1".equals(host);
+    }
+
+    private OkHttpClient rootClient() {
+        if (rootClient == null) {
+            synchronized (this) {
+                if (rootClient == null) {
+                    OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                            .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                            .pingInterval(30, TimeUnit.SECONDS)
+                            .retryOnConnectionFailure(true);
+
+                    AIModelProperties.ProxyConfig proxyConfig = properties.getProxy();
+                    if (proxyConfig != null && proxyConfig.isEnabled()) {
+                        log.info("AI模型请求使用代理 {}:{}", proxyConfig.getHost(), proxyConfig.getPort());
+                        builder.proxy(new Proxy(
+                                Proxy.Type.HTTP,
+                                new InetSocketAddress(proxyConfig.getHost(), proxyConfig.getPort())
+                        ));
+                    }
+                    rootClient = builder.build();
+                }
+            }
+        }
+        return rootClient;
+    }
+
+    /**
+     * 应用启动后预热连接，提前完成TCP/TLS（及代理CONNECT）握手
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void prewarm() {
+        properties.getModels().forEach((modelKey, config) -> {
+            if (!config.isPrewarm() || config.getDefaultEndpoint() == null) {
+                return;
+            }
+            HttpUrl endpoint = HttpUrl.parse(config.getDefaultEndpoint());
+            if (endpoint == null) {
+                log.warn("{}模型端点地址无效，跳过连接预热", modelKey);
+                return;
+            }
+
+            Request request = new Request.Builder()
+                    .url(endpoint.newBuilder().encodedPath("/").build())
+                    .head()
+                    .build();
+            client(modelKey).newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                    log.warn("{}模型连接预热失败: {}", modelKey, e.getMessage());
+                }
+
+                @Override
+                public void onResponse(@NotNull Call call, @NotNull Response response) {
+                    response.close();
+                    log.info("{}模型连接预热完成，协议: {}", modelKey, response.protocol());
+                }
+            });
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        clients.values().forEach(client -> client.connectionPool().evictAll());
+        dispatchExecutor.shutdown();
+    }
+
+    private static class DispatchThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NotNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "ai-http-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
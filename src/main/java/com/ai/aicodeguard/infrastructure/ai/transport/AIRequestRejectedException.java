@@ -0,0 +1,16 @@
+package com.ai.aicodeguard.infrastructure.ai.transport;
+
+import java.io.IOException;
+
+/**
+ * @ClassName: AIRequestRejectedException
+ * @Description: 请求在本地并发限制器中排队已满或等待超时，未发送到模型服务
+ * @Author: LZX
+ * @Date: 2025/5/20 09:20
+ */
+public class AIRequestRejectedException extends IOException {
+
+    public AIRequestRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,305 @@
+package com.ai.aicodeguard.infrastructure.ai.transport;
+
+import com.ai.aicodeguard.infrastructure.ai.AIModelProperties;
+import com.ai.aicodeguard.infrastructure.ai.AIPriority;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @ClassName: AdaptiveConcurrencyLimiter
+ * @Description: 单个模型的自适应并发限制器（AIMD）：请求成功时缓慢提高并发上限，遇到限流、过载或超时按比例降低；
+ *               超出上限的请求排队等待，超过截止时间后拒绝。
+ *               排队请求按优先级获取许可，当前上限的一部分只供INTERACTIVE请求使用；每等待agingInterval在队列中提升一级，
+ *               避免后台请求饿死，提升只影响排队顺序，不能使用预留额度；队列已满时挤出优先级最低的排队请求
+ * @Author: LZX
+ * @Date: 2025/5/20 09:40
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    /**
+     * 请求结束后反馈给限制器的结果
+     */
+    public enum Outcome {
+        // 请求成功，可尝试提高上限
+        SUCCESS,
+        // 被限流、过载或超时，需要降低上限
+        DROPPED,
+        // 与服务端负载无关的结果，例如参数错误
+        IGNORED
+    }
+
+    private final String modelKey;
+    private final AIModelProperties.LimiterConfig config;
+    private final int maxLimit;
+    private final MeterRegistry meterRegistry;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    private double limit;
+    private int inflight;
+    // 排队中的请求，数量不超过maxQueueSize
+    private final List<Waiter> waiters = new ArrayList<>();
+    private long sequence;
+    // 服务端要求暂停发送的截止时间（System.nanoTime）
+    private long pausedUntil;
+    // 每次降低上限后递增，同一批在途请求的多次失败只降低一次
+    private long generation;
+
+    public AdaptiveConcurrencyLimiter(String modelKey, AIModelProperties.ModelConfig modelConfig,
+                                      MeterRegistry meterRegistry) {
+        this.modelKey = modelKey;
+        this.config = modelConfig.getLimiter();
+        this.maxLimit = modelConfig.getMaxConcurrentRequests();
+        this.meterRegistry = meterRegistry;
+        this.limit = Math.max(config.getMinLimit(), Math.min(config.getInitialLimit(), maxLimit));
+        this.pausedUntil = System.nanoTime();
+
+        Gauge.builder("ai.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .tag("model", modelKey).register(meterRegistry);
+        Gauge.builder("ai.limiter.inflight", this, AdaptiveConcurrencyLimiter::getInflight)
+                .tag("model", modelKey).register(meterRegistry);
+        Gauge.builder("ai.limiter.queue.depth", this, AdaptiveConcurrencyLimiter::getQueueDepth)
+                .tag("model", modelKey).register(meterRegistry);
+        for (AIPriority priority : AIPriority.values()) {
+            Gauge.builder("ai.limiter.queue.depth.priority", this, limiter -> limiter.countWaiting(priority))
+                    .tag("model", modelKey).tag("priority", priority.name()).register(meterRegistry);
+        }
+    }
+
+    /**
+     * 获取发送许可，必要时排队等待
+     * @param timeoutMillis 最长等待时间
+     * @param priority 请求优先级
+     * @return 请求结束后必须释放的许可
+     * @throws AIRequestRejectedException 队列已满、等待超时或被更高优先级的请求挤出队列
+     */
+    public Permit acquire(long timeoutMillis, AIPriority priority)
+            throws AIRequestRejectedException, InterruptedIOException {
+        lock.lock();
+        try {
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            // 无人排队且额度足够时直接放行
+            if (waiters.isEmpty() && hasCapacity(priority, start)) {
+                inflight++;
+                return new Permit(generation);
+            }
+            if (waiters.size() >= config.getMaxQueueSize() && !preemptFor(priority, start)) {
+                throw reject("queue_full", priority, "AI请求队列已满，模型: " + modelKey);
+            }
+
+            Waiter waiter = new Waiter(priority, start, sequence++);
+            waiters.add(waiter);
+            try {
+                long now;
+                while (next(now = System.nanoTime()) != waiter) {
+                    if (waiter.preempted) {
+                        throw reject("preempted", priority, "AI请求被更高优先级的请求挤出队列，模型: " + modelKey);
+                    }
+                    long remaining = deadline - now;
+                    if (remaining <= 0) {
+                        throw reject("timeout", priority, "AI请求排队超时，模型: " + modelKey);
+                    }
+                    // 按暂停截止时间与下一次优先级提升时间定时醒来
+                    long wait = Math.min(remaining, agingNanos());
+                    long paused = pausedUntil - now;
+                    available.awaitNanos(paused > 0 ? Math.min(paused, wait) : wait);
+                }
+            } finally {
+                waiters.remove(waiter);
+            }
+
+            inflight++;
+            meterRegistry.timer("ai.limiter.queue.wait", "model", modelKey, "priority", priority.name())
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            // 剩余额度可能还能放行下一个排队请求
+            available.signalAll();
+            return new Permit(generation);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待AI请求许可时被中断");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 按服务端要求暂停发送新请求
+     */
+    public void pause(Duration duration) {
+        long cap = TimeUnit.MILLISECONDS.toNanos(config.getMaxRetryDelay());
+        long until = System.nanoTime() + Math.min(duration.toNanos(), cap);
+        lock.lock();
+        try {
+            if (until - pausedUntil > 0) {
+                pausedUntil = until;
+                log.warn("{}模型触发限流，暂停发送{}ms", modelKey, duration.toMillis());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getLimit() {
+        return limit;
+    }
+
+    public int getInflight() {
+        return inflight;
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int countWaiting(AIPriority priority) {
+        lock.lock();
+        try {
+            return (int) waiters.stream().filter(waiter -> waiter.priority == priority).count();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 指定优先级当前能否再占用一个并发额度
+     * @param priority 请求的原始优先级，排队提升不改变能否使用预留额度
+     */
+    private boolean hasCapacity(AIPriority priority, long now) {
+        if (now - pausedUntil < 0) {
+            return false;
+        }
+        int current = (int) limit;
+        if (priority == AIPriority.INTERACTIVE) {
+            return inflight < current;
+        }
+        // 预留部分只供INTERACTIVE使用，上限很低时至少保留一个非预留额度
+        int reserved = (int) Math.ceil(current * config.getReservedInteractiveRatio());
+        return inflight < Math.max(1, current - reserved);
+    }
+
+    /**
+     * 下一个可以获取许可的排队请求：在额度允许(按原始优先级判断)的请求中取有效优先级最高、其次排队最早的
+     */
+    private Waiter next(long now) {
+        Waiter best = null;
+        int bestRank = Integer.MAX_VALUE;
+        for (Waiter waiter : waiters) {
+            int rank = effectiveRank(waiter, now);
+            if ((rank < bestRank || rank == bestRank && waiter.sequence < best.sequence) && hasCapacity(waiter.priority, now)) {
+                best = waiter;
+                bestRank = rank;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 队列已满时挤出有效优先级最低、其次最晚排队的请求，只有其优先级低于新请求时才挤出
+     */
+    private boolean preemptFor(AIPriority priority, long now) {
+        Waiter victim = null;
+        int victimRank = priority.ordinal();
+        for (Waiter waiter : waiters) {
+            int rank = effectiveRank(waiter, now);
+            if (rank > victimRank || victim != null && rank == victimRank && waiter.sequence > victim.sequence) {
+                victim = waiter;
+                victimRank = rank;
+            }
+        }
+        if (victim == null) {
+            return false;
+        }
+        victim.preempted = true;
+        waiters.remove(victim);
+        available.signalAll();
+        return true;
+    }
+
+    /**
+     * 有效优先级：每排队一个agingInterval提升一级，只用于排队顺序与挤出
+     */
+    private int effectiveRank(Waiter waiter, long now) {
+        long promoted = (now - waiter.enqueuedAt) / agingNanos();
+        return (int) Math.max(0, waiter.priority.ordinal() - promoted);
+    }
+
+    private long agingNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(1, config.getAgingInterval()));
+    }
+
+    private AIRequestRejectedException reject(String reason, AIPriority priority, String message) {
+        meterRegistry.counter("ai.limiter.rejected", "model", modelKey, "reason", reason,
+                "priority", priority.name()).increment();
+        log.warn("{}，优先级{}，当前上限{}，在途{}，排队{}", message, priority, (int) limit, inflight, waiters.size());
+        return new AIRequestRejectedException(message);
+    }
+
+    private void release(long permitGeneration, Outcome outcome) {
+        lock.lock();
+        try {
+            inflight--;
+            if (outcome == Outcome.SUCCESS) {
+                // 仅在上限被实际使用时增长，避免空闲期间无限上调
+                if (inflight + 1 >= limit / 2) {
+                    limit = Math.min(maxLimit, limit + 1.0 / limit);
+                }
+            } else if (outcome == Outcome.DROPPED && permitGeneration == generation) {
+                limit = Math.max(config.getMinLimit(), limit * config.getBackoffRatio());
+                generation++;
+                log.info("{}模型并发上限降低至{}", modelKey, (int) limit);
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class Waiter {
+        private final AIPriority priority;
+        private final long enqueuedAt;
+        private final long sequence;
+        private boolean preempted;
+
+        Waiter(AIPriority priority, long enqueuedAt, long sequence) {
+            this.priority = priority;
+            this.enqueuedAt = enqueuedAt;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * 发送许可，重复释放无效
+     */
+    public class Permit {
+        private final long generation;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long generation) {
+            this.generation = generation;
+        }
+
+        public void release(Outcome outcome) {
+            if (released.compareAndSet(false, true)) {
+                AdaptiveConcurrencyLimiter.this.release(generation, outcome);
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.ai.aicodeguard.infrastructure.ai.transport;
+
+import com.ai.aicodeguard.infrastructure.ai.exception.AIProviderException;
+import com.ai.aicodeguard.infrastructure.ai.metering.AICallMetrics;
+import com.ai.aicodeguard.infrastructure.ai.streaming.SseTokenParser;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamChunk;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamSummary;
+import com.fasterxml.jackson.core.JsonFactory;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import org.jetbrains.annotations.NotNull;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.io.IOException;
+
+/**
+ * @ClassName: CallFlux
+ * @Description: 以Flux发布OkHttp流式响应。订阅时发出请求，只在下游有需求时读取下一个事件：
+ *               需求为0时停止读取连接，接收窗口写满后模型服务端随之暂停发送；取消订阅时取消HTTP请求
+ * @Author: LZX
+ * @Date: 2025/5/29 15:20
+ */
+public final class CallFlux {
+
+    private CallFlux() {
+    }
+
+    /**
+     * @param call 待执行的流式请求
+     * @param format 流式响应格式
+     * @param metrics 本次调用的计量
+     * @return 增量文本片段，最后一个片段携带结束元数据
+     */
+    public static Flux<StreamChunk> stream(Call call, JsonFactory jsonFactory, SseTokenParser.Format format,
+                                           AICallMetrics metrics) {
+        return Flux.create(sink -> {
+            Demand demand = new Demand();
+            sink.onRequest(demand::add);
+            sink.onDispose(() -> {
+                demand.release();
+                call.cancel();
+            });
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(@NotNull Call c, @NotNull IOException e) {
+                    metrics.failure();
+                    if (!c.isCanceled()) {
+                        sink.error(e);
+                    }
+                }
+
+                @Override
+                public void onResponse(@NotNull Call c, @NotNull Response response) {
+                    try (response) {
+                        read(response, sink, demand, jsonFactory, format, metrics);
+                    } catch (Exception e) {
+                        if (!c.isCanceled()) {
+                            sink.error(e);
+                        }
+                    }
+                }
+            });
+        // 只在有需求时发出，不会超出下游请求数
+        }, FluxSink.OverflowStrategy.ERROR);
+    }
+
+    private static void read(Response response, FluxSink<StreamChunk> sink, Demand demand, JsonFactory jsonFactory,
+                             SseTokenParser.Format format, AICallMetrics metrics) throws IOException {
+        ResponseBody body = response.body();
+        if (!response.isSuccessful() || body == null) {
+            metrics.failure();
+            sink.error(new AIProviderException(response.code(), RateLimitHeaders.retryAfter(response)));
+            return;
+        }
+
+        BufferedSource source = body.source();
+        SseTokenParser parser = new SseTokenParser(jsonFactory, format);
+        try {
+            while (parser.next(source)) {
+                if (parser.error() != null) {
+                    sink.error(new RuntimeException(parser.error()));
+                    return;
+                }
+                String text = parser.text();
+                if (text != null && !text.isEmpty()) {
+                    metrics.firstToken();
+                    if (!demand.take()) {
+                        return;
+                    }
+                    sink.next(StreamChunk.text(text));
+                }
+                if (parser.isDone()) {
+                    metrics.usage(parser.usage());
+                    metrics.success();
+                    if (demand.take()) {
+                        sink.next(StreamChunk.end(new StreamSummary(parser.messageId(), parser.finishReason(), parser.usage())));
+                        sink.complete();
+                    }
+                    return;
+                }
+            }
+            sink.error(new IOException("流式响应未正常结束"));
+        } finally {
+            // 正常结束时已记录成功；中途出错或取消时记为失败，已产生的令牌仍然计入
+            metrics.usage(parser.usage());
+            metrics.failure();
+        }
+    }
+
+    /**
+     * 下游需求计数，读取线程在需求为0时等待
+     */
+    private static final class Demand {
+        private long requested;
+        private boolean released;
+
+        synchronized void add(long n) {
+            requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+            notifyAll();
+        }
+
+        synchronized void release() {
+            released = true;
+            notifyAll();
+        }
+
+        /**
+         * 等待并占用一个需求
+         * @return 订阅已取消时返回false
+         */
+        synchronized boolean take() {
+            try {
+                while (requested == 0 && !released) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (released) {
+                return false;
+            }
+            if (requested != Long.MAX_VALUE) {
+                requested--;
+            }
+            return true;
+        }
+    }
+}
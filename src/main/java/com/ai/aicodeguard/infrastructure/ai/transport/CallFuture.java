@@ -0,0 +1,67 @@
+package com.ai.aicodeguard.infrastructure.ai.transport;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @ClassName: CallFuture
+ * @Description: 基于OkHttp异步回调的CompletableFuture，取消时同时取消底层HTTP请求
+ * @Author: LZX
+ * @Date: 2025/5/17 14:20
+ */
+public class CallFuture<T> extends CompletableFuture<T> {
+
+    /**
+     * 响应解析器，在OkHttp回调线程中执行
+     */
+    @FunctionalInterface
+    public interface ResponseParser<T> {
+        T parse(Response response) throws Exception;
+    }
+
+    private final Call call;
+
+    private CallFuture(Call call) {
+        this.call = call;
+    }
+
+    /**
+     * 异步执行请求，响应在回调中解析后完成Future
+     * @param call 待执行的请求
+     * @param parser 响应解析器，负责检查状态码并提取结果
+     * @return 可取消的Future
+     */
+    public static <T> CallFuture<T> enqueue(Call call, ResponseParser<T> parser) {
+        CallFuture<T> future = new CallFuture<>(call);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(@NotNull Call c, @NotNull IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(@NotNull Call c, @NotNull Response response) {
+                try (response) {
+                    future.complete(parser.parse(response));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+            call.cancel();
+        }
+        return cancelled;
+    }
+}
@@ -0,0 +1,57 @@
+package com.ai.aicodeguard.infrastructure.ai.transport;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * @ClassName: JsonRequestBody
+ * @Description: 在发送时由JsonGenerator直接写入连接的请求体，不经过Map对象树、JSON字符串与字节数组的中间拷贝。
+ *               写入逻辑只读取创建时捕获的参数，连接重试时可重复写出；长度未知，以分块传输发送
+ * @Author: LZX
+ * @Date: 2025/5/27 14:10
+ */
+public final class JsonRequestBody extends RequestBody {
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    /**
+     * 请求体写入逻辑
+     */
+    @FunctionalInterface
+    public interface Writer {
+        void write(JsonGenerator gen) throws IOException;
+    }
+
+    private final JsonFactory jsonFactory;
+    private final Writer writer;
+
+    private JsonRequestBody(JsonFactory jsonFactory, Writer writer) {
+        this.jsonFactory = jsonFactory;
+        this.writer = writer;
+    }
+
+    public static JsonRequestBody of(JsonFactory jsonFactory, Writer writer) {
+        return new JsonRequestBody(jsonFactory, writer);
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public void writeTo(@NotNull BufferedSink sink) throws IOException {
+        // 生成器自带可回收的输出缓冲，满后直接写入sink的段缓冲；sink由OkHttp负责关闭
+        try (JsonGenerator gen = jsonFactory.createGenerator(sink.outputStream(), JsonEncoding.UTF8)) {
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            writer.write(gen);
+        }
+    }
+}
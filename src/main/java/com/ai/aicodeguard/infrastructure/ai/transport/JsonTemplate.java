@@ -0,0 +1,77 @@
+package com.ai.aicodeguard.infrastructure.ai.transport;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @ClassName: JsonTemplate
+ * @Description: 预编译的提示词模板，以%s为占位符。静态片段在编译时完成JSON转义并缓存UTF-8字节，
+ *               写出时只转义参数，整个模板作为一个JSON字符串值写入生成器，不拼接完整提示词
+ * @Author: LZX
+ * @Date: 2025/5/27 14:30
+ */
+public final class JsonTemplate {
+
+    private static final String PLACEHOLDER = "%s";
+
+    // 已转义的静态片段，数量比占位符多一个
+    private final SerializableString[] segments;
+
+    private JsonTemplate(SerializableString[] segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * 编译模板
+     * @param template 以%s为占位符的模板
+     */
+    public static JsonTemplate compile(String template) {
+        List<SerializableString> segments = new ArrayList<>();
+        int from = 0;
+        int index;
+        while ((index = template.indexOf(PLACEHOLDER, from)) >= 0) {
+            segments.add(escaped(template.substring(from, index)));
+            from = index + PLACEHOLDER.length();
+        }
+        segments.add(escaped(template.substring(from)));
+        return new JsonTemplate(segments.toArray(SerializableString[]::new));
+    }
+
+    /**
+     * 占位符数量
+     */
+    public int arity() {
+        return segments.length - 1;
+    }
+
+    /**
+     * 将填充后的模板作为字符串值写出，效果等同于 gen.writeString(String.format(template, args))
+     */
+    public void writeValue(JsonGenerator gen, String... args) throws IOException {
+        if (args.length != arity()) {
+            throw new IllegalArgumentException("模板需要" + arity() + "个参数，实际为" + args.length);
+        }
+        // 以原始值写入开头的引号，生成器据此处理逗号等上下文
+        gen.writeRawValue("\"");
+        for (int i = 0; i < args.length; i++) {
+            gen.writeRaw(segments[i]);
+            char[] arg = JsonStringEncoder.getInstance().quoteAsString(String.valueOf(args[i]));
+            gen.writeRaw(arg, 0, arg.length);
+        }
+        gen.writeRaw(segments[args.length]);
+        gen.writeRaw('"');
+    }
+
+    /**
+     * 其未加引号的形式即为转义后的文本，SerializedString会缓存其UTF-8编码
+     */
+    private static SerializableString escaped(String text) {
+        return new SerializedString(new String(JsonStringEncoder.getInstance().quoteAsString(text)));
+    }
+}
@@ -0,0 +1,116 @@
+package com.ai.aicodeguard.infrastructure.ai.transport;
+
+import okhttp3.Response;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @ClassName: RateLimitHeaders
+ * @Description: 解析模型服务返回的Retry-After及限流额度响应头
+ * @Author: LZX
+ * @Date: 2025/5/20 09:28
+ */
+public final class RateLimitHeaders {
+
+    // OpenAI兼容接口的重置时间格式，例如 1s、6m0s、20ms
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|s|m|h)");
+
+    private RateLimitHeaders() {
+    }
+
+    /**
+     * 读取服务端要求的等待时间，支持 retry-after-ms 与 Retry-After（秒数或HTTP日期）
+     * @return 等待时间，未返回时为null
+     */
+    public static Duration retryAfter(Response response) {
+        String millis = response.header("retry-after-ms");
+        if (millis != null) {
+            try {
+                return Duration.ofMillis((long) Double.parseDouble(millis.trim()));
+            } catch (NumberFormatException ignored) {
+                // 继续解析Retry-After
+            }
+        }
+
+        String value = response.header("Retry-After");
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            Date date = response.headers().getDate("Retry-After");
+            return date == null ? null : positive(Duration.between(Instant.now(), date.toInstant()));
+        }
+    }
+
+    /**
+     * 当请求数或令牌数额度已用尽时，返回距离额度重置的时间
+     * @return 等待时间，额度未用尽或无法解析时为null
+     */
+    public static Duration exhaustedUntilReset(Response response) {
+        Duration anthropic = max(
+                anthropicReset(response, "requests"),
+                anthropicReset(response, "tokens"));
+        Duration openAI = max(
+                openAIReset(response, "requests"),
+                openAIReset(response, "tokens"));
+        return max(anthropic, openAI);
+    }
+
+    private static Duration anthropicReset(Response response, String kind) {
+        if (!"0".equals(response.header("anthropic-ratelimit-" + kind + "-remaining"))) {
+            return null;
+        }
+        String reset = response.header("anthropic-ratelimit-" + kind + "-reset");
+        if (reset == null) {
+            return null;
+        }
+        try {
+            return positive(Duration.between(Instant.now(), Instant.parse(reset.trim())));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static Duration openAIReset(Response response, String kind) {
+        if (!"0".equals(response.header("x-ratelimit-remaining-" + kind))) {
+            return null;
+        }
+        String reset = response.header("x-ratelimit-reset-" + kind);
+        return reset == null ? null : parseDuration(reset.trim());
+    }
+
+    static Duration parseDuration(String value) {
+        Matcher matcher = DURATION_PART.matcher(value);
+        double millis = 0;
+        boolean matched = false;
+        while (matcher.find()) {
+            matched = true;
+            double amount = Double.parseDouble(matcher.group(1));
+            millis += switch (matcher.group(2)) {
+                case "ms" -> amount;
+                case "s" -> amount * 1000;
+                case "m" -> amount * 60_000;
+                default -> amount * 3_600_000;
+            };
+        }
+        return matched ? positive(Duration.ofMillis((long) millis)) : null;
+    }
+
+    private static Duration positive(Duration duration) {
+        return duration.isNegative() || duration.isZero() ? null : duration;
+    }
+
+    private static Duration max(Duration a, Duration b) {
+        if (a == null) {
+            return b;
+        }
+        return b == null || a.compareTo(b) >= 0 ? a : b;
+    }
+}
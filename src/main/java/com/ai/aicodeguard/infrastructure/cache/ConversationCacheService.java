@@ -1,17 +1,27 @@
 package com.ai.aicodeguard.infrastructure.cache;
 
+import com.ai.aicodeguard.infrastructure.ai.conversation.ChatMessage;
 import com.ai.aicodeguard.infrastructure.ai.conversation.Conversation;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.TimeUnit;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @ClassName: ConversationCacheService
- * @Description: Redis缓存服务，用于存储对话记录
+ * @Description: Redis缓存服务，用于存储对话记录。每个对话对应一个消息列表与一个元数据哈希：
+ *               列表只保存系统消息与尚未被摘要覆盖的消息，新消息以RPUSH追加，读取时一次往返取回并刷新过期时间
  * @Author: LZX
  * @Date: 2025/4/24 17:39
  */
@@ -24,31 +34,111 @@ public class ConversationCacheService {
     private final ObjectMapper objectMapper;
 
     private static final String CACHE_KEY_PREFIX = "conversation:";
-    private static final long CACHE_TTL_HOURS = 24; // 缓存24小时
+    private static final Duration CACHE_TTL = Duration.ofHours(24); // 缓存24小时
 
-    private String buildKey(String userId, String conversationId) {
-        return CACHE_KEY_PREFIX + userId + ":" + conversationId;
+    /**
+     * 整体替换对话缓存
+     * KEYS: 消息列表, 元数据哈希
+     * ARGV: 过期毫秒数, 元数据字段数n, n对字段名与值, 各条消息
+     */
+    private static final RedisScript<Long> REPLACE_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('DEL', KEYS[1], KEYS[2])
+            local n = tonumber(ARGV[2])
+            redis.call('HSET', KEYS[2], unpack(ARGV, 3, 2 + 2 * n))
+            if #ARGV > 2 + 2 * n then
+                redis.call('RPUSH', KEYS[1], unpack(ARGV, 3 + 2 * n))
+            end
+            redis.call('PEXPIRE', KEYS[1], ARGV[1])
+            redis.call('PEXPIRE', KEYS[2], ARGV[1])
+            return 1
+            """, Long.class);
+
+    /**
+     * 追加消息并更新元数据；列表长度与调用方上次写入时不一致(已过期、被删除或被其他请求写入)时删除缓存，
+     * 下次读取时从MongoDB重新加载
+     * KEYS: 消息列表, 元数据哈希
+     * ARGV: 追加前的列表长度, 过期毫秒数, 元数据字段数n, n对字段名与值, 各条消息
+     */
+    private static final RedisScript<Long> APPEND_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('LLEN', KEYS[1]) ~= tonumber(ARGV[1]) then
+                redis.call('DEL', KEYS[1], KEYS[2])
+                return 0
+            end
+            local n = tonumber(ARGV[3])
+            redis.call('HSET', KEYS[2], unpack(ARGV, 4, 3 + 2 * n))
+            if #ARGV > 3 + 2 * n then
+                redis.call('RPUSH', KEYS[1], unpack(ARGV, 4 + 2 * n))
+            end
+            redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            redis.call('PEXPIRE', KEYS[2], ARGV[2])
+            return 1
+            """, Long.class);
+
+    // 以{userId:conversationId}作为哈希标签，同一对话的两个键位于同一个槽，可在一个脚本中操作
+    private String buildKey(String userId, String conversationId, String suffix) {
+        return CACHE_KEY_PREFIX + "{" + userId + ":" + conversationId + "}:" + suffix;
     }
 
+    /**
+     * 整体写入对话，用于新建对话或从MongoDB加载后
+     */
     public void cacheConversation(String userId, Conversation conversation) {
         try {
-            String key = buildKey(userId, conversation.getId());
-            String json = objectMapper.writeValueAsString(conversation);
-            redisTemplate.opsForValue().set(key, json, CACHE_TTL_HOURS, TimeUnit.HOURS);
+            List<String> args = new ArrayList<>();
+            args.add(String.valueOf(CACHE_TTL.toMillis()));
+            addMetadata(args, conversation);
+            addMessages(args, conversation.getMessages());
+            redisTemplate.execute(REPLACE_SCRIPT, keys(userId, conversation.getId()), args.toArray());
         } catch (Exception e) {
             log.error("缓存对话失败", e);
         }
     }
 
+    /**
+     * 追加对话中新增的消息
+     * @param cachedCount 上次写入缓存时messages的长度
+     */
+    public void appendMessages(String userId, Conversation conversation, int cachedCount) {
+        try {
+            List<ChatMessage> messages = conversation.getMessages();
+            List<String> args = new ArrayList<>();
+            args.add(String.valueOf(cachedCount));
+            args.add(String.valueOf(CACHE_TTL.toMillis()));
+            args.add("1");
+            args.add("lastUpdatedAt");
+            args.add(String.valueOf(conversation.getLastUpdatedAt()));
+            addMessages(args, messages.subList(cachedCount, messages.size()));
+            Long appended = redisTemplate.execute(APPEND_SCRIPT, keys(userId, conversation.getId()), args.toArray());
+            if (appended == null || appended == 0) {
+                log.debug("对话{}的缓存与本次写入不一致，已删除", conversation.getId());
+            }
+        } catch (Exception e) {
+            log.error("追加缓存对话消息失败", e);
+            removeConversation(userId, conversation.getId());
+        }
+    }
+
     public Conversation getConversation(String userId, String conversationId) {
         try {
-            String key = buildKey(userId, conversationId);
-            String json = redisTemplate.opsForValue().get(key);
+            String metaKey = buildKey(userId, conversationId, "meta");
+            String messagesKey = buildKey(userId, conversationId, "messages");
+            // 元数据、消息与刷新过期时间在一次往返中完成
+            List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    RedisOperations<String, String> redis = (RedisOperations<String, String>) operations;
+                    redis.opsForHash().entries(metaKey);
+                    redis.opsForList().range(messagesKey, 0, -1);
+                    redis.expire(metaKey, CACHE_TTL);
+                    redis.expire(messagesKey, CACHE_TTL);
+                    return null;
+                }
+            });
 
-            if (json != null) {
-                // 每次访问，刷新过期时间
-                redisTemplate.expire(key, CACHE_TTL_HOURS, TimeUnit.HOURS);
-                return objectMapper.readValue(json, Conversation.class);
+            if (results.get(0) instanceof Map<?, ?> meta && !meta.isEmpty()
+                    && results.get(1) instanceof List<?> items && !items.isEmpty()) {
+                return toConversation(meta, items);
             }
         } catch (Exception e) {
             log.error("获取缓存对话失败", e);
@@ -58,10 +148,65 @@ public class ConversationCacheService {
 
     public void removeConversation(String userId, String conversationId) {
         try {
-            String key = buildKey(userId, conversationId);
-            redisTemplate.delete(key);
+            redisTemplate.delete(keys(userId, conversationId));
         } catch (Exception e) {
             log.error("删除缓存对话失败", e);
         }
     }
+
+    private List<String> keys(String userId, String conversationId) {
+        return List.of(buildKey(userId, conversationId, "messages"), buildKey(userId, conversationId, "meta"));
+    }
+
+    private static void addMetadata(List<String> args, Conversation conversation) {
+        List<String> fields = new ArrayList<>();
+        addField(fields, "id", conversation.getId());
+        addField(fields, "userId", conversation.getUserId());
+        addField(fields, "modelType", conversation.getModelType());
+        addField(fields, "createdAt", conversation.getCreatedAt());
+        addField(fields, "lastUpdatedAt", conversation.getLastUpdatedAt());
+        addField(fields, "summary", conversation.getSummary());
+        addField(fields, "summarizedCount", conversation.getSummarizedCount());
+        addField(fields, "messageOffset", conversation.getMessageOffset());
+        args.add(String.valueOf(fields.size() / 2));
+        args.addAll(fields);
+    }
+
+    private static void addField(List<String> fields, String name, Object value) {
+        if (value != null) {
+            fields.add(name);
+            fields.add(String.valueOf(value));
+        }
+    }
+
+    private void addMessages(List<String> args, List<ChatMessage> messages) throws JsonProcessingException {
+        for (ChatMessage message : messages) {
+            args.add(objectMapper.writeValueAsString(message));
+        }
+    }
+
+    /**
+     * 缓存中只有已写入MongoDB的消息，已写入消息数即为省略的消息数加列表长度
+     */
+    private Conversation toConversation(Map<?, ?> meta, List<?> items) throws JsonProcessingException {
+        List<ChatMessage> messages = new ArrayList<>(items.size());
+        for (Object item : items) {
+            messages.add(objectMapper.readValue(String.valueOf(item), ChatMessage.class));
+        }
+        Conversation conversation = new Conversation(field(meta, "userId"), field(meta, "modelType"));
+        conversation.setId(field(meta, "id"));
+        conversation.setMessages(messages);
+        conversation.setCreatedAt(Long.parseLong(field(meta, "createdAt")));
+        conversation.setLastUpdatedAt(Long.parseLong(field(meta, "lastUpdatedAt")));
+        conversation.setSummary(field(meta, "summary"));
+        conversation.setSummarizedCount(Integer.parseInt(field(meta, "summarizedCount")));
+        conversation.setMessageOffset(Integer.parseInt(field(meta, "messageOffset")));
+        conversation.setPersistedCount(conversation.totalMessageCount());
+        return conversation;
+    }
+
+    private static String field(Map<?, ?> meta, String name) {
+        Object value = meta.get(name);
+        return value != null ? String.valueOf(value) : null;
+    }
 }
@@ -0,0 +1,54 @@
+package com.ai.aicodeguard.infrastructure.common.ratelimit;
+
+import com.ai.aicodeguard.infrastructure.common.ratelimit.RateLimitProperties.EndpointLimit;
+
+/**
+ * @ClassName: LocalTokenBucket
+ * @Description: 进程内的双令牌桶(请求数+令牌数)，算法与Redis脚本一致，Redis不可用时使用，限额按实例生效
+ * @Author: LZX
+ * @Date: 2025/5/28 09:50
+ */
+class LocalTokenBucket {
+
+    private double requests = Double.NaN;
+    private double tokens = Double.NaN;
+    private long lastRefill;
+
+    /**
+     * 两个桶都足够时同时扣减，否则都不扣减
+     * @return 0表示放行，否则为需要等待的毫秒数
+     */
+    synchronized long tryAcquire(EndpointLimit limit, long cost, long nowMillis) {
+        double requestCapacity = TokenBucketRateLimiter.requestCapacity(limit);
+        double tokenCapacity = TokenBucketRateLimiter.tokenCapacity(limit);
+        double requestRate = limit.getRequestsPerMinute() / 60_000.0;
+        double tokenRate = limit.getTokensPerMinute() / 60_000.0;
+        if (Double.isNaN(requests)) {
+            requests = requestCapacity;
+            tokens = tokenCapacity;
+            lastRefill = nowMillis;
+        }
+
+        long elapsed = Math.max(0, nowMillis - lastRefill);
+        lastRefill = nowMillis;
+        double wait = 0;
+        if (requestCapacity > 0) {
+            requests = Math.min(requestCapacity, requests + elapsed * requestRate);
+            if (requests < 1) {
+                wait = (1 - requests) / requestRate;
+            }
+        }
+        if (tokenCapacity > 0) {
+            tokens = Math.min(tokenCapacity, tokens + elapsed * tokenRate);
+            if (tokens < cost) {
+                wait = Math.max(wait, (cost - tokens) / tokenRate);
+            }
+        }
+        if (wait > 0) {
+            return (long) Math.ceil(wait);
+        }
+        requests -= 1;
+        tokens -= cost;
+        return 0;
+    }
+}
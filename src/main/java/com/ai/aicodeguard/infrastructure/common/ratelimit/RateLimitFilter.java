@@ -0,0 +1,195 @@
+package com.ai.aicodeguard.infrastructure.common.ratelimit;
+
+import com.ai.aicodeguard.domain.user.SysUser;
+import com.ai.aicodeguard.infrastructure.common.ratelimit.RateLimitProperties.EndpointLimit;
+import com.ai.aicodeguard.presentation.response.WebResponse;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.shiro.web.filter.PathMatchingFilter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @ClassName: RateLimitFilter
+ * @Description: 限流过滤器，配置在JwtFilter之后，以过滤规则中的参数作为限流名称，例如 rateLimit[conversation]。
+ *               超出额度时返回429并在Retry-After中给出建议的重试秒数。配置了条目字段的批量接口读取并缓存请求体，按条目数计费
+ * @Author: LZX
+ * @Date: 2025/5/28 10:40
+ */
+public class RateLimitFilter extends PathMatchingFilter {
+
+    private final TokenBucketRateLimiter rateLimiter;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public RateLimitFilter(TokenBucketRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * 包装请求，按条目数计费时读取的请求体可继续交给后续处理
+     */
+    @Override
+    public void doFilterInternal(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (request instanceof HttpServletRequest httpRequest) {
+            request = new CachedBodyRequest(httpRequest);
+        }
+        super.doFilterInternal(request, response, chain);
+    }
+
+    @Override
+    protected boolean onPreHandle(ServletRequest request, ServletResponse response, Object mappedValue) throws Exception {
+        String[] config = (String[]) mappedValue;
+        if (config == null || config.length == 0) {
+            return true;
+        }
+        String endpoint = config[0];
+        EndpointLimit limit = rateLimiter.getLimit(endpoint);
+        // 用户由JwtFilter认证后放入请求属性
+        Object user = request.getAttribute("currentUser");
+        if (limit == null || !(user instanceof SysUser sysUser)) {
+            return true;
+        }
+
+        long waitMillis = rateLimiter.tryAcquire(String.valueOf(sysUser.getId()), endpoint, limit,
+                estimateTokens((HttpServletRequest) request, limit));
+        if (waitMillis == 0) {
+            return true;
+        }
+
+        long retryAfterSeconds = Math.max(1, (waitMillis + 999) / 1000);
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        httpResponse.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        httpResponse.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        httpResponse.setContentType("application/json;charset=UTF-8");
+        httpResponse.getWriter().write(objectMapper.writeValueAsString(
+                WebResponse.fail(HttpStatus.TOO_MANY_REQUESTS.value(), "请求过于频繁，请" + retryAfterSeconds + "秒后重试")
+        ));
+        return false;
+    }
+
+    /**
+     * 预估本次请求消耗的令牌数：基础值(批量接口乘以条目数)加上按字节折算的请求体大小。
+     * 携带Last-Event-ID的续传请求从令牌日志读取，不调用模型，只计请求数
+     */
+    private long estimateTokens(HttpServletRequest request, EndpointLimit limit) throws IOException {
+        if (request.getHeader("Last-Event-ID") != null) {
+            return 0;
+        }
+        long contentLength = Math.max(0, request.getContentLengthLong());
+        long items = 1;
+        if (limit.getItemsField() != null && request instanceof CachedBodyRequest cached) {
+            byte[] body = cached.body();
+            contentLength = body.length;
+            items = Math.max(1, countItems(body, limit.getItemsField()));
+        }
+        return limit.getBaseTokens() * items + contentLength / Math.max(1, limit.getBytesPerToken());
+    }
+
+    /**
+     * 请求体顶层指定数组字段的元素数，请求体不是合法JSON时返回0，由接口校验
+     */
+    private long countItems(byte[] body, String field) {
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return 0;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (field.equals(name) && value == JsonToken.START_ARRAY) {
+                    long count = 0;
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        parser.skipChildren();
+                        count++;
+                    }
+                    return count;
+                }
+                parser.skipChildren();
+            }
+            return 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 首次调用body()时读取并缓存请求体，之后的读取都来自缓存；未读取时直接使用原始输入流
+     */
+    static class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        byte[] body() throws IOException {
+            if (body == null) {
+                body = getRequest().getInputStream().readAllBytes();
+            }
+            return body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (body == null) {
+                return super.getInputStream();
+            }
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return input.read(buffer, offset, length);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            if (body == null) {
+                return super.getReader();
+            }
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body),
+                    encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8));
+        }
+    }
+}
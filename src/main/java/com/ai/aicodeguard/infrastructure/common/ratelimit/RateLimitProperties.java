@@ -0,0 +1,46 @@
+package com.ai.aicodeguard.infrastructure.common.ratelimit;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @ClassName: RateLimitProperties
+ * @Description: 接口限流配置，按用户+接口分别限制请求数与预估令牌数
+ * @Author: LZX
+ * @Date: 2025/5/28 09:30
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rate-limit")
+public class RateLimitProperties {
+    private boolean enabled = true;
+    // Redis不可用后改用本地令牌桶的时长，期间不再访问Redis
+    private Duration redisRetryInterval = Duration.ofSeconds(5);
+    // 本地令牌桶最大数量
+    private long localMaxBuckets = 100_000;
+    // 限流名称 -> 限制，名称在ShiroConfig的过滤规则中引用
+    private Map<String, EndpointLimit> endpoints = new HashMap<>();
+
+    @Data
+    public static class EndpointLimit {
+        // 每分钟请求数，小于等于0表示不限制
+        private int requestsPerMinute = 20;
+        // 请求桶容量，允许的突发请求数
+        private int requestBurst = 10;
+        // 每分钟预估令牌数，小于等于0表示不限制
+        private long tokensPerMinute = 60_000;
+        // 令牌桶容量
+        private long tokenBurst = 40_000;
+        // 每次请求的基础预估令牌数，覆盖历史上下文与模型输出
+        private long baseTokens = 2_000;
+        // 请求体按字节折算令牌数的比例
+        private int bytesPerToken = 3;
+        // 批量接口请求体中条目数组的字段名，配置后基础令牌数按条目数计算
+        private String itemsField;
+    }
+}
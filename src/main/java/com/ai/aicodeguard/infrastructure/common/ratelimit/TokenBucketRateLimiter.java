@@ -0,0 +1,178 @@
+package com.ai.aicodeguard.infrastructure.common.ratelimit;
+
+import com.ai.aicodeguard.infrastructure.common.ratelimit.RateLimitProperties.EndpointLimit;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * @ClassName: TokenBucketRateLimiter
+ * @Description: 按用户+接口限流。每个键对应请求数与令牌数两个令牌桶，存放在Redis哈希 ratelimit:{接口}:{用户} 中，
+ *               由Lua脚本以Redis服务器时钟原子地补充、判断并扣减；Redis不可用时退回到本地令牌桶
+ * @Author: LZX
+ * @Date: 2025/5/28 10:10
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TokenBucketRateLimiter {
+
+    private static final String KEY_PREFIX = "ratelimit:";
+    private static final String METRIC_NAME = "ai.ratelimit.requests";
+
+    /**
+     * KEYS[1] 桶键
+     * ARGV 请求桶容量, 每毫秒补充请求数, 令牌桶容量, 每毫秒补充令牌数, 本次令牌数, 键过期毫秒数
+     * 容量小于等于0的桶不参与判断；返回0表示放行，否则为需要等待的毫秒数
+     */
+    private static final RedisScript<Long> SCRIPT = new DefaultRedisScript<>("""
+            redis.replicate_commands()
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local requestCapacity = tonumber(ARGV[1])
+            local requestRate = tonumber(ARGV[2])
+            local tokenCapacity = tonumber(ARGV[3])
+            local tokenRate = tonumber(ARGV[4])
+            local cost = tonumber(ARGV[5])
+            local state = redis.call('HMGET', KEYS[1], 'requests', 'tokens', 'ts')
+            local requests = tonumber(state[1]) or requestCapacity
+            local tokens = tonumber(state[2]) or tokenCapacity
+            local elapsed = math.max(0, now - (tonumber(state[3]) or now))
+            local wait = 0
+            if requestCapacity > 0 then
+                requests = math.min(requestCapacity, requests + elapsed * requestRate)
+                if requests < 1 then
+                    wait = (1 - requests) / requestRate
+                end
+            end
+            if tokenCapacity > 0 then
+                tokens = math.min(tokenCapacity, tokens + elapsed * tokenRate)
+                if tokens < cost then
+                    wait = math.max(wait, (cost - tokens) / tokenRate)
+                end
+            end
+            if wait == 0 then
+                requests = requests - 1
+                tokens = tokens - cost
+            end
+            redis.call('HSET', KEYS[1], 'requests', tostring(requests), 'tokens', tostring(tokens), 'ts', tostring(now))
+            redis.call('PEXPIRE', KEYS[1], ARGV[6])
+            return math.ceil(wait)
+            """, Long.class);
+
+    private final RateLimitProperties properties;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final MeterRegistry meterRegistry;
+
+    private Cache<String, LocalTokenBucket> localBuckets;
+    // 在此时间之前不访问Redis，直接使用本地令牌桶
+    private volatile long redisRetryAt;
+
+    @PostConstruct
+    public void init() {
+        localBuckets = Caffeine.newBuilder()
+                .maximumSize(properties.getLocalMaxBuckets())
+                .expireAfterAccess(Duration.ofMinutes(5))
+                .build();
+    }
+
+    /**
+     * 限流配置
+     * @param endpoint 限流名称
+     * @return 未配置或限流关闭时返回null
+     */
+    public EndpointLimit getLimit(String endpoint) {
+        return properties.isEnabled() ? properties.getEndpoints().get(endpoint) : null;
+    }
+
+    /**
+     * 尝试为一次请求扣减额度
+     * @param userId 用户ID
+     * @param endpoint 限流名称
+     * @param limit 限流配置
+     * @param estimatedTokens 本次请求的预估令牌数
+     * @return 0表示放行，否则为建议的重试等待毫秒数
+     */
+    public long tryAcquire(String userId, String endpoint, EndpointLimit limit, long estimatedTokens) {
+        // 单次预估超过桶容量时按整桶计算，否则该请求永远无法通过
+        long cost = limit.getTokensPerMinute() > 0 ? Math.min(estimatedTokens, (long) tokenCapacity(limit)) : 0;
+        String key = KEY_PREFIX + endpoint + ":" + userId;
+
+        long waitMillis;
+        String source = "redis";
+        if (System.currentTimeMillis() >= redisRetryAt) {
+            try {
+                waitMillis = acquireFromRedis(key, limit, cost);
+            } catch (Exception e) {
+                redisRetryAt = System.currentTimeMillis() + properties.getRedisRetryInterval().toMillis();
+                log.warn("Redis限流不可用，{}秒内改用本地令牌桶: {}",
+                        properties.getRedisRetryInterval().toSeconds(), e.getMessage());
+                waitMillis = acquireLocally(key, limit, cost);
+                source = "local";
+            }
+        } else {
+            waitMillis = acquireLocally(key, limit, cost);
+            source = "local";
+        }
+
+        meterRegistry.counter(METRIC_NAME, "endpoint", endpoint, "source", source,
+                "result", waitMillis == 0 ? "allowed" : "rejected").increment();
+        return waitMillis;
+    }
+
+    private long acquireFromRedis(String key, EndpointLimit limit, long cost) {
+        // 空桶补满所需时间之后键即可过期，届时等同于满桶
+        long ttl = Math.max(fillMillis(requestCapacity(limit), limit.getRequestsPerMinute()),
+                fillMillis(tokenCapacity(limit), limit.getTokensPerMinute())) + 1000;
+        Long waitMillis = redisTemplate.execute(SCRIPT, List.of(key),
+                String.valueOf(requestCapacity(limit)),
+                String.valueOf(limit.getRequestsPerMinute() / 60_000.0),
+                String.valueOf(tokenCapacity(limit)),
+                String.valueOf(limit.getTokensPerMinute() / 60_000.0),
+                String.valueOf(cost),
+                String.valueOf(ttl));
+        if (waitMillis == null) {
+            throw new IllegalStateException("限流脚本未返回结果");
+        }
+        return waitMillis;
+    }
+
+    private long acquireLocally(String key, EndpointLimit limit, long cost) {
+        return localBuckets.get(key, k -> new LocalTokenBucket())
+                .tryAcquire(limit, cost, System.currentTimeMillis());
+    }
+
+    private static long fillMillis(double capacity, double perMinute) {
+        return capacity > 0 && perMinute > 0 ? (long) Math.ceil(capacity * 60_000 / perMinute) : 0;
+    }
+
+    /**
+     * 请求桶容量，未配置突发量时取每分钟请求数；不限制时为0
+     */
+    static double requestCapacity(EndpointLimit limit) {
+        if (limit.getRequestsPerMinute() <= 0) {
+            return 0;
+        }
+        return limit.getRequestBurst() > 0 ? limit.getRequestBurst() : limit.getRequestsPerMinute();
+    }
+
+    /**
+     * 令牌桶容量，未配置突发量时取每分钟令牌数；不限制时为0
+     */
+    static double tokenCapacity(EndpointLimit limit) {
+        if (limit.getTokensPerMinute() <= 0) {
+            return 0;
+        }
+        return limit.getTokenBurst() > 0 ? limit.getTokenBurst() : limit.getTokensPerMinute();
+    }
+}
@@ -1,6 +1,8 @@
 package com.ai.aicodeguard.infrastructure.common.security;
 
 import com.ai.aicodeguard.application.service.interfaces.SysUserService;
+import com.ai.aicodeguard.infrastructure.common.ratelimit.RateLimitFilter;
+import com.ai.aicodeguard.infrastructure.common.ratelimit.TokenBucketRateLimiter;
 import com.ai.aicodeguard.infrastructure.common.util.JwtUtils;
 import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.authc.credential.CredentialsMatcher;
@@ -65,17 +67,28 @@ public class ShiroConfig {
      * @return
      */
     @Bean
-    public ShiroFilterFactoryBean shiroFilter(DefaultWebSecurityManager securityManager) {
+    public ShiroFilterFactoryBean shiroFilter(DefaultWebSecurityManager securityManager,
+                                              TokenBucketRateLimiter rateLimiter) {
         ShiroFilterFactoryBean factoryBean = new ShiroFilterFactoryBean();
         factoryBean.setSecurityManager(securityManager);
 
         Map<String, Filter> filterMap = new HashMap<>();
         filterMap.put("jwt", new JwtFilter());
+        filterMap.put("rateLimit", new RateLimitFilter(rateLimiter));
         factoryBean.setFilters(filterMap);
 
         Map<String, String> filterRuleMap = new LinkedHashMap<>();
         filterRuleMap.put("/api/auth/login", "anon");
         filterRuleMap.put("/api/auth/register", "anon");
+        // 会调用大模型的接口在认证后按用户限流，参数为rate-limit.endpoints中的限流名称
+        filterRuleMap.put("/conversation/send", "jwt, rateLimit[conversation]");
+        filterRuleMap.put("/conversation/stream", "jwt, rateLimit[conversation]");
+        filterRuleMap.put("/conversation/stream/reactive", "jwt, rateLimit[conversation]");
+        filterRuleMap.put("/code-gen/generate", "jwt, rateLimit[code-generation]");
+        filterRuleMap.put("/code-gen/generate-batch", "jwt, rateLimit[code-generation-batch]");
+        filterRuleMap.put("/code-gen/generate-enhanced", "jwt, rateLimit[code-generation]");
+        filterRuleMap.put("/code-gen/generate-stream", "jwt, rateLimit[code-generation]");
+        filterRuleMap.put("/code-security/scan/*", "jwt, rateLimit[security-scan]");
         filterRuleMap.put("/**", "jwt");
         factoryBean.setFilterChainDefinitionMap(filterRuleMap);
 
@@ -3,6 +3,7 @@ package com.ai.aicodeguard.infrastructure.graph;
 import com.ai.aicodeguard.domain.codegen.document.VulnerabilityReport;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @ClassName: KnowledgeGraphService
@@ -13,12 +14,12 @@ import java.util.Map;
 public interface KnowledgeGraphService {
 
     /**
-     * 根据漏洞报告更新知识图谱
+     * 根据漏洞报告更新知识图谱，等待各漏洞的Cypher生成时不占用调用线程
      * @param codeId 代码ID
      * @param report 漏洞报告
-     * @return 是否更新成功
+     * @return 是否更新成功，所有漏洞处理完成后完成
      */
-    boolean updateGraphWithVulnerabilities(String codeId, VulnerabilityReport report);
+    CompletableFuture<Boolean> updateGraphWithVulnerabilities(String codeId, VulnerabilityReport report);
 
     /**
      * 查询代码模式与漏洞关联
@@ -6,6 +6,9 @@ import com.ai.aicodeguard.domain.graph.CodePattern;
 import com.ai.aicodeguard.domain.graph.Vulnerability;
 import com.ai.aicodeguard.infrastructure.ai.AIClientFactory;
 import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AIPriority;
+import com.ai.aicodeguard.infrastructure.ai.AITaskType;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
 import com.ai.aicodeguard.infrastructure.graph.KnowledgeGraphService;
 import com.ai.aicodeguard.infrastructure.graph.exception.GraphServiceException;
 import com.ai.aicodeguard.infrastructure.mongo.GeneratedCodeDocumentRepository;
@@ -16,11 +19,13 @@ import org.neo4j.driver.Record;
 import org.neo4j.driver.Result;
 import org.neo4j.driver.Session;
 import org.neo4j.driver.exceptions.Neo4jException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @ClassName: Neo4jKnowledgeGraphService
@@ -36,9 +41,58 @@ public class Neo4jKnowledgeGraphService implements KnowledgeGraphService {
     private final Driver neo4jDriver;
     private final AIClientFactory aiClientFactory;
     private final GeneratedCodeDocumentRepository codeDocumentRepository;
+    private final ThreadPoolTaskExecutor taskExecutor;
+
+    /**
+     * Cypher生成规则与Schema，每次调用都相同，作为可缓存的系统提示发送
+     */
+    private static final String CYPHER_GENERATION_INSTRUCTIONS = """
+            You are a Neo4j knowledge graph expert tasked with generating Cypher statements based on specific rules and input data. Follow these instructions carefully to create accurate and compliant Cypher statements.
+            
+            Knowledge Graph Schema:
+            Node Types (must include all properties):
+            - Vulnerability {cweId: string, name: string, severity: string}
+            - CodePattern {patternId: string, language: string, codeSnippet: string, line: integer}
+            - ModelDetection {detectionId: string, modelVersion: string, timestamp: datetime}
+            
+            Relationship Types (must declare properties if present):
+            - (CodePattern{patternId: string})-[MANIFESTS_IN]->(Vulnerability{cweId: string})
+            - (ModelDetection{detectionId: string})-[IDENTIFIES {confidence: float}]->(CodePattern{patternId: string})
+            
+            Cypher Generation Rules:
+            1. Use MERGE for each node, declaring all properties.
+            2. Establish relationships using full node names and unique property values.
+            3. Use datetime().epochMillis for timestamps.
+            4. Calculate confidence (range 0-1) based on input data.
+            5. Include the ID_SUFFIX in patternId and detectionId for CodePattern and ModelDetection nodes.
+            6. Use 'claude-3-7-sonnet' as the modelVersion for ModelDetection.
+            
+            Instructions:
+            1. Generate separate MERGE statements for each node type (Vulnerability, CodePattern, ModelDetection).
+            2. Before creating relationships, use MATCH statements to find the relevant nodes by their unique IDs (cweId, patternId, detectionId).
+            3. Create relationship statements using the matched nodes to form a complete Cypher statement.
+            4. Ensure all required properties are included for each node and relationship.
+            5. Use single quotes for string values and datetime().epochMillis for time values.
+            6. Do not use variables to reference nodes across statements.
+            7. Do not use SET clauses to add properties; declare all properties in the MERGE statement.
+            8. Do not use RETURN statements; end all Cypher statements with a semicolon.
+            9. Ensure the Vulnerability node's severity is one of CRITICAL/HIGH/MEDIUM/LOW.
+            
+            Error Checking and Compliance:
+            - Verify that all required properties are present for each node.
+            - Ensure no SET clauses are used to add properties.
+            - Check that relationship creation is done by first matching relevant nodes by their IDs.
+            - Confirm that relationships are established using matched nodes, forming complete Cypher statements.
+            
+            Output Format:
+            Provide your Cypher statements within <cypher> tags. Each statement should be on a new line and end with a semicolon. Do not include any explanations or comments within these tags.
+            
+            Your final output should only include the <cypher>, with no additional text or explanations.
+            The input variables are provided in the user message.
+            """;
 
     @Override
-    public boolean updateGraphWithVulnerabilities(String codeId, VulnerabilityReport report) {
+    public CompletableFuture<Boolean> updateGraphWithVulnerabilities(String codeId, VulnerabilityReport report) {
         log.info("开始更新知识图谱，代码ID: {}", codeId);
 
         try {
@@ -46,7 +100,7 @@ public class Neo4jKnowledgeGraphService implements KnowledgeGraphService {
             Optional<GeneratedCodeDocument> codeDocOpt = codeDocumentRepository.findById(codeId);
             if (codeDocOpt.isEmpty()) {
                 log.error("未找到代码文档: {}", codeId);
-                return false;
+                return CompletableFuture.completedFuture(false);
             }
 
             GeneratedCodeDocument codeDocument = codeDocOpt.get();
@@ -54,32 +108,49 @@ public class Neo4jKnowledgeGraphService implements KnowledgeGraphService {
             String language = codeDocument.getLanguage();
 
             // 对每个漏洞生成并执行Cypher查询
+            CompletableFuture<Void> written = CompletableFuture.completedFuture(null);
             if (report.getVulnerabilities() != null && !report.getVulnerabilities().isEmpty()) {
+                // 并发发起所有漏洞的Cypher生成请求，不为每个请求占用线程
+                Map<VulnerabilityReport.Vulnerability, CompletableFuture<String>> cypherFutures = new LinkedHashMap<>();
                 for (VulnerabilityReport.Vulnerability vulnerability : report.getVulnerabilities()) {
-                    try {
-                        // 使用AI生成Cypher查询
-                        String cypher = generateCypherWithAI(codeContent, language, vulnerability);
-
-                        // 去除重复的MERGE语句
-                        cypher = removeDuplicateMergeStatements(cypher);
+                    cypherFutures.put(vulnerability, generateCypherWithAI(codeContent, language, vulnerability));
+                }
 
-                        // 执行查询
-                        if (!executeCypher(cypher)) {
-                            log.warn("执行知识图谱更新Cypher查询失败，代码ID: {}, 漏洞类型: {}",
-                                    codeId, vulnerability.getType());
+                // 按原顺序依次写入图谱，写入在任务线程池中执行，不占用HTTP回调线程
+                for (Map.Entry<VulnerabilityReport.Vulnerability, CompletableFuture<String>> entry : cypherFutures.entrySet()) {
+                    VulnerabilityReport.Vulnerability vulnerability = entry.getKey();
+                    CompletableFuture<String> cypherFuture = entry.getValue();
+                    written = written.thenCompose(ignored -> cypherFuture.handleAsync((cypher, error) -> {
+                        if (error != null) {
+                            log.error("处理漏洞时出错: {}", vulnerability.getType(), error);
+                            // 继续处理其他漏洞
+                            return null;
                         }
-                    } catch (Exception e) {
-                        log.error("处理漏洞时出错: {}", vulnerability.getType(), e);
-                        // 继续处理其他漏洞
-                    }
+                        try {
+                            // 去除重复的MERGE语句
+                            cypher = removeDuplicateMergeStatements(cypher);
+
+                            // 执行查询
+                            if (!executeCypher(cypher)) {
+                                log.warn("执行知识图谱更新Cypher查询失败，代码ID: {}, 漏洞类型: {}",
+                                        codeId, vulnerability.getType());
+                            }
+                        } catch (Exception e) {
+                            log.error("处理漏洞时出错: {}", vulnerability.getType(), e);
+                        }
+                        return null;
+                    }, taskExecutor));
                 }
             }
 
-            log.info("知识图谱更新完成，代码ID: {}", codeId);
-            return true;
+            return written.thenApply(ignored -> {
+                log.info("知识图谱更新完成，代码ID: {}", codeId);
+                return true;
+            });
         } catch (Exception e) {
             log.error("更新知识图谱失败", e);
-            throw new GraphServiceException("更新知识图谱失败: " + e.getMessage(), e);
+            return CompletableFuture.failedFuture(
+                    new GraphServiceException("更新知识图谱失败: " + e.getMessage(), e));
         }
     }
 
@@ -226,39 +297,33 @@ public class Neo4jKnowledgeGraphService implements KnowledgeGraphService {
     }
 
     /**
-     * 使用AI生成Cypher查询语句
+     * 使用AI异步生成Cypher查询语句
      */
-    private String generateCypherWithAI(String codeContent, String language, VulnerabilityReport.Vulnerability vulnerability) {
-        // 使用claude3.7sonnet来生成cypher
-        AIClientService aiClient = aiClientFactory.getClient("claude");
+    private CompletableFuture<String> generateCypherWithAI(String codeContent, String language, VulnerabilityReport.Vulnerability vulnerability) {
+        // 按Cypher任务的路由策略选择模型，默认优先claude
+        AIClientService aiClient = aiClientFactory.getClientForTask(AITaskType.CYPHER);
 
         // 构建提示词
         String prompt = buildGraphPrompt(codeContent, language, vulnerability);
 
-        // 调用AI生成Cypher
-        String cypherQuery = aiClient.generateCode(prompt, "cypher");
-
-        // 清理AI输出，提取实际的Cypher语句
-        return extractCypherQuery(cypherQuery);
+        // 提示词中包含随机ID后缀，结果不可复用，跳过响应缓存
+        AIRequestOptions options = AIRequestOptions.builder()
+                .taskType(AITaskType.CYPHER)
+                .cacheable(false)
+                .systemPrompt(CYPHER_GENERATION_INSTRUCTIONS)
+                // 扫描完成后的图谱更新在后台进行，不占用交互请求的额度
+                .priority(AIPriority.BACKGROUND)
+                .build();
+
+        // 调用AI生成Cypher，并清理AI输出，提取实际的Cypher语句
+        return aiClient.generateCodeAsync(prompt, "cypher", options).thenApply(this::extractCypherQuery);
     }
 
     /**
-     * 构建用于生成Cypher的提示词
+     * 构建用于生成Cypher的提示词，只包含每次变化的输入数据，固定规则见 CYPHER_GENERATION_INSTRUCTIONS
      */
     private String buildGraphPrompt(String codeContent, String language, VulnerabilityReport.Vulnerability vulnerability) {
         return String.format("""
-            You are a Neo4j knowledge graph expert tasked with generating Cypher statements based on specific rules and input data. Follow these instructions carefully to create accurate and compliant Cypher statements.
-            
-            Knowledge Graph Schema:
-            Node Types (must include all properties):
-            - Vulnerability {cweId: string, name: string, severity: string}
-            - CodePattern {patternId: string, language: string, codeSnippet: string, line: integer}
-            - ModelDetection {detectionId: string, modelVersion: string, timestamp: datetime}
-            
-            Relationship Types (must declare properties if present):
-            - (CodePattern{patternId: string})-[MANIFESTS_IN]->(Vulnerability{cweId: string})
-            - (ModelDetection{detectionId: string})-[IDENTIFIES {confidence: float}]->(CodePattern{patternId: string})
-            
             Input Data:
             You will receive the following input variables:
             <code_language>{{%s}}</code_language>
@@ -268,36 +333,6 @@ public class Neo4jKnowledgeGraphService implements KnowledgeGraphService {
             <vulnerability_location>{{%d}}</vulnerability_location>
             <fix_suggestion>{{%s}}</fix_suggestion>
             <id_suffix>{{%s}}</id_suffix>
-            
-            Cypher Generation Rules:
-            1. Use MERGE for each node, declaring all properties.
-            2. Establish relationships using full node names and unique property values.
-            3. Use datetime().epochMillis for timestamps.
-            4. Calculate confidence (range 0-1) based on input data.
-            5. Include the ID_SUFFIX in patternId and detectionId for CodePattern and ModelDetection nodes.
-            6. Use 'claude-3-7-sonnet' as the modelVersion for ModelDetection.
-            
-            Instructions:
-            1. Generate separate MERGE statements for each node type (Vulnerability, CodePattern, ModelDetection).
-            2. Before creating relationships, use MATCH statements to find the relevant nodes by their unique IDs (cweId, patternId, detectionId).
-            3. Create relationship statements using the matched nodes to form a complete Cypher statement.
-            4. Ensure all required properties are included for each node and relationship.
-            5. Use single quotes for string values and datetime().epochMillis for time values.
-            6. Do not use variables to reference nodes across statements.
-            7. Do not use SET clauses to add properties; declare all properties in the MERGE statement.
-            8. Do not use RETURN statements; end all Cypher statements with a semicolon.
-            9. Ensure the Vulnerability node's severity is one of CRITICAL/HIGH/MEDIUM/LOW.
-            
-            Error Checking and Compliance:
-            - Verify that all required properties are present for each node.
-            - Ensure no SET clauses are used to add properties.
-            - Check that relationship creation is done by first matching relevant nodes by their IDs.
-            - Confirm that relationships are established using matched nodes, forming complete Cypher statements.
-            
-            Output Format:
-            Provide your Cypher statements within <cypher> tags. Each statement should be on a new line and end with a semicolon. Do not include any explanations or comments within these tags.
-            
-            Your final output should only include the <cypher>, with no additional text or explanations.
             """,
                 language,
                 truncateCode(codeContent), // 截断过长代码
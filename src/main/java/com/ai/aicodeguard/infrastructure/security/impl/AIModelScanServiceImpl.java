@@ -1,9 +1,12 @@
 package com.ai.aicodeguard.infrastructure.security.impl;
 
 import com.ai.aicodeguard.domain.codegen.DetectionTask;
+import com.ai.aicodeguard.domain.codegen.GeneratedCode;
 import com.ai.aicodeguard.domain.codegen.document.VulnerabilityReport;
 import com.ai.aicodeguard.infrastructure.ai.AIClientFactory;
 import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AITaskType;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
 import com.ai.aicodeguard.infrastructure.ai.conversation.ChatMessage;
 import com.ai.aicodeguard.infrastructure.mongo.VulnerabilityReportRepository;
 import com.ai.aicodeguard.infrastructure.persistence.DetectionTaskRepository;
@@ -15,6 +18,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
@@ -22,6 +26,10 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @ClassName: AIModelScanServiceImpl
@@ -40,16 +48,98 @@ public class AIModelScanServiceImpl implements SecurityScanService {
     private final GeneratedCodeRepository codeRepository;
     private final ThreadPoolTaskExecutor taskExecutor;
 
+    /**
+     * 安全分析规则，每次扫描都相同，作为可缓存的系统提示发送
+     */
+    private static final String SECURITY_ANALYSIS_INSTRUCTIONS = """
+            你是一个代码安全分析专家，请根据以下规则对用户提供的代码生成安全分析报告：
+            
+            ### 分析模式定义
+            **检测维度**：
+            - 漏洞类型 {类型名称, CWE编号, 严重等级}
+            - 代码模式 {语言类型, 代码片段, 行号定位}
+            - 修复建议 {描述详情, 解决方案}
+            
+            **关联逻辑**：
+            - 代码模式实例必须关联到对应漏洞类型
+            - 每个漏洞必须包含严重性评估
+            - 每个发现必须包含代码位置信息
+            
+            ### 输入输出规范
+            输入：用户消息中给出代码语言与代码内容
+            输出格式：
+            ```json
+            {
+              "vulnerabilities": [
+                {
+                  "type": "漏洞类型名称",
+                  "severity": "CRITICAL/HIGH/MEDIUM/LOW",
+                  "line": 行号,
+                  "description": "问题详细描述",
+                  "suggestion": "修复后的代码和建议"
+                }
+              ],
+              "summary": "总体安全评估"
+            }
+            ```
+            
+            ### 报告生成要求
+            1. 严格遵循输出JSON结构
+            2. 漏洞类型必须标注标准CWE ID
+            3. 严重等级使用四等级制（CRITICAL/HIGH/MEDIUM/LOW）
+            4. 代码定位精确到行号
+            5. 修复建议需包含具体实施方案
+            6. 无漏洞时返回空数组
+            7. 禁止包含Markdown格式
+            8. 禁用HTML标签
+            9. 代码内容应该是某个区间的代码片段，不能是所有内容
+            10. 除非用户要求，可以跳过一些不会影响安全和运行的代码漏洞
+            11. 应该注重代码的安全性，避免潜在安全问题
+            
+            ### 安全约束
+            1. 过滤规则：排除注释内容中的误报
+            2. 隐私保护：屏蔽代码中的敏感信息
+            3. 风险控制：对高危漏洞添加[危险]标识
+
+            请输出严格符合规范的JSON报告，不要包含任何解释性内容。
+            """;
+
+    @Value("${security.scan.timeout:300000}")
+    private long scanTimeout;
+
     @Override
     public String scanCode(String codeId, String content, String language) {
+        GeneratedCode code = findCode(codeId);
+        DetectionTask task = createTask(codeId);
+        scan(code, task, content, language);
+        // 返回任务ID，扫描结果在AI响应返回后写入
+        return task.getId();
+    }
+
+    /**
+     * 执行代码安全扫描，AI响应返回后保存报告并更新任务状态，不占用调用线程等待响应
+     * @param codeId 要扫描的代码ID
+     * @param content 代码内容
+     * @param language 代码语言
+     * @return 漏洞报告，扫描失败或超时时异常完成
+     */
+    public CompletableFuture<VulnerabilityReport> scanCodeAsync(String codeId, String content, String language) {
+        GeneratedCode code = findCode(codeId);
+        return scan(code, createTask(codeId), content, language);
+    }
+
+    /**
+     * 查找代码记录，代码刚保存时可能尚不可见，短暂重试
+     */
+    private GeneratedCode findCode(String codeId) {
         // 创建检测任务前先验证codeId是否在generated_code表中存在
         int maxRetries = 5;
         int retryCount = 0;
-        boolean codeExists = false;
-        while (!codeExists && retryCount < maxRetries) {
+        GeneratedCode code = null;
+        while (code == null && retryCount < maxRetries) {
             try {
-                codeExists = codeRepository.existsById(codeId);
-                if (codeExists) {
+                code = codeRepository.findById(codeId).orElse(null);
+                if (code != null) {
                     break;
                 }
                 retryCount++;
@@ -59,56 +149,98 @@ public class AIModelScanServiceImpl implements SecurityScanService {
                 throw new RuntimeException("等待代码记录时被中断", e);
             }
         }
-        if (!codeExists) {
+        if (code == null) {
             log.error("在数据库中找不到代码记录，无法创建检测任务: {}", codeId);
             throw new RuntimeException("代码ID不存在或已被删除: " + codeId);
         }
+        return code;
+    }
 
-        // 创建检测任务
-        String taskId = UUID.randomUUID().toString();
+    /**
+     * 创建检测任务
+     */
+    private DetectionTask createTask(String codeId) {
         DetectionTask task = new DetectionTask();
-        task.setId(taskId);
+        task.setId(UUID.randomUUID().toString());
         task.setCodeId(codeId);
         task.setStatus(DetectionTask.TaskStatus.PENDING);
         task.setStartTime(LocalDateTime.now());
         detectionTaskRepository.save(task);
+        return task;
+    }
 
+    /**
+     * 发起AI安全分析，超时后取消底层请求；解析与保存在任务线程池中执行，不占用HTTP回调线程
+     */
+    private CompletableFuture<VulnerabilityReport> scan(GeneratedCode code, DetectionTask task, String content,
+                                                     String language) {
+        String codeId = task.getCodeId();
+        CompletableFuture<String> analysisFuture;
         try {
             log.info("开始AI代码安全扫描，代码ID: {}, 任务ID: {}", codeId, task.getId());
 
-            // 从配置中获取默认AI模型客户端
-            // 这里直接使用claude模型而不是通过getDefaultClient来避免空指针问题
-            AIClientService aiClient = aiClientFactory.getClient("claude");
+            // 按扫描任务的路由策略选择当前最健康的模型
+            AIClientService aiClient = aiClientFactory.getClientForTask(AITaskType.SCAN);
 
             // 构建安全扫描提示词
             String prompt = buildSecurityPrompt(content, language);
 
             // 调用AI模型进行安全分析
-            String analysisResult = aiClient.generateCode(prompt, "json");
-
-            // 解析AI响应，创建漏洞报告
-            VulnerabilityReport report = parseAnalysisResult(codeId, analysisResult);
-
-            // 保存报告到数据库
-            vulnerabilityReportRepository.save(report);
-
-            // 更新任务状态为成功
-            task.setStatus(DetectionTask.TaskStatus.SUCCESS);
-            task.setEndTime(LocalDateTime.now());
-            detectionTaskRepository.save(task);
-
-            log.info("AI代码安全扫描完成，代码ID: {}, 任务ID: {}", codeId, task.getId());
+            analysisFuture = aiClient.generateCodeAsync(prompt, "json",
+                    AIRequestOptions.builder()
+                            .taskType(AITaskType.SCAN)
+                            .systemPrompt(SECURITY_ANALYSIS_INSTRUCTIONS)
+                            // 扫描费用计入代码所属用户
+                            .userId(code.getUserId() != null ? code.getUserId().toString() : null)
+                            .build());
         } catch (Exception e) {
-            log.error("代码安全扫描失败", e);
-            // 更新任务状态为失败
-            task.setStatus(DetectionTask.TaskStatus.FAILED);
-            task.setEndTime(LocalDateTime.now());
-            task.setErrorMessage(e.getMessage());
-            detectionTaskRepository.save(task);
+            failTask(task, e);
+            return CompletableFuture.failedFuture(e);
         }
 
-        // 返回任务ID
-        return task.getId();
+        return analysisFuture
+                .orTimeout(scanTimeout, TimeUnit.MILLISECONDS)
+                .handleAsync((analysisResult, error) -> {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        if (cause instanceof TimeoutException) {
+                            analysisFuture.cancel(true);
+                            cause = new RuntimeException("AI安全分析超时: " + scanTimeout + "ms");
+                        }
+                        failTask(task, cause);
+                        throw new CompletionException(cause);
+                    }
+                    try {
+                        // 解析AI响应，创建漏洞报告
+                        VulnerabilityReport report = parseAnalysisResult(codeId, analysisResult);
+
+                        // 保存报告到数据库
+                        vulnerabilityReportRepository.save(report);
+
+                        // 更新任务状态为成功
+                        task.setStatus(DetectionTask.TaskStatus.SUCCESS);
+                        task.setEndTime(LocalDateTime.now());
+                        detectionTaskRepository.save(task);
+
+                        log.info("AI代码安全扫描完成，代码ID: {}, 任务ID: {}", codeId, task.getId());
+                        return report;
+                    } catch (Exception e) {
+                        failTask(task, e);
+                        throw new CompletionException(e);
+                    }
+                }, taskExecutor);
+    }
+
+    /**
+     * 更新任务状态为失败
+     */
+    private void failTask(DetectionTask task, Throwable error) {
+        log.error("代码安全扫描失败", error);
+        task.setStatus(DetectionTask.TaskStatus.FAILED);
+        task.setEndTime(LocalDateTime.now());
+        task.setErrorMessage(error.getMessage());
+        detectionTaskRepository.save(task);
     }
 
     @Override
@@ -127,62 +259,13 @@ public class AIModelScanServiceImpl implements SecurityScanService {
     }
 
     /**
-     * 构建安全扫描提示词
+     * 构建安全扫描提示词，只包含每次变化的代码部分，固定的分析规则见 SECURITY_ANALYSIS_INSTRUCTIONS
      */
     private String buildSecurityPrompt(String codeContent, String language) {
         return String.format(
             """
-            你是一个代码安全分析专家，请根据以下规则生成安全分析报告：
-            
-            ### 分析模式定义
-            **检测维度**：
-            - 漏洞类型 {类型名称, CWE编号, 严重等级}
-            - 代码模式 {语言类型, 代码片段, 行号定位}
-            - 修复建议 {描述详情, 解决方案}
-            
-            **关联逻辑**：
-            - 代码模式实例必须关联到对应漏洞类型
-            - 每个漏洞必须包含严重性评估
-            - 每个发现必须包含代码位置信息
-            
-            ### 输入输出规范
             代码语言：%s
             代码内容：%s
-            输出格式：
-            ```json
-            {
-              "vulnerabilities": [
-                {
-                  "type": "漏洞类型名称",
-                  "severity": "CRITICAL/HIGH/MEDIUM/LOW",
-                  "line": 行号,
-                  "description": "问题详细描述",
-                  "suggestion": "修复后的代码和建议"
-                }
-              ],
-              "summary": "总体安全评估"
-            }
-            ```
-            
-            ### 报告生成要求
-            1. 严格遵循输出JSON结构
-            2. 漏洞类型必须标注标准CWE ID
-            3. 严重等级使用四等级制（CRITICAL/HIGH/MEDIUM/LOW）
-            4. 代码定位精确到行号
-            5. 修复建议需包含具体实施方案
-            6. 无漏洞时返回空数组
-            7. 禁止包含Markdown格式
-            8. 禁用HTML标签
-            9. 代码内容应该是某个区间的代码片段，不能是所有内容
-            10. 除非用户要求，可以跳过一些不会影响安全和运行的代码漏洞
-            11. 应该注重代码的安全性，避免潜在安全问题
-            
-            ### 安全约束
-            1. 过滤规则：排除注释内容中的误报
-            2. 隐私保护：屏蔽代码中的敏感信息
-            3. 风险控制：对高危漏洞添加[危险]标识
-
-            请输出严格符合规范的JSON报告，不要包含任何解释性内容。
             """,
             language, codeContent
         );
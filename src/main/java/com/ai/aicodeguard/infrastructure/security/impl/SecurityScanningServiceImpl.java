@@ -23,6 +23,8 @@ import org.springframework.stereotype.Service;
 import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * @ClassName: SecurityScanningServiceImpl
@@ -77,64 +79,41 @@ public class SecurityScanningServiceImpl implements SecurityScanningService {
 
         log.info("代码扫描任务已创建: {} -> {}", codeId, taskId);
 
-        // 4. 使用单一线程处理整个流程，确保顺序执行
-        taskExecutor.execute(() -> {
-            try {
-                // 执行AI模型扫描代码
-                log.info("开始执行AI模型扫描，代码ID: {}", codeId);
-                String aiScanTaskId = aiModelScanService.scanCode(codeId, content, language);
-
-                // 轮询等待AI扫描完成
-                VulnerabilityReport report = null;
-                int maxRetries = 30; // 最多等待30次，每次2秒
-                int retryCount = 0;
-
-                while (report == null && retryCount < maxRetries) {
-                    try {
-                        Thread.sleep(2000);
-                        report = reportRepository.findAllByCodeId(codeId)
-                                .stream()
-                                // 列表中只留下最后一个扫描结果
-                                .reduce((first, second) -> second)
-                                .orElse(null);
-                        if (report != null) {
-                            break;
-                        }
-                        retryCount++;
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        throw new RuntimeException("等待AI扫描结果时被中断", e);
+        // 4. 依次执行AI扫描与知识图谱更新，等待AI响应时不占用线程
+        CompletableFuture
+                .supplyAsync(() -> {
+                    log.info("开始执行AI模型扫描，代码ID: {}", codeId);
+                    return aiModelScanService.scanCodeAsync(codeId, content, language);
+                }, taskExecutor)
+                .thenCompose(scan -> scan)
+                .thenCompose(report -> {
+                    // AI扫描完成后，更新知识图谱
+                    log.info("AI扫描完成，发现{}个漏洞，开始更新知识图谱...",
+                            report.getVulnerabilities() != null ? report.getVulnerabilities().size() : 0);
+
+                    if (report.getVulnerabilities() == null || report.getVulnerabilities().isEmpty()) {
+                        log.info("没有发现漏洞，无需更新知识图谱");
+                        return CompletableFuture.completedFuture(true);
                     }
-                }
-
-                if (report == null) {
-                    log.warn("无法获取AI扫描结果，可能扫描未完成或失败: {}", codeId);
-                    updateTaskStatus(taskId, DetectionTask.TaskStatus.FAILED, "无法获取AI扫描结果");
-                    updateCodeScanStatus(codeId, GeneratedCode.ScanStatus.FAILED);
-                    return;
-                }
-
-                // AI扫描完成后，更新知识图谱
-                log.info("AI扫描完成，发现{}个漏洞，开始更新知识图谱...",
-                        report.getVulnerabilities() != null ? report.getVulnerabilities().size() : 0);
-
-                if (report.getVulnerabilities() != null && !report.getVulnerabilities().isEmpty()) {
-                    knowledgeGraphService.updateGraphWithVulnerabilities(codeId, report);
-                    log.info("知识图谱更新完成，代码ID: {}", codeId);
-                } else {
-                    log.info("没有发现漏洞，无需更新知识图谱");
-                }
-
-                // 更新任务状态和代码扫描状态
-                updateTaskStatus(taskId, DetectionTask.TaskStatus.SUCCESS, null);
-                updateCodeScanStatus(codeId, GeneratedCode.ScanStatus.SUCCESS);
-
-            } catch (Exception e) {
-                log.error("代码扫描或知识图谱更新失败: {}", codeId, e);
-                updateTaskStatus(taskId, DetectionTask.TaskStatus.FAILED, e.getMessage());
-                updateCodeScanStatus(codeId, GeneratedCode.ScanStatus.FAILED);
-            }
-        });
+                    return knowledgeGraphService.updateGraphWithVulnerabilities(codeId, report)
+                            .thenApply(updated -> {
+                                log.info("知识图谱更新完成，代码ID: {}", codeId);
+                                return updated;
+                            });
+                })
+                .whenCompleteAsync((updated, error) -> {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        log.error("代码扫描或知识图谱更新失败: {}", codeId, cause);
+                        updateTaskStatus(taskId, DetectionTask.TaskStatus.FAILED, cause.getMessage());
+                        updateCodeScanStatus(codeId, GeneratedCode.ScanStatus.FAILED);
+                        return;
+                    }
+                    // 更新任务状态和代码扫描状态
+                    updateTaskStatus(taskId, DetectionTask.TaskStatus.SUCCESS, null);
+                    updateCodeScanStatus(codeId, GeneratedCode.ScanStatus.SUCCESS);
+                }, taskExecutor);
 
         log.info("代码扫描和知识图谱更新任务已提交，代码ID: {}", codeId);
     }
@@ -0,0 +1,60 @@
+package com.ai.aicodeguard.presentation.request.codegen;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * @ClassName: BatchCodeGenerationRequest
+ * @Description: 批量代码生成请求DTO
+ * @Author: LZX
+ * @Date: 2025/5/26 10:05
+ */
+@Data
+public class BatchCodeGenerationRequest {
+
+    /**
+     * 生成条目，结果按条目下标返回
+     */
+    @NotEmpty(message = "生成条目不能为空")
+    private List<@Valid Item> items;
+
+    /**
+     * 默认AI模型类型，条目未指定模型时使用
+     */
+    private String modelType;
+
+    /**
+     * 是否接受延迟结果，接受时支持批处理接口的模型改用服务商批处理
+     */
+    private boolean acceptDelayed;
+
+    /**
+     * 是否在生成后触发安全扫描，扫描在独立的有界队列中依次提交
+     */
+    private boolean scan;
+
+    @Data
+    public static class Item {
+
+        /**
+         * 自然语言需求
+         */
+        @NotBlank(message = "需求描述不能为空")
+        private String prompt;
+
+        /**
+         * 目标编程语言
+         */
+        @NotBlank(message = "编程语言不能为空")
+        private String language;
+
+        /**
+         * AI模型类型
+         */
+        private String modelType;
+    }
+}
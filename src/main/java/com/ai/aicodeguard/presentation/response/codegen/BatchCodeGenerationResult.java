@@ -0,0 +1,52 @@
+package com.ai.aicodeguard.presentation.response.codegen;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * @ClassName: BatchCodeGenerationResult
+ * @Description: 批量代码生成的单条结果，以NDJSON逐行返回
+ * @Author: LZX
+ * @Date: 2025/5/26 10:08
+ */
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchCodeGenerationResult {
+
+    /**
+     * 条目在请求中的下标
+     */
+    private int index;
+
+    /**
+     * 是否生成成功
+     */
+    private boolean success;
+
+    /**
+     * 代码ID
+     */
+    private String codeId;
+
+    /**
+     * 生成的代码内容
+     */
+    private String content;
+
+    /**
+     * 编程语言
+     */
+    private String language;
+
+    /**
+     * 使用的AI模型
+     */
+    private String modelUsed;
+
+    /**
+     * 失败原因
+     */
+    private String error;
+}
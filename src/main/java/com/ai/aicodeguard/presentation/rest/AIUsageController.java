@@ -0,0 +1,60 @@
+package com.ai.aicodeguard.presentation.rest;
+
+import com.ai.aicodeguard.infrastructure.ai.metering.AIUserUsageStore;
+import com.ai.aicodeguard.infrastructure.common.annotation.RequiresPermissions;
+import com.ai.aicodeguard.infrastructure.common.util.ShiroUtils;
+import com.ai.aicodeguard.presentation.response.WebResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+
+/**
+ * @ClassName: AIUsageController
+ * @Description: 模型令牌用量查询控制器，用于按用户分摊调用成本
+ * @Author: LZX
+ * @Date: 2025/5/26 15:20
+ */
+@RestController
+@RequestMapping("/ai-usage")
+@RequiredArgsConstructor
+@Slf4j
+public class AIUsageController {
+
+    private static final int MAX_DAYS = 90;
+
+    private final AIUserUsageStore userUsageStore;
+
+    /**
+     * 查询当前用户最近若干天各模型的令牌用量
+     */
+    @GetMapping("/me")
+    public WebResponse getMyUsage(@RequestParam(defaultValue = "7") int days) {
+        Integer userId = ShiroUtils.getUserId();
+        if (userId == null) {
+            return WebResponse.fail("未登录或会话已过期，请重新登录");
+        }
+        return getUsage(String.valueOf(userId), days);
+    }
+
+    /**
+     * 查询指定用户最近若干天各模型的令牌用量，userId为system时查询系统发起的调用
+     */
+    @RequiresPermissions("sys:user:view")
+    @GetMapping("/user/{userId}")
+    public WebResponse getUserUsage(@PathVariable String userId, @RequestParam(defaultValue = "7") int days) {
+        return getUsage(userId, days);
+    }
+
+    private WebResponse getUsage(String userId, int days) {
+        try {
+            int range = Math.min(Math.max(days, 1), MAX_DAYS);
+            LocalDate today = LocalDate.now();
+            return WebResponse.success(userUsageStore.getUsage(userId, today.minusDays(range - 1L), today));
+        } catch (Exception e) {
+            log.error("查询用户{}令牌用量失败", userId, e);
+            return WebResponse.fail("查询令牌用量失败: " + e.getMessage());
+        }
+    }
+}
@@ -2,16 +2,25 @@ package com.ai.aicodeguard.presentation.rest;
 
 import com.ai.aicodeguard.domain.codegen.document.GeneratedCodeDocument;
 import com.ai.aicodeguard.domain.codegen.service.CodeGenerationService;
+import com.ai.aicodeguard.infrastructure.ai.AIClientFactory;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamingRuntime;
 import com.ai.aicodeguard.infrastructure.common.util.ShiroUtils;
+import com.ai.aicodeguard.presentation.request.codegen.BatchCodeGenerationRequest;
 import com.ai.aicodeguard.presentation.request.codegen.CodeGenerationRequest;
 import com.ai.aicodeguard.presentation.response.WebResponse;
 import com.ai.aicodeguard.presentation.response.codegen.CodeGenerationResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import jakarta.validation.Valid;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import com.ai.aicodeguard.presentation.response.codegen.EnhancedCodeAnalysisResult;
+import com.ai.aicodeguard.application.service.interfaces.BatchCodeGenerationService;
 import com.ai.aicodeguard.application.service.interfaces.EnhancedCodeAnalysisService;
 
 /**
@@ -28,6 +37,12 @@ public class CodeGenerationController {
 
     private final CodeGenerationService codeGenerationService;
     private final EnhancedCodeAnalysisService enhancedCodeAnalysisService; // 新增注入
+    private final AIClientFactory aiClientFactory;
+    private final BatchCodeGenerationService batchCodeGenerationService;
+    private final StreamingRuntime streamingRuntime;
+
+    // 流式生成的SSE超时时间
+    private static final long STREAM_TIMEOUT_MS = 5 * 60 * 1000L;
 
     /**
      * 生成代码接口
@@ -65,30 +80,67 @@ public class CodeGenerationController {
     }
 
     /**
-     * 生成代码并进行增强分析的接口
+     * 流式生成代码接口，以SSE推送代码块内容，完成事件携带代码ID
+     */
+    @PostMapping(value = "/generate-stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter generateCodeStream(@Valid @RequestBody CodeGenerationRequest request) {
+        // 用户需在请求线程中获取，流式线程池中没有安全上下文
+        Integer userId = ShiroUtils.getUserId();
+        if (userId == null) {
+            SseEmitter emitter = new SseEmitter();
+            emitter.completeWithError(new RuntimeException("未登录或会话已过期，请重新登录"));
+            return emitter;
+        }
+
+        return streamingRuntime.start("code-generation", STREAM_TIMEOUT_MS, emitter ->
+            codeGenerationService.generateCodeStreaming(request.getPrompt(), request.getLanguage(), userId,
+                request.getModelType(), emitter));
+    }
+
+    /**
+     * 批量生成代码接口，按完成顺序逐行返回NDJSON结果
+     */
+    @PostMapping(value = "/generate-batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseBodyEmitter generateCodeBatch(@Valid @RequestBody BatchCodeGenerationRequest request) {
+        Integer userId = ShiroUtils.getUserId();
+        if (userId == null) {
+            ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+            emitter.completeWithError(new RuntimeException("未登录或会话已过期，请重新登录"));
+            return emitter;
+        }
+        return batchCodeGenerationService.generateBatch(request, userId);
+    }
+
+    /**
+     * 生成代码并进行增强分析的接口，异步返回结果，等待模型响应时释放请求线程
      */
     @PostMapping("/generate-enhanced")
-    public WebResponse generateCodeWithEnhancedAnalysis(@Valid @RequestBody CodeGenerationRequest request) {
+    public CompletableFuture<WebResponse> generateCodeWithEnhancedAnalysis(@Valid @RequestBody CodeGenerationRequest request) {
+        Integer userId = ShiroUtils.getUserId();
+        if (userId == null) {
+            return CompletableFuture.completedFuture(WebResponse.fail("未登录或会话已过期，请重新登录"));
+        }
+        CompletableFuture<EnhancedCodeAnalysisResult> result;
         try {
-            Integer userId = ShiroUtils.getUserId();
-            if (userId == null) {
-                return WebResponse.fail("未登录或会话已过期，请重新登录");
-            }
-            EnhancedCodeAnalysisResult result = enhancedCodeAnalysisService.generateCodeAndAnalyzeWithKnowledgeGraph(request, userId);
-            return WebResponse.success(result);
+            result = enhancedCodeAnalysisService.generateCodeAndAnalyzeWithKnowledgeGraph(request, userId);
         } catch (Exception e) {
-            log.error("代码生成及增强分析失败", e);
-            return WebResponse.fail("代码生成及增强分析失败: " + e.getMessage());
+            result = CompletableFuture.failedFuture(e);
         }
+        return result.<WebResponse>thenApply(WebResponse::success)
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    log.error("代码生成及增强分析失败", cause);
+                    return WebResponse.fail("代码生成及增强分析失败: " + cause.getMessage());
+                });
     }
 
     /**
-     * 获取支持的AI模型列表
+     * 获取支持的AI模型列表，包含 ai.models 下配置的OpenAI兼容模型
      */
     @GetMapping("/models")
     public WebResponse getSupportedModels() {
-        return WebResponse.success(java.util.Arrays.stream(com.ai.aicodeguard.infrastructure.ai.AIModelType.values())
-            .map(Enum::name)
+        return WebResponse.success(aiClientFactory.getModelKeys().stream()
+            .map(String::toUpperCase)
             .toList());
     }
 }
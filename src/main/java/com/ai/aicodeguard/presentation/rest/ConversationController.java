@@ -6,6 +6,11 @@ import com.ai.aicodeguard.infrastructure.ai.StreamingResponseHandler;
 import com.ai.aicodeguard.infrastructure.ai.conversation.Conversation;
 import com.ai.aicodeguard.infrastructure.ai.conversation.ConversationManager;
 import com.ai.aicodeguard.infrastructure.ai.streaming.DefaultStreamingResponseHandler;
+import com.ai.aicodeguard.infrastructure.ai.streaming.ResumableStream;
+import com.ai.aicodeguard.infrastructure.ai.streaming.SseDeltaBatcher;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamChunk;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamTokenLog;
+import com.ai.aicodeguard.infrastructure.ai.streaming.StreamingRuntime;
 import com.ai.aicodeguard.infrastructure.common.util.ShiroUtils;
 import com.ai.aicodeguard.presentation.request.codegen.CreateConversationRequest;
 import com.ai.aicodeguard.presentation.request.codegen.SendMessageRequest;
@@ -13,15 +18,20 @@ import com.ai.aicodeguard.presentation.request.codegen.StreamMessageRequest;
 import com.ai.aicodeguard.presentation.response.WebResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.validation.Valid;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -38,6 +48,11 @@ public class ConversationController {
 
     private final AIClientFactory aiClientFactory;
     private final ConversationManager conversationManager;
+    private final StreamingRuntime streamingRuntime;
+    private final StreamTokenLog streamTokenLog;
+
+    // 流式对话的SSE超时时间(3分钟)
+    private static final long STREAM_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(3);
 
     /**
      * 创建对话
@@ -87,53 +102,100 @@ public class ConversationController {
     }
 
     /**
-     * 流式发送消息
+     * 流式发送消息，首个start事件携带本轮回复的轮次ID，各事件ID为 {轮次ID}:{序号}
      * @param request
+     * @param lastEventId 断线重连时客户端最后收到的事件ID，携带时从令牌日志续传，不再调用模型
      * @return
      */
     @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter sendMessageStream(@Valid @RequestBody StreamMessageRequest request) {
-        // 创建SSE发射器，设置超时时间为3分钟
-        SseEmitter emitter = new SseEmitter(TimeUnit.MINUTES.toMillis(3));
-
+    public SseEmitter sendMessageStream(@Valid @RequestBody StreamMessageRequest request,
+                                        @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
         try {
+            String userId = String.valueOf(ShiroUtils.getUserId());
             Conversation conversation = conversationManager.getConversation(
-                String.valueOf(ShiroUtils.getUserId()),
+                userId,
                 request.getConversationId()
             );
 
             if (conversation == null) {
+                SseEmitter emitter = new SseEmitter();
                 emitter.completeWithError(new RuntimeException("对话不存在或已过期"));
                 return emitter;
             }
 
-            // 创建流处理器
-            StreamingResponseHandler handler = new DefaultStreamingResponseHandler();
+            if (StringUtils.isNotBlank(lastEventId)) {
+                log.info("续传流式对话: {}, Last-Event-ID: {}", request.getConversationId(), lastEventId);
+                return streamingRuntime.start("conversation-resume", STREAM_TIMEOUT_MS,
+                    emitter -> streamTokenLog.resume(userId, conversation.getId(), lastEventId, emitter));
+            }
 
-            // 异步处理流式响应
+            // 创建流处理器，事件经令牌日志编号并记录
+            ResumableStream turn = streamTokenLog.open(userId, conversation.getId());
+            SseDeltaBatcher batcher = streamingRuntime.newBatcher(turn);
+            StreamingResponseHandler handler = new DefaultStreamingResponseHandler(conversation.getId(), batcher, turn);
             AIClientService aiClient = aiClientFactory.getClient(conversation.getModelType());
 
-            // 设置完成回调
-            emitter.onCompletion(() -> log.info("流式对话完成: {}", request.getConversationId()));
-            emitter.onTimeout(() -> log.warn("流式对话超时: {}", request.getConversationId()));
-            emitter.onError(e -> log.error("流式对话出错: {}", request.getConversationId(), e));
-
-            // 异步发送消息
-            CompletableFuture.runAsync(() -> {
+            // 在流式线程池中发送消息，连接断开后回复继续生成并写入令牌日志
+            return streamingRuntime.start("conversation", STREAM_TIMEOUT_MS, emitter -> {
                 try {
-                    aiClient.sendMessageStreaming(conversation, request.getMessage(), emitter, handler);
-                } catch (Exception e) {
-                    log.error("发送流式消息失败", e);
-                    handler.handleError(e, emitter);
+                    batcher.send(emitter, "start", Map.of(
+                        "conversationId", conversation.getId(),
+                        "turnId", turn.getTurnId()
+                    ), MediaType.APPLICATION_JSON);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
+                aiClient.sendMessageStreaming(conversation, request.getMessage(), emitter, handler);
+                log.info("流式对话已发起: {}, 轮次: {}", request.getConversationId(), turn.getTurnId());
             });
-
         } catch (Exception e) {
             log.error("初始化流式对话失败", e);
+            SseEmitter emitter = new SseEmitter();
             emitter.completeWithError(e);
+            return emitter;
         }
+    }
 
-        return emitter;
+    /**
+     * 响应式流式发送消息，每个增量作为一个message事件，结束时发送done事件。
+     * 按客户端连接的写入进度向模型请求下一块输出，断开时取消上游请求；不支持断线续传。
+     * 与/stream共用连接数限制与活跃流指标，对话查询在流式线程池中执行
+     * @param request
+     * @return
+     */
+    @PostMapping(value = "/stream/reactive", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> sendMessageReactive(@Valid @RequestBody StreamMessageRequest request) {
+        // 用户信息绑定在请求线程上，订阅前读取
+        String userId = String.valueOf(ShiroUtils.getUserId());
+        return streamingRuntime.stream("conversation-reactive", () -> {
+            Conversation conversation = conversationManager.getConversation(userId, request.getConversationId());
+            if (conversation == null) {
+                return Flux.just(errorEvent("对话不存在或已过期"));
+            }
+
+            AIClientService aiClient = aiClientFactory.getClient(conversation.getModelType());
+            return aiClient.streamMessage(conversation, request.getMessage())
+                .map(chunk -> chunk.isEnd() ? doneEvent(conversation.getId(), chunk) : messageEvent(chunk));
+        }, ConversationController::errorEvent)
+            .onErrorResume(e -> {
+                log.error("响应式流式对话失败: {}", request.getConversationId(), e);
+                return Flux.just(errorEvent(String.valueOf(e.getMessage())));
+            });
+    }
+
+    private static ServerSentEvent<Object> messageEvent(StreamChunk chunk) {
+        return ServerSentEvent.<Object>builder(chunk.text()).event("message").build();
+    }
+
+    private static ServerSentEvent<Object> doneEvent(String conversationId, StreamChunk chunk) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("conversationId", conversationId);
+        data.putAll(chunk.summary().toEventData());
+        return ServerSentEvent.<Object>builder(data).event("done").build();
+    }
+
+    private static ServerSentEvent<Object> errorEvent(String message) {
+        return ServerSentEvent.<Object>builder(message).event("error").build();
     }
 
     /**
@@ -144,7 +206,7 @@ public class ConversationController {
             @PathVariable Integer userId,
             @PathVariable String conversationId) {
         try {
-            Conversation conversation = conversationManager.getConversation(
+            Conversation conversation = conversationManager.getConversationHistory(
                 userId.toString(),
                 conversationId
             );
@@ -0,0 +1,151 @@
+package com.ai.aicodeguard.infrastructure.ai.cache;
+
+import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AIModelProperties;
+import com.ai.aicodeguard.infrastructure.ai.AIModelType;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
+import com.ai.aicodeguard.infrastructure.ai.AITaskType;
+import com.ai.aicodeguard.infrastructure.ai.StreamingResponseHandler;
+import com.ai.aicodeguard.infrastructure.ai.conversation.Conversation;
+import com.ai.aicodeguard.infrastructure.ai.streaming.CancellableSseEmitter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 流式命中缓存时回放模型原始文本，缓存按任务类型区分，扫描任务默认不缓存
+ */
+public class CachingAIClientServiceTest {
+
+    private static final List<String> CHUNKS = List.of("下面是实现：\n\n```java\n", "class A {}\n", "```\n说明文字");
+
+    private int streamingCalls;
+    private int codeCalls;
+    private AIClientService client;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        AICacheProperties properties = new AICacheProperties();
+        properties.setRedisEnabled(false);
+        AIResponseCache cache = new AIResponseCache(properties, new AIModelProperties(),
+                Mockito.mock(RedisTemplate.class), new SimpleMeterRegistry());
+        cache.init();
+        client = cache.decorate(new StubClient());
+    }
+
+    @Test
+    public void streamingHitReplaysRawText() {
+        RecordingHandler first = new RecordingHandler();
+        client.generateCodeStreaming("计算器", "java", AIRequestOptions.defaults(), emitter(), first);
+        RecordingHandler second = new RecordingHandler();
+        client.generateCodeStreaming("计算器", "java", AIRequestOptions.defaults(), emitter(), second);
+
+        assertEquals(1, streamingCalls);
+        assertEquals(String.join("", CHUNKS), second.text());
+        assertEquals("[DONE]", second.received.get(second.received.size() - 1));
+    }
+
+    @Test
+    public void abortedStreamIsNotCached() {
+        RecordingHandler disconnected = new RecordingHandler();
+        disconnected.disconnected = true;
+        client.generateCodeStreaming("计算器", "java", AIRequestOptions.defaults(), emitter(), disconnected);
+        client.generateCodeStreaming("计算器", "java", AIRequestOptions.defaults(), emitter(), new RecordingHandler());
+
+        assertEquals(2, streamingCalls);
+    }
+
+    @Test
+    public void cacheKeyIncludesTaskType() {
+        client.generateCode("计算器", "java", AIRequestOptions.of(AITaskType.GENERATION));
+        client.generateCode("计算器", "java", AIRequestOptions.of(AITaskType.ANALYSIS));
+        client.generateCode("计算器", "java", AIRequestOptions.of(AITaskType.ANALYSIS));
+
+        assertEquals(2, codeCalls);
+    }
+
+    @Test
+    public void scanIsNotCachedByDefault() {
+        client.generateCode("扫描", "java", AIRequestOptions.of(AITaskType.SCAN));
+        client.generateCode("扫描", "java", AIRequestOptions.of(AITaskType.SCAN));
+
+        assertEquals(2, codeCalls);
+    }
+
+    private static SseEmitter emitter() {
+        return new CancellableSseEmitter(0L);
+    }
+
+    private static class RecordingHandler implements StreamingResponseHandler {
+        private final List<String> received = new ArrayList<>();
+        private boolean disconnected;
+
+        @Override
+        public boolean handleResponse(String content, SseEmitter emitter) {
+            received.add(content);
+            return disconnected || "[DONE]".equals(content);
+        }
+
+        @Override
+        public void handleError(Throwable error, SseEmitter emitter) {
+        }
+
+        String text() {
+            return String.join("", received.subList(0, received.size() - 1));
+        }
+    }
+
+    /**
+     * 流式调用按块输出固定的原始文本，遇到连接失效时停止读取
+     */
+    private class StubClient implements AIClientService {
+
+        @Override
+        public void generateCodeStreaming(String prompt, String language, AIRequestOptions options,
+                                          SseEmitter emitter, StreamingResponseHandler handler) {
+            streamingCalls++;
+            for (String chunk : CHUNKS) {
+                if (handler.handleResponse(chunk, emitter)) {
+                    return;
+                }
+            }
+            handler.handleResponse("[DONE]", emitter);
+        }
+
+        @Override
+        public String generateCode(String prompt, String language, AIRequestOptions options) {
+            codeCalls++;
+            return "class A {}";
+        }
+
+        @Override
+        public void sendMessageStreaming(Conversation conversation, String message,
+                                         SseEmitter emitter, StreamingResponseHandler handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String sendMessage(Conversation conversation, String message) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Conversation createConversation(String userId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public AIModelType getModelType() {
+            return AIModelType.MOCK;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.ai.aicodeguard.infrastructure.ai.coalesce;
+
+import com.ai.aicodeguard.infrastructure.ai.AIClientService;
+import com.ai.aicodeguard.infrastructure.ai.AIModelProperties;
+import com.ai.aicodeguard.infrastructure.ai.AIModelType;
+import com.ai.aicodeguard.infrastructure.ai.AIRequestOptions;
+import com.ai.aicodeguard.infrastructure.ai.StreamingResponseHandler;
+import com.ai.aicodeguard.infrastructure.ai.conversation.Conversation;
+import com.ai.aicodeguard.infrastructure.ai.conversation.ConversationManager;
+import com.ai.aicodeguard.infrastructure.ai.streaming.CancellableSseEmitter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 合并流的发起方断开后，相同的新请求应重新发起，而不是加入已失效的共享流
+ */
+public class CoalescingAIClientServiceTest {
+
+    private final List<StreamingResponseHandler> upstreamHandlers = new ArrayList<>();
+    private final List<SseEmitter> upstreamEmitters = new ArrayList<>();
+    private final List<Boolean> upstreamCancelled = new ArrayList<>();
+
+    private AIClientService client;
+
+    @BeforeEach
+    public void setup() {
+        AIRequestCoalescer coalescer = new AIRequestCoalescer(new AICoalescingProperties(), new AIModelProperties(),
+                Mockito.mock(ConversationManager.class), new SimpleMeterRegistry());
+        client = coalescer.decorate(new StubClient());
+    }
+
+    @Test
+    public void leaderCancelledBeforeFirstTokenThenSameRequestStartsNewCall() {
+        CancellableSseEmitter leader = new CancellableSseEmitter(0L);
+        client.sendMessageStreaming(new Conversation("1", "mock"), "你好", leader, new RecordingHandler(false));
+        // 客户端断开，连接结束时执行取消动作
+        leader.cancel();
+        assertTrue(upstreamCancelled.get(0));
+
+        client.sendMessageStreaming(new Conversation("1", "mock"), "你好",
+                new CancellableSseEmitter(0L), new RecordingHandler(false));
+        assertEquals(2, upstreamHandlers.size());
+    }
+
+    @Test
+    public void leaderSendFailsWithoutFollowersThenSameRequestStartsNewCall() {
+        client.sendMessageStreaming(new Conversation("1", "mock"), "你好",
+                new CancellableSseEmitter(0L), new RecordingHandler(true));
+        // 处理器返回true表示发起方连接已失效，模型实现停止读取
+        assertTrue(upstreamHandlers.get(0).handleResponse("片段", upstreamEmitters.get(0)));
+
+        RecordingHandler second = new RecordingHandler(false);
+        client.sendMessageStreaming(new Conversation("1", "mock"), "你好", new CancellableSseEmitter(0L), second);
+        assertEquals(2, upstreamHandlers.size());
+        // 新请求收到自己的输出，而不是已失效流的回放
+        upstreamHandlers.get(1).handleResponse("新的回复", upstreamEmitters.get(1));
+        assertEquals(List.of("新的回复"), second.received);
+    }
+
+    private static class RecordingHandler implements StreamingResponseHandler {
+        private final boolean disconnected;
+        private final List<String> received = new ArrayList<>();
+
+        RecordingHandler(boolean disconnected) {
+            this.disconnected = disconnected;
+        }
+
+        @Override
+        public boolean handleResponse(String content, SseEmitter emitter) {
+            received.add(content);
+            return disconnected;
+        }
+
+        @Override
+        public void handleError(Throwable error, SseEmitter emitter) {
+        }
+    }
+
+    /**
+     * 只登记流式调用，由测试驱动输出
+     */
+    private class StubClient implements AIClientService {
+
+        @Override
+        public void sendMessageStreaming(Conversation conversation, String message,
+                                         SseEmitter emitter, StreamingResponseHandler handler) {
+            int index = upstreamCancelled.size();
+            upstreamHandlers.add(handler);
+            upstreamEmitters.add(emitter);
+            upstreamCancelled.add(false);
+            handler.onCancel(emitter, () -> upstreamCancelled.set(index, true));
+        }
+
+        @Override
+        public String generateCode(String prompt, String language, AIRequestOptions options) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String sendMessage(Conversation conversation, String message) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Conversation createConversation(String userId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public AIModelType getModelType() {
+            return AIModelType.MOCK;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.ai.aicodeguard.infrastructure.ai.conversation;
+
+import com.ai.aicodeguard.domain.conversation.ConversationDocument;
+import com.ai.aicodeguard.infrastructure.cache.ConversationCacheService;
+import com.ai.aicodeguard.infrastructure.mongo.ConversationRepository;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * 两个请求基于同一份对话并发追加消息，后写入的一方重新编号后追加，不覆盖先写入的消息
+ */
+public class ConversationManagerTest {
+
+    // 内存中的MongoDB文档
+    private final List<ChatMessage> storedMessages = new ArrayList<>();
+    private int storedCount;
+
+    private ConversationRepository repository;
+    private ConversationCacheService cacheService;
+    private ConversationManager manager;
+    private Conversation original;
+
+    @BeforeEach
+    public void setup() {
+        original = new Conversation("1", "mock");
+        storedMessages.addAll(original.getMessages());
+        storedCount = storedMessages.size();
+
+        repository = Mockito.mock(ConversationRepository.class);
+        cacheService = Mockito.mock(ConversationCacheService.class);
+        MongoTemplate mongoTemplate = Mockito.mock(MongoTemplate.class);
+        Mockito.when(mongoTemplate.findOne(any(Query.class), eq(ConversationDocument.class))).thenAnswer(invocation -> {
+            synchronized (storedMessages) {
+                ConversationDocument document = new ConversationDocument();
+                document.setMessageCount(storedCount);
+                return document;
+            }
+        });
+        Mockito.when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(ConversationDocument.class)))
+                .thenAnswer(invocation -> applyUpdate(invocation.getArgument(0), invocation.getArgument(1)));
+        manager = new ConversationManager(repository, cacheService, mongoTemplate);
+    }
+
+    @Test
+    public void concurrentAppendsKeepBothRequestsMessages() throws Exception {
+        Conversation first = load();
+        first.addUserMessage("问题A");
+        first.addAssistantMessage("回答A");
+        Conversation second = load();
+        second.addUserMessage("问题B");
+        second.addAssistantMessage("回答B");
+
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        CompletableFuture<Void> a = CompletableFuture.runAsync(() -> update(barrier, first));
+        CompletableFuture<Void> b = CompletableFuture.runAsync(() -> update(barrier, second));
+        a.get(5, TimeUnit.SECONDS);
+        b.get(5, TimeUnit.SECONDS);
+
+        assertEquals(5, storedCount);
+        assertEquals(5, storedMessages.size());
+        for (int i = 0; i < storedMessages.size(); i++) {
+            assertEquals(i, storedMessages.get(i).seq());
+        }
+        List<String> contents = storedMessages.stream().map(ChatMessage::content).toList();
+        int questionA = contents.indexOf("问题A");
+        int questionB = contents.indexOf("问题B");
+        assertTrue(questionA > 0 && questionB > 0);
+        assertEquals("回答A", contents.get(questionA + 1));
+        assertEquals("回答B", contents.get(questionB + 1));
+        // 不退回整体写入，后写入的一方删除缓存
+        Mockito.verify(repository, Mockito.never()).save(any());
+        Mockito.verify(cacheService).removeConversation("1", original.getId());
+    }
+
+    private void update(CyclicBarrier barrier, Conversation conversation) {
+        try {
+            barrier.await(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        manager.updateConversation("1", conversation);
+    }
+
+    private Conversation load() {
+        ConversationDocument document = ConversationDocument.fromConversation(original);
+        document.setMessages(new ArrayList<>(storedMessages));
+        return document.toConversation();
+    }
+
+    /**
+     * 按写入条件中的消息数执行$set与$push
+     */
+    private UpdateResult applyUpdate(Query query, Update update) {
+        synchronized (storedMessages) {
+            Object expected = query.getQueryObject().get("messageCount");
+            if (expected != null && !expected.equals(storedCount)) {
+                return UpdateResult.acknowledged(0, 0L, null);
+            }
+            Document updateObject = update.getUpdateObject();
+            Document push = (Document) updateObject.get("$push");
+            if (push != null) {
+                for (Update.Modifier modifier : ((Update.Modifiers) push.get("messages")).getModifiers()) {
+                    Arrays.stream((Object[]) modifier.getValue())
+                            .forEach(message -> storedMessages.add((ChatMessage) message));
+                }
+            }
+            storedCount = (Integer) ((Document) updateObject.get("$set")).get("messageCount");
+            return UpdateResult.acknowledged(1, 1L, null);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.ai.aicodeguard.infrastructure.ai.routing;
+
+import com.ai.aicodeguard.infrastructure.ai.AITaskType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 熔断器在滑动窗口内的关闭、熔断、半开状态转换，以及按任务类型区分的延迟评分
+ */
+public class ProviderHealthTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private ProviderHealth health;
+
+    @BeforeEach
+    public void setup() {
+        AIRoutingProperties properties = new AIRoutingProperties();
+        properties.getCircuitBreaker().setMinimumCalls(4);
+        properties.getCircuitBreaker().setFailureRateThreshold(0.5);
+        properties.getCircuitBreaker().setWindow(Duration.ofSeconds(10));
+        properties.getCircuitBreaker().setWindowBuckets(10);
+        properties.getCircuitBreaker().setOpenDuration(Duration.ofSeconds(30));
+        health = new ProviderHealth("claude", properties, now::get);
+    }
+
+    @Test
+    public void opensWhenWindowFailureRateReachesThreshold() {
+        health.onSuccess(AITaskType.CHAT, 100);
+        health.onSuccess(AITaskType.CHAT, 100);
+        health.onFailure();
+        assertEquals(ProviderHealth.State.CLOSED, health.getState());
+        health.onFailure();
+
+        assertEquals(ProviderHealth.State.OPEN, health.getState());
+        assertFalse(health.tryAcquire());
+        assertEquals(30_000, health.remainingOpenMillis());
+    }
+
+    @Test
+    public void callsOutsideWindowDoNotCountTowardsMinimum() {
+        for (int i = 0; i < 10; i++) {
+            health.onSuccess(AITaskType.CHAT, 100);
+        }
+        // 早期调用滑出窗口后，少量失败不足最小调用数，不熔断
+        now.addAndGet(11_000);
+        health.onFailure();
+        health.onFailure();
+        health.onFailure();
+
+        assertEquals(3, health.getWindowCalls());
+        assertEquals(ProviderHealth.State.CLOSED, health.getState());
+        health.onFailure();
+        assertEquals(ProviderHealth.State.OPEN, health.getState());
+    }
+
+    @Test
+    public void halfOpenProbeSuccessCloses() {
+        openCircuit();
+        now.addAndGet(30_000);
+
+        assertEquals(ProviderHealth.State.HALF_OPEN, health.getState());
+        assertTrue(health.tryAcquire());
+        // 只允许一个探测请求
+        assertFalse(health.tryAcquire());
+        health.onSuccess(AITaskType.CHAT, 100);
+
+        assertEquals(ProviderHealth.State.CLOSED, health.getState());
+        assertEquals(0, health.getWindowCalls());
+        // 熔断前的失败不计入新窗口，单次失败不会再次熔断
+        health.onFailure();
+        assertEquals(ProviderHealth.State.CLOSED, health.getState());
+    }
+
+    @Test
+    public void halfOpenProbeFailureReopens() {
+        openCircuit();
+        now.addAndGet(30_000);
+
+        assertTrue(health.tryAcquire());
+        health.onFailure();
+
+        assertEquals(ProviderHealth.State.OPEN, health.getState());
+        assertEquals(30_000, health.remainingOpenMillis());
+    }
+
+    @Test
+    public void ignoredProbeReturnsSlot() {
+        openCircuit();
+        now.addAndGet(30_000);
+
+        assertTrue(health.tryAcquire());
+        health.onIgnored();
+
+        assertEquals(ProviderHealth.State.HALF_OPEN, health.getState());
+        assertTrue(health.tryAcquire());
+    }
+
+    @Test
+    public void latencyIsTrackedPerTaskType() {
+        health.onSuccess(AITaskType.CHAT, 200);
+        health.onSuccess(AITaskType.SCAN, 5000);
+
+        assertEquals(200, health.score(AITaskType.CHAT));
+        assertEquals(5000, health.score(AITaskType.SCAN));
+        assertTrue(health.score(AITaskType.GENERATION) < 0);
+    }
+
+    private void openCircuit() {
+        for (int i = 0; i < 4; i++) {
+            health.onFailure();
+        }
+        assertEquals(ProviderHealth.State.OPEN, health.getState());
+    }
+}
@@ -0,0 +1,37 @@
+package com.ai.aicodeguard.infrastructure.ai.streaming;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 流式输出中代码块的增量提取
+ */
+public class CodeFenceExtractorTest {
+
+    @Test
+    public void extractsTargetBlockAcrossArbitraryChunkBoundaries() {
+        String output = "下面是实现：\n\n```bash\nmvn test\n```\n\n```py\ndef add(a, b):\n\n    return a + b\n```\n说明文字";
+        // 逐字符输入，围栏与换行都会被拆开
+        CodeFenceExtractor extractor = new CodeFenceExtractor("Python");
+        StringBuilder streamed = new StringBuilder();
+        for (char c : output.toCharArray()) {
+            streamed.append(extractor.append(String.valueOf(c)));
+        }
+        streamed.append(extractor.finish());
+
+        assertEquals("def add(a, b):\n\n    return a + b", streamed.toString());
+        assertEquals(streamed.toString(), extractor.code());
+    }
+
+    @Test
+    public void joinsMultipleBlocksAndFallsBackToWholeOutput() {
+        CodeFenceExtractor multiple = new CodeFenceExtractor("java");
+        String streamed = multiple.append("```java\nclass A {}\n```\n文字\n```\nclass B {}\n```") + multiple.finish();
+        assertEquals("class A {}\n\nclass B {}", streamed);
+
+        CodeFenceExtractor plain = new CodeFenceExtractor("java");
+        assertEquals("", plain.append("class A {}\n"));
+        assertEquals("class A {}", plain.finish());
+    }
+}
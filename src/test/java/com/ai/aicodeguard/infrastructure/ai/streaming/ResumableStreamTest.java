@@ -0,0 +1,198 @@
+package com.ai.aicodeguard.infrastructure.ai.streaming;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+
+/**
+ * 客户端在回复中途断开后，回复继续生成并写入令牌日志，重连时从最后收到的事件续传
+ */
+public class ResumableStreamTest {
+
+    // 内存中的Redis Stream，键 -> 按序号排列的记录
+    private final Map<String, List<MapRecord<String, String, String>>> streams = new ConcurrentHashMap<>();
+
+    private StreamTokenLog tokenLog;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        RedisTemplate<String, String> redisTemplate = Mockito.mock(RedisTemplate.class);
+        StreamOperations<String, Object, Object> streamOperations = Mockito.mock(StreamOperations.class);
+        Mockito.doReturn(streamOperations).when(redisTemplate).opsForStream();
+        Mockito.when(streamOperations.add(any(MapRecord.class))).thenAnswer(invocation -> {
+            MapRecord<String, String, String> record = invocation.getArgument(0);
+            streams.computeIfAbsent(record.getStream(), key -> new CopyOnWriteArrayList<>()).add(record);
+            return record.getId();
+        });
+        Mockito.when(streamOperations.range(anyString(), any(Range.class))).thenAnswer(invocation -> {
+            Range<String> range = invocation.getArgument(1);
+            long from = Long.parseLong(range.getLowerBound().getValue().orElseThrow().split("-")[0]);
+            return streams.getOrDefault(invocation.getArgument(0), List.of()).stream()
+                    .filter(record -> record.getId().getTimestamp() >= from)
+                    .map(record -> StreamRecords.newRecord()
+                            .in(record.getStream())
+                            .withId(record.getId())
+                            .ofMap(Map.<Object, Object>copyOf(record.getValue())))
+                    .collect(Collectors.toList());
+        });
+        Mockito.when(redisTemplate.hasKey(anyString()))
+                .thenAnswer(invocation -> streams.containsKey(invocation.<String>getArgument(0)));
+        Mockito.when(redisTemplate.executePipelined(any(SessionCallback.class))).thenAnswer(invocation -> {
+            invocation.<SessionCallback<Object>>getArgument(0).execute((RedisOperations) redisTemplate);
+            return List.of();
+        });
+
+        tokenLog = new StreamTokenLog(new StreamingProperties(), redisTemplate, new ObjectMapper());
+        tokenLog.init();
+    }
+
+    @AfterEach
+    public void shutdown() {
+        tokenLog.shutdown();
+    }
+
+    @Test
+    public void clientDisconnectsMidStreamThenResumes() throws Exception {
+        ResumableStream turn = tokenLog.open("1", "c1");
+        SseDeltaBatcher batcher = new SseDeltaBatcher(0, 0, null, turn);
+        DefaultStreamingResponseHandler handler = new DefaultStreamingResponseHandler("c1", batcher, turn);
+        ClientEmitter client = new ClientEmitter();
+        AtomicBoolean upstreamCancelled = new AtomicBoolean();
+        handler.onCancel(client, () -> upstreamCancelled.set(true));
+
+        batcher.send(client, "start", Map.of("conversationId", "c1"), MediaType.APPLICATION_JSON);
+        assertFalse(handler.handleResponse("你好", client));
+        String lastEventId = StreamTokenLog.eventId(turn.getTurnId(), 2);
+
+        // 客户端断开：发送失败，连接结束时执行取消动作
+        client.disconnected = true;
+        assertFalse(handler.handleResponse("，世界", client));
+        client.cancel();
+        assertFalse(handler.handleResponse("！", client));
+        assertTrue(handler.handleResponse("[DONE]", client));
+        assertFalse(upstreamCancelled.get());
+
+        List<String> logged = streams.values().iterator().next().stream()
+                .map(record -> record.getValue().get("event"))
+                .collect(Collectors.toList());
+        assertTrue(logged.contains("done"));
+        assertFalse(logged.contains("error"));
+
+        ClientEmitter resumed = new ClientEmitter();
+        tokenLog.resume("1", "c1", lastEventId, resumed);
+        assertTrue(resumed.completed.await(5, TimeUnit.SECONDS));
+        String replay = String.join("", resumed.events);
+        assertTrue(replay.contains("，世界"));
+        assertTrue(replay.contains("！"));
+        assertTrue(replay.contains("event:done"));
+        assertFalse(replay.contains("你好"));
+        assertFalse(replay.contains("event:error"));
+    }
+
+    @Test
+    public void slowClientDoesNotDelayOtherResumes() throws Exception {
+        Turn slowTurn = startTurn("c1");
+        Turn fastTurn = startTurn("c2");
+
+        CountDownLatch slowSending = new CountDownLatch(1);
+        CountDownLatch releaseSlow = new CountDownLatch(1);
+        ClientEmitter slow = new ClientEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) throws IOException {
+                slowSending.countDown();
+                try {
+                    releaseSlow.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.send(builder);
+            }
+        };
+        ClientEmitter fast = new ClientEmitter();
+        // 两个续传都在等待仍在生成中的回复
+        tokenLog.resume("1", "c1", slowTurn.startEventId(), slow);
+        tokenLog.resume("1", "c2", fastTurn.startEventId(), fast);
+
+        slowTurn.finish();
+        assertTrue(slowSending.await(5, TimeUnit.SECONDS));
+        // 慢客户端阻塞在发送中，另一个续传仍能读取并发送完毕
+        fastTurn.finish();
+        assertTrue(fast.completed.await(3, TimeUnit.SECONDS));
+        assertTrue(String.join("", fast.events).contains("event:done"));
+
+        releaseSlow.countDown();
+        assertTrue(slow.completed.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 开始一轮回复并发送start事件
+     */
+    private Turn startTurn(String conversationId) throws IOException {
+        ResumableStream turn = tokenLog.open("1", conversationId);
+        SseDeltaBatcher batcher = new SseDeltaBatcher(0, 0, null, turn);
+        DefaultStreamingResponseHandler handler = new DefaultStreamingResponseHandler(conversationId, batcher, turn);
+        ClientEmitter client = new ClientEmitter();
+        batcher.send(client, "start", Map.of("conversationId", conversationId), MediaType.APPLICATION_JSON);
+        return new Turn(StreamTokenLog.eventId(turn.getTurnId(), 1), handler, client);
+    }
+
+    private record Turn(String startEventId, DefaultStreamingResponseHandler handler, ClientEmitter client) {
+        void finish() {
+            handler.handleResponse("你好", client);
+            handler.handleResponse("[DONE]", client);
+        }
+    }
+
+    private static class ClientEmitter extends CancellableSseEmitter {
+        private final List<String> events = new ArrayList<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile boolean disconnected;
+
+        ClientEmitter() {
+            super(0L);
+        }
+
+        @Override
+        public synchronized void send(SseEventBuilder builder) throws IOException {
+            if (disconnected) {
+                throw new IOException("Broken pipe");
+            }
+            events.add(builder.build().stream()
+                    .map(data -> String.valueOf(data.getData()))
+                    .collect(Collectors.joining()));
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed.countDown();
+            super.complete();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.ai.aicodeguard.infrastructure.ai.streaming;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * SseTokenParser 与逐行 readUtf8Line + ObjectMapper.readValue(Map) 的旧实现在长流上逐个token结果一致
+ */
+public class SseTokenParserEquivalenceTest {
+
+    private static final int EVENTS = 500;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void anthropicTokensMatchLegacyParser() throws Exception {
+        byte[] stream = anthropicStream();
+        List<String> tokens = tokenParser(stream, SseTokenParser.Format.ANTHROPIC);
+
+        assertEquals(expectedTokens(), tokens);
+        assertEquals(legacyAnthropic(stream), tokens);
+    }
+
+    @Test
+    public void openAITokensMatchLegacyParser() throws Exception {
+        byte[] stream = openAIStream();
+        List<String> tokens = tokenParser(stream, SseTokenParser.Format.OPENAI);
+
+        assertEquals(expectedTokens(), tokens);
+        assertEquals(legacyOpenAI(stream), tokens);
+    }
+
+    private List<String> tokenParser(byte[] stream, SseTokenParser.Format format) throws Exception {
+        Buffer source = new Buffer().write(stream);
+        SseTokenParser parser = new SseTokenParser(objectMapper.getFactory(), format);
+        List<String> tokens = new ArrayList<>();
+        while (parser.next(source)) {
+            if (parser.text() != null) {
+                tokens.add(parser.text());
+            }
+            if (parser.isDone()) {
+                break;
+            }
+        }
+        return tokens;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> legacyAnthropic(byte[] stream) throws Exception {
+        Buffer source = new Buffer().write(stream);
+        List<String> tokens = new ArrayList<>();
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            if (!line.startsWith("data: ")) {
+                continue;
+            }
+            String data = line.substring(6);
+            if (data.contains("\"message_stop\"")) {
+                break;
+            }
+            Map<String, Object> eventData = objectMapper.readValue(data, Map.class);
+            if ("content_block_delta".equals(eventData.get("type"))) {
+                Map<String, Object> delta = (Map<String, Object>) eventData.get("delta");
+                if (delta != null && delta.containsKey("text")) {
+                    tokens.add((String) delta.get("text"));
+                }
+            }
+        }
+        return tokens;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> legacyOpenAI(byte[] stream) throws Exception {
+        Buffer source = new Buffer().write(stream);
+        List<String> tokens = new ArrayList<>();
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            if (!line.startsWith("data: ")) {
+                continue;
+            }
+            String data = line.substring(6);
+            if ("[DONE]".equals(data.trim())) {
+                break;
+            }
+            Map<String, Object> response = objectMapper.readValue(data, Map.class);
+            List<Map<String, Object>> choices = (List<Map<String, Object>>) response.get("choices");
+            if (choices != null && !choices.isEmpty()) {
+                Map<String, Object> delta = (Map<String, Object>) choices.get(0).get("delta");
+                if (delta != null && delta.get("content") != null) {
+                    tokens.add((String) delta.get("content"));
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private List<String> expectedTokens() {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < EVENTS; i++) {
+            tokens.add("token-" + i + " 代码\n");
+        }
+        return tokens;
+    }
+
+    private byte[] anthropicStream() {
+        StringBuilder sb = new StringBuilder()
+                .append("event: message_start\n")
+                .append("data: {\"type\":\"message_start\",\"message\":{\"id\":\"msg_1\",\"type\":\"message\",\"role\":\"assistant\",\"content\":[],\"model\":\"claude-3-5-sonnet\",\"usage\":{\"input_tokens\":25,\"output_tokens\":1}}}\n\n")
+                .append("event: content_block_start\n")
+                .append("data: {\"type\":\"content_block_start\",\"index\":0,\"content_block\":{\"type\":\"text\",\"text\":\"\"}}\n\n");
+        for (int i = 0; i < EVENTS; i++) {
+            sb.append("event: content_block_delta\n")
+                    .append("data: {\"type\":\"content_block_delta\",\"index\":0,\"delta\":{\"type\":\"text_delta\",\"text\":\"token-")
+                    .append(i).append(" 代码\\n\"}}\n\n");
+        }
+        sb.append("event: message_delta\n")
+                .append("data: {\"type\":\"message_delta\",\"delta\":{\"stop_reason\":\"end_turn\",\"stop_sequence\":null},\"usage\":{\"output_tokens\":500}}\n\n")
+                .append("event: message_stop\n")
+                .append("data: {\"type\":\"message_stop\"}\n\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] openAIStream() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < EVENTS; i++) {
+            sb.append("data: {\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1716000000,\"model\":\"deepseek-chat\",")
+                    .append("\"choices\":[{\"index\":0,\"delta\":{\"content\":\"token-").append(i)
+                    .append(" 代码\\n\"},\"logprobs\":null,\"finish_reason\":null}]}\n\n");
+        }
+        sb.append("data: {\"id\":\"chatcmpl-1\",\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"}]}\n\n")
+                .append("data: [DONE]\n\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,67 @@
+package com.ai.aicodeguard.infrastructure.ai.streaming;
+
+import com.ai.aicodeguard.infrastructure.ai.AIUsage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 流式响应中令牌用量、消息ID与结束原因的解析
+ */
+public class SseTokenParserTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void anthropicUsageCombinesMessageStartAndDelta() throws Exception {
+        String stream = """
+                event: message_start
+                data: {"type":"message_start","message":{"id":"msg_1","content":[],"usage":{"input_tokens":25,"cache_read_input_tokens":1200,"cache_creation_input_tokens":0,"output_tokens":1}}}
+
+                event: content_block_delta
+                data: {"type":"content_block_delta","index":0,"delta":{"type":"text_delta","text":"你好"}}
+
+                event: message_delta
+                data: {"type":"message_delta","delta":{"stop_reason":"end_turn"},"usage":{"output_tokens":42}}
+
+                event: message_stop
+                data: {"type":"message_stop"}
+
+                """;
+        SseTokenParser parser = drain(stream, SseTokenParser.Format.ANTHROPIC);
+        assertEquals(new AIUsage(25, 42, 1200, 0), parser.usage());
+        assertEquals("msg_1", parser.messageId());
+        assertEquals("end_turn", parser.finishReason());
+    }
+
+    @Test
+    public void openAIUsageChunkSubtractsCachedPromptTokens() throws Exception {
+        String stream = """
+                data: {"id":"chatcmpl-1","choices":[{"index":0,"delta":{"content":"你好"},"finish_reason":null}],"usage":null}
+
+                data: {"id":"chatcmpl-1","choices":[{"index":0,"delta":{},"finish_reason":"stop"}],"usage":null}
+
+                data: {"id":"chatcmpl-1","choices":[],"usage":{"prompt_tokens":100,"completion_tokens":7,"prompt_tokens_details":{"cached_tokens":64}}}
+
+                data: [DONE]
+
+                """;
+        SseTokenParser parser = drain(stream, SseTokenParser.Format.OPENAI);
+        assertEquals(new AIUsage(36, 7, 64, 0), parser.usage());
+        assertEquals("chatcmpl-1", parser.messageId());
+        assertEquals("stop", parser.finishReason());
+    }
+
+    private SseTokenParser drain(String stream, SseTokenParser.Format format) throws Exception {
+        SseTokenParser parser = new SseTokenParser(objectMapper.getFactory(), format);
+        Buffer source = new Buffer().writeUtf8(stream);
+        while (parser.next(source)) {
+            if (parser.isDone()) {
+                break;
+            }
+        }
+        return parser;
+    }
+}
@@ -0,0 +1,74 @@
+package com.ai.aicodeguard.infrastructure.ai.streaming;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 响应式流与SSE连接共用连接数上限，流结束或取消时归还名额，并在流式线程池中订阅
+ */
+public class StreamingRuntimeTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private StreamingRuntime runtime;
+
+    @BeforeEach
+    public void setup() {
+        StreamingProperties properties = new StreamingProperties();
+        properties.setMaxActiveStreams(1);
+        runtime = new StreamingRuntime(properties, meterRegistry);
+        runtime.init();
+    }
+
+    @AfterEach
+    public void shutdown() {
+        runtime.shutdown();
+    }
+
+    @Test
+    public void reactiveStreamHoldsSlotUntilCancelled() throws Exception {
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        Disposable first = runtime.stream("reactive", upstream::asFlux, message -> "error:" + message).subscribe();
+        awaitActive(1);
+
+        List<String> rejected = runtime.stream("reactive", () -> Flux.just("回复"), message -> "error:" + message)
+                .collectList().block(Duration.ofSeconds(5));
+        assertEquals(List.of("error:当前流式连接过多，请稍后重试"), rejected);
+        assertEquals(1.0, meterRegistry.counter("ai.stream.rejected", "type", "reactive").count());
+
+        first.dispose();
+        awaitActive(0);
+        List<String> accepted = runtime.stream("reactive", () -> Flux.just("回复"), message -> "error:" + message)
+                .collectList().block(Duration.ofSeconds(5));
+        assertEquals(List.of("回复"), accepted);
+        awaitActive(0);
+    }
+
+    @Test
+    public void sourceIsSubscribedOffCallerThread() {
+        Thread caller = Thread.currentThread();
+        Thread subscriber = runtime.stream("reactive", () -> Flux.just(Thread.currentThread()), message -> caller)
+                .blockFirst(Duration.ofSeconds(5));
+        assertNotEquals(caller, subscriber);
+        assertTrue(subscriber.getName().startsWith("ai-stream-"));
+    }
+
+    private void awaitActive(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (meterRegistry.get("ai.stream.active.total").gauge().value() != expected) {
+            assertTrue(System.currentTimeMillis() < deadline, "活跃流数量未按时更新");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.ai.aicodeguard.infrastructure.ai.transport;
+
+import com.ai.aicodeguard.infrastructure.ai.AIModelProperties;
+import com.ai.aicodeguard.infrastructure.ai.AIPriority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 并发限制器的预留额度、排队提升与队列挤出
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    public void reservedShareOnlyForInteractive() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 256, 10000);
+        // 上限4，预留1个额度给INTERACTIVE
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire(0, AIPriority.BACKGROUND);
+        }
+        assertThrows(AIRequestRejectedException.class, () -> limiter.acquire(50, AIPriority.BACKGROUND));
+        assertNotNull(limiter.acquire(0, AIPriority.INTERACTIVE));
+        assertEquals(4, limiter.getInflight());
+    }
+
+    @Test
+    public void agedWaiterCannotUseReservedShare() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 256, 10);
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire(0, AIPriority.BACKGROUND);
+        }
+        // 排队时间远超两次提升，有效优先级已到0，仍不能占用预留额度
+        assertThrows(AIRequestRejectedException.class, () -> limiter.acquire(200, AIPriority.BACKGROUND));
+        assertEquals(3, limiter.getInflight());
+    }
+
+    @Test
+    public void agingPromotesLongWaitingRequest() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 256, 50);
+        AdaptiveConcurrencyLimiter.Permit held = limiter.acquire(0, AIPriority.INTERACTIVE);
+        List<AIPriority> order = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<Void> background = acquireAsync(limiter, AIPriority.BACKGROUND, order);
+        awaitQueueDepth(limiter, 1);
+        // 等待两次提升后，后台请求的有效优先级高于新到的STANDARD请求
+        Thread.sleep(150);
+        CompletableFuture<Void> standard = acquireAsync(limiter, AIPriority.STANDARD, order);
+        awaitQueueDepth(limiter, 2);
+
+        held.release(AdaptiveConcurrencyLimiter.Outcome.IGNORED);
+        background.get(5, TimeUnit.SECONDS);
+        standard.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(AIPriority.BACKGROUND, AIPriority.STANDARD), order);
+    }
+
+    @Test
+    public void fullQueuePreemptsLowerPriorityWaiter() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 10000);
+        AdaptiveConcurrencyLimiter.Permit held = limiter.acquire(0, AIPriority.INTERACTIVE);
+        List<AIPriority> order = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<Void> background = acquireAsync(limiter, AIPriority.BACKGROUND, order);
+        awaitQueueDepth(limiter, 1);
+        CompletableFuture<Void> interactive = acquireAsync(limiter, AIPriority.INTERACTIVE, order);
+
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> background.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(AIRequestRejectedException.class, error.getCause());
+        held.release(AdaptiveConcurrencyLimiter.Outcome.IGNORED);
+        interactive.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(AIPriority.INTERACTIVE), order);
+    }
+
+    @Test
+    public void equalPriorityIsNotPreempted() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 10000);
+        limiter.acquire(0, AIPriority.INTERACTIVE);
+        acquireAsync(limiter, AIPriority.BACKGROUND, new CopyOnWriteArrayList<>());
+        awaitQueueDepth(limiter, 1);
+
+        assertThrows(AIRequestRejectedException.class, () -> limiter.acquire(1000, AIPriority.BACKGROUND));
+        assertEquals(1, limiter.getQueueDepth());
+    }
+
+    private static AdaptiveConcurrencyLimiter limiter(int limit, int maxQueueSize, long agingInterval) {
+        AIModelProperties.ModelConfig config = new AIModelProperties.ModelConfig();
+        config.setMaxConcurrentRequests(limit);
+        config.getLimiter().setInitialLimit(limit);
+        config.getLimiter().setMaxQueueSize(maxQueueSize);
+        config.getLimiter().setAgingInterval(agingInterval);
+        return new AdaptiveConcurrencyLimiter("test", config, new SimpleMeterRegistry());
+    }
+
+    private static CompletableFuture<Void> acquireAsync(AdaptiveConcurrencyLimiter limiter, AIPriority priority,
+                                                        List<AIPriority> order) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(5000, priority);
+                order.add(priority);
+                permit.release(AdaptiveConcurrencyLimiter.Outcome.IGNORED);
+                future.complete(null);
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return future;
+    }
+
+    private static void awaitQueueDepth(AdaptiveConcurrencyLimiter limiter, int depth) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (limiter.getQueueDepth() < depth) {
+            assertTrue(System.currentTimeMillis() < deadline, "排队请求未按时进入队列");
+            Thread.sleep(5);
+        }
+    }
+}
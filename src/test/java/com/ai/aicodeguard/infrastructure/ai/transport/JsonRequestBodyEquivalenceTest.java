@@ -0,0 +1,141 @@
+package com.ai.aicodeguard.infrastructure.ai.transport;
+
+import com.ai.aicodeguard.infrastructure.ai.conversation.ChatMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * JsonRequestBody 直接写入的请求体与 Map对象树 + writeValueAsString 的旧实现序列化结果一致，且可重复写入
+ */
+public class JsonRequestBodyEquivalenceTest {
+
+    private static final int MESSAGES = 50;
+
+    private static final String CODE_TEMPLATE = """
+            我需要你帮我生成%s代码。以下是需求描述：
+
+            %s
+
+            请生成符合需求的完整代码，不要包含额外的解释。代码需要遵循最佳实践，
+            保证安全性、可读性和性能。使用适当的注释说明关键步骤。""";
+    private static final JsonTemplate CODE_PROMPT = JsonTemplate.compile(CODE_TEMPLATE);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void conversationBodyMatchesLegacyJson() throws Exception {
+        List<ChatMessage> history = conversation();
+        RequestBody body = streamingConversation(history);
+
+        assertEquals(objectMapper.readTree(write(legacyConversation(history))), objectMapper.readTree(write(body)));
+        assertEquals("application/json", String.valueOf(body.contentType()));
+    }
+
+    @Test
+    public void codePromptBodyMatchesLegacyJson() throws Exception {
+        String prompt = "实现一个支持并发访问的LRU缓存，\"容量\"可配置，提供get/put并给出单元测试。\n".repeat(20);
+        RequestBody body = streamingCode(prompt);
+
+        assertEquals(objectMapper.readTree(write(legacyCode(prompt))), objectMapper.readTree(write(body)));
+        assertEquals(String.format(CODE_TEMPLATE, "Java", prompt),
+                objectMapper.readTree(write(body)).path("messages").get(0).path("content").asText());
+    }
+
+    @Test
+    public void bodyCanBeWrittenAgainForRetries() throws Exception {
+        RequestBody body = streamingConversation(conversation());
+
+        assertArrayEquals(write(body), write(body));
+    }
+
+    private RequestBody legacyConversation(List<ChatMessage> history) throws Exception {
+        List<Map<String, String>> messages = history.stream()
+                .map(msg -> {
+                    Map<String, String> msgMap = new HashMap<>();
+                    msgMap.put("role", msg.role());
+                    msgMap.put("content", msg.content());
+                    return msgMap;
+                })
+                .collect(Collectors.toList());
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", "deepseek-chat");
+        requestBody.put("messages", messages);
+        requestBody.put("temperature", 0.5);
+        return RequestBody.create(objectMapper.writeValueAsString(requestBody), MediaType.parse("application/json"));
+    }
+
+    private RequestBody streamingConversation(List<ChatMessage> history) {
+        return JsonRequestBody.of(objectMapper.getFactory(), gen -> {
+            gen.writeStartObject();
+            gen.writeStringField("model", "deepseek-chat");
+            gen.writeArrayFieldStart("messages");
+            for (ChatMessage msg : history) {
+                gen.writeStartObject();
+                gen.writeStringField("role", msg.role());
+                gen.writeStringField("content", msg.content());
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+            gen.writeNumberField("temperature", 0.5);
+            gen.writeEndObject();
+        });
+    }
+
+    private RequestBody legacyCode(String prompt) throws Exception {
+        Map<String, Object> message = new HashMap<>();
+        message.put("role", "user");
+        message.put("content", String.format(CODE_TEMPLATE, "Java", prompt));
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", "deepseek-chat");
+        requestBody.put("messages", List.of(message));
+        requestBody.put("temperature", 0.2);
+        requestBody.put("max_tokens", 4000);
+        return RequestBody.create(objectMapper.writeValueAsString(requestBody), MediaType.parse("application/json"));
+    }
+
+    private RequestBody streamingCode(String prompt) {
+        return JsonRequestBody.of(objectMapper.getFactory(), gen -> {
+            gen.writeStartObject();
+            gen.writeStringField("model", "deepseek-chat");
+            gen.writeArrayFieldStart("messages");
+            gen.writeStartObject();
+            gen.writeStringField("role", "user");
+            gen.writeFieldName("content");
+            CODE_PROMPT.writeValue(gen, "Java", prompt);
+            gen.writeEndObject();
+            gen.writeEndArray();
+            gen.writeNumberField("temperature", 0.2);
+            gen.writeNumberField("max_tokens", 4000);
+            gen.writeEndObject();
+        });
+    }
+
+    private byte[] write(RequestBody body) throws Exception {
+        Buffer sink = new Buffer();
+        body.writeTo(sink);
+        return sink.readByteArray();
+    }
+
+    private List<ChatMessage> conversation() {
+        List<ChatMessage> history = new ArrayList<>(MESSAGES + 1);
+        history.add(new ChatMessage("system", "你是一个有用的AI助手，专注于帮助用户解决编程问题。"));
+        for (int i = 0; i < MESSAGES; i++) {
+            String content = ("第" + i + "轮：请解释下面代码中\"synchronized\"的作用\n"
+                    + "public synchronized void put(K key, V value) { map.put(key, value); }\n").repeat(8);
+            history.add(new ChatMessage(i % 2 == 0 ? "user" : "assistant", content, 0));
+        }
+        return history;
+    }
+}
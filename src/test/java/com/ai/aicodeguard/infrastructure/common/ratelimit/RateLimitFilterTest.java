@@ -0,0 +1,110 @@
+package com.ai.aicodeguard.infrastructure.common.ratelimit;
+
+import com.ai.aicodeguard.domain.user.SysUser;
+import com.ai.aicodeguard.infrastructure.common.ratelimit.RateLimitProperties.EndpointLimit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * 限流过滤器超出额度时返回429，批量接口按条目数计费
+ */
+public class RateLimitFilterTest {
+
+    private TokenBucketRateLimiter rateLimiter;
+    private RateLimitFilter filter;
+    private EndpointLimit limit;
+
+    @BeforeEach
+    public void setup() {
+        rateLimiter = Mockito.mock(TokenBucketRateLimiter.class);
+        filter = new RateLimitFilter(rateLimiter);
+        limit = new EndpointLimit();
+        limit.setBaseTokens(1000);
+        limit.setBytesPerToken(1);
+    }
+
+    @Test
+    public void rejectsWith429AndRetryAfter() throws Exception {
+        Mockito.when(rateLimiter.getLimit("conversation")).thenReturn(limit);
+        Mockito.when(rateLimiter.tryAcquire(eq("7"), eq("conversation"), eq(limit), anyLong())).thenReturn(1500L);
+        HttpServletRequest request = request(new byte[0]);
+        HttpServletResponse response = Mockito.mock(HttpServletResponse.class);
+        StringWriter body = new StringWriter();
+        Mockito.when(response.getWriter()).thenReturn(new PrintWriter(body));
+
+        assertFalse(filter.onPreHandle(request, response, new String[]{"conversation"}));
+        Mockito.verify(response).setStatus(429);
+        Mockito.verify(response).setHeader("Retry-After", "2");
+        assertTrue(body.toString().contains("请求过于频繁"));
+    }
+
+    @Test
+    public void allowsWithinLimit() throws Exception {
+        Mockito.when(rateLimiter.getLimit("conversation")).thenReturn(limit);
+        HttpServletResponse response = Mockito.mock(HttpServletResponse.class);
+
+        assertTrue(filter.onPreHandle(request(new byte[0]), response, new String[]{"conversation"}));
+        Mockito.verify(rateLimiter).tryAcquire("7", "conversation", limit, 1000);
+        Mockito.verifyNoInteractions(response);
+    }
+
+    @Test
+    public void batchChargedByItemCountAndBodyStillReadable() throws Exception {
+        limit.setItemsField("items");
+        Mockito.when(rateLimiter.getLimit("code-generation-batch")).thenReturn(limit);
+        byte[] body = "{\"modelType\":\"claude\",\"items\":[{\"prompt\":\"a\"},{\"prompt\":\"b\"},{\"prompt\":\"c\"}]}"
+                .getBytes(StandardCharsets.UTF_8);
+        RateLimitFilter.CachedBodyRequest request = new RateLimitFilter.CachedBodyRequest(request(body));
+
+        assertTrue(filter.onPreHandle(request, Mockito.mock(HttpServletResponse.class),
+                new String[]{"code-generation-batch"}));
+        Mockito.verify(rateLimiter).tryAcquire("7", "code-generation-batch", limit, 3 * 1000 + body.length);
+        assertArrayEquals(body, request.getInputStream().readAllBytes());
+    }
+
+    private static HttpServletRequest request(byte[] body) throws Exception {
+        SysUser user = new SysUser();
+        user.setId(7);
+        HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(request.getAttribute("currentUser")).thenReturn(user);
+        Mockito.when(request.getContentLengthLong()).thenReturn((long) body.length);
+        ByteArrayInputStream input = new ByteArrayInputStream(body);
+        Mockito.when(request.getInputStream()).thenReturn(new ServletInputStream() {
+            @Override
+            public boolean isFinished() {
+                return input.available() == 0;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener listener) {
+            }
+
+            @Override
+            public int read() {
+                return input.read();
+            }
+        });
+        return request;
+    }
+}
@@ -0,0 +1,100 @@
+package com.ai.aicodeguard.infrastructure.common.ratelimit;
+
+import com.ai.aicodeguard.infrastructure.common.ratelimit.RateLimitProperties.EndpointLimit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+
+/**
+ * 双令牌桶的扣减、补充与等待时间，以及Redis脚本参数和不可用时的本地退回
+ */
+public class TokenBucketRateLimiterTest {
+
+    private RedisTemplate<String, String> redisTemplate;
+    private TokenBucketRateLimiter rateLimiter;
+    private EndpointLimit limit;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        redisTemplate = Mockito.mock(RedisTemplate.class);
+        rateLimiter = new TokenBucketRateLimiter(new RateLimitProperties(), redisTemplate, new SimpleMeterRegistry());
+        rateLimiter.init();
+
+        limit = new EndpointLimit();
+        limit.setRequestsPerMinute(60);
+        limit.setRequestBurst(2);
+        limit.setTokensPerMinute(6000);
+        limit.setTokenBurst(3000);
+    }
+
+    @Test
+    public void localBucketRejectsAfterBurstAndRefills() {
+        LocalTokenBucket bucket = new LocalTokenBucket();
+        assertEquals(0, bucket.tryAcquire(limit, 100, 0));
+        assertEquals(0, bucket.tryAcquire(limit, 100, 0));
+        // 每秒补充一个请求
+        assertEquals(1000, bucket.tryAcquire(limit, 100, 0));
+        assertEquals(500, bucket.tryAcquire(limit, 100, 500));
+        assertEquals(0, bucket.tryAcquire(limit, 100, 1000));
+    }
+
+    @Test
+    public void localBucketChargesTokensOnlyWhenBothBucketsSuffice() {
+        LocalTokenBucket bucket = new LocalTokenBucket();
+        assertEquals(0, bucket.tryAcquire(limit, 2500, 0));
+        // 剩余500令牌，缺少500，每毫秒补充0.1个
+        assertEquals(5000, bucket.tryAcquire(limit, 1000, 0));
+        // 被拒绝的请求不扣减请求桶
+        assertEquals(0, bucket.tryAcquire(limit, 500, 0));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void redisScriptReceivesBucketParameters() {
+        Mockito.when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(0L);
+
+        assertEquals(0, rateLimiter.tryAcquire("1", "conversation", limit, 500));
+        Mockito.verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("ratelimit:conversation:1")),
+                eq("2.0"), eq(String.valueOf(60 / 60_000.0)), eq("3000.0"), eq(String.valueOf(6000 / 60_000.0)),
+                eq("500"), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void costIsCappedAtTokenCapacity() {
+        Mockito.when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(0L);
+
+        rateLimiter.tryAcquire("1", "batch", limit, 1_000_000);
+        Mockito.verify(redisTemplate).execute(any(RedisScript.class), anyList(),
+                any(), any(), any(), any(), eq("3000"), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void fallsBackToLocalBucketWhenRedisFails() {
+        Mockito.when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any(), any(), any(), any()))
+                .thenThrow(new RedisConnectionFailureException("连接失败"));
+
+        assertEquals(0, rateLimiter.tryAcquire("1", "conversation", limit, 100));
+        assertEquals(0, rateLimiter.tryAcquire("1", "conversation", limit, 100));
+        assertTrue(rateLimiter.tryAcquire("1", "conversation", limit, 100) > 0);
+        // 重试间隔内不再访问Redis
+        Mockito.verify(redisTemplate, Mockito.times(1))
+                .execute(any(RedisScript.class), anyList(), any(), any(), any(), any(), any(), any());
+    }
+}